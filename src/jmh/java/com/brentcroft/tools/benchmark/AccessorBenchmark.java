@@ -0,0 +1,82 @@
+package com.brentcroft.tools.benchmark;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.el.resolver.FinalStaticFieldELResolver;
+import com.brentcroft.tools.el.resolver.MethodHandleELResolver;
+import jakarta.el.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean property reads, method calls and static field reads:
+ * method handles (<code>MethodHandleELResolver</code>, <code>FinalStaticFieldELResolver</code>)
+ * compared with reflection (<code>BeanELResolver</code>, <code>StaticFieldELResolver</code>).
+ * <p>
+ * Each thread has its own resolvers and context, since an ELContext is not shared.
+ * <p>
+ * Run with: <code>mvn -P benchmark test-compile exec:exec -Djmh.args="Accessor"</code>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class AccessorBenchmark
+{
+    public static class Order
+    {
+        public static final double VAT = 1.2;
+
+        public String getId()
+        {
+            return "A-123";
+        }
+
+        public double total( double price, int count )
+        {
+            return price * count * VAT;
+        }
+    }
+
+    @Param( { "reflection", "methodHandles" } )
+    public String accessor;
+
+    private ELResolver beans;
+    private ELResolver statics;
+    private ELContext context;
+
+    private final Order order = new Order();
+    private final ELClass orderClass = new ELClass( Order.class );
+    private final Object[] args = { 9.99, 3 };
+
+    @Setup
+    public void setUp()
+    {
+        final boolean methodHandles = "methodHandles".equals( accessor );
+
+        beans = methodHandles ? new MethodHandleELResolver() : new BeanELResolver();
+        statics = methodHandles ? new FinalStaticFieldELResolver() : new StaticFieldELResolver();
+
+        context = new ELTemplateManager().getELContext( new MapBindings() );
+    }
+
+    @Benchmark
+    public Object getProperty()
+    {
+        return beans.getValue( context, order, "id" );
+    }
+
+    @Benchmark
+    public Object invokeMethod()
+    {
+        return beans.invoke( context, order, "total", null, args );
+    }
+
+    @Benchmark
+    public Object getStaticField()
+    {
+        return statics.getValue( context, orderClass, "VAT" );
+    }
+}
@@ -0,0 +1,55 @@
+package com.brentcroft.tools.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks once per thread count, with the GC (allocation) profiler,
+ * writing the results of each run as JSON, to compare across releases:
+ * <pre>
+ *     target/jmh/results-t1.json
+ *     target/jmh/results-t4.json
+ * </pre>
+ * Any arguments are passed to JMH (e.g. a benchmark name pattern).
+ * The thread counts are taken from the system property <code>jmh.threads</code> (default: "1,4").
+ * <p>
+ * Run with: <code>mvn -P benchmark test-compile exec:exec -Djmh.main=com.brentcroft.tools.benchmark.BenchmarkSuite [-Djmh.args="..."]</code>
+ */
+public class BenchmarkSuite
+{
+    public static void main( String[] args ) throws RunnerException, CommandLineOptionException
+    {
+        final CommandLineOptions commandLine = new CommandLineOptions( args );
+        final File resultDirectory = new File( "target/jmh" );
+
+        if ( ! resultDirectory.isDirectory() && ! resultDirectory.mkdirs() )
+        {
+            throw new RunnerException( "Cannot create directory: " + resultDirectory );
+        }
+
+        for ( String threads : System.getProperty( "jmh.threads", "1,4" ).split( "\\s*,\\s*" ) )
+        {
+            final ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent( commandLine )
+                    .threads( Integer.parseInt( threads ) )
+                    .addProfiler( GCProfiler.class )
+                    .resultFormat( ResultFormatType.JSON )
+                    .result( new File( resultDirectory, "results-t" + threads + ".json" ).getPath() );
+
+            if ( commandLine.getIncludes().isEmpty() )
+            {
+                options.include( BenchmarkSuite.class.getPackage().getName() );
+            }
+
+            new Runner( options.build() ).run();
+        }
+    }
+}
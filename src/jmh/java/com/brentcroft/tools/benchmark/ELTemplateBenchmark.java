@@ -0,0 +1,91 @@
+package com.brentcroft.tools.benchmark;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.MapBindings;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <code>ELTemplateManager.expandText</code>, <code>expandUri</code> and <code>eval</code>,
+ * over texts with an increasing number of expressions.
+ * <p>
+ * Run with: <code>mvn -P benchmark test-compile exec:exec -Djmh.args="ELTemplateBenchmark"</code>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.AverageTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ELTemplateBenchmark
+{
+    @Param( { "1", "10", "100" } )
+    public int expressions;
+
+    @Param( { "order.items[1].price * order.count", "order.items.stream().map( i -> i.price ).sum()" } )
+    public String expression;
+
+    private final ELTemplateManager el = new ELTemplateManager();
+    private final TemplateFiles files = new TemplateFiles();
+
+    private String text;
+    private String uri;
+
+    @State( Scope.Thread )
+    public static class Bindings
+    {
+        MapBindings bindings;
+
+        @Setup
+        public void setUp()
+        {
+            bindings = new MapBindings()
+                    .withEntry( "name", "Green" )
+                    .withEntry( "order", new MapBindings()
+                            .withEntry( "count", 3 )
+                            .withEntry( "items", Arrays.asList(
+                                    new MapBindings().withEntry( "name", "apple" ).withEntry( "price", 0.5 ),
+                                    new MapBindings().withEntry( "name", "pear" ).withEntry( "price", 0.75 ),
+                                    new MapBindings().withEntry( "name", "plum" ).withEntry( "price", 0.25 ) ) ) );
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        text = IntStream
+                .range( 0, expressions )
+                .mapToObj( i -> "Line " + i + ": ${ name } ordered ${ order.items[" + ( i % 3 ) + "].name } at ${ order.items[" + ( i % 3 ) + "].price * 1.2 }\n" )
+                .collect( Collectors.joining() );
+
+        uri = files.write( "el-" + expressions + ".txt", text );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        files.close();
+    }
+
+    @Benchmark
+    public String expandText( Bindings b )
+    {
+        return el.expandText( text, b.bindings );
+    }
+
+    @Benchmark
+    public String expandUri( Bindings b )
+    {
+        return el.expandUri( uri, b.bindings );
+    }
+
+    @Benchmark
+    public Object eval( Bindings b )
+    {
+        return el.eval( expression, b.bindings );
+    }
+}
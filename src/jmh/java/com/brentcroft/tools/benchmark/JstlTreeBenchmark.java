@@ -0,0 +1,122 @@
+package com.brentcroft.tools.benchmark;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>JstlTemplateManager.expandUri</code> over generated trees of tags:
+ * <code>size</code> sibling blocks, each nested <code>depth</code> deep.
+ * <ul>
+ *     <li>forEach: loops over three items at each level;</li>
+ *     <li>choose: the second of three branches is taken at each level;</li>
+ *     <li>include: each level is a separate template including the next.</li>
+ * </ul>
+ * <p>
+ * Run with: <code>mvn -P benchmark test-compile exec:exec -Djmh.args="JstlTreeBenchmark"</code>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.AverageTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class JstlTreeBenchmark
+{
+    private static final String LEAF = "[${ item.name }]";
+
+    @Param( { "forEach", "choose", "include" } )
+    public String shape;
+
+    @Param( { "10", "100" } )
+    public int size;
+
+    @Param( { "1", "3" } )
+    public int depth;
+
+    private final JstlTemplateManager jstl = new JstlTemplateManager();
+    private final TemplateFiles files = new TemplateFiles();
+
+    private String uri;
+
+    @State( Scope.Thread )
+    public static class Bindings
+    {
+        MapBindings bindings;
+
+        @Setup
+        public void setUp()
+        {
+            bindings = new MapBindings()
+                    .withEntry( "n", 2 )
+                    .withEntry( "item", new MapBindings().withEntry( "name", "fig" ) )
+                    .withEntry( "items", Arrays.asList(
+                            new MapBindings().withEntry( "name", "apple" ),
+                            new MapBindings().withEntry( "name", "pear" ),
+                            new MapBindings().withEntry( "name", "plum" ) ) );
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        final StringBuilder root = new StringBuilder();
+
+        for ( int i = 0; i < size; i++ )
+        {
+            root.append( block( depth ) ).append( '\n' );
+        }
+
+        if ( "include".equals( shape ) )
+        {
+            for ( int d = 1; d <= depth; d++ )
+            {
+                files.write( "level-" + d + ".tpl", d == 1 ? LEAF : block( d - 1 ) );
+            }
+        }
+
+        uri = files.write( shape + "-" + size + "-" + depth + ".tpl", root.toString() );
+    }
+
+    private String block( int level )
+    {
+        if ( level == 0 )
+        {
+            return LEAF;
+        }
+
+        switch ( shape )
+        {
+            case "forEach":
+                return "<c:foreach items='${ items }' var='item'>" + block( level - 1 ) + "</c:foreach>";
+
+            case "choose":
+                return "<c:choose>" +
+                        "<c:when test='${ n == 1 }'>one</c:when>" +
+                        "<c:when test='${ n == 2 }'>" + block( level - 1 ) + "</c:when>" +
+                        "<c:otherwise>other</c:otherwise>" +
+                        "</c:choose>";
+
+            case "include":
+                return "<c:include page='level-" + level + ".tpl'/>";
+
+            default:
+                throw new IllegalArgumentException( shape );
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        files.close();
+    }
+
+    @Benchmark
+    public String expandUri( Bindings b )
+    {
+        return jstl.expandUri( uri, b.bindings );
+    }
+}
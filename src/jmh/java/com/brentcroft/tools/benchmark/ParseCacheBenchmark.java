@@ -0,0 +1,81 @@
+package com.brentcroft.tools.benchmark;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.brentcroft.tools.el.ELTemplateManager.getLocalFileURL;
+import static com.brentcroft.tools.el.ELTemplateManager.readUrl;
+
+/**
+ * Repeated anonymous expansion of the same text, with and without a parse cache.
+ * <p>
+ * Run with: <code>mvn -P benchmark test-compile exec:exec -Djmh.args="ParseCache"</code>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+public class ParseCacheBenchmark
+{
+    // measure rendering, not console output from c:log
+    private static final Logger LOGGER = Logger.getLogger( "com.brentcroft" );
+
+    private static final String EL_TEXT = "Dear ${ title } ${ name },\n" +
+            "your order ${ order.id } of ${ order.count } items (${ order.count * 1.2 } inc. VAT) ships ${ day }.\n";
+
+    @Param( { "false", "true" } )
+    public boolean cached;
+
+    @Param( { "src/test/resources/templates/jstl/test-include-parent.txt" } )
+    public String uri;
+
+    private ELTemplateManager el;
+    private JstlTemplateManager jstl;
+    private String jstlText;
+    private MapBindings bindings;
+
+    @Setup
+    public void setUp()
+    {
+        LOGGER.setLevel( Level.OFF );
+
+        el = new ELTemplateManager();
+        jstl = new JstlTemplateManager();
+
+        if ( cached )
+        {
+            el.withParseCache( 1024 * 1024 );
+            jstl.withParseCache( 1024 * 1024 );
+        }
+
+        jstlText = readUrl( getLocalFileURL( getClass(), uri ) );
+
+        bindings = new MapBindings()
+                .withEntry( "title", "Ms" )
+                .withEntry( "name", "Green" )
+                .withEntry( "order", new MapBindings()
+                        .withEntry( "id", "A-123" )
+                        .withEntry( "count", 3 ) )
+                .withEntry( "day", "Tuesday" )
+                .withEntry( "fred", "Fred" );
+    }
+
+    @Benchmark
+    public String expandELText()
+    {
+        return el.expandText( EL_TEXT, bindings );
+    }
+
+    @Benchmark
+    public String expandJstlText()
+    {
+        return jstl.expandText( jstlText, uri, bindings );
+    }
+}
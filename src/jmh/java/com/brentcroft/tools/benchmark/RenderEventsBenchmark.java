@@ -0,0 +1,76 @@
+package com.brentcroft.tools.benchmark;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlDocument;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <code>JstlDocument.renderEvents</code> of a document that loops over <code>rows</code> items,
+ * emitting an element with an expanded attribute, a conditional child and some text for each.
+ * <p>
+ * Each thread has its own document, since a <code>JstlDocument</code> is not shared.
+ * <p>
+ * Run with: <code>mvn -P benchmark test-compile exec:exec -Djmh.args="RenderEventsBenchmark"</code>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( { Mode.Throughput, Mode.AverageTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RenderEventsBenchmark
+{
+    private static final String DOCUMENT = "<doc xmlns:c='jstl'>" +
+            "<c:forEach items='${ rows }' var='row'>" +
+            "<row id='${ row.id }'>" +
+            "<c:if test='${ row.id % 2 == 0 }'><even>${ row.name }</even></c:if>" +
+            "</row>" +
+            "</c:forEach>" +
+            "</doc>";
+
+    @Param( { "10", "100" } )
+    public int rows;
+
+    private JstlDocument jstlDocument;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        TemplateFiles.quiet();
+
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware( true );
+
+        final List< MapBindings > items = IntStream
+                .range( 0, rows )
+                .mapToObj( i -> new MapBindings()
+                        .withEntry( "id", i )
+                        .withEntry( "name", "row-" + i ) )
+                .collect( Collectors.toList() );
+
+        jstlDocument = new JstlDocument();
+        jstlDocument.setContentHandler( new DefaultHandler() );
+        jstlDocument.setDocument( factory
+                .newDocumentBuilder()
+                .parse( new ByteArrayInputStream( DOCUMENT.getBytes( StandardCharsets.UTF_8 ) ) ) );
+        jstlDocument.getBindings().put( "rows", items );
+    }
+
+    @Benchmark
+    public JstlDocument renderEvents() throws SAXException
+    {
+        jstlDocument.renderEvents();
+
+        return jstlDocument;
+    }
+}
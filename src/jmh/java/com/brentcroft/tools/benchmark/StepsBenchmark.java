@@ -0,0 +1,63 @@
+package com.brentcroft.tools.benchmark;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.MapBindings;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Steps calls (see <code>MapStepsELResolver</code>): <code>calc.run( { 'n': 3 } )</code>,
+ * where <code>$$run</code> has an increasing number of steps.
+ * <p>
+ * Run with: <code>mvn -P benchmark test-compile exec:exec -Djmh.args="StepsBenchmark"</code>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.Throughput, Mode.AverageTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StepsBenchmark
+{
+    @Param( { "1", "10" } )
+    public int steps;
+
+    private final ELTemplateManager el = new ELTemplateManager();
+
+    private String runSteps;
+
+    @State( Scope.Thread )
+    public static class Bindings
+    {
+        MapBindings bindings;
+
+        @Setup
+        public void setUp( StepsBenchmark benchmark )
+        {
+            bindings = new MapBindings()
+                    .withEntry( "calc", new MapBindings()
+                            .withEntry( "$$run", benchmark.runSteps ) );
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        TemplateFiles.quiet();
+
+        runSteps = IntStream
+                .range( 0, steps )
+                .mapToObj( i -> "$local.v" + i + " = n * " + i + ";" )
+                .collect( Collectors.joining( "\n" ) )
+                + "\nn * " + steps;
+    }
+
+    @Benchmark
+    public Object steps( Bindings b )
+    {
+        return el.eval( "calc.run( { 'n': 3 } )", b.bindings );
+    }
+}
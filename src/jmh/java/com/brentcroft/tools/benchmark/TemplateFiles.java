@@ -0,0 +1,75 @@
+package com.brentcroft.tools.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A temporary directory of generated templates, for benchmarks that load templates by uri.
+ */
+class TemplateFiles implements AutoCloseable
+{
+    // measure rendering, not console output from c:log
+    private static final Logger LOGGER = Logger.getLogger( "com.brentcroft" );
+
+    private final Path directory;
+
+    TemplateFiles()
+    {
+        LOGGER.setLevel( Level.OFF );
+
+        try
+        {
+            directory = Files.createTempDirectory( "el-plates-benchmark" );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    static void quiet()
+    {
+        LOGGER.setLevel( Level.OFF );
+    }
+
+    /**
+     * @param name the file name
+     * @param text the content
+     * @return the uri of the new file
+     */
+    String write( String name, String text )
+    {
+        try
+        {
+            return Files
+                    .write( directory.resolve( name ), text.getBytes( StandardCharsets.UTF_8 ) )
+                    .toString();
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        try ( Stream< Path > paths = Files.walk( directory ) )
+        {
+            paths
+                    .sorted( Comparator.reverseOrder() )
+                    .forEach( path -> path.toFile().delete() );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.brentcroft.tools.benchmark;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * The heap used by a cache of loaded templates, per template, and relative to the size of their text.
+ * <p>
+ * Not a JMH benchmark: run with:
+ * <code>mvn -P benchmark test-compile exec:exec -Djmh.main=com.brentcroft.tools.benchmark.TemplateFootprint -Djmh.args=2000</code>
+ * (where the argument is the number of templates).
+ */
+public class TemplateFootprint
+{
+    private static final int TEMPLATES = 2000;
+    private static final int ROWS = 20;
+
+    public static void main( String[] args )
+    {
+        final int count = args.length > 0 && args[ 0 ].matches( "\\d+" )
+                          ? Integer.parseInt( args[ 0 ] )
+                          : TEMPLATES;
+
+        try ( TemplateFiles files = new TemplateFiles() )
+        {
+            final List< String > uris = new ArrayList<>();
+
+            long sourceChars = 0;
+
+            for ( int i = 0; i < count; i++ )
+            {
+                final String text = text( i );
+
+                sourceChars += text.length();
+
+                uris.add( files.write( format( "page-%s.html", i ), text ) );
+            }
+
+            final JstlTemplateManager jstl = new JstlTemplateManager();
+
+            // compile the shared machinery before the baseline
+            jstl.expandText( text( -1 ), new MapBindings()
+                    .withEntry( "title", "" )
+                    .withEntry( "pages", 1 )
+                    .withEntry( "rows", new ArrayList<>() ) );
+
+            final long before = usedHeap();
+
+            for ( String uri : uris )
+            {
+                jstl.loadTemplate( uri, null );
+            }
+
+            final long used = usedHeap() - before;
+
+            System.out.println( format( "%s templates, %s chars of text", count, sourceChars ) );
+            System.out.println( format( "%s bytes on the heap: %s bytes per template, %.2f bytes per char of text",
+                    used,
+                    used / count,
+                    ( double ) used / sourceChars ) );
+            System.out.println( format( "%s literals pooled", jstl.getELTemplateManager().getLiteralPool().size() ) );
+
+            // keep the cache reachable until measured
+            System.out.println( format( "%s templates cached", jstl.getTemplateCache().size() ) );
+        }
+    }
+
+    // a page shaped like the rest; each with a few distinct expressions
+    private static String text( int i )
+    {
+        final StringBuilder text = new StringBuilder()
+                .append( "<html>\n<head><title>Page " ).append( i ).append( "</title></head>\n<body>\n" )
+                .append( "<h1>${ title }</h1>\n" )
+                .append( "<table>\n<c:forEach items=\"${ rows }\" var=\"row\">\n" );
+
+        for ( int j = 0; j < ROWS; j++ )
+        {
+            text
+                    .append( "  <tr class=\"row\"><td>${ row.name }</td><td>${ row.value * " ).append( j ).append( " }</td>" )
+                    .append( "<c:if test=\"${ row.flag }\"><td class=\"flag\">flagged</td></c:if></tr>\n" );
+        }
+
+        return text
+                .append( "</c:forEach>\n</table>\n<p>page ${ " ).append( i ).append( " } of ${ pages }</p>\n" )
+                .append( "</body>\n</html>\n" )
+                .toString();
+    }
+
+    private static long usedHeap()
+    {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            System.gc();
+
+            try
+            {
+                Thread.sleep( 100 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
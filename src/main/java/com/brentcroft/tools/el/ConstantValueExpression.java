@@ -0,0 +1,97 @@
+package com.brentcroft.tools.el;
+
+import jakarta.el.ELContext;
+import jakarta.el.PropertyNotWritableException;
+import jakarta.el.ValueExpression;
+
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/**
+ * A ValueExpression whose value was computed (and coerced to the expected type) once, when it was compiled:
+ * e.g. <code>${ 1024 * 4 }</code> or <code>${ 'a' += 'b' }</code>.
+ * <p>
+ * Evaluating it never notifies the evaluation listeners of the context.
+ *
+ * @author ADobson
+ */
+public class ConstantValueExpression extends ValueExpression
+{
+    private final String expressionString;
+    private final Class< ? > expectedType;
+    private final Object value;
+
+    public ConstantValueExpression( String expressionString, Class< ? > expectedType, Object value )
+    {
+        this.expressionString = expressionString;
+        this.expectedType = expectedType;
+        this.value = value;
+    }
+
+    public Object getValue()
+    {
+        return value;
+    }
+
+    @Override
+    public Object getValue( ELContext context )
+    {
+        return value;
+    }
+
+    @Override
+    public void setValue( ELContext context, Object value )
+    {
+        throw new PropertyNotWritableException( format( "Illegal Syntax for Set Operation: %s", expressionString ) );
+    }
+
+    @Override
+    public boolean isReadOnly( ELContext context )
+    {
+        return true;
+    }
+
+    @Override
+    public Class< ? > getType( ELContext context )
+    {
+        return value == null ? null : value.getClass();
+    }
+
+    @Override
+    public Class< ? > getExpectedType()
+    {
+        return expectedType;
+    }
+
+    @Override
+    public String getExpressionString()
+    {
+        return expressionString;
+    }
+
+    @Override
+    public boolean isLiteralText()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        return o instanceof ConstantValueExpression
+                && expressionString.equals( ( ( ConstantValueExpression ) o ).expressionString )
+                && Objects.equals( expectedType, ( ( ConstantValueExpression ) o ).expectedType );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return expressionString.hashCode();
+    }
+
+    public String toString()
+    {
+        return "ConstantValueExpression[" + expressionString + "]";
+    }
+}
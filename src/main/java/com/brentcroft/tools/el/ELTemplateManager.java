@@ -1,18 +1,34 @@
 package com.brentcroft.tools.el;
 
 
+import com.brentcroft.tools.el.cache.BoundedCache;
+import com.brentcroft.tools.el.cache.Cache;
+import com.brentcroft.tools.el.cache.ContentKey;
+import com.brentcroft.tools.el.cache.ExpressionCache;
+import com.brentcroft.tools.el.cache.LiteralPool;
+import com.brentcroft.tools.el.closure.ClosureParser;
+import com.brentcroft.tools.el.closure.Node;
+import com.brentcroft.tools.el.metrics.TemplateMetrics;
+import com.brentcroft.tools.el.source.BundleTemplateSource;
+import com.brentcroft.tools.el.source.CachingTemplateSource;
+import com.brentcroft.tools.el.source.TemplateReader;
+import com.brentcroft.tools.el.source.TemplateSource;
 import com.brentcroft.tools.jstl.Renderable;
 import jakarta.el.*;
 import lombok.extern.java.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.text.CharacterIterator;
-import java.text.StringCharacterIterator;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static java.lang.String.format;
@@ -37,9 +53,11 @@ import static java.lang.String.format;
  * calling <code>javax.el.ExpressionFactory.newInstance()</code>.
  * <p>
  * The default provider mechanism can be overridden by setting the
- * <code>expressionFactoryClass</code> property to the fully qualified name of a
- * class that extends <code>javax.el.ExpressionFactory.newInstance()</code>
- * (immediately clearing any existing ExpressionFactory instance).
+ * <code>jakarta.el.ExpressionFactory</code> system property to the fully qualified name of a
+ * class that extends <code>jakarta.el.ExpressionFactory</code>,
+ * or by <code>withExpressionFactory( expressionFactory )</code>
+ * (immediately clearing any expressions compiled by the previous ExpressionFactory):
+ * e.g. a <code>ClosureExpressionFactory</code>, which compiles expressions into closures.
  *
  * @author ADobson
  * @see <a href="http://en.wikipedia.org/wiki/Unified_Expression_Language" >
@@ -57,21 +75,39 @@ public class ELTemplateManager implements TextExpander, Evaluator
 
     public static final String DEFAULT_TEMPLATE_EXTENSION = ".tpl";
 
+    public static final long DEFAULT_SOURCE_TTL_MILLIS = 2000;
+
     public static final Pattern EL_EXPRESSION_PATTERN = Pattern.compile( "[$#]\\{[^}]+}" );
 
 
-    private final Map< String, ELTemplate > templates = new HashMap<>();
-    private final Map< String, ValueExpression > expressions = new HashMap<>();
+    private Cache< String, ELTemplate > templates = new BoundedCache<>();
+    private ExpressionCache expressions = new ExpressionCache();
+    private Cache< ContentKey, ELTemplate > parseCache = null;
+    private final LiteralPool literalPool = new LiteralPool();
+    private volatile LazyCompilation lazyCompilation = null;
+    private boolean propertyPaths = true;
+    private boolean constantFolding = true;
+
+    private TemplateReader templateReader = TemplateReader.DEFAULT;
+    private TemplateSource templateSource = TemplateSource
+            .defaults( ELTemplateManager.class )
+            .cached( DEFAULT_SOURCE_TTL_MILLIS );
+
+    private EvaluationListener[] listeners = null;
+    private volatile TemplateMetrics metrics = null;
 
 
     public void mapFunctions( Map< String, Method > functions )
     {
         elContextFactory.mapFunctions( functions );
+        // compiled expressions capture their functions
+        expressions.clear();
     }
 
     public void mapFunction( String prefixedName, Method staticMethod )
     {
         elContextFactory.mapFunction( prefixedName, staticMethod );
+        expressions.clear();
     }
 
     public SimpleELContextFactory getELContextFactory()
@@ -84,18 +120,285 @@ public class ELTemplateManager implements TextExpander, Evaluator
         return elContextFactory.getELContext( rootObjects );
     }
 
+    /**
+     * Compile (or find an already compiled) <code>ValueExpression</code>.
+     * <p>
+     * Compiled expressions are shared (see <code>getExpressionCache()</code>),
+     * and do not depend on the root objects.
+     *
+     * @param expression  the expression text (including <code>${...}</code>)
+     * @param rootObjects ignored
+     * @param clazz       the type to coerce the value of the expression to
+     * @return the compiled ValueExpression
+     */
     public ValueExpression getValueExpression( String expression, Map< ?, ? > rootObjects, Class< ? > clazz )
     {
-        return getExpressionFactory()
-                .createValueExpression(
-                        getELContext( rootObjects ),
-                        expression,
-                        clazz );
+        return expressions.getValueExpression( expression, clazz, this::createValueExpression );
+    }
+
+    // constant expressions are folded (static constants guarded by the bindings),
+    // and pure property paths take a shortcut through the resolvers
+    private ValueExpression createValueExpression( String expression, Class< ? > clazz )
+    {
+        final ValueExpression valueExpression = getExpressionFactory().createValueExpression( context, expression, clazz );
+        final Node node = constantFolding || propertyPaths ? parse( expression ) : null;
+
+        if ( constantFolding && node != null && node.isConstant() )
+        {
+            try
+            {
+                return new ConstantValueExpression( expression, clazz, valueExpression.getValue( context ) );
+            }
+            catch ( RuntimeException e )
+            {
+                // left to fail on evaluation
+            }
+        }
+
+        final ValueExpression general = propertyPaths
+                                        ? PropertyPathExpression.of( valueExpression, node, context, elContextFactory )
+                                        : valueExpression;
+
+        return constantFolding
+               ? StaticConstantExpression.of( general, node, context, elContextFactory )
+               : general;
+    }
+
+    // or null, if not a closure expression
+    private static Node parse( String expression )
+    {
+        try
+        {
+            return ClosureParser.parse( expression );
+        }
+        catch ( ELException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Fold a constant expression (see <code>withConstantFolding</code>):
+     * e.g. so that a tag can drop a branch that is never taken.
+     * <p>
+     * The expression is compiled (and cached) as by <code>getValueExpression</code>,
+     * unless compilation is lazy (see <code>withLazyCompilation</code>), when nothing is folded.
+     *
+     * @param expression the expression text (including <code>${...}</code>)
+     * @param clazz      the type to coerce the value of the expression to
+     * @return the folded expression, or null if the expression is not constant (or can't be folded)
+     */
+    public ConstantValueExpression fold( String expression, Class< ? > clazz )
+    {
+        if ( ! constantFolding || lazyCompilation != null )
+        {
+            return null;
+        }
+
+        final ValueExpression valueExpression = getValueExpression( expression, null, clazz );
+
+        return valueExpression instanceof ConstantValueExpression
+               ? ( ConstantValueExpression ) valueExpression
+               : null;
+    }
+
+    /**
+     * Replace the cache of compiled expressions shared by
+     * <code>eval</code>, <code>compile</code> and <code>getValueExpression</code>
+     * (e.g. with a different bound or eviction policy).
+     *
+     * @param expressionCache the new expression cache
+     * @return this
+     */
+    public ELTemplateManager withExpressionCache( ExpressionCache expressionCache )
+    {
+        this.expressions = Objects.requireNonNull( expressionCache, "expressionCache" );
+        return this;
+    }
+
+    public ExpressionCache getExpressionCache()
+    {
+        return expressions;
+    }
+
+    /**
+     * Compile the expressions of templates built after this call when they are first used, rather than when parsed
+     * (see <code>LazyCompilation</code>).
+     * <p>
+     * If <code>releaseIntervalMillis</code> is positive then compiled expressions unused for an interval are released
+     * in the background,
+     * otherwise only when <code>getLazyCompilation().releaseNow()</code> is called.
+     *
+     * @param releaseIntervalMillis the time between releases of unused compiled expressions
+     * @return this
+     */
+    public ELTemplateManager withLazyCompilation( long releaseIntervalMillis )
+    {
+        if ( lazyCompilation != null )
+        {
+            lazyCompilation.close();
+        }
+
+        lazyCompilation = new LazyCompilation();
+
+        if ( releaseIntervalMillis > 0 )
+        {
+            lazyCompilation.start( releaseIntervalMillis );
+        }
+
+        return this;
+    }
+
+    /**
+     * @return the lazy compilation of expressions, or null if expressions are compiled when parsed
+     */
+    public LazyCompilation getLazyCompilation()
+    {
+        return lazyCompilation;
+    }
+
+    /**
+     * Compile a value now, or, after <code>withLazyCompilation</code>, when first used.
+     *
+     * @param compiler compiles the value
+     * @param <T>      the type of the value
+     * @return the (eventually) compiled value
+     */
+    public < T > LazyCompilation.Compiled< T > compiled( Supplier< T > compiler )
+    {
+        final LazyCompilation lazy = lazyCompilation;
+
+        return lazy == null
+               ? LazyCompilation.Compiled.of( compiler.get() )
+               : lazy.compiled( compiler );
+    }
+
+    /**
+     * @return the pool of the literal text of compiled templates
+     */
+    public LiteralPool getLiteralPool()
+    {
+        return literalPool;
     }
 
     public void addListeners( EvaluationListener... listeners )
     {
-        elContextFactory.setListeners( listeners );
+        this.listeners = listeners;
+        installListeners();
+    }
+
+    private void installListeners()
+    {
+        final TemplateMetrics currentMetrics = metrics;
+
+        if ( currentMetrics == null )
+        {
+            elContextFactory.setListeners( listeners );
+            return;
+        }
+
+        final List< EvaluationListener > all = new ArrayList<>();
+
+        if ( listeners != null )
+        {
+            all.addAll( Arrays.asList( listeners ) );
+        }
+
+        all.add( currentMetrics.getEvaluationListener() );
+
+        elContextFactory.setListeners( all.toArray( new EvaluationListener[ 0 ] ) );
+    }
+
+    /**
+     * Record the renders and parses of templates, and evaluations of expressions,
+     * and the statistics of the template, parse and expression caches, in the supplied metrics,
+     * or stop recording by setting null.
+     *
+     * @param metrics the metrics (or null)
+     * @return this
+     * @see TemplateMetrics
+     */
+    public ELTemplateManager withMetrics( TemplateMetrics metrics )
+    {
+        this.metrics = metrics;
+
+        if ( metrics != null )
+        {
+            metrics
+                    .withCache( "el.templates", () -> templates.getStats() )
+                    .withCache( "el.expressions", () -> expressions.getStats() )
+                    .withCache( "el.parse", () -> parseCache == null ? null : parseCache.getStats() )
+                    .withCache( "el.sources", () -> templateSource instanceof CachingTemplateSource
+                                                    ? ( ( CachingTemplateSource ) templateSource ).getStats()
+                                                    : null );
+        }
+
+        installListeners();
+
+        return this;
+    }
+
+    public TemplateMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Replace the ExpressionFactory that compiles expressions
+     * (e.g. with a <code>com.brentcroft.tools.el.closure.ClosureExpressionFactory</code>),
+     * clearing the cache of expressions compiled by the previous one.
+     * <p>
+     * Templates already built keep their compiled expressions.
+     *
+     * @param expressionFactory the new ExpressionFactory
+     * @return this
+     */
+    public ELTemplateManager withExpressionFactory( ExpressionFactory expressionFactory )
+    {
+        this.expressionFactory = Objects.requireNonNull( expressionFactory, "expressionFactory" );
+        expressions.clear();
+        return this;
+    }
+
+    /**
+     * Evaluate expressions that are pure property paths (e.g. <code>${ order.customer.name }</code>)
+     * through precompiled accessors, rather than through the ExpressionFactory
+     * (see <code>PropertyPathExpression</code>): on by default.
+     * <p>
+     * Clears the cache of compiled expressions; templates already built keep their compiled expressions.
+     *
+     * @param propertyPaths true to evaluate property paths through precompiled accessors
+     * @return this
+     */
+    public ELTemplateManager withPropertyPaths( boolean propertyPaths )
+    {
+        this.propertyPaths = propertyPaths;
+        expressions.clear();
+        return this;
+    }
+
+    /**
+     * Evaluate constant expressions (and constant parts of expressions compiled by a <code>ClosureExpressionFactory</code>)
+     * once, when compiled: i.e. those made only of literals and operators (e.g. <code>${ 1024 * 4 }</code>):
+     * on by default.
+     * <p>
+     * A <code>public static final</code> field of an imported class (e.g. <code>${ Math.PI }</code>)
+     * is also read once, but its value is only used while the name of the class is not bound
+     * (since a root object named <code>Math</code> hides the imported class): see <code>StaticConstantExpression</code>.
+     * <p>
+     * The value of a constant (but not a static constant) <code>${...}</code> in template text is merged into the adjacent literal text,
+     * and <code>c:if</code> and <code>c:when</code> tags with a constant test drop their dead branches.
+     * <p>
+     * Clears the cache of compiled expressions; templates already built keep their compiled expressions.
+     *
+     * @param constantFolding true to evaluate constant expressions when compiled
+     * @return this
+     */
+    public ELTemplateManager withConstantFolding( boolean constantFolding )
+    {
+        this.constantFolding = constantFolding;
+        expressions.clear();
+        return this;
     }
 
     public ExpressionFactory getExpressionFactory()
@@ -128,45 +431,273 @@ public class ELTemplateManager implements TextExpander, Evaluator
      * specified template <code>templateUri</code>
      */
     public String expandUri( final String uri, Map< String, Object > rootObjects )
+    {
+        return render( templateUri( uri ), findTemplate( uri ), rootObjects );
+    }
+
+    /**
+     * As <code>expandUri( uri, rootObjects )</code> but rendering directly
+     * into the supplied sink (e.g. a Writer).
+     *
+     * @param uri         identifies a template
+     * @param rootObjects a Map of root objects (to make accessible in EL expressions in
+     *                    the template)
+     * @param out         the sink receiving the rendering
+     * @throws IOException if the sink fails
+     */
+    public void expandUri( final String uri, Map< String, Object > rootObjects, Appendable out ) throws IOException
+    {
+        render( templateUri( uri ), findTemplate( uri ), rootObjects, out );
+    }
+
+    private static String templateUri( final String uri )
     {
         // if no period then tack a default extension on the end
         final int lastIndexOfPeriod = uri.lastIndexOf( '.' );
-        final String newUri = ( lastIndexOfPeriod > - 1 ) ? uri : ( uri + DEFAULT_TEMPLATE_EXTENSION );
 
-        // find
-        if ( ! templates.containsKey( newUri ) )
-        {
-            loadTemplate( newUri );
-        }
+        return ( lastIndexOfPeriod > - 1 ) ? uri : ( uri + DEFAULT_TEMPLATE_EXTENSION );
+    }
 
-        // render
-        return templates.get( newUri ).render( rootObjects );
+    private ELTemplate findTemplate( final String uri )
+    {
+        // find, or build and cache
+        return templates.get( templateUri( uri ), u -> parse( u, () -> new ELTemplateBuilder().build( u ) ) );
     }
 
+    private < T > T parse( String uri, Supplier< T > parser )
+    {
+        final TemplateMetrics currentMetrics = metrics;
+
+        return currentMetrics == null
+               ? parser.get()
+               : currentMetrics.parse( uri, parser );
+    }
 
     /**
-     * Only allow one thread to load a template at any one time.
+     * Render within a render scope:
+     * every ELContext obtained during the render (on this thread)
+     * is a cheap frame of one render context.
      * <p>
-     * If the desired template has already been loaded then just return
-     * otherwise load and cache the template.
+     * If a render is already in progress on this thread then that scope is used.
+     *
+     * @param renderable  the template to render
+     * @param rootObjects a Map of root objects
+     * @param out         the sink receiving the rendering
+     * @throws IOException if the sink fails
+     * @see SimpleELContextFactory#openRenderScope(Map)
+     */
+    public void render( Renderable renderable, Map< String, Object > rootObjects, Appendable out ) throws IOException
+    {
+        render( null, renderable, rootObjects, out );
+    }
+
+    public String render( Renderable renderable, Map< String, Object > rootObjects )
+    {
+        return render( null, renderable, rootObjects );
+    }
+
+    /**
+     * As <code>render( renderable, rootObjects, out )</code>,
+     * recording the render against the uri in any metrics (see <code>withMetrics</code>).
      *
-     * @param uri the uri of the template to load.
+     * @param uri         the uri of the template (or null if anonymous)
+     * @param renderable  the template to render
+     * @param rootObjects a Map of root objects
+     * @param out         the sink receiving the rendering
+     * @throws IOException if the sink fails
      */
-    private synchronized void loadTemplate( final String uri )
+    public void render( String uri, Renderable renderable, Map< String, Object > rootObjects, Appendable out ) throws IOException
     {
-        // find
-        if ( templates.containsKey( uri ) )
+        final TemplateMetrics currentMetrics = metrics;
+
+        if ( currentMetrics == null || ! currentMetrics.isEnabled() )
         {
-            return;
+            renderInScope( renderable, rootObjects, out );
         }
+        else
+        {
+            currentMetrics.render( uri, out, o -> renderInScope( renderable, rootObjects, o ) );
+        }
+    }
+
+    private void renderInScope( Renderable renderable, Map< String, Object > rootObjects, Appendable out ) throws IOException
+    {
+        final SimpleELContext scope = elContextFactory.openRenderScope( rootObjects );
 
-        // build and cache
-        templates.put( uri, new ELTemplateBuilder().build( uri ) );
+        try
+        {
+            renderable.render( rootObjects, out );
+        }
+        finally
+        {
+            elContextFactory.closeRenderScope( scope );
+        }
+    }
+
+    public String render( String uri, Renderable renderable, Map< String, Object > rootObjects )
+    {
+        final StringBuilder out = new StringBuilder();
+
+        try
+        {
+            render( uri, renderable, rootObjects, out );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+
+        return out.toString();
     }
 
     public void dropTemplates()
     {
         templates.clear();
+        templateSource.invalidate();
+
+        if ( parseCache != null )
+        {
+            parseCache.clear();
+        }
+    }
+
+    /**
+     * Replace the cache of templates loaded from a uri
+     * (e.g. with a <code>BoundedCache</code> limited to a maximum number of templates).
+     * <p>
+     * Any templates already cached are discarded.
+     *
+     * @param templateCache the new template cache
+     * @return this
+     */
+    public ELTemplateManager withTemplateCache( Cache< String, ELTemplate > templateCache )
+    {
+        setTemplateCache( templateCache );
+        return this;
+    }
+
+    public void setTemplateCache( Cache< String, ELTemplate > templateCache )
+    {
+        this.templates = Objects.requireNonNull( templateCache, "templateCache" );
+    }
+
+    public Cache< String, ELTemplate > getTemplateCache()
+    {
+        return templates;
+    }
+
+    /**
+     * Switch on caching of the anonymous templates built by <code>expandText</code>,
+     * keyed by their text, and bounded by their approximate size in memory.
+     *
+     * @param maxBytes the approximate maximum memory used by cached templates
+     * @return this
+     * @see ContentKey
+     */
+    public ELTemplateManager withParseCache( long maxBytes )
+    {
+        return withParseCache( ContentKey.newBoundedCache( maxBytes ) );
+    }
+
+    /**
+     * Set the cache of the anonymous templates built by <code>expandText</code>,
+     * or switch off caching (the default) by setting null.
+     *
+     * @param parseCache the new parse cache (or null)
+     * @return this
+     */
+    public ELTemplateManager withParseCache( Cache< ContentKey, ELTemplate > parseCache )
+    {
+        this.parseCache = parseCache;
+        return this;
+    }
+
+    public Cache< ContentKey, ELTemplate > getParseCache()
+    {
+        return parseCache;
+    }
+
+    /**
+     * Set the charset used to decode templates loaded from a uri (UTF-8 by default).
+     *
+     * @param charset the charset
+     * @return this
+     */
+    public ELTemplateManager withCharset( Charset charset )
+    {
+        return withTemplateReader( templateReader.withCharset( charset ) );
+    }
+
+    public ELTemplateManager withTemplateReader( TemplateReader templateReader )
+    {
+        this.templateReader = Objects.requireNonNull( templateReader, "templateReader" );
+        return this;
+    }
+
+    public TemplateReader getTemplateReader()
+    {
+        return templateReader;
+    }
+
+    /**
+     * Set the source that finds templates from their uri.
+     * <p>
+     * By default, a uri is found as a class-path resource, otherwise as a file,
+     * and resolutions (including failures) are remembered for <code>DEFAULT_SOURCE_TTL_MILLIS</code>.
+     *
+     * @param templateSource the source
+     * @return this
+     * @see TemplateSource
+     */
+    public ELTemplateManager withTemplateSource( TemplateSource templateSource )
+    {
+        this.templateSource = Objects.requireNonNull( templateSource, "templateSource" );
+        return this;
+    }
+
+    public TemplateSource getTemplateSource()
+    {
+        return templateSource;
+    }
+
+    /**
+     * Mount a bundle (a zip or jar file of templates):
+     * uris are found first as entries of the bundle, and then by the current template source.
+     *
+     * @param bundle the zip file
+     * @return this
+     * @throws UncheckedIOException if the bundle can't be read
+     * @see BundleTemplateSource
+     */
+    public ELTemplateManager withBundle( Path bundle )
+    {
+        try
+        {
+            return withTemplateSource( TemplateSource.chain( new BundleTemplateSource( bundle ), templateSource ) );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Find the location of a template.
+     *
+     * @param uri the uri of the template
+     * @return the location of the template
+     * @throws ELTemplateException if the template source has no such template
+     */
+    public URL findTemplateUrl( String uri )
+    {
+        final URL url = templateSource.find( uri );
+
+        if ( url == null )
+        {
+            throw new ELTemplateException( format( "Template not found: %s (in %s)", uri, templateSource ) );
+        }
+
+        return url;
     }
 
     /**
@@ -179,13 +710,35 @@ public class ELTemplateManager implements TextExpander, Evaluator
      */
     public String expandText( String elText, Map< String, Object > rootObjects )
     {
-        return buildTemplate( elText ).render( rootObjects );
+        return render( findTextTemplate( elText ), rootObjects );
+    }
+
+    /**
+     * As <code>expandText( elText, rootObjects )</code> but rendering directly
+     * into the supplied sink (e.g. a Writer).
+     *
+     * @param elText      the elText to be expanded
+     * @param rootObjects a Map of root objects
+     * @param out         the sink receiving the expanded elText
+     * @throws IOException if the sink fails
+     */
+    public void expandText( String elText, Map< String, Object > rootObjects, Appendable out ) throws IOException
+    {
+        render( findTextTemplate( elText ), rootObjects, out );
+    }
+
+    private ELTemplate findTextTemplate( String elText )
+    {
+        final Cache< ContentKey, ELTemplate > cache = parseCache;
+
+        return cache == null
+               ? parse( null, () -> buildTemplate( elText ) )
+               : cache.get( ContentKey.of( elText ), key -> parse( null, () -> buildTemplate( key.getText() ) ) );
     }
 
     public ValueExpression compile( String expression )
     {
-        return getExpressionFactory()
-                .createValueExpression( context, "${" + expression + '}', Object.class );
+        return expressions.getValueExpression( "${" + expression + '}', Object.class, this::createValueExpression );
     }
 
 
@@ -199,17 +752,13 @@ public class ELTemplateManager implements TextExpander, Evaluator
      */
     public Object eval( String expression, Map< String, Object > rootObjects )
     {
-        ELContext ec = getELContext( rootObjects );
+        final ValueExpression valueExpression = compile( expression );
+
+        final ELContext ec = getELContext( rootObjects );
 
-        if ( ! expressions.containsKey( expression ) )
-        {
-            ValueExpression exp = getExpressionFactory()
-                    .createValueExpression( ec, "${" + expression + '}', Object.class );
-            expressions.put( expression, exp );
-        }
         try
         {
-            return expressions.get( expression ).getValue( ec );
+            return valueExpression.getValue( ec );
         }
         catch ( ELException e )
         {
@@ -229,7 +778,8 @@ public class ELTemplateManager implements TextExpander, Evaluator
     /**
      * Builds an anonymous <code>ELTemplate</code> from the supplied text.
      * <p>
-     * The template is not cached (it has no uri).
+     * The template is not cached (it has no uri),
+     * although <code>expandText</code> may cache it (see <code>withParseCache</code>).
      *
      * @param elText the text to be decomposed into an ELTemplate
      * @return the new ELTemplate
@@ -239,6 +789,34 @@ public class ELTemplateManager implements TextExpander, Evaluator
         return new ELTemplateBuilder().parse( elText );
     }
 
+    /**
+     * Builds an anonymous <code>ELTemplate</code> from text read (incrementally) from the supplied reader,
+     * which is not closed.
+     *
+     * @param reader the source of the text to be decomposed into an ELTemplate
+     * @return the new ELTemplate
+     */
+    public ELTemplate buildTemplate( Reader reader )
+    {
+        final ELTemplateAssembler assembler = new ELTemplateAssembler();
+
+        TemplateLexer.EL.lex( reader, assembler );
+
+        final ELTemplate elTemplate = assembler.finish();
+
+        assembler.seal();
+
+        return elTemplate;
+    }
+
+    /**
+     * @return a new assembler, to build <code>ELTemplates</code> from the text reported by a <code>TemplateLexer</code>
+     */
+    public ELTemplateAssembler newAssembler()
+    {
+        return new ELTemplateAssembler();
+    }
+
     /**
      * Test if the candidate text contains any EL template expressions.
      *
@@ -250,22 +828,81 @@ public class ELTemplateManager implements TextExpander, Evaluator
         return EL_EXPRESSION_PATTERN.matcher( candidate ).find();
     }
 
+    /**
+     * Concatenate a run of adjacent templates (e.g. to coalesce adjacent text) in one pass,
+     * into as few templates as possible (see <code>ELTemplate.concat</code>):
+     * a new template is only started at a template from another manager,
+     * or at the second template with expressions since the last one started.
+     * <p>
+     * The literals of templates that share their text (i.e. assembled by one parse) keep their offsets;
+     * otherwise each template joined copies its literals once.
+     *
+     * @param run the templates, in the order they are rendered
+     * @return the templates rendering the run, in the order they are rendered
+     */
+    public static List< ELTemplate > coalesce( List< ELTemplate > run )
+    {
+        final List< ELTemplate > coalesced = new ArrayList<>();
+
+        for ( int from = 0, to; from < run.size(); from = to )
+        {
+            final ELTemplate first = run.get( from );
+            boolean literal = first.isLiteral();
+
+            for ( to = from + 1; to < run.size(); to++ )
+            {
+                final ELTemplate next = run.get( to );
+
+                if ( next.manager() != first.manager() || ! literal && ! next.isLiteral() )
+                {
+                    break;
+                }
+
+                literal = literal && next.isLiteral();
+            }
+
+            coalesced.add( to - from == 1 ? first : first.join( run.subList( from, to ) ) );
+        }
+
+        return coalesced;
+    }
+
     private final ELContext context = elContextFactory.getELConfigContext();
 
+    private static final LazyCompilation.Compiled< ValueExpression[] > NO_EXPRESSIONS = LazyCompilation.Compiled.of( new ValueExpression[ 0 ] );
+
     /**
-     * A decomposition of a text stream into a list of
-     * <code>ELTemplateElement</code> elements.
-     * <p>
-     * Each <code>ELTemplateElement</code> has a type that is one of:
-     * <p>
-     * LITERAL, VALUE_EXPRESSION or TEMPLATE_REF.
+     * A decomposition of a text stream into literal text and EL expressions, held compactly:
+     * <ul>
+     *     <li>the literal text is offsets into text shared by every template assembled by one parse
+     *     (in which repeated short literals are stored once),
+     *     and that text is itself pooled (see <code>getLiteralPool()</code>);</li>
+     *     <li>only expressions have (shared, compiled) expression objects;</li>
+     *     <li>with lazy compilation, the expressions are only compiled on the first render
+     *     (and only their source is kept until then);</li>
+     *     <li>the elements are one flat array.</li>
+     * </ul>
      */
     public class ELTemplate implements Renderable
     {
-        private final List< ELTemplateElement > elements = new ArrayList<>();
+        // per element: either a literal, as ( start << 32 | end ) in the literals, or an expression, as ( -1 - index )
+        private final long[] elements;
+        private final LazyCompilation.Compiled< ValueExpression[] > expressions;
+        private final SharedText literals;
+
+        // only kept when compiled lazily
+        private final String[] sources;
 
         private String localUri;
 
+        ELTemplate( SharedText literals, long[] elements, String[] sources, LazyCompilation.Compiled< ValueExpression[] > expressions )
+        {
+            this.literals = literals;
+            this.elements = elements;
+            this.sources = sources;
+            this.expressions = expressions;
+        }
+
         public ELTemplate withUri( String uri )
         {
             this.localUri = uri;
@@ -275,17 +912,36 @@ public class ELTemplateManager implements TextExpander, Evaluator
         @Override
         public String toString()
         {
-            StringBuilder b = new StringBuilder();
+            final StringBuilder b = new StringBuilder();
+
+            forEachElement( b::append, b::append );
+
+            return b.toString();
+        }
+
+        /**
+         * Visit each element in turn (e.g. to generate code from the template).
+         *
+         * @param literal    receives the text of each literal element
+         * @param expression receives the source of each expression element (including <code>${...}</code>)
+         */
+        public void forEachElement( Consumer< String > literal, Consumer< String > expression )
+        {
+            final String text = literals.get();
 
-            if ( ! elements.isEmpty() )
+            for ( long element : elements )
             {
-                for ( ELTemplateElement element : elements )
+                if ( element >= 0 )
                 {
-                    b.append( element );
+                    literal.accept( text.substring( ( int ) ( element >>> 32 ), ( int ) element ) );
                 }
-            }
+                else
+                {
+                    final int index = ( int ) ( - 1 - element );
 
-            return b.toString();
+                    expression.accept( sources != null ? sources[ index ] : expressions.get()[ index ].getExpressionString() );
+                }
+            }
         }
 
         /**
@@ -293,135 +949,188 @@ public class ELTemplateManager implements TextExpander, Evaluator
          * objects providing the EL namespace).
          *
          * @param rootObjects a Map of named objects
-         * @return a String containing the rendering of the template
+         * @param out         the sink receiving the rendering of the template
+         * @throws IOException if the sink fails
          */
-        public String render( Map< String, Object > rootObjects )
+        public void render( Map< String, Object > rootObjects, Appendable out ) throws IOException
         {
-            final ELContext context = elContextFactory.getELContext( rootObjects );
+            final String text = literals.get();
 
-            final StringBuilder out = new StringBuilder();
+            // only needed for expressions
+            ELContext context = null;
+            ValueExpression[] compiled = null;
 
-            for ( ELTemplateElement element : elements )
+            for ( long element : elements )
             {
-                switch ( element.type )
+                if ( element >= 0 )
                 {
-                    case LITERAL:
-
-                        out.append( element.element );
-
-                        break;
-
-
-                    case TEMPLATE_REF:
+                    out.append( text, ( int ) ( element >>> 32 ), ( int ) element );
+                    continue;
+                }
 
-                        // mess with the template reference if necessary
+                if ( context == null )
+                {
+                    context = elContextFactory.getELContext( rootObjects );
+                    compiled = expressions.get();
+                }
 
-                        // if no period then tack a ".tpl" on the end
-                        final int lastIndexOfPeriod = element.element.lastIndexOf( '.' );
-                        final String newFilename = ( lastIndexOfPeriod > - 1 ) ? element.element
-                                                                               : ( element.element + ".tpl" );
+                final ValueExpression valueExpression = compiled[ ( int ) ( - 1 - element ) ];
 
-                        if ( localUri == null )
-                        {
-                            // recurse
-                            out.append( expandUri( newFilename, rootObjects ) );
-                        }
-                        else
-                        {
-                            // if have last slash in local uri then replace
-                            // filename with newFilename
-                            final int lastIndexOfSlash = localUri.lastIndexOf( '/' );
-                            final String newUri = ( ( lastIndexOfSlash > - 1 ) ? localUri.substring( 0, lastIndexOfSlash )
-                                                                               : localUri ) + "/" + newFilename;
+                final Object value;
 
-                            out.append( expandUri( newUri, rootObjects ) );
-                        }
+                try
+                {
+                    value = valueExpression.getValue( context );
+                }
+                catch ( RuntimeException e )
+                {
+                    throw new ELTemplateException( format( "Failed to evaluate EL Expression [%s]: %s", valueExpression, e.getMessage() ), e );
+                }
 
-                        break;
+                if ( value != null )
+                {
+                    out.append( value.toString() );
+                }
+            }
+        }
 
+        /**
+         * @return the number of literal and expression elements
+         */
+        public int size()
+        {
+            return elements.length;
+        }
 
-                    case VALUE_EXPRESSION:
+        /**
+         * @return true if the template has no expressions (i.e. it is only literal text)
+         */
+        public boolean isLiteral()
+        {
+            for ( long element : elements )
+            {
+                if ( element < 0 )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
 
-                        if ( element.valueExpression == null )
-                        {
-                            element.valueExpression = getExpressionFactory()
-                                    .createValueExpression(
-                                            context,
-                                            element.element,
-                                            Object.class
-                                    );
-                        }
+        /**
+         * Concatenates this template and the next (e.g. to coalesce adjacent text),
+         * merging the last literal of this template with the first literal of the next.
+         * <p>
+         * Only possible when at most one of the templates has expressions,
+         * and both were built by this manager (see <code>ELTemplateManager.coalesce</code>).
+         *
+         * @param next the template rendered after this one
+         * @return a new template rendering this template and then the next, or null if not possible
+         */
+        public ELTemplate concat( ELTemplate next )
+        {
+            return ! isLiteral() && ! next.isLiteral() || next.manager() != manager()
+                   ? null
+                   : join( Arrays.asList( this, next ) );
+        }
 
-                        String expression = element.valueExpression.getExpressionString();
+        // the templates (this first) in one pass: at most one with expressions
+        private ELTemplate join( List< ELTemplate > run )
+        {
+            // literals that all refer to one text keep their offsets: otherwise they are copied once
+            final boolean shared = run.stream().allMatch( template -> template.literals == literals );
+            final SharedText text = shared ? literals : new SharedText();
 
-                        if ( ELTemplateBuilder.PILOT2 == expression.charAt( 0 ) )
-                        {
-                            // write the expression back out switching pilot
-                            out
-                                    .append( ELTemplateBuilder.PILOT )
-                                    .append( expression.substring( 1 ) );
-                            break;
-                        }
+            ELTemplate expressive = this;
+            int length = 0;
 
-                        try
-                        {
-                            final Object value = element.valueExpression.getValue( context );
+            for ( ELTemplate template : run )
+            {
+                length += template.elements.length;
+                expressive = template.isLiteral() ? expressive : template;
+            }
 
-                            out.append( value == null ? "" : value );
-                        }
-                        catch ( RuntimeException e )
-                        {
-                            throw new ELTemplateException( format( "Failed to evaluate EL Expression [%s]: %s", element.valueExpression, e.getMessage() ), e );
-                        }
+            final long[] joined = new long[ length ];
+            int count = 0;
 
-                        break;
+            for ( ELTemplate template : run )
+            {
+                final String source = shared ? null : template.literals.get();
 
-                    default:
-                        throw new ELTemplateException( "Unexpected ELType: " + element.type );
+                for ( long element : template.elements )
+                {
+                    if ( element < 0 )
+                    {
+                        // the expressions keep their indexes
+                        joined[ count++ ] = element;
+                        continue;
+                    }
+
+                    if ( ! shared )
+                    {
+                        final int start = text.builder.length();
+
+                        text.builder.append( source, ( int ) ( element >>> 32 ), ( int ) element );
+
+                        element = ( ( long ) start << 32 ) | text.builder.length();
+                    }
+
+                    if ( count > 0 && joined[ count - 1 ] >= 0 && ( int ) joined[ count - 1 ] == ( int ) ( element >>> 32 ) )
+                    {
+                        // extends the previous literal
+                        joined[ count - 1 ] = ( joined[ count - 1 ] & 0xFFFFFFFF00000000L ) | ( element & 0xFFFFFFFFL );
+                    }
+                    else
+                    {
+                        joined[ count++ ] = element;
+                    }
                 }
             }
 
-            return out.toString();
-        }
-
-
-        void addLiteral( String text )
-        {
-            if ( text != null && text.length() > 0 )
+            if ( ! shared )
             {
-                elements.add( new ELTemplateElement( text, ELType.LITERAL ) );
+                text.seal();
             }
-        }
 
-        void addValueExpression( String text )
-        {
-            elements.add( new ELTemplateElement( text.trim(), ELType.VALUE_EXPRESSION ) );
+            return new ELTemplate( text, Arrays.copyOf( joined, count ), expressive.sources, expressive.expressions )
+                    .withUri( localUri );
         }
 
-        class ELTemplateElement
+        private ELTemplateManager manager()
         {
-            private final String element;
+            return ELTemplateManager.this;
+        }
+    }
 
-            private final ELType type;
+    /*
+     * The literal text of the templates assembled by one parse:
+     * built while parsing, and then sealed (and pooled).
+     */
+    private final class SharedText
+    {
+        private StringBuilder builder = new StringBuilder();
+        private volatile String text;
 
-            private ValueExpression valueExpression;
+        String get()
+        {
+            final String sealed = text;
 
+            return sealed != null ? sealed : seal();
+        }
 
-            ELTemplateElement( String element, ELType type )
+        synchronized String seal()
+        {
+            if ( text == null )
             {
-                this.element = element;
-                this.type = type;
-
-                valueExpression = getExpressionFactory().createValueExpression( context,
-                        element,
-                        Object.class );
+                text = literalPool.intern( builder.toString() );
+                builder = null;
             }
+            return text;
+        }
 
-            @Override
-            public String toString()
-            {
-                return element;
-            }
+        boolean isSealed()
+        {
+            return text != null;
         }
     }
 
@@ -431,180 +1140,210 @@ public class ELTemplateManager implements TextExpander, Evaluator
         public ELTemplate build( String uri )
         {
             return parse(
-                    readUrl(
-                            getLocalFileURL( getClass(), uri ) ) ).withUri( uri );
+                    templateReader
+                            .read( findTemplateUrl( uri ) )
+                            .getText() ).withUri( uri );
         }
 
-        /*
-         * Is the choice of the state numbers constrained?
-         *
-         * Yes it is!
-         *
-         * Try [OUTSIDE = 87] and [ENTERING = 0] and see the compiler errors.
-         */
-        private static final int OUTSIDE = 0;
+        private ELTemplate parse( String elText )
+        {
+            final ELTemplateAssembler assembler = new ELTemplateAssembler();
 
-        private static final int ENTERING = 0x10000;
+            TemplateLexer.EL.lex( elText, assembler );
 
-        private static final int INSIDE = 0x2000;
+            final ELTemplate elTemplate = assembler.finish();
 
-        // 36
-        private static final char PILOT = '$';
+            assembler.seal();
 
-        // 35
-        private static final char PILOT2 = '#';
+            return elTemplate;
+        }
+    }
 
-        // 123
-        private static final char START = '{';
+    /**
+     * Assembles <code>ELTemplates</code> from the literals and expressions reported by a <code>TemplateLexer</code>.
+     * <p>
+     * Each call to <code>finish</code> returns the template assembled so far, and starts a new one.
+     * The templates assembled share their literal text, until <code>seal</code> is called.
+     */
+    public class ELTemplateAssembler implements TemplateLexer.Handler
+    {
+        // repeated literals no longer than this are stored once
+        private static final int SHARED_LITERAL_LENGTH = 64;
 
-        // 125
-        private static final char END = '}';
+        // when created
+        private final LazyCompilation lazy = lazyCompilation;
 
-        // 125
-        private static final char ESC = '\\';
+        private SharedText shared = new SharedText();
+        private final Map< String, Long > sharedLiterals = new HashMap<>();
 
-        /*
-         * Copied (and modified from MrTemplate - thanks Frank)
-         */
-        private ELTemplate parse( String elText )
+        // the start of the current literal in the shared text
+        private int literalStart = 0;
+
+        private long[] elements = new long[ 8 ];
+        private int elementCount = 0;
+        private final List< String > sources = new ArrayList<>();
+        private final List< ValueExpression > valueExpressions = new ArrayList<>();
+
+        @Override
+        public void literal( CharSequence text, int start, int end )
         {
-            final ELTemplate elTemplate = new ELTemplate();
+            if ( shared.isSealed() )
+            {
+                shared = new SharedText();
+                sharedLiterals.clear();
+                literalStart = 0;
+            }
 
+            shared.builder.append( text, start, end );
+        }
 
-            int state = OUTSIDE;
-            boolean pilot2 = false;
-            boolean escaped = false;
+        @Override
+        public void expression( boolean deferred, CharSequence text, int start, int end )
+        {
+            while ( start < end && text.charAt( start ) <= ' ' )
+            {
+                start++;
+            }
+            while ( end > start && text.charAt( end - 1 ) <= ' ' )
+            {
+                end--;
+            }
+
+            final String expression = new StringBuilder( end - start + 3 )
+                    .append( deferred ? "#{" : "${" )
+                    .append( text, start, end )
+                    .append( '}' )
+                    .toString();
+
+            // unless lazily compiled
+            final ConstantValueExpression constant = deferred || lazy != null ? null : fold( expression, Object.class );
 
-            final StringBuilder token = new StringBuilder();
-            final StringBuilder literal = new StringBuilder();
-            final CharacterIterator it = new StringCharacterIterator( elText );
+            if ( constant != null )
+            {
+                // merged into the literal text
+                final String value = constant.getValue() == null ? "" : constant.getValue().toString();
+
+                literal( value, 0, value.length() );
+
+                return;
+            }
 
-            for ( char c = it.first(); c != CharacterIterator.DONE; c = it.next() )
+            addLiteral();
+
+            if ( deferred )
             {
-                switch ( state + c )
+                // compiled (unless lazily) but only ever written back out, switching pilot: i.e. a literal
+                if ( lazy == null )
                 {
-                    case INSIDE + ESC:
-                        if ( state == INSIDE )
-                        {
-                            escaped = true;
-                        }
-                        break;
-
-                    case OUTSIDE + PILOT2:
-                        pilot2 = true;
-                        state = ENTERING;
-                        break;
-
-                    case OUTSIDE + PILOT:
-                        pilot2 = false;
-                        state = ENTERING;
-                        break;
-
-                    case ENTERING + START:
-                        if ( ! escaped )
-                        {
-                            state = INSIDE;
-                            break;
-                        }
-
-                    case INSIDE + END:
-                        if ( ! escaped )
-                        {
-                            state = OUTSIDE;
-
-                            elTemplate.addLiteral( literal.toString() );
-
-                            literal.setLength( 0 );
-
-                            final String tokenText = token.toString().trim();
-
-                            if ( tokenText.length() < 1 )
-                            {
-                                throw new ELTemplateException( "EL Template has no tokenText!" );
-                            }
-
-                            elTemplate.addValueExpression( ( pilot2 ? "#{" : "${" ) + tokenText + "}" );
-
-                            token.setLength( 0 );
-
-                            pilot2 = false;
-
-                            break;
-                        }
-
-                    default:
-                        escaped = false;
-                        switch ( state )
-                        {
-                            case ENTERING: // got $ or # without { - treat it as
-                                // a
-                                // literal
-                                state = OUTSIDE;
-                                literal.append( pilot2 ? PILOT2 : PILOT );
-                                literal.append( c );
-                                break;
-
-                            case INSIDE:
-                                token.append( c );
-                                break;
-
-                            default:
-                                literal.append( c );
-                        }
+                    getExpressionFactory().createValueExpression( context, expression, Object.class );
                 }
-            }
 
-            if ( state == ENTERING )
-            { // catch the odd case of $ at EOF
-                literal.append( ( pilot2 ? PILOT2 : PILOT ) );
+                literal( "$", 0, 1 );
+                literal( expression, 1, expression.length() );
+
+                return;
             }
-            else if ( state == INSIDE )
-            { // catch the even odder case of unclosed
-                // ${ at EOF
-                literal.append( ( pilot2 ? PILOT2 : PILOT ) );
-                literal.append( START );
-                literal.append( token );
+
+            add( - 1 - sources.size() );
+
+            sources.add( expression );
+
+            if ( lazy == null )
+            {
+                valueExpressions.add( getValueExpression( expression, null, Object.class ) );
             }
+        }
+
+        public ELTemplate finish()
+        {
+            addLiteral();
+
+            final ELTemplate elTemplate;
 
-            if ( literal.length() > 0 )
+            if ( sources.isEmpty() )
             {
-                elTemplate.addLiteral( literal.toString() );
+                elTemplate = new ELTemplate( shared, Arrays.copyOf( elements, elementCount ), null, NO_EXPRESSIONS );
+            }
+            else if ( lazy == null )
+            {
+                elTemplate = new ELTemplate(
+                        shared,
+                        Arrays.copyOf( elements, elementCount ),
+                        null,
+                        LazyCompilation.Compiled.of( valueExpressions.toArray( new ValueExpression[ 0 ] ) ) );
+            }
+            else
+            {
+                final String[] expressionSources = sources.toArray( new String[ 0 ] );
+
+                elTemplate = new ELTemplate(
+                        shared,
+                        Arrays.copyOf( elements, elementCount ),
+                        expressionSources,
+                        // not capturing the assembler
+                        lazy.compiled( () -> Arrays
+                                .stream( expressionSources )
+                                .map( expression -> getValueExpression( expression, null, Object.class ) )
+                                .toArray( ValueExpression[]::new ) ) );
             }
 
-            literal.setLength( 0 );
+            elementCount = 0;
+            sources.clear();
+            valueExpressions.clear();
 
             return elTemplate;
         }
-    }
 
-    /**
-     * We are free to add new types (e.g. like TEMPLATE_REF) as long as we can
-     * justify (and implement) their purpose.
-     *
-     * @author ADobson
-     */
-    enum ELType
-    {
-        /**
-         * A literal segment of text that contains no expressions.
-         */
-        LITERAL,
 
         /**
-         * An EL expression.
-         *
-         * <p>
-         * E.g. ${request.id}
+         * Seal the literal text of the templates assembled so far (which is otherwise sealed when first rendered).
          */
-        VALUE_EXPRESSION,
+        public void seal()
+        {
+            shared.seal();
+        }
 
-        /**
-         * A template reference.
-         *
-         * <p>
-         * E.g. ${*header} or ${*header.tpl}
-         */
-        TEMPLATE_REF,
+        private void addLiteral()
+        {
+            if ( shared.isSealed() )
+            {
+                return;
+            }
+
+            final StringBuilder builder = shared.builder;
+            final int end = builder.length();
+
+            if ( end == literalStart )
+            {
+                return;
+            }
+
+            long element = ( ( long ) literalStart << 32 ) | end;
+
+            if ( end - literalStart <= SHARED_LITERAL_LENGTH )
+            {
+                final Long previous = sharedLiterals.putIfAbsent( builder.substring( literalStart ), element );
+
+                if ( previous != null )
+                {
+                    builder.setLength( literalStart );
+                    element = previous;
+                }
+            }
+
+            literalStart = builder.length();
+
+            add( element );
+        }
+
+        private void add( long element )
+        {
+            if ( elementCount == elements.length )
+            {
+                elements = Arrays.copyOf( elements, elementCount * 2 );
+            }
+            elements[ elementCount++ ] = element;
+        }
     }
 
 
@@ -647,17 +1386,15 @@ public class ELTemplateManager implements TextExpander, Evaluator
         }
     }
 
+    /**
+     * Read the text of a URL, as UTF-8.
+     *
+     * @param url the URL to read
+     * @return the text
+     * @see TemplateReader
+     */
     public static String readUrl( URL url )
     {
-        try ( Scanner scanner = new Scanner( url.openStream() ) )
-        {
-            scanner.useDelimiter( "\\A" );
-
-            return scanner.hasNext() ? scanner.next() : "";
-        }
-        catch ( IOException e )
-        {
-            throw new RuntimeException( e );
-        }
+        return TemplateReader.DEFAULT.read( url ).getText();
     }
 }
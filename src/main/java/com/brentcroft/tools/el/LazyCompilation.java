@@ -0,0 +1,245 @@
+package com.brentcroft.tools.el;
+
+import lombok.extern.java.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Compiles the expressions of templates when they are first used, rather than when they are parsed
+ * (see <code>ELTemplateManager.withLazyCompilation</code>).
+ * <p>
+ * Each block of text, and each tag, holds its expressions as one <code>Compiled</code> value,
+ * compiled (once, whichever thread gets there first) on first use:
+ * so a branch that is never taken is never compiled.
+ * Expression syntax errors are then reported when the branch is first used, rather than when parsed.
+ * <p>
+ * Compiled values that have not been used since the previous check can be released (back to their source),
+ * to be compiled again if used again:
+ * either on demand (<code>releaseNow()</code>),
+ * or in the background after <code>start( intervalMillis )</code>,
+ * so that a value is released after being unused for between one and two intervals.
+ *
+ * @author ADobson
+ */
+@Log
+public class LazyCompilation implements AutoCloseable
+{
+    // weakly: released when their templates are
+    private final Set< Compiled< ? > > compiled = Collections.synchronizedSet( Collections.newSetFromMap( new WeakHashMap<>() ) );
+
+    private volatile Thread thread;
+
+    /**
+     * @param compiler compiles the value
+     * @param <T>      the type of the value
+     * @return a value compiled on first use
+     */
+    public < T > Compiled< T > compiled( Supplier< T > compiler )
+    {
+        final Compiled< T > value = new Compiled<>( compiler );
+
+        compiled.add( value );
+
+        return value;
+    }
+
+    /**
+     * Release the values that have not been used since the previous release.
+     *
+     * @return the number released
+     */
+    public int releaseNow()
+    {
+        int released = 0;
+
+        for ( Compiled< ? > value : snapshot() )
+        {
+            if ( value.release() )
+            {
+                released++;
+            }
+        }
+
+        final int count = released;
+
+        log.fine( () -> format( "released %s compiled values", count ) );
+
+        return released;
+    }
+
+    /**
+     * @return the number of values (compiled or not)
+     */
+    public int size()
+    {
+        return compiled.size();
+    }
+
+    /**
+     * @return the number of values currently compiled
+     */
+    public int getCompiledCount()
+    {
+        int count = 0;
+
+        for ( Compiled< ? > value : snapshot() )
+        {
+            if ( value.isCompiled() )
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private List< Compiled< ? > > snapshot()
+    {
+        synchronized ( compiled )
+        {
+            return new ArrayList<>( compiled );
+        }
+    }
+
+    /**
+     * Release unused values in a background (daemon) thread.
+     *
+     * @param intervalMillis the time between releases
+     * @return this
+     */
+    public synchronized LazyCompilation start( long intervalMillis )
+    {
+        if ( thread != null )
+        {
+            throw new IllegalStateException( "Already started" );
+        }
+
+        thread = new Thread( () -> run( intervalMillis ), "lazy-compilation-release" );
+        thread.setDaemon( true );
+        thread.start();
+
+        return this;
+    }
+
+    /**
+     * Stop any background thread.
+     */
+    public synchronized void close()
+    {
+        if ( thread != null )
+        {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void run( long intervalMillis )
+    {
+        while ( ! Thread.currentThread().isInterrupted() )
+        {
+            try
+            {
+                Thread.sleep( intervalMillis );
+
+                releaseNow();
+            }
+            catch ( InterruptedException e )
+            {
+                return;
+            }
+            catch ( RuntimeException e )
+            {
+                log.warning( () -> format( "Release of compiled values failed: %s", e ) );
+            }
+        }
+    }
+
+
+    /**
+     * A value (e.g. compiled expressions) either compiled eagerly, or on first use.
+     *
+     * @param <T> the type of the value
+     */
+    public static final class Compiled< T >
+    {
+        // null when compiled eagerly (and never released)
+        private final Supplier< T > compiler;
+        private volatile T value;
+        private volatile boolean used;
+
+        private Compiled( Supplier< T > compiler )
+        {
+            this.compiler = compiler;
+        }
+
+        /**
+         * @param value an already compiled value
+         * @param <T>   the type of the value
+         * @return the value, which is never released
+         */
+        public static < T > Compiled< T > of( T value )
+        {
+            final Compiled< T > compiled = new Compiled<>( null );
+
+            compiled.value = value;
+            compiled.used = true;
+
+            return compiled;
+        }
+
+        /**
+         * @return the value, compiled if not already
+         */
+        public T get()
+        {
+            final T current = value;
+
+            // write only when changed
+            if ( ! used )
+            {
+                used = true;
+            }
+
+            return current != null ? current : compile();
+        }
+
+        public boolean isCompiled()
+        {
+            return value != null;
+        }
+
+        private synchronized T compile()
+        {
+            if ( value == null )
+            {
+                value = compiler.get();
+            }
+            return value;
+        }
+
+        // the first check after a use marks it unused; the next check (if still unused) releases it
+        private synchronized boolean release()
+        {
+            if ( compiler == null || value == null )
+            {
+                return false;
+            }
+            else if ( used )
+            {
+                used = false;
+                return false;
+            }
+
+            value = null;
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.brentcroft.tools.el;
+
+import com.brentcroft.tools.el.closure.Node;
+import com.brentcroft.tools.el.resolver.MethodHandleELResolver;
+import com.brentcroft.tools.el.resolver.SimpleELResolver;
+import com.sun.el.lang.ELSupport;
+import jakarta.el.*;
+
+import java.lang.reflect.Array;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * A ValueExpression for a pure property path,
+ * i.e. an identifier followed by property names, or string or integer literal indexes
+ * (e.g. <code>${ order.customer.name }</code> or <code>${ rows[ 0 ][ 'id' ] }</code>),
+ * that takes each step through a precompiled accessor
+ * wherever the standard resolver chain is known to take it the same way:
+ * <ul>
+ *     <li>an identifier: from the root objects, then the scope stack (from the top), then the static model;</li>
+ *     <li>a map that contains the property: its value;</li>
+ *     <li>a list or an array, with an integer index: its element (or null when out of range);</li>
+ *     <li>a bean: its property, through <code>MethodHandleELResolver</code>.</li>
+ * </ul>
+ * Any other step (e.g. a lambda argument, an imported class, or a missing property)
+ * is asked of the resolver chain, exactly as the general expression would ask it,
+ * and a context with any other resolver (or a standard resolver that has since been extended)
+ * evaluates the general expression instead.
+ *
+ * @author ADobson
+ */
+public class PropertyPathExpression extends ValueExpression
+{
+    private static final MethodHandleELResolver BEANS = new MethodHandleELResolver();
+
+    private final ValueExpression expression;
+    private final String expressionString;
+    private final Class< ? > expectedType;
+    private final String root;
+    private final Object[] properties;
+    private final transient SimpleELResolver resolver;
+    private final transient ThreadLocal< Stack< MapBindings > > scopeStack;
+    private final transient Map< String, Object > staticModel;
+
+    private PropertyPathExpression( ValueExpression expression, String root, Object[] properties, SimpleELContextFactory factory )
+    {
+        this.expression = expression;
+        this.expressionString = expression.getExpressionString();
+        this.expectedType = expression.getExpectedType();
+        this.root = root;
+        this.properties = properties;
+        this.resolver = ( SimpleELResolver ) factory.getResolver();
+        this.scopeStack = factory.getScopeStack();
+        this.staticModel = factory.getStaticModel();
+    }
+
+    /**
+     * Recognise a pure property path.
+     *
+     * @param expression the general expression (i.e. as compiled by the ExpressionFactory)
+     * @param node       the same expression parsed by <code>ClosureParser</code> (or null, if it can't be)
+     * @param context    provided functions and variables during compilation
+     * @param factory    provides the resolver, the scope stack and the static model
+     * @return a PropertyPathExpression for a pure property path, otherwise the general expression
+     */
+    public static ValueExpression of( ValueExpression expression, Node node, ELContext context, SimpleELContextFactory factory )
+    {
+        if ( node == null || ! ( factory.getResolver() instanceof SimpleELResolver ) )
+        {
+            return expression;
+        }
+
+        final Node base = node instanceof Node.Path ? ( ( Node.Path ) node ).getBase() : node;
+        final List< Node.Step > steps = node instanceof Node.Path ? ( ( Node.Path ) node ).getSteps() : Collections.emptyList();
+
+        if ( ! ( base instanceof Node.Identifier ) )
+        {
+            return expression;
+        }
+
+        final String root = ( ( Node.Identifier ) base ).getName();
+        final VariableMapper variables = context.getVariableMapper();
+
+        if ( isScoping( root ) || variables != null && variables.resolveVariable( root ) != null )
+        {
+            return expression;
+        }
+
+        final Object[] properties = new Object[ steps.size() ];
+
+        for ( int i = 0; i < properties.length; i++ )
+        {
+            properties[ i ] = property( steps.get( i ) );
+
+            if ( properties[ i ] == null )
+            {
+                return expression;
+            }
+        }
+
+        return new PropertyPathExpression( expression, root, properties, factory );
+    }
+
+    // a property name, or a string or integer literal index: otherwise null
+    private static Object property( Node.Step step )
+    {
+        final Object property = step.isMethod()
+                                ? null
+                                : step.getName() != null
+                                  ? step.getName()
+                                  : step.getIndex() instanceof Node.Literal
+                                    ? ( ( Node.Literal ) step.getIndex() ).getValue()
+                                    : null;
+
+        return property instanceof Long || property instanceof String && ! isScoping( ( String ) property )
+               ? property
+               : null;
+    }
+
+    // names that have a meaning on any base
+    private static boolean isScoping( String name )
+    {
+        return "$local".equals( name ) || "$static".equals( name );
+    }
+
+    @Override
+    public Object getValue( ELContext context )
+    {
+        if ( resolver == null || context.getELResolver() != resolver || ! resolver.isStandard() )
+        {
+            return expression.getValue( context );
+        }
+
+        context.notifyBeforeEvaluation( expressionString );
+
+        Object value = root( context );
+
+        for ( int i = 0; i < properties.length && value != null; i++ )
+        {
+            value = step( context, value, properties[ i ] );
+        }
+
+        if ( expectedType != null && expectedType != Object.class && ! expectedType.isInstance( value ) )
+        {
+            value = context.convertToType( value, expectedType );
+        }
+
+        context.notifyAfterEvaluation( expressionString );
+
+        return value;
+    }
+
+    private Object root( ELContext context )
+    {
+        if ( context.isLambdaArgument( root ) )
+        {
+            return context.getLambdaArgument( root );
+        }
+
+        // the EL implementation may wrap the context, but delegates getContext
+        final Object simpleContext = context.getContext( SimpleELContext.class );
+        final Map< ?, ? > rootObjects = simpleContext instanceof SimpleELContext
+                                        ? ( ( SimpleELContext ) simpleContext ).getRootObjects()
+                                        : null;
+
+        if ( rootObjects != null && rootObjects.containsKey( root ) )
+        {
+            context.setPropertyResolved( null, root );
+            return rootObjects.get( root );
+        }
+
+        final Stack< MapBindings > stack = scopeStack.get();
+
+        for ( int i = stack.size() - 1; i >= 0; i-- )
+        {
+            final Map< String, Object > scope = stack.get( i );
+
+            if ( scope.containsKey( root ) )
+            {
+                context.setPropertyResolved( null, root );
+                return scope.get( root );
+            }
+        }
+
+        if ( staticModel.containsKey( root ) )
+        {
+            context.setPropertyResolved( null, root );
+            return staticModel.get( root );
+        }
+
+        // otherwise an imported static field, or (with properties) an imported class
+        final ImportHandler importHandler = context.getImportHandler();
+        final Class< ? > staticClass = importHandler == null ? null : importHandler.resolveStatic( root );
+
+        if ( staticClass != null )
+        {
+            return resolver.getValue( context, new ELClass( staticClass ), root );
+        }
+
+        final Class< ? > imported = importHandler == null || properties.length == 0 ? null : importHandler.resolveClass( root );
+
+        if ( imported != null )
+        {
+            return new ELClass( imported );
+        }
+
+        ELSupport.throwUnhandled( null, root );
+
+        return null;
+    }
+
+    private Object step( ELContext context, Object base, Object property )
+    {
+        if ( base instanceof List || base.getClass().isArray() )
+        {
+            if ( property instanceof Long )
+            {
+                final int index = ( ( Long ) property ).intValue();
+                final boolean isList = base instanceof List;
+                final int length = isList ? ( ( List< ? > ) base ).size() : Array.getLength( base );
+
+                context.setPropertyResolved( base, property );
+
+                return index < 0 || index >= length
+                       ? null
+                       : isList ? ( ( List< ? > ) base ).get( index ) : Array.get( base, index );
+            }
+        }
+        else if ( ! ( base instanceof ELClass ) )
+        {
+            if ( base instanceof Map && ( ( Map< ?, ? > ) base ).containsKey( property ) )
+            {
+                context.setPropertyResolved( base, property );
+                return ( ( Map< ?, ? > ) base ).get( property );
+            }
+
+            // next in the chain, for any other object (including a map without the property)
+            context.setPropertyResolved( false );
+
+            final Object value = BEANS.getValue( context, base, property );
+
+            if ( context.isPropertyResolved() )
+            {
+                return value;
+            }
+        }
+
+        context.setPropertyResolved( false );
+
+        final Object value = resolver.getValue( context, base, property );
+
+        if ( ! context.isPropertyResolved() )
+        {
+            ELSupport.throwUnhandled( base, property );
+        }
+
+        return value;
+    }
+
+    @Override
+    public void setValue( ELContext context, Object value )
+    {
+        expression.setValue( context, value );
+    }
+
+    @Override
+    public boolean isReadOnly( ELContext context )
+    {
+        return expression.isReadOnly( context );
+    }
+
+    @Override
+    public Class< ? > getType( ELContext context )
+    {
+        return expression.getType( context );
+    }
+
+    @Override
+    public ValueReference getValueReference( ELContext context )
+    {
+        return expression.getValueReference( context );
+    }
+
+    @Override
+    public Class< ? > getExpectedType()
+    {
+        return expectedType;
+    }
+
+    @Override
+    public String getExpressionString()
+    {
+        return expressionString;
+    }
+
+    @Override
+    public boolean isLiteralText()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        return o instanceof PropertyPathExpression && expression.equals( ( ( PropertyPathExpression ) o ).expression );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return expression.hashCode();
+    }
+
+    public String toString()
+    {
+        return "PropertyPathExpression[" + expressionString + "]";
+    }
+}
@@ -4,9 +4,22 @@ import jakarta.el.*;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * An ELContext whose resolver, function mapper and evaluation listeners
+ * are shared with every other context from the same factory:
+ * only the root objects belong to the context.
+ * <p>
+ * A child frame (see <code>newFrame( rootObjects )</code>) is a cheap context
+ * that swaps in a different map of root objects,
+ * sharing everything else with its parent
+ * (including its variables, and any context objects put on the parent).
+ */
 public class SimpleELContext extends ELContext
 {
     @Getter
@@ -22,22 +35,45 @@ public class SimpleELContext extends ELContext
     protected SimpleELContextFactory simpleELContextFactory;
     protected ELResolver resolver;
     private final ImportHandler importHandler;
+    private final SimpleELContext parent;
+    private List< EvaluationListener > evaluationListeners;
 
     public SimpleELContext( SimpleELContextFactory simpleELContextFactory, Map< ?, ? > rootObjects, EvaluationListener... listeners )
+    {
+        this( simpleELContextFactory, rootObjects, listeners == null ? null : Arrays.asList( listeners ) );
+    }
+
+    SimpleELContext( SimpleELContextFactory simpleELContextFactory, Map< ?, ? > rootObjects, List< EvaluationListener > listeners )
     {
         this.rootObjects = rootObjects;
         this.simpleELContextFactory = simpleELContextFactory;
-        this.functionMapper = simpleELContextFactory.newFunctionMapper();
+        this.functionMapper = simpleELContextFactory.getFunctionMapper();
         this.variableMapper = SimpleELContextFactory.newVariableMapper();
-        this.resolver = simpleELContextFactory.newResolver( rootObjects );
+        this.resolver = simpleELContextFactory.getResolver();
         this.importHandler = simpleELContextFactory.getImportHandler();
-        if ( listeners != null )
-        {
-            for ( EvaluationListener el : listeners )
-            {
-                addEvaluationListener( el );
-            }
-        }
+        this.evaluationListeners = listeners;
+        this.parent = null;
+    }
+
+    protected SimpleELContext( SimpleELContext parent, Map< ?, ? > rootObjects )
+    {
+        this.rootObjects = rootObjects;
+        this.simpleELContextFactory = parent.simpleELContextFactory;
+        this.functionMapper = parent.functionMapper;
+        this.variableMapper = parent.variableMapper;
+        this.resolver = parent.resolver;
+        this.importHandler = parent.importHandler;
+        this.evaluationListeners = parent.evaluationListeners;
+        this.parent = parent;
+    }
+
+    /**
+     * @param rootObjects the root objects of the new frame
+     * @return a child context that only differs by its root objects
+     */
+    public SimpleELContext newFrame( Map< ?, ? > rootObjects )
+    {
+        return new SimpleELContext( this, rootObjects );
     }
 
     @Override
@@ -55,6 +91,42 @@ public class SimpleELContext extends ELContext
         return importHandler;
     }
 
+    /**
+     * The key <code>SimpleELContext.class</code> always maps to this context,
+     * so that a resolver can find it even through a wrapping context.
+     */
+    @Override
+    public Object getContext( Class< ? > key )
+    {
+        if ( key == SimpleELContext.class )
+        {
+            return this;
+        }
+
+        final Object value = super.getContext( key );
+
+        return value == null && parent != null
+               ? parent.getContext( key )
+               : value;
+    }
+
+    @Override
+    public List< EvaluationListener > getEvaluationListeners()
+    {
+        return evaluationListeners;
+    }
+
+    @Override
+    public void addEvaluationListener( EvaluationListener listener )
+    {
+        // copy on write: the original list is shared
+        final List< EvaluationListener > listeners = evaluationListeners == null
+                                                     ? new ArrayList<>()
+                                                     : new ArrayList<>( evaluationListeners );
+        listeners.add( listener );
+        evaluationListeners = Collections.unmodifiableList( listeners );
+    }
+
     public ELContext getChildContext( Map< String, Object > baseMap )
     {
         ELResolver childResolver = simpleELContextFactory.newResolver( rootObjects );
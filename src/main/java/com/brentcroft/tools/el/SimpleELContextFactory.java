@@ -25,11 +25,21 @@ public class SimpleELContextFactory implements ELContextFactory
     @Getter
     private final ImportHandler importHandler = new ImportHandler();
     private final Map< String, Method > mappedFunctions = new HashMap<>();
-    private EvaluationListener[] listeners;
+    private List< EvaluationListener > listeners;
+
+    // shared by every context: the root objects are read from the context
+    @Getter
+    private final FunctionMapper functionMapper = newFunctionMapper();
+    @Getter
+    private final ELResolver resolver;
+
+    // the context of the current (top-level) render on each thread
+    private final ThreadLocal< SimpleELContext > renderScope = new ThreadLocal<>();
 
     public SimpleELContextFactory( ELTemplateManager el )
     {
         this.el = el;
+        this.resolver = newResolver( null );
     }
 
     private static final ThreadLocal< Stack< MapBindings > > scopeStack = ThreadLocal.withInitial( () -> {
@@ -85,7 +95,7 @@ public class SimpleELContextFactory implements ELContextFactory
 
     public void setListeners( EvaluationListener... listeners )
     {
-        this.listeners = listeners;
+        this.listeners = listeners == null ? null : Collections.unmodifiableList( Arrays.asList( listeners ) );
     }
 
     public void mapFunctions( Map< String, Method > functions )
@@ -107,14 +117,59 @@ public class SimpleELContextFactory implements ELContextFactory
                 .collect( Collectors.joining() );
     }
 
+    /**
+     * During a render (see <code>openRenderScope</code>) return a new frame of the render context,
+     * otherwise a new context.
+     *
+     * @param rootObjects the root objects of the context
+     * @return an ELContext for the root objects
+     */
     public ELContext getELContext( Map< ?, ? > rootObjects )
     {
-        return new SimpleELContext( this, rootObjects, listeners );
+        final SimpleELContext scope = renderScope.get();
+
+        return scope != null
+               ? scope.newFrame( rootObjects )
+               : new SimpleELContext( this, rootObjects, listeners );
     }
 
     public ELContext getELContext( Map< ?, ? > rootObjects, SimpleELContext parent )
     {
-        return new SimpleELContext( this, rootObjects, listeners );
+        return parent.newFrame( rootObjects );
+    }
+
+    /**
+     * Start a render on the current thread:
+     * until the scope is closed, contexts are cheap frames of one render context.
+     * <p>
+     * Nested calls (e.g. from an included template) return null, leaving the current scope in place.
+     *
+     * @param rootObjects the root objects of the render
+     * @return the new render context, or null if a render is already in progress
+     */
+    public SimpleELContext openRenderScope( Map< ?, ? > rootObjects )
+    {
+        if ( renderScope.get() != null )
+        {
+            return null;
+        }
+
+        final SimpleELContext scope = new SimpleELContext( this, rootObjects, listeners );
+
+        renderScope.set( scope );
+
+        return scope;
+    }
+
+    /**
+     * @param scope the value returned by <code>openRenderScope</code>
+     */
+    public void closeRenderScope( SimpleELContext scope )
+    {
+        if ( scope != null )
+        {
+            renderScope.remove();
+        }
     }
 
     public ELContext getELConfigContext()
@@ -143,7 +198,7 @@ public class SimpleELContextFactory implements ELContextFactory
     {
         public RootELContext( Map< ?, ? > rootObjects )
         {
-            super( SimpleELContextFactory.this, rootObjects );
+            super( SimpleELContextFactory.this, rootObjects, ( List< EvaluationListener > ) null );
         }
     }
 
@@ -0,0 +1,227 @@
+package com.brentcroft.tools.el;
+
+import com.brentcroft.tools.el.closure.Node;
+import com.brentcroft.tools.el.resolver.SimpleELResolver;
+import jakarta.el.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * A ValueExpression for a <code>public static final</code> field of an imported class
+ * (e.g. <code>${ Integer.MAX_VALUE }</code> or <code>${ Math.PI }</code>),
+ * whose value was read (and coerced to the expected type) once, when it was compiled.
+ * <p>
+ * The folded value is only returned while the name of the class is not bound to anything else,
+ * i.e. is not a lambda argument, nor in the root objects, the scope stack or the static model
+ * (looked up as by <code>PropertyPathExpression</code>):
+ * otherwise, as for a context with any other resolver, the general expression is evaluated instead.
+ * <p>
+ * Evaluating the folded value never notifies the evaluation listeners of the context.
+ *
+ * @author ADobson
+ */
+public class StaticConstantExpression extends ValueExpression
+{
+    private final ValueExpression expression;
+    private final String expressionString;
+    private final Class< ? > expectedType;
+    private final String root;
+    private final Object value;
+    private final transient SimpleELResolver resolver;
+    private final transient ThreadLocal< Stack< MapBindings > > scopeStack;
+    private final transient Map< String, Object > staticModel;
+
+    private StaticConstantExpression( ValueExpression expression, String root, Object value, SimpleELContextFactory factory )
+    {
+        this.expression = expression;
+        this.expressionString = expression.getExpressionString();
+        this.expectedType = expression.getExpectedType();
+        this.root = root;
+        this.value = value;
+        this.resolver = ( SimpleELResolver ) factory.getResolver();
+        this.scopeStack = factory.getScopeStack();
+        this.staticModel = factory.getStaticModel();
+    }
+
+    /**
+     * Recognise a <code>public static final</code> field of an imported class.
+     *
+     * @param expression the general expression (evaluated whenever the name of the class is bound)
+     * @param node       the same expression parsed by <code>ClosureParser</code> (or null, if it can't be)
+     * @param context    provided the imported classes, functions and variables during compilation
+     * @param factory    provides the resolver, the scope stack and the static model
+     * @return a StaticConstantExpression for a static constant, otherwise the general expression
+     */
+    public static ValueExpression of( ValueExpression expression, Node node, ELContext context, SimpleELContextFactory factory )
+    {
+        if ( ! ( node instanceof Node.Path ) || ! ( factory.getResolver() instanceof SimpleELResolver ) )
+        {
+            return expression;
+        }
+
+        final Node.Path path = ( Node.Path ) node;
+
+        if ( ! ( path.getBase() instanceof Node.Identifier ) || path.getSteps().size() != 1 )
+        {
+            return expression;
+        }
+
+        final String root = ( ( Node.Identifier ) path.getBase() ).getName();
+        final Node.Step step = path.getSteps().get( 0 );
+        final ImportHandler importHandler = context.getImportHandler();
+        final VariableMapper variables = context.getVariableMapper();
+
+        if ( step.isMethod() || step.getName() == null || importHandler == null
+                || variables != null && variables.resolveVariable( root ) != null )
+        {
+            return expression;
+        }
+
+        try
+        {
+            final Class< ? > type = importHandler.resolveClass( root );
+            final Field field = type == null ? null : type.getField( step.getName() );
+
+            if ( field == null || ! Modifier.isStatic( field.getModifiers() ) || ! Modifier.isFinal( field.getModifiers() ) )
+            {
+                return expression;
+            }
+
+            final Class< ? > expectedType = expression.getExpectedType();
+            final Object value = field.get( null );
+
+            return new StaticConstantExpression(
+                    expression,
+                    root,
+                    expectedType == null || expectedType == Object.class || expectedType.isInstance( value )
+                    ? value
+                    : context.convertToType( value, expectedType ),
+                    factory );
+        }
+        catch ( NoSuchFieldException | IllegalAccessException | RuntimeException e )
+        {
+            // left to the general expression
+            return expression;
+        }
+    }
+
+    public Object getValue()
+    {
+        return value;
+    }
+
+    /**
+     * @return the general expression, evaluated whenever the name of the class is bound
+     */
+    public ValueExpression getExpression()
+    {
+        return expression;
+    }
+
+    @Override
+    public Object getValue( ELContext context )
+    {
+        return isBound( context )
+               ? expression.getValue( context )
+               : value;
+    }
+
+    // whether the root would be resolved to anything but the imported class
+    private boolean isBound( ELContext context )
+    {
+        if ( resolver == null || context.getELResolver() != resolver || ! resolver.isStandard() )
+        {
+            return true;
+        }
+
+        if ( context.isLambdaArgument( root ) )
+        {
+            return true;
+        }
+
+        // the EL implementation may wrap the context, but delegates getContext
+        final Object simpleContext = context.getContext( SimpleELContext.class );
+        final Map< ?, ? > rootObjects = simpleContext instanceof SimpleELContext
+                                        ? ( ( SimpleELContext ) simpleContext ).getRootObjects()
+                                        : null;
+
+        if ( rootObjects != null && rootObjects.containsKey( root ) )
+        {
+            return true;
+        }
+
+        final Stack< MapBindings > stack = scopeStack.get();
+
+        for ( int i = stack.size() - 1; i >= 0; i-- )
+        {
+            if ( stack.get( i ).containsKey( root ) )
+            {
+                return true;
+            }
+        }
+
+        return staticModel.containsKey( root );
+    }
+
+    @Override
+    public void setValue( ELContext context, Object value )
+    {
+        expression.setValue( context, value );
+    }
+
+    @Override
+    public boolean isReadOnly( ELContext context )
+    {
+        return expression.isReadOnly( context );
+    }
+
+    @Override
+    public Class< ? > getType( ELContext context )
+    {
+        return expression.getType( context );
+    }
+
+    @Override
+    public ValueReference getValueReference( ELContext context )
+    {
+        return expression.getValueReference( context );
+    }
+
+    @Override
+    public Class< ? > getExpectedType()
+    {
+        return expectedType;
+    }
+
+    @Override
+    public String getExpressionString()
+    {
+        return expressionString;
+    }
+
+    @Override
+    public boolean isLiteralText()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        return o instanceof StaticConstantExpression && expression.equals( ( ( StaticConstantExpression ) o ).expression );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return expression.hashCode();
+    }
+
+    public String toString()
+    {
+        return "StaticConstantExpression[" + expressionString + "]";
+    }
+}
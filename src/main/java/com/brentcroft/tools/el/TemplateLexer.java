@@ -0,0 +1,1018 @@
+package com.brentcroft.tools.el;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A linear-time scanner of template text, that reports (to a <code>Handler</code>)
+ * the literal text, EL expressions, tags, comments and CDATA sections it finds,
+ * by their offsets in the text (rather than by copying them).
+ * <p>
+ * It reproduces the results of the regular expressions it replaces:
+ * <ul>
+ *     <li>tags (with the tag prefix, e.g. <code>c:</code>) are found first,
+ *     so a tag inside a comment or CDATA section is still a tag,
+ *     and something that only looks like a tag (e.g. <code>&lt;c:foreach test&gt;</code>) is text;</li>
+ *     <li>the text between tags is a separate text, in which (optionally) comments are removed,
+ *     and then CDATA sections are unwrapped (so their content is still scanned for EL expressions);</li>
+ *     <li>EL expressions (<code>${...}</code> and <code>#{...}</code>) are found in what remains
+ *     (inside an expression a backslash is removed, and escapes a following <code>}</code>).</li>
+ * </ul>
+ * One difference: markers formed only by removing a comment from between their parts
+ * (e.g. <code>]]&lt;!-- --&gt;&gt;</code>) are not recognised.
+ * <p>
+ * Text can also be lexed incrementally from a <code>Reader</code> (or channel),
+ * through a window that only holds the text not yet reported:
+ * literal text is reported as it is read, so the window is bounded by the largest token
+ * (i.e. tag, comment, CDATA marker or expression), rather than by the size of the text.
+ * Note that (as with the regex) a candidate tag with an unclosed quote is a token that extends
+ * to the next matching quote, or to the end of the text.
+ *
+ * @author ADobson
+ */
+public final class TemplateLexer
+{
+    /**
+     * Receives the tokens of a text, in order.
+     * <p>
+     * The literal text and expressions of each text between tags are followed by <code>endText</code>.
+     * A text or expression that had to be rebuilt (e.g. to remove a comment) is reported from a new sequence.
+     * <p>
+     * The sequences passed are only valid during each call
+     * (when lexing from a <code>Reader</code>, they are a window over the text read so far).
+     */
+    public interface Handler
+    {
+        /**
+         * @param text  a sequence containing some literal text
+         * @param start the start of the literal text
+         * @param end   the end of the literal text
+         */
+        default void literal( CharSequence text, int start, int end )
+        {
+        }
+
+        /**
+         * @param deferred true for <code>#{...}</code>, false for <code>${...}</code>
+         * @param text     a sequence containing the body of the expression (i.e. between the braces)
+         * @param start    the start of the body
+         * @param end      the end of the body
+         */
+        default void expression( boolean deferred, CharSequence text, int start, int end )
+        {
+        }
+
+        /**
+         * The text (between tags) that has just been reported is complete.
+         */
+        default void endText()
+        {
+        }
+
+        /**
+         * A comment that has been removed.
+         *
+         * @param text  the template text
+         * @param start the start of the comment body
+         * @param end   the end of the comment body
+         */
+        default void comment( CharSequence text, int start, int end )
+        {
+        }
+
+        /**
+         * A CDATA section whose markers have been removed, and whose content follows.
+         *
+         * @param text  the template text
+         * @param start the start of the content
+         * @param end   the end of the content
+         */
+        default void cdata( CharSequence text, int start, int end )
+        {
+        }
+
+        /**
+         * @param tag        the tag name (without prefix)
+         * @param attributes the attributes of the tag, or null if it has none
+         * @param empty      true if the tag closes itself (i.e. <code>/&gt;</code>)
+         */
+        default void openTag( String tag, Map< String, String > attributes, boolean empty )
+        {
+        }
+
+        /**
+         * @param tag the tag name (without prefix)
+         */
+        default void closeTag( String tag )
+        {
+        }
+    }
+
+    /**
+     * Finds only EL expressions.
+     */
+    public static final TemplateLexer EL = new TemplateLexer( null, false, false );
+
+    // only for attribute names ending in a colon: see attributes()
+    private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile( "(\\w+)=(\"([^\"]*)\"|'([^']*)')" );
+
+    private static final String COMMENT_START = "<!--";
+    private static final String COMMENT_END = "-->";
+    private static final String CDATA_START = "<![CDATA[";
+    private static final String CDATA_END = "]]>";
+
+    // the strings searched for ahead (each search is remembered)
+    private static final String[] SEARCHES = { COMMENT_START, COMMENT_END, CDATA_END };
+
+    private static final int OUTSIDE = 0;
+    private static final int ENTERING = 1;
+    private static final int INSIDE = 2;
+
+    private static final int WINDOW_SIZE = 8 * 1024;
+
+    private final String tagPrefix;
+    private final boolean stripComments;
+    private final boolean unwrapCData;
+
+    /**
+     * @param tagPrefix     the prefix of tags (e.g. <code>c:</code>), or null to find no tags
+     * @param stripComments if true, remove comments from text
+     * @param unwrapCData   if true, remove the markers of CDATA sections from text
+     */
+    public TemplateLexer( String tagPrefix, boolean stripComments, boolean unwrapCData )
+    {
+        this.tagPrefix = tagPrefix;
+        this.stripComments = stripComments;
+        this.unwrapCData = unwrapCData;
+    }
+
+    public void lex( CharSequence text, Handler handler )
+    {
+        new Scan( text, null, handler ).run();
+    }
+
+    /**
+     * Lex the text read from a reader (which is not closed).
+     *
+     * @param reader  the source of the text
+     * @param handler receives the tokens
+     * @throws UncheckedIOException if the reader fails
+     */
+    public void lex( Reader reader, Handler handler )
+    {
+        final Window window = new Window( reader );
+
+        new Scan( window, window, handler ).run();
+    }
+
+    /**
+     * Lex the text decoded from a channel (which is not closed).
+     *
+     * @param channel the source of the text
+     * @param charset the charset of the text
+     * @param handler receives the tokens
+     * @throws UncheckedIOException if the channel fails
+     */
+    public void lex( ReadableByteChannel channel, Charset charset, Handler handler )
+    {
+        lex( Channels.newReader(
+                channel,
+                charset
+                        .newDecoder()
+                        .onMalformedInput( CodingErrorAction.REPLACE )
+                        .onUnmappableCharacter( CodingErrorAction.REPLACE ),
+                - 1 ), handler );
+    }
+
+
+    private class Scan
+    {
+        private final CharSequence text;
+        private final Window window;
+        private final Handler handler;
+
+        // the length of the text (so far, when reading)
+        private int length;
+
+        // the next character to be lexed: nothing before it is looked at again
+        private int position;
+
+        // the last searches for each quote
+        private final int[] quoteFrom = { Integer.MAX_VALUE, Integer.MAX_VALUE };
+        private final int[] quoteFound = new int[ 2 ];
+
+        // the last tag found
+        private String tag;
+        private boolean closing;
+        private boolean empty;
+        private int attributesStart;
+        private int attributesEnd;
+        private int[] attributes = new int[ 16 ];
+        private int attributeCount;
+
+        // the text between tags
+        private int textStart;
+        private int textEnd;
+        private int cdataEnd;
+        private int noCDataFrom;
+        private final int[] searchFrom = new int[ SEARCHES.length ];
+        private final int[] searchFound = new int[ SEARCHES.length ];
+
+        // the EL state of the text
+        private int state;
+        private boolean deferred;
+        private boolean escaped;
+        private int run;
+        private int pilot;
+        private boolean pilotDetached;
+        private int bodyStart;
+        private StringBuilder body;
+
+        Scan( CharSequence text, Window window, Handler handler )
+        {
+            this.text = text;
+            this.window = window;
+            this.handler = handler;
+            this.length = text.length();
+
+            if ( window != null )
+            {
+                window.scan = this;
+            }
+        }
+
+        void run()
+        {
+            int i = 0;
+
+            beginText( 0 );
+
+            while ( has( i ) )
+            {
+                final char c = text.charAt( i );
+
+                if ( c == '<' && mayBeTag( i ) )
+                {
+                    final int end = tag( i );
+
+                    if ( end >= 0 )
+                    {
+                        endText( i );
+
+                        if ( closing )
+                        {
+                            handler.closeTag( tag );
+                        }
+                        else
+                        {
+                            handler.openTag( tag, attributes(), empty );
+                        }
+
+                        position = i = end;
+
+                        beginText( i );
+
+                        continue;
+                    }
+                }
+
+                position = i = next( c, i );
+            }
+
+            endText( i );
+        }
+
+        // tags
+
+        private boolean mayBeTag( int i )
+        {
+            // the end of the text, if already found, is the next tag
+            return tagPrefix != null && ( textEnd < 0 || i >= textEnd );
+        }
+
+        private int tag( int i )
+        {
+            if ( has( i + 1 ) && text.charAt( i + 1 ) == '/' )
+            {
+                final int nameStart = i + 2 + tagPrefix.length();
+
+                if ( ! startsWith( tagPrefix, i + 2 ) )
+                {
+                    return - 1;
+                }
+
+                final int nameEnd = word( nameStart );
+
+                if ( nameEnd == nameStart || ! has( nameEnd ) || text.charAt( nameEnd ) != '>' )
+                {
+                    return - 1;
+                }
+
+                tag = text.subSequence( nameStart, nameEnd ).toString();
+                closing = true;
+
+                return nameEnd + 1;
+            }
+
+            if ( ! startsWith( tagPrefix, i + 1 ) )
+            {
+                return - 1;
+            }
+
+            final int nameStart = i + 1 + tagPrefix.length();
+
+            int nameEnd = word( nameStart );
+
+            if ( nameEnd == nameStart )
+            {
+                return - 1;
+            }
+
+            int end = attributeList( nameEnd );
+
+            // as the regex would backtrack: the last character of the name may start an attribute
+            if ( end < 0 && nameEnd - nameStart > 1 && has( nameEnd ) && text.charAt( nameEnd ) == '=' )
+            {
+                nameEnd--;
+                end = attributeList( nameEnd );
+            }
+
+            if ( end < 0 )
+            {
+                return - 1;
+            }
+
+            tag = text.subSequence( nameStart, nameEnd ).toString();
+            closing = false;
+
+            return end;
+        }
+
+        private int attributeList( int k )
+        {
+            attributesStart = k;
+            attributeCount = 0;
+
+            while ( true )
+            {
+                final int nameStart = space( k );
+                final int nameEnd = attributeName( nameStart );
+
+                if ( nameEnd == nameStart || ! has( nameEnd + 1 ) || text.charAt( nameEnd ) != '=' )
+                {
+                    break;
+                }
+
+                final char quote = text.charAt( nameEnd + 1 );
+
+                if ( quote != '"' && quote != '\'' )
+                {
+                    break;
+                }
+
+                final int close = indexOfQuote( quote, nameEnd + 2 );
+
+                if ( close < 0 )
+                {
+                    break;
+                }
+
+                addAttribute( nameStart, nameEnd, nameEnd + 2, close );
+
+                k = close + 1;
+            }
+
+            attributesEnd = k;
+
+            int p = space( k );
+
+            empty = has( p ) && text.charAt( p ) == '/';
+
+            if ( empty )
+            {
+                p++;
+            }
+
+            return has( p ) && text.charAt( p ) == '>' ? p + 1 : - 1;
+        }
+
+        private void addAttribute( int nameStart, int nameEnd, int valueStart, int valueEnd )
+        {
+            if ( attributeCount * 4 == attributes.length )
+            {
+                attributes = Arrays.copyOf( attributes, attributes.length * 2 );
+            }
+
+            final int a = attributeCount++ * 4;
+
+            attributes[ a ] = nameStart;
+            attributes[ a + 1 ] = nameEnd;
+            attributes[ a + 2 ] = valueStart;
+            attributes[ a + 3 ] = valueEnd;
+        }
+
+        /*
+         * The attributes are keyed by the word characters ending each attribute name
+         * (i.e. after any colon), as the attribute regex finds them.
+         */
+        private Map< String, String > attributes()
+        {
+            if ( closing || attributeCount == 0 )
+            {
+                return null;
+            }
+
+            final Map< String, String > map = new HashMap<>();
+
+            for ( int i = 0; i < attributeCount; i++ )
+            {
+                final int a = i * 4;
+
+                int keyStart = attributes[ a + 1 ];
+
+                while ( keyStart > attributes[ a ] && text.charAt( keyStart - 1 ) != ':' )
+                {
+                    keyStart--;
+                }
+
+                if ( keyStart == attributes[ a + 1 ] )
+                {
+                    // a name ending in a colon: leave it to the regex
+                    return regexAttributes();
+                }
+
+                map.put(
+                        text.subSequence( keyStart, attributes[ a + 1 ] ).toString(),
+                        text.subSequence( attributes[ a + 2 ], attributes[ a + 3 ] ).toString() );
+            }
+
+            return map;
+        }
+
+        private Map< String, String > regexAttributes()
+        {
+            Map< String, String > map = null;
+
+            final Matcher matcher = ATTRIBUTE_PATTERN.matcher( text.subSequence( attributesStart, attributesEnd ) );
+
+            while ( matcher.find() )
+            {
+                if ( map == null )
+                {
+                    map = new HashMap<>();
+                }
+
+                map.put( matcher.group( 1 ), matcher.group( 3 ) != null ? matcher.group( 3 ) : matcher.group( 4 ) );
+            }
+
+            return map;
+        }
+
+        // text
+
+        private void beginText( int from )
+        {
+            state = OUTSIDE;
+            escaped = false;
+            run = from;
+            body = null;
+
+            textStart = from;
+            textEnd = - 1;
+            cdataEnd = - 1;
+            noCDataFrom = Integer.MAX_VALUE;
+
+            Arrays.fill( searchFrom, Integer.MAX_VALUE );
+        }
+
+        private void endText( int to )
+        {
+            // with tags, an empty text is not reported
+            if ( to == textStart && tagPrefix != null )
+            {
+                return;
+            }
+
+            switch ( state )
+            {
+                case ENTERING:
+                    flush( to );
+                    if ( pilotDetached )
+                    {
+                        handler.literal( deferred ? "#" : "$", 0, 1 );
+                    }
+                    break;
+
+                case INSIDE:
+                    handler.literal( deferred ? "#{" : "${", 0, 2 );
+                    if ( body == null )
+                    {
+                        handler.literal( text, bodyStart, to );
+                    }
+                    else
+                    {
+                        handler.literal( body, 0, body.length() );
+                    }
+                    break;
+
+                default:
+                    flush( to );
+            }
+
+            handler.endText();
+        }
+
+        /*
+         * Lex one character (or marker) of text, and return the position of the next.
+         */
+        private int next( char c, int i )
+        {
+            if ( i == cdataEnd )
+            {
+                skip( i, i + CDATA_END.length() );
+                cdataEnd = - 1;
+
+                return i + CDATA_END.length();
+            }
+
+            if ( c == '<' )
+            {
+                if ( stripComments && startsWith( COMMENT_START, i ) )
+                {
+                    final int end = search( 1, i + COMMENT_START.length() );
+
+                    if ( end >= 0 )
+                    {
+                        handler.comment( text, i + COMMENT_START.length(), end );
+                        skip( i, end + COMMENT_END.length() );
+
+                        return end + COMMENT_END.length();
+                    }
+                }
+
+                if ( unwrapCData && cdataEnd < 0 && i < noCDataFrom && startsWith( CDATA_START, i ) )
+                {
+                    final int end = cdataEnd( i + CDATA_START.length() );
+
+                    if ( end >= 0 )
+                    {
+                        handler.cdata( text, i + CDATA_START.length(), end );
+                        skip( i, i + CDATA_START.length() );
+                        cdataEnd = end;
+
+                        return i + CDATA_START.length();
+                    }
+
+                    noCDataFrom = i;
+                }
+            }
+
+            el( c, i );
+
+            return i + 1;
+        }
+
+        /*
+         * The EL state machine: one character of the text.
+         */
+        private void el( char c, int i )
+        {
+            switch ( state )
+            {
+                case OUTSIDE:
+                    if ( c == '$' || c == '#' )
+                    {
+                        state = ENTERING;
+                        deferred = c == '#';
+                        pilot = i;
+                        pilotDetached = false;
+                    }
+                    break;
+
+                case ENTERING:
+                    if ( c == '{' )
+                    {
+                        if ( ! pilotDetached )
+                        {
+                            flush( pilot );
+                        }
+
+                        state = INSIDE;
+                        escaped = false;
+                        bodyStart = i + 1;
+                        body = null;
+                    }
+                    else
+                    {
+                        // got $ or # without {: a literal (and so is this character)
+                        state = OUTSIDE;
+
+                        if ( pilotDetached )
+                        {
+                            handler.literal( deferred ? "#" : "$", 0, 1 );
+                        }
+                    }
+                    break;
+
+                default:
+                    if ( c == '\\' )
+                    {
+                        escaped = true;
+                        detachBody( i );
+                    }
+                    else if ( c == '}' && ! escaped )
+                    {
+                        expression( i );
+                    }
+                    else
+                    {
+                        escaped = false;
+
+                        if ( body != null )
+                        {
+                            body.append( c );
+                        }
+                    }
+            }
+        }
+
+        private void expression( int end )
+        {
+            final CharSequence source = body == null ? text : body;
+            final int start = body == null ? bodyStart : 0;
+            final int stop = body == null ? end : body.length();
+
+            boolean blank = true;
+
+            for ( int i = start; blank && i < stop; i++ )
+            {
+                blank = source.charAt( i ) <= ' ';
+            }
+
+            if ( blank )
+            {
+                throw new ELTemplateException( "EL Template has no tokenText!" );
+            }
+
+            handler.expression( deferred, source, start, stop );
+
+            state = OUTSIDE;
+            body = null;
+            run = end + 1;
+        }
+
+        /*
+         * The characters [from, to) are not part of the text.
+         */
+        private void skip( int from, int to )
+        {
+            switch ( state )
+            {
+                case ENTERING:
+                    if ( ! pilotDetached )
+                    {
+                        flush( pilot );
+                        pilotDetached = true;
+                    }
+                    break;
+
+                case INSIDE:
+                    detachBody( from );
+                    break;
+
+                default:
+                    flush( from );
+            }
+
+            run = to;
+        }
+
+        private void detachBody( int end )
+        {
+            if ( body == null )
+            {
+                body = new StringBuilder( Math.max( 16, end - bodyStart + 16 ) ).append( text, bodyStart, end );
+            }
+        }
+
+        private void flush( int end )
+        {
+            if ( end > run )
+            {
+                handler.literal( text, run, end );
+                run = end;
+            }
+        }
+
+        /*
+         * Report (or copy) what has been lexed, so the window can discard it.
+         *
+         * Returns the first position that must be kept.
+         */
+        int release()
+        {
+            switch ( state )
+            {
+                case ENTERING:
+                    if ( ! pilotDetached )
+                    {
+                        flush( pilot );
+                        return pilot;
+                    }
+                    return position;
+
+                case INSIDE:
+                    detachBody( position );
+                    return position;
+
+                default:
+                    flush( position );
+                    return position;
+            }
+        }
+
+        /*
+         * The first CDATA end marker, skipping comments that will be removed,
+         * or -1 if there is none before the end of the text.
+         */
+        private int cdataEnd( int from )
+        {
+            int i = from;
+
+            while ( true )
+            {
+                final int end = search( 2, i );
+                final int comment = stripComments ? search( 0, i ) : - 1;
+
+                if ( comment < 0 || ( end >= 0 && end < comment ) )
+                {
+                    return end;
+                }
+
+                final int commentEnd = search( 1, comment + COMMENT_START.length() );
+
+                if ( commentEnd < 0 )
+                {
+                    // never removed
+                    return end;
+                }
+
+                i = commentEnd + COMMENT_END.length();
+            }
+        }
+
+        /*
+         * The start of the first of SEARCHES[ s ] from [from] before the end of the text (i.e. the next tag), or -1.
+         *
+         * Remembers the last result, which answers any search from up to the position found,
+         * and finds the end of the text, so that (after a failed search) any later search fails immediately.
+         */
+        private int search( int s, int from )
+        {
+            if ( searchFrom[ s ] <= from && ( searchFound[ s ] < 0 || searchFound[ s ] >= from ) )
+            {
+                return searchFound[ s ];
+            }
+
+            final String string = SEARCHES[ s ];
+            final char first = string.charAt( 0 );
+
+            int found = - 1;
+
+            for ( int k = from; has( k ) && k != textEnd; k++ )
+            {
+                final char c = text.charAt( k );
+
+                if ( c == '<' && mayBeTag( k ) && tag( k ) >= 0 )
+                {
+                    textEnd = k;
+                    break;
+                }
+
+                if ( c == first && startsWith( string, k ) )
+                {
+                    found = k;
+                    break;
+                }
+            }
+
+            if ( found < 0 && textEnd < 0 )
+            {
+                textEnd = Integer.MAX_VALUE;
+            }
+
+            searchFrom[ s ] = from;
+            searchFound[ s ] = found;
+
+            return found;
+        }
+
+        // primitives
+
+        private boolean has( int i )
+        {
+            if ( i < length )
+            {
+                return true;
+            }
+
+            if ( window == null )
+            {
+                return false;
+            }
+
+            window.fill( i );
+
+            length = window.length();
+
+            return i < length;
+        }
+
+        private boolean startsWith( String prefix, int i )
+        {
+            if ( ! has( i + prefix.length() - 1 ) )
+            {
+                return false;
+            }
+            for ( int j = 0; j < prefix.length(); j++ )
+            {
+                if ( text.charAt( i + j ) != prefix.charAt( j ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int indexOf( char c, int from )
+        {
+            for ( int i = from; has( i ); i++ )
+            {
+                if ( text.charAt( i ) == c )
+                {
+                    return i;
+                }
+            }
+            return - 1;
+        }
+
+        /*
+         * Remembers the last search for each quote,
+         * so that repeated failed tags don't scan the same text again.
+         */
+        private int indexOfQuote( char quote, int from )
+        {
+            final int q = quote == '"' ? 0 : 1;
+
+            if ( quoteFrom[ q ] <= from && ( quoteFound[ q ] < 0 || quoteFound[ q ] >= from ) )
+            {
+                return quoteFound[ q ];
+            }
+
+            quoteFrom[ q ] = from;
+            quoteFound[ q ] = indexOf( quote, from );
+
+            return quoteFound[ q ];
+        }
+
+        private int space( int i )
+        {
+            while ( has( i ) && isSpace( text.charAt( i ) ) )
+            {
+                i++;
+            }
+            return i;
+        }
+
+        private int word( int i )
+        {
+            while ( has( i ) && isWord( text.charAt( i ) ) )
+            {
+                i++;
+            }
+            return i;
+        }
+
+        private int attributeName( int i )
+        {
+            while ( has( i ) && ( isWord( text.charAt( i ) ) || text.charAt( i ) == ':' ) )
+            {
+                i++;
+            }
+            return i;
+        }
+    }
+
+    /*
+     * The text read so far, from the first position still needed by the scan,
+     * indexed by position in the whole text.
+     */
+    private static class Window implements CharSequence
+    {
+        private final Reader reader;
+
+        private Scan scan;
+        private char[] buffer = new char[ WINDOW_SIZE ];
+
+        // the position of buffer[ 0 ]
+        private int base;
+        private int count;
+        private boolean eof;
+
+        Window( Reader reader )
+        {
+            this.reader = reader;
+        }
+
+        void fill( int i )
+        {
+            try
+            {
+                while ( i >= base + count && ! eof )
+                {
+                    if ( count == buffer.length )
+                    {
+                        discard( scan.release() );
+                    }
+
+                    final int read = reader.read( buffer, count, buffer.length - count );
+
+                    if ( read < 0 )
+                    {
+                        eof = true;
+                    }
+                    else
+                    {
+                        count += read;
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        private void discard( int keep )
+        {
+            final int discard = keep - base;
+
+            // only grow when less than half could be discarded
+            final char[] target = discard < buffer.length / 2
+                                  ? new char[ buffer.length * 2 ]
+                                  : buffer;
+
+            System.arraycopy( buffer, discard, target, 0, count - discard );
+
+            buffer = target;
+            base = keep;
+            count -= discard;
+        }
+
+        @Override
+        public int length()
+        {
+            return base + count;
+        }
+
+        @Override
+        public char charAt( int index )
+        {
+            return buffer[ index - base ];
+        }
+
+        @Override
+        public CharSequence subSequence( int start, int end )
+        {
+            return new String( buffer, start - base, end - start );
+        }
+
+        @Override
+        public String toString()
+        {
+            return new String( buffer, 0, count );
+        }
+    }
+
+    // as regex \s
+    private static boolean isSpace( char c )
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // as regex \w
+    private static boolean isWord( char c )
+    {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) || c == '_';
+    }
+}
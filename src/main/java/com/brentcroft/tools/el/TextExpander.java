@@ -1,8 +1,24 @@
 package com.brentcroft.tools.el;
 
+import java.io.IOException;
 import java.util.Map;
 
 public interface TextExpander
 {
     String expandText( String text, Map< String, Object > context );
+
+    /**
+     * Expand the text directly into the supplied sink (e.g. a Writer).
+     * <p>
+     * Implementations should override this to avoid materialising the expansion as a String.
+     *
+     * @param text    the text to be expanded
+     * @param context a context map of root objects
+     * @param out     the sink receiving the expanded text
+     * @throws IOException if the sink fails
+     */
+    default void expandText( String text, Map< String, Object > context, Appendable out ) throws IOException
+    {
+        out.append( expandText( text, context ) );
+    }
 }
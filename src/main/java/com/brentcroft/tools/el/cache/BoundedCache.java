@@ -0,0 +1,535 @@
+package com.brentcroft.tools.el.cache;
+
+import lombok.Getter;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongBiFunction;
+import java.util.function.ToLongFunction;
+
+import static java.lang.String.format;
+
+/**
+ * A thread-safe cache, optionally bounded by entry count and/or by total weight,
+ * that loads each key at most once without holding a global lock.
+ * <p>
+ * A cold miss installs a pending entry and loads it on the calling thread;
+ * concurrent callers for the same key wait for that load, while other keys load in parallel.
+ * <p>
+ * A loader may itself (directly or via another thread) request the key it is loading
+ * (e.g. a template that includes itself): rather than deadlock,
+ * such a request is loaded again without being cached.
+ * <p>
+ * When a bound is exceeded, values are evicted according to the eviction policy,
+ * approximated by a clock: the entries are queued in the order they were added,
+ * and the hand takes each entry from the head of the queue in turn,
+ * either evicting it, if it has not been used since the hand last passed it,
+ * or spending one of its uses and returning it to the tail of the queue.
+ * With <code>LRU</code> an entry keeps at most one use (i.e. it is "second chance" LRU),
+ * and with <code>LFU</code> up to <code>MAX_USES</code>.
+ * So an eviction costs (amortised) constant time, however large the cache.
+ * <p>
+ * By default the cache is unbounded.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of cached value
+ * @author ADobson
+ */
+public class BoundedCache< K, V > implements Cache< K, V >
+{
+    // threads currently waiting for another thread's load
+    private static final Map< Thread, Entry< ?, ? > > WAITING = new ConcurrentHashMap<>();
+
+    /**
+     * The most uses an entry keeps, between passes of the clock, under the <code>LFU</code> policy.
+     */
+    public static final int MAX_USES = 15;
+
+    private final ConcurrentHashMap< K, Entry< K, V > > entries = new ConcurrentHashMap<>();
+
+    // the clock: every entry added, in turn (including entries since removed)
+    private final ConcurrentLinkedQueue< Entry< K, V > > clock = new ConcurrentLinkedQueue<>();
+    // (approximately) the number of entries in the clock that have since been removed
+    private final AtomicLong removed = new AtomicLong();
+
+    @Getter
+    private volatile long maxEntries = Long.MAX_VALUE;
+    @Getter
+    private volatile long maxWeight = Long.MAX_VALUE;
+    private volatile ToLongBiFunction< ? super K, ? super V > weigher = ( key, value ) -> 1;
+    @Getter
+    private volatile EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+    private final AtomicLong weight = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+
+    public BoundedCache< K, V > withMaxEntries( long maxEntries )
+    {
+        if ( maxEntries < 1 )
+        {
+            throw new IllegalArgumentException( format( "maxEntries must be positive: %s", maxEntries ) );
+        }
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Bound the cache by the total weight of its values.
+     *
+     * @param maxWeight the maximum total weight
+     * @param weigher   estimates the weight of a value (e.g. the size of a compiled template)
+     * @return this cache
+     */
+    public BoundedCache< K, V > withMaxWeight( long maxWeight, ToLongFunction< ? super V > weigher )
+    {
+        return withMaxWeight( maxWeight, ( ToLongBiFunction< K, V > ) ( key, value ) -> weigher.applyAsLong( value ) );
+    }
+
+    /**
+     * Bound the cache by the total weight of its entries.
+     *
+     * @param maxWeight the maximum total weight
+     * @param weigher   estimates the weight of an entry (e.g. from the size of its key and value)
+     * @return this cache
+     */
+    public BoundedCache< K, V > withMaxWeight( long maxWeight, ToLongBiFunction< ? super K, ? super V > weigher )
+    {
+        if ( maxWeight < 1 )
+        {
+            throw new IllegalArgumentException( format( "maxWeight must be positive: %s", maxWeight ) );
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        return this;
+    }
+
+    public BoundedCache< K, V > withEvictionPolicy( EvictionPolicy evictionPolicy )
+    {
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+
+    public V get( K key, Function< ? super K, ? extends V > loader )
+    {
+        Entry< K, V > entry = entries.get( key );
+
+        if ( entry == null )
+        {
+            final Entry< K, V > pending = new Entry<>( key );
+
+            entry = entries.putIfAbsent( key, pending );
+
+            if ( entry == null )
+            {
+                missCount.increment();
+                clock.offer( pending );
+
+                return load( key, pending, loader );
+            }
+        }
+
+        hitCount.increment();
+
+        if ( ! entry.isDone() )
+        {
+            if ( ! await( entry ) )
+            {
+                // re-entrant or circular load: build a private value
+                return loader.apply( key );
+            }
+        }
+
+        return entry.touch( maxUses() );
+    }
+
+    public V getIfPresent( K key )
+    {
+        final Entry< K, V > entry = entries.get( key );
+
+        if ( entry == null || ! entry.isDone() || entry.failure != null )
+        {
+            return null;
+        }
+
+        hitCount.increment();
+
+        return entry.touch( maxUses() );
+    }
+
+    public void put( K key, V value )
+    {
+        final Entry< K, V > entry = new Entry<>( key );
+
+        entry.complete( value, weigher.applyAsLong( key, value ) );
+
+        if ( entry.charge() )
+        {
+            weight.addAndGet( entry.weight );
+        }
+
+        final Entry< K, V > previous = entries.put( key, entry );
+
+        clock.offer( entry );
+
+        if ( previous != null )
+        {
+            discard( previous );
+            removed();
+        }
+
+        evictIfNecessary( key );
+    }
+
+    public void remove( K key )
+    {
+        final Entry< K, V > entry = entries.remove( key );
+
+        if ( entry != null )
+        {
+            discard( entry );
+            removed();
+        }
+    }
+
+    public void clear()
+    {
+        for ( K key : keys() )
+        {
+            remove( key );
+        }
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public Set< K > keys()
+    {
+        return new HashSet<>( entries.keySet() );
+    }
+
+    public CacheStats getStats()
+    {
+        return new CacheStats(
+                hitCount.sum(),
+                missCount.sum(),
+                loadCount.sum(),
+                loadFailureCount.sum(),
+                totalLoadNanos.sum(),
+                evictionCount.sum(),
+                entries.size(),
+                weight.get() );
+    }
+
+
+    private V load( K key, Entry< K, V > entry, Function< ? super K, ? extends V > loader )
+    {
+        final long started = System.nanoTime();
+
+        final V value;
+
+        try
+        {
+            value = loader.apply( key );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            loadFailureCount.increment();
+            unmap( entry );
+            entry.fail( e );
+            throw e;
+        }
+
+        totalLoadNanos.add( System.nanoTime() - started );
+        loadCount.increment();
+
+        if ( value == null )
+        {
+            unmap( entry );
+            entry.complete( null, 0 );
+            return null;
+        }
+
+        entry.complete( value, weigher.applyAsLong( key, value ) );
+
+        // unless the entry was removed (e.g. by clear) while loading
+        if ( entry.charge() )
+        {
+            weight.addAndGet( entry.weight );
+            evictIfNecessary( key );
+        }
+
+        return value;
+    }
+
+    /*
+     * Wait for another thread to finish loading the entry.
+     *
+     * Returns false, without waiting, if the entry is being loaded by this thread,
+     * or by a thread that is (transitively) waiting for this thread.
+     */
+    private boolean await( Entry< K, V > entry )
+    {
+        final Thread current = Thread.currentThread();
+
+        if ( entry.owner == current )
+        {
+            return false;
+        }
+
+        // register before checking, so that at least one of two
+        // mutually waiting threads sees the other
+        WAITING.put( current, entry );
+
+        try
+        {
+            if ( waitsFor( entry.owner, current ) )
+            {
+                return false;
+            }
+
+            entry.latch.await();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException( "Interrupted while waiting for a cache load", e );
+        }
+        finally
+        {
+            WAITING.remove( current );
+        }
+
+        if ( entry.failure instanceof RuntimeException )
+        {
+            throw ( RuntimeException ) entry.failure;
+        }
+        else if ( entry.failure instanceof Error )
+        {
+            throw ( Error ) entry.failure;
+        }
+
+        return true;
+    }
+
+    private static boolean waitsFor( Thread owner, Thread target )
+    {
+        Thread candidate = owner;
+
+        // bounded walk of the waits-for chain
+        for ( int i = 0; candidate != null && i < 1000; i++ )
+        {
+            if ( candidate == target )
+            {
+                return true;
+            }
+
+            final Entry< ?, ? > awaited = WAITING.get( candidate );
+
+            candidate = ( awaited == null || awaited.isDone() ) ? null : awaited.owner;
+        }
+
+        return false;
+    }
+
+    private void unmap( Entry< K, V > entry )
+    {
+        if ( entries.remove( entry.key, entry ) )
+        {
+            discard( entry );
+            removed();
+        }
+    }
+
+    private void discard( Entry< K, V > entry )
+    {
+        if ( entry.discharge() )
+        {
+            weight.addAndGet( - entry.weight );
+        }
+    }
+
+    private int maxUses()
+    {
+        return evictionPolicy == EvictionPolicy.LFU ? MAX_USES : 1;
+    }
+
+    /*
+     * Removed entries are left in the clock, to be dropped as the hand passes them,
+     * unless they outnumber the entries (e.g. when nothing is being evicted).
+     */
+    private void removed()
+    {
+        if ( removed.incrementAndGet() > Math.max( 64, entries.size() ) )
+        {
+            synchronized ( evictionLock )
+            {
+                removed.set( 0 );
+                clock.removeIf( entry -> entries.get( entry.key ) != entry );
+            }
+        }
+    }
+
+    private void evictIfNecessary( K protectedKey )
+    {
+        if ( entries.size() <= maxEntries && weight.get() <= maxWeight )
+        {
+            return;
+        }
+
+        synchronized ( evictionLock )
+        {
+            while ( entries.size() > maxEntries || weight.get() > maxWeight )
+            {
+                final Entry< K, V > victim = selectVictim( protectedKey );
+
+                if ( victim == null )
+                {
+                    return;
+                }
+
+                if ( entries.remove( victim.key, victim ) )
+                {
+                    discard( victim );
+                    evictionCount.increment();
+                }
+            }
+        }
+    }
+
+    /*
+     * Advance the hand of the clock to an entry that has not been used since the hand last passed it.
+     *
+     * Returns null if there is none, e.g. when every entry is loading
+     * (and so only passes each entry a bounded number of times).
+     */
+    private Entry< K, V > selectVictim( K protectedKey )
+    {
+        for ( long budget = ( MAX_USES + 2L ) * ( entries.size() + 1 ); budget > 0; budget-- )
+        {
+            final Entry< K, V > entry = clock.poll();
+
+            if ( entry == null )
+            {
+                return null;
+            }
+            else if ( entries.get( entry.key ) != entry )
+            {
+                // since removed
+                removed.decrementAndGet();
+            }
+            else if ( ! entry.isDone() || entry.key.equals( protectedKey ) || entry.spendUse() )
+            {
+                clock.offer( entry );
+            }
+            else
+            {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+
+    static class Entry< K, V >
+    {
+        private static final int UNCHARGED = 0;
+        private static final int CHARGED = 1;
+        private static final int DISCHARGED = 2;
+
+        private final K key;
+        private final Thread owner = Thread.currentThread();
+        private final CountDownLatch latch = new CountDownLatch( 1 );
+
+        private volatile V value;
+        private volatile Throwable failure;
+        private long weight;
+
+        // whether the weight is counted in the cache: UNCHARGED, then CHARGED (once loaded), then DISCHARGED (once removed)
+        private final AtomicInteger charge = new AtomicInteger( UNCHARGED );
+
+        // since the hand of the clock last passed: racy updates only skew eviction order
+        private volatile int uses;
+
+        Entry( K key )
+        {
+            this.key = key;
+        }
+
+        boolean isDone()
+        {
+            return latch.getCount() == 0;
+        }
+
+        V touch( int maxUses )
+        {
+            if ( uses < maxUses )
+            {
+                uses++;
+            }
+            return value;
+        }
+
+        // returns false if there were no uses to spend
+        boolean spendUse()
+        {
+            if ( uses > 0 )
+            {
+                uses--;
+                return true;
+            }
+            return false;
+        }
+
+        void complete( V value, long weight )
+        {
+            this.value = value;
+            this.weight = weight;
+            latch.countDown();
+        }
+
+        /*
+         * Returns true if the weight is to be added to the cache,
+         * i.e. the entry has not been removed before being charged.
+         */
+        boolean charge()
+        {
+            return charge.compareAndSet( UNCHARGED, CHARGED );
+        }
+
+        /*
+         * Returns true if the weight is to be subtracted from the cache,
+         * i.e. the entry was charged, and has not already been discharged.
+         */
+        boolean discharge()
+        {
+            return charge.getAndSet( DISCHARGED ) == CHARGED;
+        }
+
+        void fail( Throwable failure )
+        {
+            this.failure = failure;
+            latch.countDown();
+        }
+    }
+}
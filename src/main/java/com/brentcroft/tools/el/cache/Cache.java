@@ -0,0 +1,66 @@
+package com.brentcroft.tools.el.cache;
+
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache of values that are expensive to build (e.g. compiled templates).
+ *
+ * @param <K> the type of key
+ * @param <V> the type of cached value
+ * @author ADobson
+ */
+public interface Cache< K, V >
+{
+    /**
+     * Return the value cached under the key,
+     * otherwise load, cache and return a new value.
+     * <p>
+     * Each key is loaded at most once:
+     * concurrent callers for the same key wait for the first load to complete.
+     *
+     * @param key    the key
+     * @param loader builds a value for the key when none is cached
+     * @return the cached (or newly loaded) value
+     */
+    V get( K key, Function< ? super K, ? extends V > loader );
+
+    /**
+     * @param key the key
+     * @return the value cached under the key, or null if there is none (or it is still loading)
+     */
+    V getIfPresent( K key );
+
+    /**
+     * Cache a value under the key, replacing any existing value.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    void put( K key, V value );
+
+    /**
+     * @param key the key to remove
+     */
+    void remove( K key );
+
+    /**
+     * Remove every value.
+     */
+    void clear();
+
+    /**
+     * @return the number of cached values
+     */
+    int size();
+
+    /**
+     * @return a snapshot of the keys of the cached values
+     */
+    Set< K > keys();
+
+    /**
+     * @return a snapshot of the cache counters
+     */
+    CacheStats getStats();
+}
@@ -0,0 +1,59 @@
+package com.brentcroft.tools.el.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import static java.lang.String.format;
+
+/**
+ * An immutable snapshot of the counters of a cache.
+ *
+ * @author ADobson
+ */
+@Getter
+@AllArgsConstructor
+public class CacheStats
+{
+    private final long hitCount;
+    private final long missCount;
+    private final long loadCount;
+    private final long loadFailureCount;
+    private final long totalLoadNanos;
+    private final long evictionCount;
+    private final int size;
+    private final long weight;
+
+    public long getRequestCount()
+    {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return the ratio of hits to requests, or 1 if there have been no requests
+     */
+    public double getHitRatio()
+    {
+        final long requests = getRequestCount();
+
+        return requests == 0 ? 1.0 : ( double ) hitCount / requests;
+    }
+
+    public double getAverageLoadNanos()
+    {
+        return loadCount == 0 ? 0.0 : ( double ) totalLoadNanos / loadCount;
+    }
+
+    public String toString()
+    {
+        return format( "hits=%s, misses=%s, hitRatio=%.3f, loads=%s, loadFailures=%s, averageLoadMillis=%.3f, evictions=%s, size=%s, weight=%s",
+                hitCount,
+                missCount,
+                getHitRatio(),
+                loadCount,
+                loadFailureCount,
+                getAverageLoadNanos() / 1_000_000,
+                evictionCount,
+                size,
+                weight );
+    }
+}
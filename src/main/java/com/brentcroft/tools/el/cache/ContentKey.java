@@ -0,0 +1,127 @@
+package com.brentcroft.tools.el.cache;
+
+import lombok.Getter;
+
+import java.util.Objects;
+
+/**
+ * A cache key for a template built from text (rather than loaded from a uri).
+ * <p>
+ * Keys are compared first by a 64-bit hash of the text and its length,
+ * and only then by the text itself, so that distinct texts never share a template.
+ * <p>
+ * An optional context (e.g. the notional uri of the text) also distinguishes keys.
+ *
+ * @author ADobson
+ */
+@Getter
+public final class ContentKey
+{
+    // approximate bytes per char: one copy held by the key, one by the parsed literals
+    private static final int BYTES_PER_CHAR = 4;
+    private static final int OVERHEAD_BYTES = 256;
+
+    private final String text;
+    private final String context;
+    private final long hash;
+    private final int length;
+
+    private ContentKey( String text, String context )
+    {
+        this.text = Objects.requireNonNull( text, "text" );
+        this.context = context;
+        this.length = text.length();
+        this.hash = hash( text, context );
+    }
+
+    public static ContentKey of( String text )
+    {
+        return new ContentKey( text, null );
+    }
+
+    public static ContentKey of( String text, String context )
+    {
+        return new ContentKey( text, context );
+    }
+
+    /**
+     * Create a cache of templates keyed by their text,
+     * bounded by the approximate memory held by the texts and their parsed templates.
+     *
+     * @param maxBytes the approximate maximum number of bytes to hold
+     * @param <V>      the type of template
+     * @return a new bounded cache
+     */
+    public static < V > BoundedCache< ContentKey, V > newBoundedCache( long maxBytes )
+    {
+        return new BoundedCache< ContentKey, V >()
+                .withMaxWeight( maxBytes, ( key, value ) -> key.estimateBytes() );
+    }
+
+    /**
+     * @return a rough estimate of the memory held by this key and its parsed template
+     */
+    public long estimateBytes()
+    {
+        return OVERHEAD_BYTES + ( long ) BYTES_PER_CHAR * ( length + ( context == null ? 0 : context.length() ) );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return ( int ) ( hash ^ ( hash >>> 32 ) );
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        else if ( ! ( o instanceof ContentKey ) )
+        {
+            return false;
+        }
+
+        final ContentKey other = ( ContentKey ) o;
+
+        return hash == other.hash
+                && length == other.length
+                && text.equals( other.text )
+                && Objects.equals( context, other.context );
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "%016x:%s", hash, length );
+    }
+
+    /*
+     * 64-bit FNV-1a over the chars of the text, then the context.
+     */
+    private static long hash( String text, String context )
+    {
+        long h = 0xcbf29ce484222325L;
+
+        h = hash( h, text );
+
+        if ( context != null )
+        {
+            h = hash( h ^ 0xff, context );
+        }
+
+        return h;
+    }
+
+    private static long hash( long h, String text )
+    {
+        for ( int i = 0, n = text.length(); i < n; i++ )
+        {
+            h ^= text.charAt( i );
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,20 @@
+package com.brentcroft.tools.el.cache;
+
+/**
+ * How a bounded cache chooses a value to evict
+ * (approximately: see <code>BoundedCache</code>).
+ *
+ * @author ADobson
+ */
+public enum EvictionPolicy
+{
+    /**
+     * Evict the least recently used value.
+     */
+    LRU,
+
+    /**
+     * Evict the least frequently used value (the least recently used of any ties).
+     */
+    LFU
+}
@@ -0,0 +1,206 @@
+package com.brentcroft.tools.el.cache;
+
+import jakarta.el.ELContext;
+import jakarta.el.ExpressionFactory;
+import jakarta.el.ValueExpression;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * A thread-safe cache of compiled <code>ValueExpression</code>s,
+ * keyed by the normalised text of the expression and its expected type.
+ * <p>
+ * Texts that differ only by insignificant whitespace share one compiled expression:
+ * inside <code>${...}</code> (or <code>#{...}</code>), and outside quoted strings,
+ * whitespace is removed next to brackets, braces, parentheses, commas and semicolons,
+ * and between an operator and an operand,
+ * and otherwise collapsed to a single space
+ * (so that <code>x+1</code>, <code>x + 1</code> and <code>( x + 1 )</code> differ only by the parentheses,
+ * while <code>a ne b</code> or <code>a - -b</code> keep their separating space).
+ * <p>
+ * By default the cache holds at most <code>DEFAULT_MAX_EXPRESSIONS</code> expressions,
+ * evicting (approximately) the least recently used.
+ *
+ * @author ADobson
+ */
+public class ExpressionCache
+{
+    public static final long DEFAULT_MAX_EXPRESSIONS = 10_000;
+
+    private final Cache< String, ValueExpression > cache;
+
+    public ExpressionCache()
+    {
+        this( new BoundedCache< String, ValueExpression >().withMaxEntries( DEFAULT_MAX_EXPRESSIONS ) );
+    }
+
+    public ExpressionCache( Cache< String, ValueExpression > cache )
+    {
+        this.cache = Objects.requireNonNull( cache, "cache" );
+    }
+
+    /**
+     * Return the cached compilation of the expression text,
+     * otherwise compile, cache and return a new ValueExpression.
+     *
+     * @param expressionFactory compiles the expression text
+     * @param context           provides functions and variables during compilation
+     * @param expression        the expression text (including <code>${...}</code>)
+     * @param expectedType      the type to coerce the value of the expression to
+     * @return the compiled ValueExpression
+     */
+    public ValueExpression getValueExpression( ExpressionFactory expressionFactory, ELContext context, String expression, Class< ? > expectedType )
+    {
+        return getValueExpression( expression, expectedType, ( text, type ) -> expressionFactory.createValueExpression( context, text, type ) );
+    }
+
+    /**
+     * Return the cached compilation of the expression text,
+     * otherwise compile (using the supplied compiler), cache and return a new ValueExpression.
+     *
+     * @param expression   the expression text (including <code>${...}</code>)
+     * @param expectedType the type to coerce the value of the expression to
+     * @param compiler     compiles the expression text to a ValueExpression of the expected type
+     * @return the compiled ValueExpression
+     */
+    public ValueExpression getValueExpression( String expression, Class< ? > expectedType, BiFunction< String, Class< ? >, ValueExpression > compiler )
+    {
+        return cache.get(
+                key( expression, expectedType ),
+                key -> compiler.apply( expression, expectedType ) );
+    }
+
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    public int size()
+    {
+        return cache.size();
+    }
+
+    public CacheStats getStats()
+    {
+        return cache.getStats();
+    }
+
+    public double getHitRatio()
+    {
+        return cache.getStats().getHitRatio();
+    }
+
+
+    static String key( String expression, Class< ? > expectedType )
+    {
+        return normalise( expression ) + '\0' + expectedType.getName();
+    }
+
+    /**
+     * Normalise the whitespace inside any EL expressions in the text,
+     * leaving quoted strings, and text outside of expressions, unchanged.
+     *
+     * @param text the text to normalise
+     * @return the normalised text
+     */
+    public static String normalise( String text )
+    {
+        final int length = text.length();
+        final StringBuilder b = new StringBuilder( length );
+
+        // depth of braces: zero when outside any expression
+        int depth = 0;
+        char quote = 0;
+        boolean space = false;
+
+        for ( int i = 0; i < length; i++ )
+        {
+            final char c = text.charAt( i );
+            final char next = i + 1 < length ? text.charAt( i + 1 ) : 0;
+
+            if ( depth == 0 )
+            {
+                b.append( c );
+
+                if ( c == '\\' && ( next == '$' || next == '#' ) )
+                {
+                    // escaped: not an expression
+                    b.append( next );
+                    i++;
+                }
+                else if ( ( c == '$' || c == '#' ) && next == '{' )
+                {
+                    b.append( next );
+                    i++;
+                    depth = 1;
+                }
+            }
+            else if ( quote != 0 )
+            {
+                b.append( c );
+
+                if ( c == '\\' && next != 0 )
+                {
+                    b.append( next );
+                    i++;
+                }
+                else if ( c == quote )
+                {
+                    quote = 0;
+                }
+            }
+            else if ( Character.isWhitespace( c ) )
+            {
+                space = true;
+            }
+            else
+            {
+                if ( space && needsSpace( b.charAt( b.length() - 1 ), c ) )
+                {
+                    b.append( ' ' );
+                }
+
+                space = false;
+
+                b.append( c );
+
+                if ( c == '\'' || c == '"' )
+                {
+                    quote = c;
+                }
+                else if ( c == '{' )
+                {
+                    depth++;
+                }
+                else if ( c == '}' )
+                {
+                    depth--;
+                }
+            }
+        }
+
+        return b.toString();
+    }
+
+    /*
+     * A space is only significant between two operands (e.g. "a ne b"),
+     * or between two operators that would otherwise merge (e.g. "a - -b").
+     */
+    private static boolean needsSpace( char before, char after )
+    {
+        return ! isSeparator( before )
+                && ! isSeparator( after )
+                && isOperator( before ) == isOperator( after );
+    }
+
+    private static boolean isSeparator( char c )
+    {
+        return "()[]{},;".indexOf( c ) > - 1;
+    }
+
+    private static boolean isOperator( char c )
+    {
+        return "+-*/%=<>!&|?:~^".indexOf( c ) > - 1;
+    }
+}
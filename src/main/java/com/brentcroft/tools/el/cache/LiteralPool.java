@@ -0,0 +1,64 @@
+package com.brentcroft.tools.el.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A thread-safe pool of the literal text of compiled templates,
+ * so that templates with the same literal text hold one copy of it.
+ * <p>
+ * Texts are only weakly held: a text no longer used by any template is discarded.
+ *
+ * @author ADobson
+ */
+public class LiteralPool
+{
+    private final Map< String, WeakReference< String > > pool = new WeakHashMap<>();
+
+    private long requests;
+    private long hits;
+
+    /**
+     * @param text some text
+     * @return the pooled text equal to the supplied text (which is pooled if there is none)
+     */
+    public synchronized String intern( String text )
+    {
+        requests++;
+
+        final WeakReference< String > reference = pool.get( text );
+        final String pooled = reference == null ? null : reference.get();
+
+        if ( pooled != null )
+        {
+            hits++;
+            return pooled;
+        }
+
+        pool.put( text, new WeakReference<>( text ) );
+
+        return text;
+    }
+
+    /**
+     * @return the number of texts pooled (and still in use)
+     */
+    public synchronized int size()
+    {
+        return pool.size();
+    }
+
+    /**
+     * @return the number of times a text was already pooled
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getRequests()
+    {
+        return requests;
+    }
+}
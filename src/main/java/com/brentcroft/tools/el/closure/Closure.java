@@ -0,0 +1,16 @@
+package com.brentcroft.tools.el.closure;
+
+import jakarta.el.ELContext;
+
+/**
+ * A compiled (sub-)expression: evaluated against an <code>ELContext</code>
+ * without any further interpretation of its parse tree.
+ *
+ * @author ADobson
+ * @see Node#compile(ELContext)
+ */
+@FunctionalInterface
+public interface Closure
+{
+    Object evaluate( ELContext context );
+}
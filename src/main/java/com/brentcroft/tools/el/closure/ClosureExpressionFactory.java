@@ -0,0 +1,75 @@
+package com.brentcroft.tools.el.closure;
+
+import com.sun.el.ExpressionFactoryImpl;
+import jakarta.el.*;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An <code>ExpressionFactory</code> whose value expressions are parsed (see <code>ClosureParser</code>)
+ * and then compiled into a tree of closures (see <code>Node.compile</code>),
+ * rather than interpreted by walking the parse tree on each evaluation.
+ * <p>
+ * Properties, methods and (imported) classes are still resolved by the context's <code>ELResolver</code>,
+ * and the operators coerce their operands as the reference implementation does,
+ * so expressions have the same values;
+ * while method expressions, and coercion, are delegated to the reference implementation.
+ * <p>
+ * Selected either with <code>ELTemplateManager.withExpressionFactory( new ClosureExpressionFactory() )</code>,
+ * or (for every <code>ExpressionFactory.newInstance()</code>) with the system property:
+ * <pre>
+ * -Djakarta.el.ExpressionFactory=com.brentcroft.tools.el.closure.ClosureExpressionFactory
+ * </pre>
+ *
+ * @author ADobson
+ */
+public class ClosureExpressionFactory extends ExpressionFactory
+{
+    private final ExpressionFactory delegate = new ExpressionFactoryImpl();
+
+    @Override
+    public ValueExpression createValueExpression( ELContext context, String expression, Class< ? > expectedType )
+    {
+        Objects.requireNonNull( expectedType, "expectedType" );
+
+        final Node node = ClosureParser.parse( expression );
+
+        return new ClosureValueExpression(
+                expression,
+                node.compile( context ),
+                expectedType,
+                node instanceof Node.Literal && ( ( Node.Literal ) node ).getValue() instanceof String );
+    }
+
+    @Override
+    public ValueExpression createValueExpression( Object instance, Class< ? > expectedType )
+    {
+        return delegate.createValueExpression( instance, expectedType );
+    }
+
+    @Override
+    public MethodExpression createMethodExpression( ELContext context, String expression, Class< ? > expectedReturnType, Class< ? >[] expectedParamTypes )
+    {
+        return delegate.createMethodExpression( context, expression, expectedReturnType, expectedParamTypes );
+    }
+
+    @Override
+    public Object coerceToType( Object obj, Class< ? > targetType )
+    {
+        return delegate.coerceToType( obj, targetType );
+    }
+
+    @Override
+    public ELResolver getStreamELResolver()
+    {
+        return delegate.getStreamELResolver();
+    }
+
+    @Override
+    public Map< String, Method > getInitFunctionMap()
+    {
+        return delegate.getInitFunctionMap();
+    }
+}
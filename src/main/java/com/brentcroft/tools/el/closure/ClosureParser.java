@@ -0,0 +1,720 @@
+package com.brentcroft.tools.el.closure;
+
+import jakarta.el.ELException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * A recursive descent parser of the EL grammar (as in EL 3.0 onwards),
+ * producing a tree of <code>Node</code>s:
+ * <pre>
+ * Expression  := Assignment ( ';' Assignment )*
+ * Assignment  := Lambda | Choice ( '=' Assignment )?
+ * Lambda      := ( Identifier | '(' Identifiers? ')' ) '-&gt;' ( Lambda | Choice )
+ * Choice      := Or ( '?' Choice ':' Choice )?
+ * Or          := And ( ( 'or' | '||' ) And )*
+ * And         := Equality ( ( 'and' | '&amp;&amp;' ) Equality )*
+ * Equality    := Compare ( ( 'eq' | '==' | 'ne' | '!=' ) Compare )*
+ * Compare     := Concat ( ( 'lt' | '&lt;' | 'gt' | '&gt;' | 'le' | '&lt;=' | 'ge' | '&gt;=' ) Concat )*
+ * Concat      := Math ( '+=' Math )*
+ * Math        := Multiply ( ( '+' | '-' ) Multiply )*
+ * Multiply    := Unary ( ( '*' | '/' | 'div' | '%' | 'mod' ) Unary )*
+ * Unary       := ( '-' | '!' | 'not' | 'empty' ) Unary | Value
+ * Value       := Prefix ( ( '.' Identifier | '[' Expression ']' ) Arguments? )*
+ * Prefix      := Literal | '(' Expression ')' Arguments* | Function | Identifier | '[' List ']' | '{' Set or Map '}'
+ * Function    := ( Identifier ':' )? Identifier Arguments+
+ * </pre>
+ * where only a lambda (in parentheses) may be followed by arguments.
+ *
+ * @author ADobson
+ */
+public class ClosureParser
+{
+    private static final Set< String > KEYWORDS = new HashSet<>( Arrays.asList(
+            "true", "false", "null", "empty", "not", "and", "or", "div", "mod",
+            "eq", "ne", "lt", "gt", "le", "ge", "instanceof" ) );
+
+    private static final Map< String, String > OPERATORS = new HashMap<>();
+
+    static
+    {
+        OPERATORS.put( "==", "eq" );
+        OPERATORS.put( "!=", "ne" );
+        OPERATORS.put( "<", "lt" );
+        OPERATORS.put( ">", "gt" );
+        OPERATORS.put( "<=", "le" );
+        OPERATORS.put( ">=", "ge" );
+        OPERATORS.put( "&&", "and" );
+        OPERATORS.put( "||", "or" );
+        OPERATORS.put( "/", "div" );
+        OPERATORS.put( "%", "mod" );
+        OPERATORS.put( "!", "not" );
+    }
+
+    private final String text;
+    private int pos;
+
+    private ClosureParser( String text )
+    {
+        this.text = text;
+    }
+
+    /**
+     * Parse the text of a value expression:
+     * literal text, <code>${...}</code> (or <code>#{...}</code>) expressions, or a mixture of both.
+     *
+     * @param text the text of the expression
+     * @return the root of its parse tree
+     * @throws ELException if the text doesn't parse
+     */
+    public static Node parse( String text )
+    {
+        return new ClosureParser( text ).composite();
+    }
+
+    private ELException error( String message )
+    {
+        return new ELException( format( "Error Parsing: %s: %s at position %s", text, message, pos ) );
+    }
+
+    private Node composite()
+    {
+        final List< Node > parts = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+
+        while ( pos < text.length() )
+        {
+            final char c = text.charAt( pos );
+
+            if ( c == '\\' && pos + 2 < text.length() && ( text.charAt( pos + 1 ) == '$' || text.charAt( pos + 1 ) == '#' ) && text.charAt( pos + 2 ) == '{' )
+            {
+                literal.append( text, pos + 1, pos + 3 );
+                pos += 3;
+            }
+            else if ( ( c == '$' || c == '#' ) && pos + 1 < text.length() && text.charAt( pos + 1 ) == '{' )
+            {
+                if ( literal.length() > 0 )
+                {
+                    parts.add( new Node.Literal( literal.toString() ) );
+                    literal.setLength( 0 );
+                }
+
+                pos += 2;
+                parts.add( expression() );
+                expect( "}" );
+            }
+            else
+            {
+                literal.append( c );
+                pos++;
+            }
+        }
+
+        if ( literal.length() > 0 || parts.isEmpty() )
+        {
+            parts.add( new Node.Literal( literal.toString() ) );
+        }
+
+        return parts.size() == 1 ? parts.get( 0 ) : new Node.Composite( parts );
+    }
+
+    // ---- lexical
+
+    private void skipSpace()
+    {
+        while ( pos < text.length() && Character.isWhitespace( text.charAt( pos ) ) )
+        {
+            pos++;
+        }
+    }
+
+    private boolean peek( String symbol )
+    {
+        skipSpace();
+
+        return text.startsWith( symbol, pos );
+    }
+
+    // a symbol, but not the start of a longer one (e.g. '=' but not '==', '-' but not '->')
+    private boolean accept( String symbol, String... unless )
+    {
+        if ( ! peek( symbol ) )
+        {
+            return false;
+        }
+
+        for ( String longer : unless )
+        {
+            if ( text.startsWith( longer, pos ) )
+            {
+                return false;
+            }
+        }
+
+        pos += symbol.length();
+
+        return true;
+    }
+
+    private void expect( String symbol )
+    {
+        if ( ! accept( symbol ) )
+        {
+            throw error( format( "expected '%s'", symbol ) );
+        }
+    }
+
+    private String peekWord()
+    {
+        skipSpace();
+
+        if ( pos >= text.length() || ! Character.isJavaIdentifierStart( text.charAt( pos ) ) )
+        {
+            return null;
+        }
+
+        int end = pos + 1;
+
+        while ( end < text.length() && Character.isJavaIdentifierPart( text.charAt( end ) ) )
+        {
+            end++;
+        }
+
+        return text.substring( pos, end );
+    }
+
+    private boolean acceptWord( String word )
+    {
+        if ( word.equals( peekWord() ) )
+        {
+            pos += word.length();
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private String identifier()
+    {
+        final String word = peekWord();
+
+        if ( word == null || KEYWORDS.contains( word ) )
+        {
+            throw error( "expected an identifier" );
+        }
+
+        pos += word.length();
+
+        return word;
+    }
+
+    // an operator (either a symbol or a word) from the list, in its canonical form, or null
+    private String operator( String... operators )
+    {
+        for ( String operator : operators )
+        {
+            final boolean accepted = Character.isLetter( operator.charAt( 0 ) )
+                                     ? acceptWord( operator )
+                                     : accept( operator, operator + "=", operator.equals( "-" ) ? "->" : operator + "=" );
+
+            if ( accepted )
+            {
+                return OPERATORS.getOrDefault( operator, operator );
+            }
+        }
+
+        return null;
+    }
+
+    // ---- grammar
+
+    private Node expression()
+    {
+        final List< Node > nodes = new ArrayList<>();
+
+        nodes.add( assignment() );
+
+        while ( accept( ";" ) )
+        {
+            nodes.add( assignment() );
+        }
+
+        return nodes.size() == 1 ? nodes.get( 0 ) : new Node.Sequence( nodes );
+    }
+
+    private Node assignment()
+    {
+        if ( isLambda() )
+        {
+            return lambda();
+        }
+
+        final Node target = choice();
+
+        return accept( "=", "==" )
+               ? new Node.Assign( target, assignment() )
+               : target;
+    }
+
+    // lookahead: parameters followed by an arrow
+    private boolean isLambda()
+    {
+        final int start = pos;
+
+        try
+        {
+            if ( accept( "(" ) )
+            {
+                if ( ! accept( ")" ) )
+                {
+                    do
+                    {
+                        identifier();
+                    }
+                    while ( accept( "," ) );
+
+                    expect( ")" );
+                }
+            }
+            else
+            {
+                identifier();
+            }
+
+            return accept( "->" );
+        }
+        catch ( ELException e )
+        {
+            return false;
+        }
+        finally
+        {
+            pos = start;
+        }
+    }
+
+    private Node lambda()
+    {
+        final List< String > parameters = new ArrayList<>();
+
+        if ( accept( "(" ) )
+        {
+            if ( ! accept( ")" ) )
+            {
+                do
+                {
+                    parameters.add( identifier() );
+                }
+                while ( accept( "," ) );
+
+                expect( ")" );
+            }
+        }
+        else
+        {
+            parameters.add( identifier() );
+        }
+
+        expect( "->" );
+
+        return new Node.Lambda( parameters, isLambda() ? lambda() : choice(), Collections.emptyList() );
+    }
+
+    private Node choice()
+    {
+        final Node test = or();
+
+        if ( accept( "?" ) )
+        {
+            final Node ifTrue = choice();
+
+            expect( ":" );
+
+            return new Node.Choice( test, ifTrue, choice() );
+        }
+
+        return test;
+    }
+
+    private Node or()
+    {
+        Node node = and();
+
+        while ( operator( "or", "||" ) != null )
+        {
+            node = new Node.Binary( "or", node, and() );
+        }
+
+        return node;
+    }
+
+    private Node and()
+    {
+        Node node = equality();
+
+        while ( operator( "and", "&&" ) != null )
+        {
+            node = new Node.Binary( "and", node, equality() );
+        }
+
+        return node;
+    }
+
+    private Node equality()
+    {
+        Node node = compare();
+
+        for ( String operator = operator( "eq", "==", "ne", "!=" ); operator != null; operator = operator( "eq", "==", "ne", "!=" ) )
+        {
+            node = new Node.Binary( operator, node, compare() );
+        }
+
+        return node;
+    }
+
+    private Node compare()
+    {
+        final String[] operators = { "lt", "gt", "le", "ge", "<=", ">=", "<", ">" };
+
+        Node node = concat();
+
+        for ( String operator = operator( operators ); operator != null; operator = operator( operators ) )
+        {
+            node = new Node.Binary( operator, node, concat() );
+        }
+
+        return node;
+    }
+
+    private Node concat()
+    {
+        Node node = math();
+
+        while ( accept( "+=" ) )
+        {
+            node = new Node.Binary( "+=", node, math() );
+        }
+
+        return node;
+    }
+
+    private Node math()
+    {
+        Node node = multiply();
+
+        for ( String operator = operator( "+", "-" ); operator != null; operator = operator( "+", "-" ) )
+        {
+            node = new Node.Binary( operator, node, multiply() );
+        }
+
+        return node;
+    }
+
+    private Node multiply()
+    {
+        final String[] operators = { "*", "/", "div", "%", "mod" };
+
+        Node node = unary();
+
+        for ( String operator = operator( operators ); operator != null; operator = operator( operators ) )
+        {
+            node = new Node.Binary( operator, node, unary() );
+        }
+
+        return node;
+    }
+
+    private Node unary()
+    {
+        final String operator = operator( "-", "!", "not", "empty" );
+
+        return operator == null
+               ? value()
+               : new Node.Unary( operator, unary() );
+    }
+
+    private Node value()
+    {
+        final Node prefix = prefix();
+        final List< Node.Step > steps = new ArrayList<>();
+
+        while ( true )
+        {
+            final String name;
+            final Node index;
+
+            if ( accept( "." ) )
+            {
+                name = identifier();
+                index = null;
+            }
+            else if ( accept( "[" ) )
+            {
+                name = null;
+                index = expression();
+                expect( "]" );
+            }
+            else
+            {
+                break;
+            }
+
+            steps.add( new Node.Step( name, index, peek( "(" ) ? arguments() : null ) );
+        }
+
+        return steps.isEmpty() ? prefix : new Node.Path( prefix, steps );
+    }
+
+    private List< Node > arguments()
+    {
+        final List< Node > arguments = new ArrayList<>();
+
+        expect( "(" );
+
+        if ( ! accept( ")" ) )
+        {
+            do
+            {
+                arguments.add( expression() );
+            }
+            while ( accept( "," ) );
+
+            expect( ")" );
+        }
+
+        return arguments;
+    }
+
+    private Node prefix()
+    {
+        skipSpace();
+
+        if ( pos >= text.length() )
+        {
+            throw error( "unexpected end" );
+        }
+
+        final char c = text.charAt( pos );
+
+        if ( c == '\'' || c == '"' )
+        {
+            return new Node.Literal( string( c ) );
+        }
+        else if ( Character.isDigit( c ) || c == '.' && pos + 1 < text.length() && Character.isDigit( text.charAt( pos + 1 ) ) )
+        {
+            return new Node.Literal( number() );
+        }
+        else if ( accept( "(" ) )
+        {
+            Node node = expression();
+
+            expect( ")" );
+
+            while ( node instanceof Node.Lambda && peek( "(" ) )
+            {
+                node = ( ( Node.Lambda ) node ).withInvocation( arguments() );
+            }
+
+            return node;
+        }
+        else if ( accept( "[" ) )
+        {
+            return new Node.Data( Node.Data.Kind.LIST, elements( "]", null ), Collections.emptyList() );
+        }
+        else if ( accept( "{" ) )
+        {
+            final List< Node > values = new ArrayList<>();
+            final List< Node > keys = elements( "}", values );
+
+            return values.isEmpty()
+                   ? new Node.Data( Node.Data.Kind.SET, keys, values )
+                   : new Node.Data( Node.Data.Kind.MAP, keys, values );
+        }
+        else if ( acceptWord( "true" ) )
+        {
+            return new Node.Literal( Boolean.TRUE );
+        }
+        else if ( acceptWord( "false" ) )
+        {
+            return new Node.Literal( Boolean.FALSE );
+        }
+        else if ( acceptWord( "null" ) )
+        {
+            return new Node.Literal( null );
+        }
+
+        final String name = identifier();
+        final int afterName = pos;
+
+        // a namespaced function: prefix:name(
+        if ( accept( ":" ) && peekWord() != null )
+        {
+            final String local = identifier();
+
+            if ( peek( "(" ) )
+            {
+                return function( name, local );
+            }
+        }
+
+        pos = afterName;
+
+        return peek( "(" )
+               ? function( "", name )
+               : new Node.Identifier( name );
+    }
+
+    private Node function( String prefix, String name )
+    {
+        final List< List< Node > > invocations = new ArrayList<>();
+
+        while ( peek( "(" ) )
+        {
+            invocations.add( arguments() );
+        }
+
+        return new Node.Function( prefix, name, invocations );
+    }
+
+    // list or set elements, or (when values is not null) map entries
+    private List< Node > elements( String close, List< Node > values )
+    {
+        final List< Node > keys = new ArrayList<>();
+
+        if ( accept( close ) )
+        {
+            return keys;
+        }
+
+        boolean map = false;
+
+        do
+        {
+            keys.add( expression() );
+
+            if ( values != null )
+            {
+                final boolean entry = accept( ":" );
+
+                if ( keys.size() == 1 )
+                {
+                    map = entry;
+                }
+                else if ( entry != map )
+                {
+                    throw error( "mixed set and map elements" );
+                }
+
+                if ( entry )
+                {
+                    values.add( expression() );
+                }
+            }
+        }
+        while ( accept( "," ) );
+
+        expect( close );
+
+        return keys;
+    }
+
+    private String string( char quote )
+    {
+        final StringBuilder b = new StringBuilder();
+
+        pos++;
+
+        while ( pos < text.length() )
+        {
+            final char c = text.charAt( pos++ );
+
+            if ( c == quote )
+            {
+                return b.toString();
+            }
+            else if ( c == '\\' )
+            {
+                final char escaped = pos < text.length() ? text.charAt( pos++ ) : 0;
+
+                if ( escaped != '\\' && escaped != '\'' && escaped != '"' )
+                {
+                    throw error( "invalid escape" );
+                }
+
+                b.append( escaped );
+            }
+            else
+            {
+                b.append( c );
+            }
+        }
+
+        throw error( "unterminated string" );
+    }
+
+    private Object number()
+    {
+        final int start = pos;
+        boolean floating = false;
+
+        while ( pos < text.length() && Character.isDigit( text.charAt( pos ) ) )
+        {
+            pos++;
+        }
+
+        if ( pos < text.length() && text.charAt( pos ) == '.' )
+        {
+            floating = true;
+            pos++;
+
+            while ( pos < text.length() && Character.isDigit( text.charAt( pos ) ) )
+            {
+                pos++;
+            }
+        }
+
+        if ( pos < text.length() && ( text.charAt( pos ) == 'e' || text.charAt( pos ) == 'E' ) )
+        {
+            int exponent = pos + 1;
+
+            if ( exponent < text.length() && ( text.charAt( exponent ) == '+' || text.charAt( exponent ) == '-' ) )
+            {
+                exponent++;
+            }
+
+            if ( exponent < text.length() && Character.isDigit( text.charAt( exponent ) ) )
+            {
+                floating = true;
+                pos = exponent;
+
+                while ( pos < text.length() && Character.isDigit( text.charAt( pos ) ) )
+                {
+                    pos++;
+                }
+            }
+        }
+
+        final String image = text.substring( start, pos );
+
+        try
+        {
+            return floating ? ( Object ) Double.valueOf( image ) : ( Object ) Long.valueOf( image );
+        }
+        catch ( NumberFormatException e )
+        {
+            return floating ? new BigDecimal( image ) : new BigInteger( image );
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.brentcroft.tools.el.closure;
+
+import jakarta.el.ELContext;
+import jakarta.el.PropertyNotWritableException;
+import jakarta.el.ValueExpression;
+
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/**
+ * A <code>ValueExpression</code> evaluated by a <code>Closure</code>
+ * (notifying evaluation listeners, and coercing its value to the expected type,
+ * as the reference implementation does).
+ *
+ * @author ADobson
+ */
+public class ClosureValueExpression extends ValueExpression
+{
+    private final String expression;
+    private final transient Closure closure;
+    private final Class< ? > expectedType;
+    private final boolean literalText;
+
+    /**
+     * @param expression   the text of the expression
+     * @param closure      the compiled expression
+     * @param expectedType the type to coerce to (or null not to coerce)
+     */
+    public ClosureValueExpression( String expression, Closure closure, Class< ? > expectedType )
+    {
+        this( expression, closure, expectedType, false );
+    }
+
+    public ClosureValueExpression( String expression, Closure closure, Class< ? > expectedType, boolean literalText )
+    {
+        this.expression = expression;
+        this.closure = closure;
+        this.expectedType = expectedType;
+        this.literalText = literalText;
+    }
+
+    @Override
+    public Object getValue( ELContext context )
+    {
+        context.notifyBeforeEvaluation( expression );
+
+        Object value = closure.evaluate( context );
+
+        // nothing converts to Object
+        if ( expectedType != null && expectedType != Object.class )
+        {
+            value = context.convertToType( value, expectedType );
+        }
+
+        context.notifyAfterEvaluation( expression );
+
+        return value;
+    }
+
+    private Reference reference()
+    {
+        if ( closure instanceof Reference )
+        {
+            return ( Reference ) closure;
+        }
+
+        throw new PropertyNotWritableException( format( "Illegal Syntax for Set Operation: %s", expression ) );
+    }
+
+    @Override
+    public void setValue( ELContext context, Object value )
+    {
+        reference().setValue( context, value );
+    }
+
+    @Override
+    public boolean isReadOnly( ELContext context )
+    {
+        return ! ( closure instanceof Reference ) || ( ( Reference ) closure ).isReadOnly( context );
+    }
+
+    @Override
+    public Class< ? > getType( ELContext context )
+    {
+        if ( closure instanceof Reference )
+        {
+            return ( ( Reference ) closure ).getType( context );
+        }
+
+        final Object value = closure.evaluate( context );
+
+        return value == null ? null : value.getClass();
+    }
+
+    @Override
+    public Class< ? > getExpectedType()
+    {
+        return expectedType;
+    }
+
+    @Override
+    public String getExpressionString()
+    {
+        return expression;
+    }
+
+    @Override
+    public boolean isLiteralText()
+    {
+        return literalText;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        return o instanceof ClosureValueExpression
+                && expression.equals( ( ( ClosureValueExpression ) o ).expression )
+                && Objects.equals( expectedType, ( ( ClosureValueExpression ) o ).expectedType );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return expression.hashCode();
+    }
+
+    public String toString()
+    {
+        return format( "ClosureValueExpression[%s]", expression );
+    }
+}
@@ -0,0 +1,1124 @@
+package com.brentcroft.tools.el.closure;
+
+import com.sun.el.lang.ELSupport;
+import jakarta.el.*;
+import lombok.Getter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * A node of the parse tree of an expression (see <code>ClosureParser</code>),
+ * which compiles (with the functions and variables of a context) into a <code>Closure</code>.
+ * <p>
+ * Compilation does as much as possible once:
+ * functions are resolved (and their parameter types captured),
+ * operators are bound to their (fast path) operations,
+ * and property chains are flattened into an array of steps.
+ *
+ * @author ADobson
+ */
+public abstract class Node
+{
+    /**
+     * Compile this node, folding it into its value (computed once, now) if it is constant,
+     * unless computing it fails (which is then left to happen at evaluation).
+     *
+     * @param context provides the functions and variables of the expression
+     * @return the compiled node
+     * @throws ELException if a function can't be resolved
+     */
+    public final Closure compile( ELContext context )
+    {
+        final Closure closure = compileNode( context );
+
+        if ( this instanceof Literal || ! isConstant() )
+        {
+            return closure;
+        }
+
+        try
+        {
+            final Object value = closure.evaluate( context );
+
+            return c -> value;
+        }
+        catch ( RuntimeException e )
+        {
+            return closure;
+        }
+    }
+
+    /**
+     * @param context provides the functions and variables of the expression
+     * @return the compiled node
+     * @throws ELException if a function can't be resolved
+     */
+    protected abstract Closure compileNode( ELContext context );
+
+    /**
+     * Only literals, and operations on literals, are constant:
+     * any name (even of an imported class) may be resolved to a value bound at evaluation.
+     *
+     * @return true if the value of this node never changes
+     */
+    public boolean isConstant()
+    {
+        return false;
+    }
+
+    private static Closure[] compileAll( ELContext context, List< Node > nodes )
+    {
+        final Closure[] closures = new Closure[ nodes.size() ];
+
+        for ( int i = 0; i < closures.length; i++ )
+        {
+            closures[ i ] = nodes.get( i ).compile( context );
+        }
+
+        return closures;
+    }
+
+    private static Object[] evaluateAll( ELContext context, Closure[] closures )
+    {
+        final Object[] values = new Object[ closures.length ];
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            values[ i ] = closures[ i ].evaluate( context );
+        }
+
+        return values;
+    }
+
+    private static String join( List< Node > nodes )
+    {
+        return nodes.stream().map( Node::toString ).collect( Collectors.joining( "," ) );
+    }
+
+    private static Object invokeLambdas( ELContext context, Object value, Closure[][] invocations )
+    {
+        for ( Closure[] arguments : invocations )
+        {
+            if ( ! ( value instanceof LambdaExpression ) )
+            {
+                throw new ELException( "Expected Lambda expression" );
+            }
+
+            value = ( ( LambdaExpression ) value ).invoke( context, evaluateAll( context, arguments ) );
+        }
+
+        return value;
+    }
+
+
+    /**
+     * A literal: a number, string, boolean or null.
+     */
+    @Getter
+    public static final class Literal extends Node
+    {
+        private final Object value;
+
+        public Literal( Object value )
+        {
+            this.value = value;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            return c -> value;
+        }
+
+        public boolean isConstant()
+        {
+            return true;
+        }
+
+        public String toString()
+        {
+            return value instanceof String
+                   ? "'" + ( ( String ) value ).replace( "\\", "\\\\" ).replace( "'", "\\'" ) + "'"
+                   : String.valueOf( value );
+        }
+    }
+
+
+    /**
+     * Literal text and expressions, concatenated (and null expressions skipped).
+     */
+    @Getter
+    public static final class Composite extends Node
+    {
+        private final List< Node > parts;
+
+        public Composite( List< Node > parts )
+        {
+            this.parts = parts;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final Closure[] closures = compileAll( context, parts );
+
+            return c -> {
+                final StringBuilder b = new StringBuilder();
+
+                for ( Closure closure : closures )
+                {
+                    final Object value = closure.evaluate( c );
+
+                    if ( value != null )
+                    {
+                        b.append( ELSupport.coerceToString( value ) );
+                    }
+                }
+
+                return b.toString();
+            };
+        }
+
+        public boolean isConstant()
+        {
+            return parts.stream().allMatch( Node::isConstant );
+        }
+
+        public String toString()
+        {
+            return parts
+                    .stream()
+                    .map( part -> part instanceof Literal && ( ( Literal ) part ).getValue() instanceof String
+                                  ? ( String ) ( ( Literal ) part ).getValue()
+                                  : "${" + part + "}" )
+                    .collect( Collectors.joining() );
+        }
+    }
+
+
+    /**
+     * An identifier: a lambda argument, a variable, a root object, or an imported static field.
+     */
+    @Getter
+    public static final class Identifier extends Node
+    {
+        private final String name;
+
+        public Identifier( String name )
+        {
+            this.name = name;
+        }
+
+        protected Reference compileNode( ELContext context )
+        {
+            final VariableMapper variables = context.getVariableMapper();
+            final ValueExpression variable = variables == null ? null : variables.resolveVariable( name );
+
+            return new Reference()
+            {
+                public Object evaluate( ELContext c )
+                {
+                    if ( c.isLambdaArgument( name ) )
+                    {
+                        return c.getLambdaArgument( name );
+                    }
+                    else if ( variable != null )
+                    {
+                        return variable.getValue( c );
+                    }
+
+                    c.setPropertyResolved( false );
+
+                    final Object value = c.getELResolver().getValue( c, null, name );
+
+                    if ( c.isPropertyResolved() )
+                    {
+                        return value;
+                    }
+
+                    final ImportHandler importHandler = c.getImportHandler();
+                    final Class< ? > staticClass = importHandler == null ? null : importHandler.resolveStatic( name );
+
+                    if ( staticClass != null )
+                    {
+                        return c.getELResolver().getValue( c, new ELClass( staticClass ), name );
+                    }
+
+                    ELSupport.throwUnhandled( null, name );
+
+                    return null;
+                }
+
+                public void setValue( ELContext c, Object value )
+                {
+                    if ( c.isLambdaArgument( name ) )
+                    {
+                        throw new PropertyNotWritableException( format( "Cannot write to a lambda argument: %s", name ) );
+                    }
+                    else if ( variable != null )
+                    {
+                        variable.setValue( c, value );
+                        return;
+                    }
+
+                    c.setPropertyResolved( false );
+                    c.getELResolver().setValue( c, null, name, value );
+
+                    if ( ! c.isPropertyResolved() )
+                    {
+                        ELSupport.throwUnhandled( null, name );
+                    }
+                }
+
+                public Class< ? > getType( ELContext c )
+                {
+                    if ( c.isLambdaArgument( name ) )
+                    {
+                        final Object value = c.getLambdaArgument( name );
+
+                        return value == null ? null : value.getClass();
+                    }
+                    else if ( variable != null )
+                    {
+                        return variable.getType( c );
+                    }
+
+                    c.setPropertyResolved( false );
+
+                    final Class< ? > type = c.getELResolver().getType( c, null, name );
+
+                    if ( ! c.isPropertyResolved() )
+                    {
+                        ELSupport.throwUnhandled( null, name );
+                    }
+
+                    return type;
+                }
+
+                public boolean isReadOnly( ELContext c )
+                {
+                    if ( c.isLambdaArgument( name ) )
+                    {
+                        return true;
+                    }
+                    else if ( variable != null )
+                    {
+                        return variable.isReadOnly( c );
+                    }
+
+                    c.setPropertyResolved( false );
+
+                    final boolean readOnly = c.getELResolver().isReadOnly( c, null, name );
+
+                    if ( ! c.isPropertyResolved() )
+                    {
+                        ELSupport.throwUnhandled( null, name );
+                    }
+
+                    return readOnly;
+                }
+            };
+        }
+
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+
+    /**
+     * One step of a <code>Path</code>: a property (<code>.name</code>, or <code>[expression]</code>),
+     * optionally called as a method (with arguments).
+     */
+    @Getter
+    public static final class Step
+    {
+        private final String name;
+        private final Node index;
+        private final List< Node > arguments;
+
+        public Step( String name, Node index, List< Node > arguments )
+        {
+            this.name = name;
+            this.index = index;
+            this.arguments = arguments;
+        }
+
+        public boolean isMethod()
+        {
+            return arguments != null;
+        }
+
+        public String toString()
+        {
+            return ( name != null ? "." + name : "[" + index + "]" )
+                    + ( arguments != null ? "(" + join( arguments ) + ")" : "" );
+        }
+    }
+
+
+    /**
+     * A base value followed by properties and method calls.
+     */
+    @Getter
+    public static final class Path extends Node
+    {
+        private final Node base;
+        private final List< Step > steps;
+
+        public Path( Node base, List< Step > steps )
+        {
+            this.base = base;
+            this.steps = steps;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final Closure baseClosure = base.compile( context );
+            final int length = steps.size();
+            final Object[] names = new Object[ length ];
+            final Closure[] indexes = new Closure[ length ];
+            final Closure[][] arguments = new Closure[ length ][];
+
+            for ( int i = 0; i < length; i++ )
+            {
+                final Step step = steps.get( i );
+
+                names[ i ] = step.getName();
+                indexes[ i ] = step.getIndex() == null ? null : step.getIndex().compile( context );
+                arguments[ i ] = step.getArguments() == null ? null : compileAll( context, step.getArguments() );
+            }
+
+            // an undefined identifier may name an imported class
+            final String className = base instanceof Identifier ? ( ( Identifier ) base ).getName() : null;
+
+            final Closure target = c -> {
+                Object value;
+
+                try
+                {
+                    value = baseClosure.evaluate( c );
+                }
+                catch ( PropertyNotFoundException e )
+                {
+                    final ImportHandler importHandler = className == null ? null : c.getImportHandler();
+                    final Class< ? > imported = importHandler == null ? null : importHandler.resolveClass( className );
+
+                    if ( imported == null )
+                    {
+                        throw e;
+                    }
+
+                    value = new ELClass( imported );
+                }
+
+                return value;
+            };
+
+            final boolean lvalue = arguments[ length - 1 ] == null;
+
+            return lvalue
+                   ? new PathReference( target, names, indexes, arguments )
+                   : new PathClosure( target, names, indexes, arguments );
+        }
+
+        public String toString()
+        {
+            final StringBuilder b = new StringBuilder( base instanceof Identifier || base instanceof Literal ? base.toString() : "(" + base + ")" );
+
+            steps.forEach( b::append );
+
+            return b.toString();
+        }
+    }
+
+
+    private static class PathClosure implements Closure
+    {
+        final Closure target;
+        final Object[] names;
+        final Closure[] indexes;
+        final Closure[][] arguments;
+
+        PathClosure( Closure target, Object[] names, Closure[] indexes, Closure[][] arguments )
+        {
+            this.target = target;
+            this.names = names;
+            this.indexes = indexes;
+            this.arguments = arguments;
+        }
+
+        final Object property( ELContext c, int i )
+        {
+            return names[ i ] != null ? names[ i ] : indexes[ i ].evaluate( c );
+        }
+
+        // the value of the steps before the last
+        final Object base( ELContext c, int last )
+        {
+            Object value = target.evaluate( c );
+
+            for ( int i = 0; i < last && value != null; i++ )
+            {
+                value = step( c, value, i );
+            }
+
+            return value;
+        }
+
+        final Object step( ELContext c, Object base, int i )
+        {
+            final Object property = property( c, i );
+            final ELResolver resolver = c.getELResolver();
+
+            if ( arguments[ i ] != null )
+            {
+                final Object[] params = evaluateAll( c, arguments[ i ] );
+
+                c.setPropertyResolved( false );
+
+                final Object value = resolver.invoke( c, base, property, null, params );
+
+                if ( ! c.isPropertyResolved() )
+                {
+                    throw new MethodNotFoundException( format( "Method not found: %s.%s()", base.getClass(), property ) );
+                }
+
+                return value;
+            }
+            else if ( property == null )
+            {
+                return null;
+            }
+
+            c.setPropertyResolved( false );
+
+            final Object value = resolver.getValue( c, base, property );
+
+            if ( ! c.isPropertyResolved() )
+            {
+                ELSupport.throwUnhandled( base, property );
+            }
+
+            return value;
+        }
+
+        public Object evaluate( ELContext c )
+        {
+            Object value = target.evaluate( c );
+
+            for ( int i = 0; i < names.length && value != null; i++ )
+            {
+                value = step( c, value, i );
+            }
+
+            return value;
+        }
+    }
+
+
+    private static final class PathReference extends PathClosure implements Reference
+    {
+        PathReference( Closure target, Object[] names, Closure[] indexes, Closure[][] arguments )
+        {
+            super( target, names, indexes, arguments );
+        }
+
+        private Object reachable( ELContext c )
+        {
+            final Object base = base( c, names.length - 1 );
+
+            if ( base == null )
+            {
+                throw new PropertyNotFoundException( format( "Target unreachable, [%s] resolved to null", names.length > 1 ? property( c, names.length - 2 ) : "base" ) );
+            }
+
+            return base;
+        }
+
+        public void setValue( ELContext c, Object value )
+        {
+            final Object base = reachable( c );
+            final Object property = property( c, names.length - 1 );
+
+            c.setPropertyResolved( false );
+            c.getELResolver().setValue( c, base, property, value );
+
+            if ( ! c.isPropertyResolved() )
+            {
+                ELSupport.throwUnhandled( base, property );
+            }
+        }
+
+        public Class< ? > getType( ELContext c )
+        {
+            final Object base = reachable( c );
+            final Object property = property( c, names.length - 1 );
+
+            c.setPropertyResolved( false );
+
+            final Class< ? > type = c.getELResolver().getType( c, base, property );
+
+            if ( ! c.isPropertyResolved() )
+            {
+                ELSupport.throwUnhandled( base, property );
+            }
+
+            return type;
+        }
+
+        public boolean isReadOnly( ELContext c )
+        {
+            final Object base = reachable( c );
+            final Object property = property( c, names.length - 1 );
+
+            c.setPropertyResolved( false );
+
+            final boolean readOnly = c.getELResolver().isReadOnly( c, base, property );
+
+            if ( ! c.isPropertyResolved() )
+            {
+                ELSupport.throwUnhandled( base, property );
+            }
+
+            return readOnly;
+        }
+    }
+
+
+    /**
+     * A function call: a mapped function (<code>prefix:name( ... )</code>),
+     * or else (without a prefix) a lambda, an imported static method, or an imported class constructor;
+     * optionally followed by further calls (of the lambdas returned).
+     */
+    @Getter
+    public static final class Function extends Node
+    {
+        private final String prefix;
+        private final String name;
+        private final List< List< Node > > invocations;
+
+        public Function( String prefix, String name, List< List< Node > > invocations )
+        {
+            this.prefix = prefix;
+            this.name = name;
+            this.invocations = invocations;
+        }
+
+        private String qualifiedName()
+        {
+            return prefix.isEmpty() ? name : prefix + ":" + name;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final FunctionMapper functions = context.getFunctionMapper();
+            final Method method = functions == null ? null : functions.resolveFunction( prefix, name );
+
+            if ( method == null && ! prefix.isEmpty() )
+            {
+                throw new ELException( format( "Function '%s' not found", qualifiedName() ) );
+            }
+            else if ( method != null && ! method.isVarArgs() && method.getParameterCount() != invocations.get( 0 ).size() )
+            {
+                throw new ELException( format( "Function '%s' specifies %s params, but %s were supplied",
+                        qualifiedName(), method.getParameterCount(), invocations.get( 0 ).size() ) );
+            }
+
+            final Closure[][] arguments = new Closure[ invocations.size() ][];
+
+            for ( int i = 0; i < arguments.length; i++ )
+            {
+                arguments[ i ] = compileAll( context, invocations.get( i ) );
+            }
+
+            final Closure[][] further = Arrays.copyOfRange( arguments, 1, arguments.length );
+
+            final Closure lambda = prefix.isEmpty()
+                                   ? lambda( context )
+                                   : null;
+
+            final Closure call = method != null
+                                 ? function( method, arguments[ 0 ] )
+                                 : imported( arguments[ 0 ] );
+
+            return c -> {
+                final Object value = lambda == null ? null : lambda.evaluate( c );
+
+                return value instanceof LambdaExpression
+                       ? invokeLambdas( c, value, arguments )
+                       : invokeLambdas( c, call.evaluate( c ), further );
+            };
+        }
+
+        // the value of the name, if it might be a lambda (otherwise null)
+        private Closure lambda( ELContext context )
+        {
+            final Closure identifier = new Identifier( name ).compile( context );
+
+            return c -> {
+                try
+                {
+                    return identifier.evaluate( c );
+                }
+                catch ( PropertyNotFoundException e )
+                {
+                    return null;
+                }
+            };
+        }
+
+        private Closure function( Method method, Closure[] arguments )
+        {
+            final Class< ? >[] types = method.getParameterTypes();
+
+            return c -> {
+                final Object[] params = new Object[ arguments.length ];
+
+                for ( int i = 0; i < params.length; i++ )
+                {
+                    final Object value = arguments[ i ].evaluate( c );
+
+                    params[ i ] = i < types.length && ! types[ i ].isInstance( value )
+                                  ? c.convertToType( value, types[ i ] )
+                                  : value;
+                }
+
+                try
+                {
+                    return method.invoke( null, params );
+                }
+                catch ( IllegalAccessException e )
+                {
+                    throw new ELException( format( "Access denied calling function '%s'", qualifiedName() ), e );
+                }
+                catch ( InvocationTargetException e )
+                {
+                    throw new ELException( format( "Problems calling function '%s'", qualifiedName() ), e.getCause() );
+                }
+            };
+        }
+
+        private Closure imported( Closure[] arguments )
+        {
+            return c -> {
+                final ImportHandler importHandler = c.getImportHandler();
+
+                if ( importHandler != null )
+                {
+                    final Class< ? > constructed = importHandler.resolveClass( name );
+
+                    if ( constructed != null )
+                    {
+                        return c.getELResolver().invoke( c, new ELClass( constructed ), "<init>", null, evaluateAll( c, arguments ) );
+                    }
+
+                    final Class< ? > owner = importHandler.resolveStatic( name );
+
+                    if ( owner != null )
+                    {
+                        return c.getELResolver().invoke( c, new ELClass( owner ), name, null, evaluateAll( c, arguments ) );
+                    }
+                }
+
+                throw new ELException( format( "Function '%s' not found", qualifiedName() ) );
+            };
+        }
+
+        public String toString()
+        {
+            return qualifiedName() + invocations
+                    .stream()
+                    .map( arguments -> "(" + join( arguments ) + ")" )
+                    .collect( Collectors.joining() );
+        }
+    }
+
+    /**
+     * A lambda expression, optionally invoked immediately.
+     */
+    @Getter
+    public static final class Lambda extends Node
+    {
+        public static final String LAMBDA_EXPRESSION = "#{Lambda Expression}";
+
+        private final List< String > parameters;
+        private final Node body;
+        private final List< List< Node > > invocations;
+
+        public Lambda( List< String > parameters, Node body, List< List< Node > > invocations )
+        {
+            this.parameters = parameters;
+            this.body = body;
+            this.invocations = invocations;
+        }
+
+        public Lambda withInvocation( List< Node > arguments )
+        {
+            final List< List< Node > > more = new ArrayList<>( invocations );
+
+            more.add( arguments );
+
+            return new Lambda( parameters, body, more );
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final ValueExpression expression = new ClosureValueExpression( LAMBDA_EXPRESSION, body.compile( context ), null );
+
+            final Closure[][] arguments = new Closure[ invocations.size() ][];
+
+            for ( int i = 0; i < arguments.length; i++ )
+            {
+                arguments[ i ] = compileAll( context, invocations.get( i ) );
+            }
+
+            return c -> {
+                final LambdaExpression lambda = new LambdaExpression( parameters, expression );
+
+                lambda.setELContext( c );
+
+                return invokeLambdas( c, lambda, arguments );
+            };
+        }
+
+        public String toString()
+        {
+            final String lambda = ( parameters.size() == 1 ? parameters.get( 0 ) : "(" + String.join( ",", parameters ) + ")" ) + "->" + body;
+
+            return invocations.isEmpty()
+                   ? lambda
+                   : "(" + lambda + ")" + invocations
+                           .stream()
+                           .map( arguments -> "(" + join( arguments ) + ")" )
+                           .collect( Collectors.joining() );
+        }
+    }
+
+
+    /**
+     * A unary operator: <code>-</code>, <code>not</code> (or <code>!</code>) and <code>empty</code>.
+     */
+    @Getter
+    public static final class Unary extends Node
+    {
+        private final String operator;
+        private final Node operand;
+
+        public Unary( String operator, Node operand )
+        {
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final Closure closure = operand.compile( context );
+
+            switch ( operator )
+            {
+                case "-":
+                    return c -> Operations.negate( closure.evaluate( c ) );
+                case "not":
+                    return c -> ! Operations.isTrue( closure.evaluate( c ) );
+                case "empty":
+                    return c -> Operations.isEmpty( closure.evaluate( c ) );
+                default:
+                    throw new ELException( format( "Unknown operator: %s", operator ) );
+            }
+        }
+
+        public boolean isConstant()
+        {
+            return operand.isConstant();
+        }
+
+        public String toString()
+        {
+            return operator + ( Character.isLetter( operator.charAt( 0 ) ) ? " " : "" ) + operand;
+        }
+    }
+
+
+    /**
+     * A binary operator (with its canonical name: e.g. <code>eq</code> rather than <code>==</code>).
+     * <p>
+     * <code>and</code> and <code>or</code> only evaluate their right operand if they need to.
+     */
+    @Getter
+    public static final class Binary extends Node
+    {
+        private static final Map< String, BiFunction< Object, Object, Object > > OPERATIONS = new HashMap<>();
+
+        static
+        {
+            OPERATIONS.put( "+", Operations::add );
+            OPERATIONS.put( "-", Operations::subtract );
+            OPERATIONS.put( "*", Operations::multiply );
+            OPERATIONS.put( "div", Operations::divide );
+            OPERATIONS.put( "mod", Operations::mod );
+            OPERATIONS.put( "+=", Operations::concat );
+            OPERATIONS.put( "eq", Operations::equal );
+            OPERATIONS.put( "ne", ( a, b ) -> ! Operations.equal( a, b ) );
+            OPERATIONS.put( "lt", Operations::lessThan );
+            OPERATIONS.put( "gt", Operations::greaterThan );
+            OPERATIONS.put( "le", Operations::lessThanOrEqual );
+            OPERATIONS.put( "ge", Operations::greaterThanOrEqual );
+        }
+
+        private final String operator;
+        private final Node left;
+        private final Node right;
+
+        public Binary( String operator, Node left, Node right )
+        {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final Closure a = left.compile( context );
+            final Closure b = right.compile( context );
+
+            switch ( operator )
+            {
+                case "and":
+                    return c -> Operations.isTrue( a.evaluate( c ) ) && Operations.isTrue( b.evaluate( c ) );
+
+                case "or":
+                    return c -> Operations.isTrue( a.evaluate( c ) ) || Operations.isTrue( b.evaluate( c ) );
+
+                // the commonest, bound directly
+                case "+":
+                    return c -> Operations.add( a.evaluate( c ), b.evaluate( c ) );
+
+                case "eq":
+                    return c -> Operations.equal( a.evaluate( c ), b.evaluate( c ) );
+
+                case "lt":
+                    return c -> Operations.lessThan( a.evaluate( c ), b.evaluate( c ) );
+
+                case "gt":
+                    return c -> Operations.greaterThan( a.evaluate( c ), b.evaluate( c ) );
+            }
+
+            final BiFunction< Object, Object, Object > operation = OPERATIONS.get( operator );
+
+            if ( operation == null )
+            {
+                throw new ELException( format( "Unknown operator: %s", operator ) );
+            }
+
+            return c -> operation.apply( a.evaluate( c ), b.evaluate( c ) );
+        }
+
+        public boolean isConstant()
+        {
+            return left.isConstant() && right.isConstant();
+        }
+
+        public String toString()
+        {
+            return "(" + left + " " + operator + " " + right + ")";
+        }
+    }
+
+
+    /**
+     * The conditional operator: <code>test ? a : b</code>.
+     */
+    @Getter
+    public static final class Choice extends Node
+    {
+        private final Node test;
+        private final Node ifTrue;
+        private final Node ifFalse;
+
+        public Choice( Node test, Node ifTrue, Node ifFalse )
+        {
+            this.test = test;
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final Closure t = test.compile( context );
+            final Closure a = ifTrue.compile( context );
+            final Closure b = ifFalse.compile( context );
+
+            return c -> Operations.isTrue( t.evaluate( c ) ) ? a.evaluate( c ) : b.evaluate( c );
+        }
+
+        public boolean isConstant()
+        {
+            return test.isConstant() && ifTrue.isConstant() && ifFalse.isConstant();
+        }
+
+        public String toString()
+        {
+            return "(" + test + " ? " + ifTrue + " : " + ifFalse + ")";
+        }
+    }
+
+
+    /**
+     * An assignment: <code>target = value</code>, which has the value assigned.
+     */
+    @Getter
+    public static final class Assign extends Node
+    {
+        private final Node target;
+        private final Node value;
+
+        public Assign( Node target, Node value )
+        {
+            this.target = target;
+            this.value = value;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final Closure t = target.compile( context );
+            final Closure v = value.compile( context );
+
+            if ( ! ( t instanceof Reference ) )
+            {
+                return c -> {
+                    throw new PropertyNotWritableException( format( "Illegal Syntax for Set Operation: %s", target ) );
+                };
+            }
+
+            final Reference reference = ( Reference ) t;
+
+            return c -> {
+                final Object assigned = v.evaluate( c );
+
+                reference.setValue( c, assigned );
+
+                return assigned;
+            };
+        }
+
+        public String toString()
+        {
+            return target + " = " + value;
+        }
+    }
+
+
+    /**
+     * Expressions separated by semicolons: each is evaluated, and the value of the last is returned.
+     */
+    @Getter
+    public static final class Sequence extends Node
+    {
+        private final List< Node > nodes;
+
+        public Sequence( List< Node > nodes )
+        {
+            this.nodes = nodes;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final Closure[] closures = compileAll( context, nodes );
+            final int last = closures.length - 1;
+
+            return c -> {
+                for ( int i = 0; i < last; i++ )
+                {
+                    closures[ i ].evaluate( c );
+                }
+
+                return closures[ last ].evaluate( c );
+            };
+        }
+
+        public String toString()
+        {
+            return nodes.stream().map( Node::toString ).collect( Collectors.joining( "; " ) );
+        }
+    }
+
+
+    /**
+     * A list (<code>[a, b]</code>), set (<code>{a, b}</code>) or map (<code>{k: v}</code>) literal.
+     */
+    @Getter
+    public static final class Data extends Node
+    {
+        public enum Kind
+        {
+            LIST, SET, MAP
+        }
+
+        private final Kind kind;
+        private final List< Node > keys;
+        private final List< Node > values;
+
+        public Data( Kind kind, List< Node > keys, List< Node > values )
+        {
+            this.kind = kind;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        protected Closure compileNode( ELContext context )
+        {
+            final Closure[] k = compileAll( context, keys );
+
+            switch ( kind )
+            {
+                case LIST:
+                    return c -> new ArrayList<>( Arrays.asList( evaluateAll( c, k ) ) );
+
+                case SET:
+                    return c -> new HashSet<>( Arrays.asList( evaluateAll( c, k ) ) );
+
+                default:
+                    final Closure[] v = compileAll( context, values );
+
+                    return c -> {
+                        final Map< Object, Object > map = new HashMap<>();
+
+                        for ( int i = 0; i < k.length; i++ )
+                        {
+                            map.put( k[ i ].evaluate( c ), v[ i ].evaluate( c ) );
+                        }
+
+                        return map;
+                    };
+            }
+        }
+
+        public String toString()
+        {
+            switch ( kind )
+            {
+                case LIST:
+                    return "[" + join( keys ) + "]";
+
+                case SET:
+                    return "{" + join( keys ) + "}";
+
+                default:
+                    final StringJoiner entries = new StringJoiner( "," );
+
+                    for ( int i = 0; i < keys.size(); i++ )
+                    {
+                        entries.add( keys.get( i ) + ":" + values.get( i ) );
+                    }
+
+                    return "{" + entries + "}";
+            }
+        }
+    }
+}
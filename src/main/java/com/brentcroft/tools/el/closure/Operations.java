@@ -0,0 +1,273 @@
+package com.brentcroft.tools.el.closure;
+
+import com.sun.el.lang.ELArithmetic;
+import com.sun.el.lang.ELSupport;
+import jakarta.el.ELException;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The operators of EL, with fast paths for <code>Integer</code>, <code>Long</code> and <code>Double</code> operands
+ * (and <code>Boolean</code> and <code>String</code> operands, where they apply),
+ * otherwise falling back to the coercions of the reference implementation
+ * (<code>ELArithmetic</code> and <code>ELSupport</code>),
+ * so that every operator gives the same result (and type) as it does there.
+ *
+ * @author ADobson
+ */
+public final class Operations
+{
+    private Operations()
+    {
+    }
+
+    // operands that the reference implementation coerces to Long
+    private static boolean isIntegral( Object value )
+    {
+        return value instanceof Long || value instanceof Integer;
+    }
+
+    // operands that the reference implementation coerces to Double (alongside an integral or a double)
+    private static boolean isFloating( Object value )
+    {
+        return value instanceof Double;
+    }
+
+    private static boolean isSimple( Object value )
+    {
+        return isIntegral( value ) || isFloating( value );
+    }
+
+    public static Object add( Object a, Object b )
+    {
+        if ( isIntegral( a ) && isIntegral( b ) )
+        {
+            return ( ( Number ) a ).longValue() + ( ( Number ) b ).longValue();
+        }
+        else if ( isSimple( a ) && isSimple( b ) )
+        {
+            return ( ( Number ) a ).doubleValue() + ( ( Number ) b ).doubleValue();
+        }
+        return ELArithmetic.add( a, b );
+    }
+
+    public static Object subtract( Object a, Object b )
+    {
+        if ( isIntegral( a ) && isIntegral( b ) )
+        {
+            return ( ( Number ) a ).longValue() - ( ( Number ) b ).longValue();
+        }
+        else if ( isSimple( a ) && isSimple( b ) )
+        {
+            return ( ( Number ) a ).doubleValue() - ( ( Number ) b ).doubleValue();
+        }
+        return ELArithmetic.subtract( a, b );
+    }
+
+    public static Object multiply( Object a, Object b )
+    {
+        if ( isIntegral( a ) && isIntegral( b ) )
+        {
+            return ( ( Number ) a ).longValue() * ( ( Number ) b ).longValue();
+        }
+        else if ( isSimple( a ) && isSimple( b ) )
+        {
+            return ( ( Number ) a ).doubleValue() * ( ( Number ) b ).doubleValue();
+        }
+        return ELArithmetic.multiply( a, b );
+    }
+
+    public static Object divide( Object a, Object b )
+    {
+        // always a Double, unless big
+        if ( isSimple( a ) && isSimple( b ) )
+        {
+            return ( ( Number ) a ).doubleValue() / ( ( Number ) b ).doubleValue();
+        }
+        return ELArithmetic.divide( a, b );
+    }
+
+    public static Object mod( Object a, Object b )
+    {
+        if ( isIntegral( a ) && isIntegral( b ) )
+        {
+            return ( ( Number ) a ).longValue() % ( ( Number ) b ).longValue();
+        }
+        else if ( isSimple( a ) && isSimple( b ) )
+        {
+            return ( ( Number ) a ).doubleValue() % ( ( Number ) b ).doubleValue();
+        }
+        return ELArithmetic.mod( a, b );
+    }
+
+    public static Object negate( Object value )
+    {
+        if ( value == null )
+        {
+            return 0L;
+        }
+        else if ( value instanceof Long )
+        {
+            return - ( Long ) value;
+        }
+        else if ( value instanceof Integer )
+        {
+            return - ( Integer ) value;
+        }
+        else if ( value instanceof Double )
+        {
+            return - ( Double ) value;
+        }
+        else if ( value instanceof BigDecimal )
+        {
+            return ( ( BigDecimal ) value ).negate();
+        }
+        else if ( value instanceof BigInteger )
+        {
+            return ( ( BigInteger ) value ).negate();
+        }
+        else if ( value instanceof String )
+        {
+            // (not a conditional expression: that would promote the Long to a Double)
+            if ( ELSupport.isStringFloat( ( String ) value ) )
+            {
+                return - Double.parseDouble( ( String ) value );
+            }
+            return - Long.parseLong( ( String ) value );
+        }
+        else if ( value instanceof Float )
+        {
+            return - ( Float ) value;
+        }
+        else if ( value instanceof Short )
+        {
+            return ( short ) - ( Short ) value;
+        }
+        else if ( value instanceof Byte )
+        {
+            return ( byte ) - ( Byte ) value;
+        }
+        return - ( Long ) ELSupport.coerceToNumber( value, Long.class );
+    }
+
+    public static boolean isTrue( Object value )
+    {
+        return value instanceof Boolean
+               ? ( Boolean ) value
+               : ELSupport.coerceToBoolean( value );
+    }
+
+    public static boolean isEmpty( Object value )
+    {
+        if ( value == null )
+        {
+            return true;
+        }
+        else if ( value instanceof String )
+        {
+            return ( ( String ) value ).isEmpty();
+        }
+        else if ( value instanceof Collection )
+        {
+            return ( ( Collection< ? > ) value ).isEmpty();
+        }
+        else if ( value instanceof Map )
+        {
+            return ( ( Map< ?, ? > ) value ).isEmpty();
+        }
+        else if ( value.getClass().isArray() )
+        {
+            return Array.getLength( value ) == 0;
+        }
+        return false;
+    }
+
+    public static boolean equal( Object a, Object b )
+    {
+        if ( a == b )
+        {
+            return true;
+        }
+        else if ( isIntegral( a ) && isIntegral( b ) )
+        {
+            return ( ( Number ) a ).longValue() == ( ( Number ) b ).longValue();
+        }
+        else if ( a instanceof String && b instanceof String )
+        {
+            return a.equals( b );
+        }
+        return ELSupport.equals( a, b );
+    }
+
+    public static int compare( Object a, Object b )
+    {
+        if ( isIntegral( a ) && isIntegral( b ) )
+        {
+            return Long.compare( ( ( Number ) a ).longValue(), ( ( Number ) b ).longValue() );
+        }
+        else if ( isSimple( a ) && isSimple( b ) )
+        {
+            return Double.compare( ( ( Number ) a ).doubleValue(), ( ( Number ) b ).doubleValue() );
+        }
+        else if ( a instanceof String && b instanceof String )
+        {
+            return ( ( String ) a ).compareTo( ( String ) b );
+        }
+        return ELSupport.compare( a, b );
+    }
+
+    public static boolean lessThan( Object a, Object b )
+    {
+        return a != null && b != null && compare( a, b ) < 0;
+    }
+
+    public static boolean greaterThan( Object a, Object b )
+    {
+        return a != null && b != null && compare( a, b ) > 0;
+    }
+
+    public static boolean lessThanOrEqual( Object a, Object b )
+    {
+        return a == b || a != null && b != null && compare( a, b ) <= 0;
+    }
+
+    public static boolean greaterThanOrEqual( Object a, Object b )
+    {
+        return a == b || a != null && b != null && compare( a, b ) >= 0;
+    }
+
+    public static String concat( Object a, Object b )
+    {
+        // as the reference implementation: null operands fail
+        return a.toString().concat( b.toString() );
+    }
+
+    /**
+     * Coerce a value, as the reference implementation does
+     * (but without a detour through the resolvers, none of which convert values).
+     *
+     * @param value the value
+     * @param type  the type to coerce to
+     * @return the coerced value
+     * @throws ELException if the value cannot be coerced
+     */
+    public static Object coerce( Object value, Class< ? > type )
+    {
+        if ( type == null || type == Object.class || type.isInstance( value ) )
+        {
+            return value;
+        }
+        try
+        {
+            return ELSupport.coerceToType( value, type );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new ELException( e );
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.brentcroft.tools.el.closure;
+
+import jakarta.el.ELContext;
+
+/**
+ * A compiled expression that can also be assigned to:
+ * i.e. an identifier, or a property (but not a method call).
+ *
+ * @author ADobson
+ */
+public interface Reference extends Closure
+{
+    void setValue( ELContext context, Object value );
+
+    Class< ? > getType( ELContext context );
+
+    boolean isReadOnly( ELContext context );
+}
@@ -0,0 +1,60 @@
+package com.brentcroft.tools.el.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The evaluation counters of one expression.
+ * <p>
+ * Durations are reported in microseconds,
+ * and include the evaluation of any nested expressions (e.g. the steps of a steps call).
+ *
+ * @author ADobson
+ */
+public class ExpressionStats
+{
+    private final String expression;
+
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator( Math::max, 0 );
+
+    ExpressionStats( String expression )
+    {
+        this.expression = expression;
+    }
+
+    void evaluated( long nanos )
+    {
+        evaluations.increment();
+        totalNanos.add( nanos );
+        maxNanos.accumulate( nanos );
+    }
+
+    public String getExpression()
+    {
+        return expression;
+    }
+
+    public long getEvaluationCount()
+    {
+        return evaluations.sum();
+    }
+
+    public long getTotalMicros()
+    {
+        return totalNanos.sum() / 1000;
+    }
+
+    public double getMeanMicros()
+    {
+        final long count = evaluations.sum();
+
+        return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+    }
+
+    public long getMaxMicros()
+    {
+        return maxNanos.get() / 1000;
+    }
+}
@@ -0,0 +1,110 @@
+package com.brentcroft.tools.el.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A lock-free histogram of durations (in nanoseconds),
+ * in logarithmic buckets each divided into 8 linear sub-buckets,
+ * so that a percentile is accurate to within about 12%.
+ *
+ * @author ADobson
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( 64 * SUB_BUCKETS );
+    private final LongAccumulator max = new LongAccumulator( Math::max, 0 );
+
+    public void record( long nanos )
+    {
+        final long value = Math.max( 0, nanos );
+
+        counts.incrementAndGet( index( value ) );
+        max.accumulate( value );
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public long getCount()
+    {
+        long count = 0;
+
+        for ( int i = 0; i < counts.length(); i++ )
+        {
+            count += counts.get( i );
+        }
+
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the (approximate) value at the percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile( double percentile )
+    {
+        final long count = getCount();
+
+        if ( count == 0 )
+        {
+            return 0;
+        }
+
+        final long rank = Math.max( 1, ( long ) Math.ceil( count * percentile / 100.0 ) );
+
+        long seen = 0;
+
+        for ( int i = 0; i < counts.length(); i++ )
+        {
+            seen += counts.get( i );
+
+            if ( seen >= rank )
+            {
+                return Math.min( upperBound( i ), getMax() );
+            }
+        }
+
+        return getMax();
+    }
+
+    public void reset()
+    {
+        for ( int i = 0; i < counts.length(); i++ )
+        {
+            counts.set( i, 0 );
+        }
+        max.reset();
+    }
+
+    static int index( long value )
+    {
+        if ( value < SUB_BUCKETS )
+        {
+            return ( int ) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros( value );
+        final int subBucket = ( int ) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound( int index )
+    {
+        if ( index < SUB_BUCKETS )
+        {
+            return index;
+        }
+
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+
+        return ( ( SUB_BUCKETS + subBucket + 1 ) << ( exponent - SUB_BUCKET_BITS ) ) - 1;
+    }
+}
@@ -0,0 +1,419 @@
+package com.brentcroft.tools.el.metrics;
+
+import com.brentcroft.tools.el.cache.CacheStats;
+import jakarta.el.ELContext;
+import jakarta.el.EvaluationListener;
+import lombok.extern.java.Log;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * Records, per template uri, renders (count, latency, output size and failures) and parses,
+ * and, per expression, evaluations (count and time);
+ * and exposes them, with the statistics of any registered caches, as a JMX MXBean
+ * (see <code>register( name )</code>).
+ * <p>
+ * A template manager only records metrics when given a <code>TemplateMetrics</code>
+ * (see <code>ELTemplateManager.withMetrics</code>), and then only while it is enabled:
+ * with no metrics the render path is unchanged, and while disabled it costs one volatile read per render,
+ * and per expression evaluated.
+ * <p>
+ * Expression evaluations are timed by an <code>EvaluationListener</code>
+ * (see <code>getEvaluationListener()</code>), so a duration includes any nested evaluations.
+ * Expressions are compiled when a template is parsed, so parse times include compilation;
+ * the compilation of expressions evaluated directly (e.g. by <code>eval</code>)
+ * is reported by the statistics of the expression cache.
+ * <p>
+ * Templates rendered without a uri (e.g. by <code>expandText</code>) are recorded as <code>ANONYMOUS</code>.
+ *
+ * @author ADobson
+ */
+@Log
+public class TemplateMetrics implements TemplateMetricsMXBean
+{
+    public static final String ANONYMOUS = "(text)";
+
+    public static final String DOMAIN = "com.brentcroft.tools";
+
+    private volatile boolean enabled = true;
+    private volatile int maxExpressions = 10_000;
+
+    private final Map< String, TemplateStats > templates = new ConcurrentHashMap<>();
+    private final Map< String, ExpressionStats > expressions = new ConcurrentHashMap<>();
+    private final Map< String, Supplier< CacheStats > > caches = new ConcurrentSkipListMap<>();
+
+    private final EvaluationListener evaluationListener = new TimingListener();
+
+    private ObjectName objectName;
+
+    public TemplateMetrics withEnabled( boolean enabled )
+    {
+        setEnabled( enabled );
+        return this;
+    }
+
+    /**
+     * Limit the number of distinct expressions recorded (the default is 10,000):
+     * further expressions are not recorded.
+     *
+     * @param maxExpressions the maximum number of expressions recorded
+     * @return this
+     */
+    public TemplateMetrics withMaxExpressions( int maxExpressions )
+    {
+        this.maxExpressions = maxExpressions;
+        return this;
+    }
+
+    /**
+     * @param name  the name of the cache
+     * @param stats supplies a snapshot of the statistics of the cache
+     * @return this
+     */
+    public TemplateMetrics withCache( String name, Supplier< CacheStats > stats )
+    {
+        caches.put( name, stats );
+        return this;
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled( boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    public EvaluationListener getEvaluationListener()
+    {
+        return evaluationListener;
+    }
+
+    /**
+     * Register this as an MXBean with the platform MBean server, with the name:
+     * <code>com.brentcroft.tools:type=TemplateMetrics,name=[name]</code>
+     * (replacing any existing registration).
+     *
+     * @param name the value of the name key
+     * @return this
+     */
+    public synchronized TemplateMetrics register( String name )
+    {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try
+        {
+            unregister();
+
+            final ObjectName newName = new ObjectName( format( "%s:type=TemplateMetrics,name=%s", DOMAIN, ObjectName.quote( name ) ) );
+
+            if ( server.isRegistered( newName ) )
+            {
+                server.unregisterMBean( newName );
+            }
+
+            server.registerMBean( this, newName );
+
+            objectName = newName;
+        }
+        catch ( JMException e )
+        {
+            throw new IllegalStateException( format( "Failed to register metrics: %s", name ), e );
+        }
+
+        return this;
+    }
+
+    public synchronized ObjectName getObjectName()
+    {
+        return objectName;
+    }
+
+    public synchronized void unregister()
+    {
+        if ( objectName == null )
+        {
+            return;
+        }
+
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+        }
+        catch ( JMException e )
+        {
+            log.warning( () -> format( "Failed to unregister metrics [%s]: %s", objectName, e ) );
+        }
+
+        objectName = null;
+    }
+
+
+    /**
+     * Interface for a render that can be measured.
+     */
+    public interface Render
+    {
+        void render( Appendable out ) throws IOException;
+    }
+
+    /**
+     * Time a render, counting the characters it writes, and whether it fails.
+     *
+     * @param uri    the uri of the template (or null)
+     * @param out    the sink receiving the rendering
+     * @param render the render
+     * @throws IOException if the sink fails
+     */
+    public void render( String uri, Appendable out, Render render ) throws IOException
+    {
+        final CountingAppendable counter = new CountingAppendable( out );
+        final long started = System.nanoTime();
+
+        boolean failed = true;
+
+        try
+        {
+            render.render( counter );
+
+            failed = false;
+        }
+        finally
+        {
+            stats( uri ).rendered( System.nanoTime() - started, counter.count, failed );
+        }
+    }
+
+    /**
+     * Time a parse.
+     *
+     * @param uri    the uri of the template (or null)
+     * @param parser the parse
+     * @param <T>    the type of template
+     * @return the template
+     */
+    public < T > T parse( String uri, Supplier< T > parser )
+    {
+        if ( ! enabled )
+        {
+            return parser.get();
+        }
+
+        final long started = System.nanoTime();
+
+        try
+        {
+            return parser.get();
+        }
+        finally
+        {
+            stats( uri ).parsed( System.nanoTime() - started );
+        }
+    }
+
+    public TemplateStats getTemplate( String uri )
+    {
+        return templates.get( uri == null ? ANONYMOUS : uri );
+    }
+
+    public ExpressionStats getExpression( String expression )
+    {
+        return expressions.get( expression );
+    }
+
+    @Override
+    public List< TemplateStats > getTemplates()
+    {
+        return templates
+                .values()
+                .stream()
+                .sorted( Comparator.comparingLong( TemplateStats::getTotalRenderMicros ).reversed() )
+                .collect( Collectors.toList() );
+    }
+
+    @Override
+    public List< ExpressionStats > getExpressions()
+    {
+        return expressions
+                .values()
+                .stream()
+                .sorted( Comparator.comparingLong( ExpressionStats::getTotalMicros ).reversed() )
+                .collect( Collectors.toList() );
+    }
+
+    @Override
+    public Map< String, CacheStats > getCaches()
+    {
+        final Map< String, CacheStats > snapshot = new LinkedHashMap<>();
+
+        caches.forEach( ( name, stats ) -> {
+            final CacheStats cacheStats = stats.get();
+
+            if ( cacheStats != null )
+            {
+                snapshot.put( name, cacheStats );
+            }
+        } );
+
+        return snapshot;
+    }
+
+    @Override
+    public void reset()
+    {
+        templates.clear();
+        expressions.clear();
+    }
+
+    private TemplateStats stats( String uri )
+    {
+        return templates.computeIfAbsent( uri == null ? ANONYMOUS : uri, TemplateStats::new );
+    }
+
+
+    private static class CountingAppendable implements Appendable
+    {
+        private final Appendable out;
+        private long count;
+
+        CountingAppendable( Appendable out )
+        {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append( CharSequence csq ) throws IOException
+        {
+            final CharSequence text = String.valueOf( csq );
+            out.append( text );
+            count += text.length();
+            return this;
+        }
+
+        @Override
+        public Appendable append( CharSequence csq, int start, int end ) throws IOException
+        {
+            out.append( csq == null ? "null" : csq, start, end );
+            count += end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append( char c ) throws IOException
+        {
+            out.append( c );
+            count++;
+            return this;
+        }
+    }
+
+    /**
+     * Times evaluations using a per-thread stack of start times,
+     * tolerating evaluations that fail (and so are never completed).
+     */
+    private class TimingListener extends EvaluationListener
+    {
+        private static final int MAX_DEPTH = 256;
+
+        private final ThreadLocal< Frames > frames = ThreadLocal.withInitial( Frames::new );
+
+        @Override
+        public void beforeEvaluation( ELContext context, String expression )
+        {
+            if ( enabled )
+            {
+                frames.get().push( expression, System.nanoTime() );
+            }
+        }
+
+        @Override
+        public void afterEvaluation( ELContext context, String expression )
+        {
+            if ( ! enabled )
+            {
+                return;
+            }
+
+            final long nanos = frames.get().pop( expression );
+
+            if ( nanos < 0 )
+            {
+                return;
+            }
+
+            ExpressionStats stats = expressions.get( expression );
+
+            if ( stats == null )
+            {
+                if ( expressions.size() >= maxExpressions )
+                {
+                    return;
+                }
+
+                stats = expressions.computeIfAbsent( expression, ExpressionStats::new );
+            }
+
+            stats.evaluated( nanos );
+        }
+
+        private class Frames
+        {
+            private String[] expressions = new String[ 16 ];
+            private long[] started = new long[ 16 ];
+            private int depth;
+
+            void push( String expression, long now )
+            {
+                if ( depth == MAX_DEPTH )
+                {
+                    // abandoned frames
+                    depth = 0;
+                }
+                if ( depth == expressions.length )
+                {
+                    expressions = Arrays.copyOf( expressions, depth * 2 );
+                    started = Arrays.copyOf( started, depth * 2 );
+                }
+
+                expressions[ depth ] = expression;
+                started[ depth ] = now;
+                depth++;
+            }
+
+            /**
+             * @return the time since the matching push, or -1 if there was none
+             */
+            long pop( String expression )
+            {
+                for ( int i = depth - 1; i >= 0; i-- )
+                {
+                    if ( expression.equals( expressions[ i ] ) )
+                    {
+                        // also drops any frames above, from failed evaluations
+                        depth = i;
+                        expressions[ i ] = null;
+
+                        return System.nanoTime() - started[ i ];
+                    }
+                }
+
+                return - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.brentcroft.tools.el.metrics;
+
+import com.brentcroft.tools.el.cache.CacheStats;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX view of <code>TemplateMetrics</code>.
+ *
+ * @author ADobson
+ */
+public interface TemplateMetricsMXBean
+{
+    boolean isEnabled();
+
+    void setEnabled( boolean enabled );
+
+    /**
+     * @return the templates, most expensive (by total render time) first
+     */
+    List< TemplateStats > getTemplates();
+
+    /**
+     * @return the expressions, most expensive (by total time) first
+     */
+    List< ExpressionStats > getExpressions();
+
+    /**
+     * @return a snapshot of each registered cache, by name
+     */
+    Map< String, CacheStats > getCaches();
+
+    /**
+     * Discard all template and expression counters.
+     */
+    void reset();
+}
@@ -0,0 +1,105 @@
+package com.brentcroft.tools.el.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The render and parse counters of one template.
+ * <p>
+ * Durations are reported in microseconds.
+ *
+ * @author ADobson
+ */
+public class TemplateStats
+{
+    private final String uri;
+
+    private final LongAdder renders = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder outputChars = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder parses = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+
+    TemplateStats( String uri )
+    {
+        this.uri = uri;
+    }
+
+    void rendered( long nanos, long chars, boolean failed )
+    {
+        renders.increment();
+        renderNanos.add( nanos );
+        latency.record( nanos );
+        outputChars.add( chars );
+
+        if ( failed )
+        {
+            failures.increment();
+        }
+    }
+
+    void parsed( long nanos )
+    {
+        parses.increment();
+        parseNanos.add( nanos );
+    }
+
+    public String getUri()
+    {
+        return uri;
+    }
+
+    public long getRenderCount()
+    {
+        return renders.sum();
+    }
+
+    public long getFailureCount()
+    {
+        return failures.sum();
+    }
+
+    public long getOutputChars()
+    {
+        return outputChars.sum();
+    }
+
+    public long getMeanOutputChars()
+    {
+        final long count = renders.sum();
+
+        return count == 0 ? 0 : outputChars.sum() / count;
+    }
+
+    public long getTotalRenderMicros()
+    {
+        return renderNanos.sum() / 1000;
+    }
+
+    public long getLatencyP50Micros()
+    {
+        return latency.getPercentile( 50 ) / 1000;
+    }
+
+    public long getLatencyP99Micros()
+    {
+        return latency.getPercentile( 99 ) / 1000;
+    }
+
+    public long getLatencyMaxMicros()
+    {
+        return latency.getMax() / 1000;
+    }
+
+    public long getParseCount()
+    {
+        return parses.sum();
+    }
+
+    public long getParseMicros()
+    {
+        return parseNanos.sum() / 1000;
+    }
+}
@@ -9,8 +9,6 @@ import lombok.AllArgsConstructor;
 import java.util.Map;
 import java.util.Stack;
 
-import static java.lang.String.format;
-
 @AllArgsConstructor
 public class CompiledStepsResolver extends BaseELResolver
 {
@@ -34,7 +32,7 @@ public class CompiledStepsResolver extends BaseELResolver
                                      ? ( Map< String, Object > ) params[ 0 ]
                                      : null;
 
-        String stepsKey = format( "$$$%s", methodName );
+        String stepsKey = "$$$" + methodName;
 
         if ( ! root.containsKey( stepsKey ) )
         {
@@ -0,0 +1,83 @@
+package com.brentcroft.tools.el.resolver;
+
+import jakarta.el.ELClass;
+import jakarta.el.ELContext;
+import jakarta.el.StaticFieldELResolver;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A <code>StaticFieldELResolver</code> that reads the value of each
+ * <code>public static final</code> field once, and then returns the same value.
+ * <p>
+ * Any other field (or failure) is left to <code>StaticFieldELResolver</code>.
+ */
+public class FinalStaticFieldELResolver extends StaticFieldELResolver
+{
+    // the value of a final field that holds null
+    private static final Object NULL = new Object();
+
+    private static final ClassValue< Map< String, Object > > FINAL_VALUES = new ClassValue< Map< String, Object > >()
+    {
+        @Override
+        protected Map< String, Object > computeValue( Class< ? > type )
+        {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    @Override
+    public Object getValue( ELContext context, Object base, Object property )
+    {
+        if ( ! ( base instanceof ELClass ) || ! ( property instanceof String ) )
+        {
+            return super.getValue( context, base, property );
+        }
+
+        final Class< ? > type = ( ( ELClass ) base ).getKlass();
+        final Map< String, Object > values = FINAL_VALUES.get( type );
+
+        Object value = values.get( property );
+
+        if ( value == null )
+        {
+            value = finalValue( type, ( String ) property );
+
+            if ( value == null )
+            {
+                return super.getValue( context, base, property );
+            }
+
+            values.putIfAbsent( ( String ) property, value );
+        }
+
+        context.setPropertyResolved( base, property );
+
+        return value == NULL ? null : value;
+    }
+
+    private static Object finalValue( Class< ? > type, String name )
+    {
+        try
+        {
+            final Field field = type.getField( name );
+            final int modifiers = field.getModifiers();
+
+            if ( Modifier.isPublic( modifiers ) && Modifier.isStatic( modifiers ) && Modifier.isFinal( modifiers ) )
+            {
+                final Object value = field.get( null );
+
+                return value == null ? NULL : value;
+            }
+        }
+        catch ( ReflectiveOperationException | RuntimeException ignored )
+        {
+            // reported by StaticFieldELResolver
+        }
+
+        return null;
+    }
+}
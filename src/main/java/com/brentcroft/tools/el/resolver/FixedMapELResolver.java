@@ -1,11 +1,18 @@
 package com.brentcroft.tools.el.resolver;
 
+import com.brentcroft.tools.el.SimpleELContext;
 import jakarta.el.ELContext;
 import jakarta.el.MapELResolver;
 import lombok.AllArgsConstructor;
 
 import java.util.Map;
 
+/**
+ * Resolves top-level identifiers from a map of root objects.
+ * <p>
+ * If no map is given then the root objects of the (Simple)ELContext are used,
+ * so that one resolver can serve many contexts.
+ */
 @AllArgsConstructor
 public class FixedMapELResolver extends MapELResolver
 {
@@ -14,12 +21,31 @@ public class FixedMapELResolver extends MapELResolver
     @Override
     public Object getValue( ELContext context, Object base, Object property )
     {
-        if ( base == null && rootObjects.containsKey( property ) )
+        if ( base != null )
+        {
+            return null;
+        }
+
+        final Map< ?, ? > roots = rootObjects != null
+                                  ? rootObjects
+                                  : rootObjects( context );
+
+        if ( roots != null && roots.containsKey( property ) )
         {
             context.setPropertyResolved( null, property );
-            return rootObjects.get( property );
+            return roots.get( property );
         }
 
         return null;
     }
+
+    // the EL implementation may wrap the context, but delegates getContext
+    private static Map< ?, ? > rootObjects( ELContext context )
+    {
+        final Object simpleContext = context.getContext( SimpleELContext.class );
+
+        return simpleContext instanceof SimpleELContext
+               ? ( ( SimpleELContext ) simpleContext ).getRootObjects()
+               : null;
+    }
 }
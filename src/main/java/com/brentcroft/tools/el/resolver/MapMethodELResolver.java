@@ -6,8 +6,6 @@ import lombok.AllArgsConstructor;
 
 import java.util.Map;
 
-import static java.lang.String.format;
-
 @AllArgsConstructor
 public class MapMethodELResolver extends BaseELResolver
 {
@@ -21,7 +19,7 @@ public class MapMethodELResolver extends BaseELResolver
         @SuppressWarnings( "unchecked" )
         Map< String, Object > root = ( Map< String, Object > ) base;
 
-        String runnableKey = format( "%s", methodName );
+        String runnableKey = methodName.toString();
 
         // putting a named lambda provides a runnable (i.e. will accept no args)
         if ( "put".equals( runnableKey ) )
@@ -34,23 +34,24 @@ public class MapStepsELResolver extends BaseELResolver
 
         @SuppressWarnings( "unchecked" )
         Map< String, Object > root = ( Map< String, Object > ) base;
-        Map< String, Object > args = ( params != null && params.length > 0 && params[ 0 ] instanceof Map )
-                                     ? ( Map< String, Object > ) params[ 0 ]
-                                     : new HashMap<>();
 
-        String stepsKey = format( "$$%s", methodName );
+        String stepsKey = "$$" + methodName;
 
         if ( ! root.containsKey( stepsKey ) )
         {
             return null;
         }
 
+        Map< String, Object > args = ( params != null && params.length > 0 && params[ 0 ] instanceof Map )
+                                     ? ( Map< String, Object > ) params[ 0 ]
+                                     : new HashMap<>();
+
         if ( params != null && params.length > 0 && ! ( params[ 0 ] instanceof Map ) )
         {
             throw new IllegalArgumentException( "Steps call must have one argument that is a map, or no argument at all" );
         }
 
-        String steps = format( "%s", root.get( stepsKey ) ).trim();
+        String steps = String.valueOf( root.get( stepsKey ) ).trim();
 
         if ( steps.isEmpty() )
         {
@@ -58,7 +59,7 @@ public class MapStepsELResolver extends BaseELResolver
             return null;
         }
 
-        String stepsArgsKey = format( "$$%s$args", methodName );
+        String stepsArgsKey = stepsKey + "$args";
         if ( root.containsKey( stepsArgsKey ) )
         {
             checkStepsArgs( args, root.get( stepsArgsKey ) );
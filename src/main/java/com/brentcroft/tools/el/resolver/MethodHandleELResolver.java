@@ -0,0 +1,329 @@
+package com.brentcroft.tools.el.resolver;
+
+import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import jakarta.el.LambdaExpression;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads bean properties and calls public methods through <code>MethodHandle</code>s,
+ * built once per class and member, instead of by reflection.
+ * <p>
+ * Only handles what it can do exactly as <code>BeanELResolver</code> would:
+ * <ul>
+ *     <li>a property with a public read method;</li>
+ *     <li>a call to a method that has no overloads with the same number of parameters,
+ *     is not varargs, and whose arguments need no coercion.</li>
+ * </ul>
+ * Anything else is left unresolved, for the following <code>BeanELResolver</code>.
+ */
+public class MethodHandleELResolver extends BaseELResolver
+{
+    private static final MethodHandle NONE = MethodHandles.constant( Object.class, null );
+    private static final Object[] NO_ARGS = {};
+
+    private static final ClassValue< Accessors > ACCESSORS = new ClassValue< Accessors >()
+    {
+        @Override
+        protected Accessors computeValue( Class< ? > type )
+        {
+            return new Accessors( type );
+        }
+    };
+
+    @Override
+    public Object getValue( ELContext context, Object base, Object property )
+    {
+        if ( base == null || property == null )
+        {
+            return null;
+        }
+
+        final MethodHandle getter = ACCESSORS.get( base.getClass() ).getter( property.toString() );
+
+        if ( getter == NONE )
+        {
+            return null;
+        }
+
+        final Object value = call( () -> getter.invokeExact( base ) );
+
+        context.setPropertyResolved( base, property );
+
+        return value;
+    }
+
+    @Override
+    public Object invoke( ELContext context, Object base, Object method, Class< ? >[] paramTypes, Object[] params )
+    {
+        if ( base == null || method == null || paramTypes != null )
+        {
+            return null;
+        }
+
+        final Object[] args = params == null ? NO_ARGS : params;
+
+        final Invoker invoker = ACCESSORS.get( base.getClass() ).invoker( method.toString(), args.length );
+
+        if ( invoker == null || ! invoker.accepts( args ) )
+        {
+            return null;
+        }
+
+        final Object value = call( () -> invoker.handle.invokeExact( base, args ) );
+
+        context.setPropertyResolved( base, method );
+
+        return value;
+    }
+
+    interface Call
+    {
+        Object call() throws Throwable;
+    }
+
+    private static Object call( Call call )
+    {
+        try
+        {
+            return call.call();
+        }
+        catch ( VirtualMachineError e )
+        {
+            throw e;
+        }
+        catch ( Throwable e )
+        {
+            // as BeanELResolver does with the cause of an InvocationTargetException
+            throw new ELException( e );
+        }
+    }
+
+    /**
+     * @param method a method
+     * @return the same method declared by a public class or interface, or null
+     */
+    static Method publicMethod( Method method )
+    {
+        if ( ! Modifier.isPublic( method.getModifiers() ) )
+        {
+            return null;
+        }
+
+        final Deque< Class< ? > > types = new ArrayDeque<>();
+
+        types.add( method.getDeclaringClass() );
+
+        while ( ! types.isEmpty() )
+        {
+            final Class< ? > type = types.remove();
+
+            if ( Modifier.isPublic( type.getModifiers() ) )
+            {
+                try
+                {
+                    return type.getMethod( method.getName(), method.getParameterTypes() );
+                }
+                catch ( NoSuchMethodException ignored )
+                {
+                    // not a member of this type
+                }
+            }
+
+            if ( type.getSuperclass() != null )
+            {
+                types.add( type.getSuperclass() );
+            }
+
+            types.addAll( Arrays.asList( type.getInterfaces() ) );
+        }
+
+        return null;
+    }
+
+    static MethodHandle unreflect( Method method )
+    {
+        final Method publicMethod = method == null ? null : publicMethod( method );
+
+        if ( publicMethod == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            return MethodHandles.publicLookup().unreflect( publicMethod );
+        }
+        catch ( IllegalAccessException | RuntimeException e )
+        {
+            // e.g. a public class in a package that is not exported
+            return null;
+        }
+    }
+
+    static class Accessors
+    {
+        private static final MethodType GETTER = MethodType.methodType( Object.class, Object.class );
+
+        private final Class< ? > type;
+        private final Map< String, MethodHandle > getters = new ConcurrentHashMap<>();
+        private final Map< String, Map< Integer, Invoker > > invokers = new ConcurrentHashMap<>();
+        private volatile Map< String, Method > readMethods;
+
+        Accessors( Class< ? > type )
+        {
+            this.type = type;
+        }
+
+        MethodHandle getter( String property )
+        {
+            final MethodHandle getter = getters.get( property );
+
+            return getter != null
+                   ? getter
+                   : getters.computeIfAbsent( property, p -> {
+                       final MethodHandle handle = unreflect( readMethods().get( p ) );
+                       return handle == null ? NONE : handle.asType( GETTER );
+                   } );
+        }
+
+        Invoker invoker( String name, int arity )
+        {
+            return invokers
+                    .computeIfAbsent( name, n -> new ConcurrentHashMap<>() )
+                    .computeIfAbsent( arity, a -> Invoker.of( type, name, a ) )
+                    .orNull();
+        }
+
+        private Map< String, Method > readMethods()
+        {
+            if ( readMethods == null )
+            {
+                final Map< String, Method > methods = new HashMap<>();
+
+                try
+                {
+                    for ( PropertyDescriptor descriptor : Introspector.getBeanInfo( type ).getPropertyDescriptors() )
+                    {
+                        if ( descriptor.getReadMethod() != null )
+                        {
+                            methods.put( descriptor.getName(), descriptor.getReadMethod() );
+                        }
+                    }
+                }
+                catch ( IntrospectionException ignored )
+                {
+                    // BeanELResolver will report it
+                }
+
+                readMethods = methods;
+            }
+
+            return readMethods;
+        }
+    }
+
+    static class Invoker
+    {
+        private static final MethodType INVOKER = MethodType.methodType( Object.class, Object.class, Object[].class );
+        private static final Invoker UNSUPPORTED = new Invoker( null, null );
+
+        private final MethodHandle handle;
+        private final Class< ? >[] parameterTypes;
+
+        private Invoker( MethodHandle handle, Class< ? >[] parameterTypes )
+        {
+            this.handle = handle;
+            this.parameterTypes = parameterTypes;
+        }
+
+        static Invoker of( Class< ? > type, String name, int arity )
+        {
+            Method candidate = null;
+
+            for ( Method method : type.getMethods() )
+            {
+                if ( method.isBridge() || ! method.getName().equals( name ) )
+                {
+                    continue;
+                }
+                if ( method.isVarArgs() )
+                {
+                    // arguments can't be matched simply by count
+                    return UNSUPPORTED;
+                }
+                if ( method.getParameterCount() != arity )
+                {
+                    continue;
+                }
+                if ( candidate != null && ! Arrays.equals( candidate.getParameterTypes(), method.getParameterTypes() ) )
+                {
+                    // overloaded: leave method selection to BeanELResolver
+                    return UNSUPPORTED;
+                }
+                candidate = method;
+            }
+
+            if ( candidate == null || Modifier.isStatic( candidate.getModifiers() ) )
+            {
+                return UNSUPPORTED;
+            }
+
+            final MethodHandle handle = unreflect( candidate );
+
+            return handle == null
+                   ? UNSUPPORTED
+                   : new Invoker(
+                           handle
+                                   .asSpreader( Object[].class, arity )
+                                   .asType( INVOKER ),
+                           boxed( candidate.getParameterTypes() ) );
+        }
+
+        private static Class< ? >[] boxed( Class< ? >[] types )
+        {
+            final Class< ? >[] boxed = new Class< ? >[ types.length ];
+
+            for ( int i = 0; i < types.length; i++ )
+            {
+                boxed[ i ] = types[ i ].isPrimitive()
+                             ? MethodType.methodType( types[ i ] ).wrap().returnType()
+                             : types[ i ];
+            }
+
+            return boxed;
+        }
+
+        Invoker orNull()
+        {
+            return this == UNSUPPORTED ? null : this;
+        }
+
+        /**
+         * @param args the arguments of a call
+         * @return true if every argument is already an instance of its parameter type
+         * (so that EL coercion would not change it), and none is a lambda expression
+         */
+        boolean accepts( Object[] args )
+        {
+            for ( int i = 0; i < args.length; i++ )
+            {
+                if ( ! parameterTypes[ i ].isInstance( args[ i ] ) || args[ i ] instanceof LambdaExpression )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -4,39 +4,190 @@ import com.brentcroft.tools.el.ELTemplateManager;
 import com.brentcroft.tools.el.MapBindings;
 import com.sun.el.stream.StreamELResolver;
 import jakarta.el.*;
-import lombok.Getter;
-import lombok.Setter;
 
-import java.util.Map;
-import java.util.Stack;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
-@Getter
-@Setter
+/**
+ * A composite of the resolvers used by templates.
+ * <p>
+ * Each resolver is added with the classes of base object it can resolve a value or a method call for.
+ * <code>getValue</code> and <code>invoke</code> remember, for each class of base object,
+ * the resolvers that apply, and only ask those (in the same order as the full chain).
+ * Property names with a meaning on any base (<code>$local</code> and <code>$static</code>),
+ * and resolvers added without a declared applicability, always use the full chain.
+ */
 public class SimpleELResolver extends CompositeELResolver
 {
+    // the key used for a null base object (no object has class Void)
+    private static final Class< ? > NULL_BASE = Void.class;
+
+    private static final Predicate< Class< ? > > NONE = c -> false;
+    private static final Predicate< Class< ? > > ALL = c -> true;
+    private static final Predicate< Class< ? > > IDENTIFIER = c -> c == NULL_BASE;
+    private static final Predicate< Class< ? > > ANY_OBJECT = c -> c != NULL_BASE;
+    private static final Predicate< Class< ? > > ARRAY = Class::isArray;
+
+    private final List< Dispatch > dispatches = new ArrayList<>();
+    private final Map< Class< ? >, ELResolver[] > valueResolvers = new ConcurrentHashMap<>();
+    private final Map< Class< ? >, ELResolver[] > invokeResolvers = new ConcurrentHashMap<>();
+
+    // until a resolver is added without declaring its applicability
+    private volatile boolean dispatching = true;
+
+    // until any resolver is added to those of the constructor
+    private volatile boolean standard = false;
+
     public SimpleELResolver( Map< ?, ? > rootObjects, ThreadLocal< Stack< MapBindings > > scopeStack, Map< String, Object > staticModel, ELTemplateManager em )
     {
         // scopes
-        add( new FixedMapELResolver( rootObjects ) );
-        add( new ThreadLocalRootResolver( scopeStack ) );
-        add( new StaticMapELResolver( staticModel ) );
+        add( new FixedMapELResolver( rootObjects ), IDENTIFIER, NONE );
+        add( new ThreadLocalRootResolver( scopeStack ), IDENTIFIER, NONE );
+        add( new StaticMapELResolver( staticModel ), IDENTIFIER, NONE );
 
         //
-        add( new StreamELResolver() );
-        add( new StaticFieldELResolver() );
-        add( new ArrayELResolver() );
-        add( new ListELResolver() );
+        add( new StreamELResolver(), NONE, instanceOf( Collection.class ).or( ARRAY ) );
+        add( new FinalStaticFieldELResolver(), instanceOf( ELClass.class ), instanceOf( ELClass.class ) );
+        add( new ArrayELResolver(), ARRAY, NONE );
+        add( new ListELResolver(), instanceOf( List.class ), NONE );
 
         // only applies to base maps that have the required property
-        add( new SimpleMapELResolver() );
+        add( new SimpleMapELResolver(), instanceOf( Map.class ), NONE );
 
         // synthetic methods
-        add( new MapMethodELResolver() );
-        add( new MapStepsELResolver( scopeStack, em, em ) );
-        add( new ConditionalMethodsELResolver( scopeStack ) );
+        add( new MapMethodELResolver(), NONE, instanceOf( Map.class ) );
+        add( new MapStepsELResolver( scopeStack, em, em ), NONE, instanceOf( Map.class ) );
+        add( new ConditionalMethodsELResolver( scopeStack ), NONE, instanceOf( Map.class ) );
 
-        //
-        add( new BeanELResolver() );
-        add( new ResourceBundleELResolver() );
+        // method handles where they behave the same as reflection
+        add( new MethodHandleELResolver(), ANY_OBJECT, ANY_OBJECT );
+        add( new BeanELResolver(), ANY_OBJECT, ANY_OBJECT );
+        add( new ResourceBundleELResolver(), instanceOf( ResourceBundle.class ), NONE );
+
+        standard = true;
+    }
+
+    private static Predicate< Class< ? > > instanceOf( Class< ? > type )
+    {
+        return type::isAssignableFrom;
+    }
+
+    /**
+     * Add a resolver that is always asked.
+     *
+     * @param elResolver the resolver
+     */
+    @Override
+    public synchronized void add( ELResolver elResolver )
+    {
+        add( elResolver, ALL, ALL );
+        dispatching = false;
+    }
+
+    /**
+     * Add a resolver that is only asked about base objects of the given classes.
+     *
+     * @param elResolver the resolver
+     * @param values     the classes of base object (<code>Void.class</code> for none) it resolves values for
+     * @param methods    the classes of base object it invokes methods on
+     */
+    public synchronized void add( ELResolver elResolver, Predicate< Class< ? > > values, Predicate< Class< ? > > methods )
+    {
+        super.add( elResolver );
+        standard = false;
+        dispatches.add( new Dispatch( elResolver, values, methods ) );
+        valueResolvers.clear();
+        invokeResolvers.clear();
+    }
+
+    /**
+     * A standard resolver has only the resolvers of its constructor,
+     * so a caller that knows the chain may take a shortcut through it
+     * (e.g. a <code>PropertyPathExpression</code>).
+     *
+     * @return true until another resolver is added
+     */
+    public boolean isStandard()
+    {
+        return standard;
+    }
+
+    @Override
+    public Object getValue( ELContext context, Object base, Object property )
+    {
+        if ( ! dispatching || "$local".equals( property ) || "$static".equals( property ) )
+        {
+            return super.getValue( context, base, property );
+        }
+
+        final ELResolver[] resolvers = valueResolvers.computeIfAbsent( baseClass( base ), c -> select( c, true ) );
+
+        context.setPropertyResolved( false );
+
+        for ( ELResolver resolver : resolvers )
+        {
+            final Object value = resolver.getValue( context, base, property );
+
+            if ( context.isPropertyResolved() )
+            {
+                return value;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Object invoke( ELContext context, Object base, Object method, Class< ? >[] paramTypes, Object[] params )
+    {
+        if ( ! dispatching )
+        {
+            return super.invoke( context, base, method, paramTypes, params );
+        }
+
+        final ELResolver[] resolvers = invokeResolvers.computeIfAbsent( baseClass( base ), c -> select( c, false ) );
+
+        context.setPropertyResolved( false );
+
+        for ( ELResolver resolver : resolvers )
+        {
+            final Object value = resolver.invoke( context, base, method, paramTypes, params );
+
+            if ( context.isPropertyResolved() )
+            {
+                return value;
+            }
+        }
+
+        return null;
+    }
+
+    private static Class< ? > baseClass( Object base )
+    {
+        return base == null ? NULL_BASE : base.getClass();
+    }
+
+    private synchronized ELResolver[] select( Class< ? > baseClass, boolean values )
+    {
+        return dispatches
+                .stream()
+                .filter( d -> ( values ? d.values : d.methods ).test( baseClass ) )
+                .map( d -> d.resolver )
+                .toArray( ELResolver[]::new );
+    }
+
+    private static class Dispatch
+    {
+        private final ELResolver resolver;
+        private final Predicate< Class< ? > > values;
+        private final Predicate< Class< ? > > methods;
+
+        Dispatch( ELResolver resolver, Predicate< Class< ? > > values, Predicate< Class< ? > > methods )
+        {
+            this.resolver = resolver;
+            this.values = values;
+            this.methods = methods;
+        }
     }
 }
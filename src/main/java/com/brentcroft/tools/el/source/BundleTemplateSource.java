@@ -0,0 +1,354 @@
+package com.brentcroft.tools.el.source;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.lang.String.format;
+
+/**
+ * Finds templates inside one zip (or jar) file: a bundle.
+ * <p>
+ * The file is memory-mapped, and its central directory indexed, once (when constructed),
+ * without holding a file handle open.
+ * The bytes of an entry are only read (and inflated) when the entry's URL is read,
+ * directly from the mapped file.
+ * <p>
+ * Uris are entry names (e.g. <code>pages/home.tpl</code>), with any leading slash,
+ * and any <code>.</code> and <code>..</code> segments, resolved first,
+ * so that relative includes (see <code>JstlTemplateHandler.relativizeUri</code>) resolve inside the bundle.
+ * <p>
+ * Zip64 archives are not supported.
+ *
+ * @author ADobson
+ */
+public class BundleTemplateSource implements TemplateSource
+{
+    public static final String PROTOCOL = "bundle";
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_SIZE = 46;
+    private static final int LOC_SIZE = 30;
+    private static final int UTF8_FLAG = 0x800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    @Getter
+    private final Path path;
+
+    private final MappedByteBuffer mapped;
+    private final Map< String, Entry > entries;
+    private final URLStreamHandler handler = new Handler();
+
+    /**
+     * Map and index a bundle.
+     *
+     * @param path the zip file
+     * @throws IOException if the file cannot be read, or is not a (supported) zip file
+     */
+    public BundleTemplateSource( Path path ) throws IOException
+    {
+        this.path = path;
+
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) )
+        {
+            if ( channel.size() > Integer.MAX_VALUE )
+            {
+                throw new IOException( format( "Bundle too large: %s", path ) );
+            }
+
+            mapped = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+
+        entries = index( mapped.duplicate().order( ByteOrder.LITTLE_ENDIAN ) );
+    }
+
+    /**
+     * @return the uris of the templates in the bundle
+     */
+    public Set< String > getUris()
+    {
+        return Collections.unmodifiableSet( entries.keySet() );
+    }
+
+    @Override
+    public URL find( String uri )
+    {
+        final String name = normalize( uri );
+
+        if ( name == null || ! entries.containsKey( name ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            return new URL( PROTOCOL, null, - 1, name, handler );
+        }
+        catch ( MalformedURLException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @param uri the uri of a template in the bundle
+     * @return a stream of the (inflated) bytes of the template
+     * @throws IOException if there is no such template, or it can't be read
+     */
+    public InputStream open( String uri ) throws IOException
+    {
+        final String name = normalize( uri );
+        final Entry entry = name == null ? null : entries.get( name );
+
+        if ( entry == null )
+        {
+            throw new IOException( format( "No entry [%s] in bundle: %s", uri, path ) );
+        }
+
+        final ByteBuffer data = entry.data( mapped.duplicate().order( ByteOrder.LITTLE_ENDIAN ) );
+
+        switch ( entry.method )
+        {
+            case STORED:
+                return new ByteBufferInputStream( data );
+
+            case DEFLATED:
+                return new InflaterInputStream( new ByteBufferInputStream( data ), new Inflater( true ), 8192 )
+                {
+                    @Override
+                    public void close() throws IOException
+                    {
+                        super.close();
+                        inf.end();
+                    }
+                };
+
+            default:
+                throw new IOException( format( "Unsupported compression [%s] of entry [%s] in bundle: %s", entry.method, name, path ) );
+        }
+    }
+
+    public String toString()
+    {
+        return "bundle:" + path;
+    }
+
+    /**
+     * @param uri a uri
+     * @return the entry name, or null if the uri leads outside the bundle
+     */
+    static String normalize( String uri )
+    {
+        final Deque< String > segments = new ArrayDeque<>();
+
+        for ( String segment : uri.replace( '\\', '/' ).split( "/" ) )
+        {
+            if ( segment.isEmpty() || ".".equals( segment ) )
+            {
+                continue;
+            }
+            if ( "..".equals( segment ) )
+            {
+                if ( segments.pollLast() == null )
+                {
+                    return null;
+                }
+                continue;
+            }
+            segments.addLast( segment );
+        }
+
+        return String.join( "/", segments );
+    }
+
+    private Map< String, Entry > index( ByteBuffer zip ) throws IOException
+    {
+        final int eocd = findEndOfCentralDirectory( zip );
+
+        final int count = zip.getShort( eocd + 10 ) & 0xFFFF;
+        final long cenOffset = zip.getInt( eocd + 16 ) & 0xFFFFFFFFL;
+
+        if ( count == 0xFFFF || cenOffset == 0xFFFFFFFFL )
+        {
+            throw new IOException( format( "Zip64 bundles are not supported: %s", path ) );
+        }
+
+        final Map< String, Entry > index = new HashMap<>( count * 2 );
+
+        int position = ( int ) cenOffset;
+
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( position + CEN_SIZE > zip.limit() || zip.getInt( position ) != CEN_SIGNATURE )
+            {
+                throw new IOException( format( "Bad central directory at [%s] in bundle: %s", position, path ) );
+            }
+
+            final int flags = zip.getShort( position + 8 ) & 0xFFFF;
+            final int method = zip.getShort( position + 10 ) & 0xFFFF;
+            final long compressedSize = zip.getInt( position + 20 ) & 0xFFFFFFFFL;
+            final int nameLength = zip.getShort( position + 28 ) & 0xFFFF;
+            final int extraLength = zip.getShort( position + 30 ) & 0xFFFF;
+            final int commentLength = zip.getShort( position + 32 ) & 0xFFFF;
+            final long localOffset = zip.getInt( position + 42 ) & 0xFFFFFFFFL;
+
+            final byte[] nameBytes = new byte[ nameLength ];
+
+            for ( int b = 0; b < nameLength; b++ )
+            {
+                nameBytes[ b ] = zip.get( position + CEN_SIZE + b );
+            }
+
+            final String name = new String( nameBytes, ( flags & UTF8_FLAG ) != 0
+                                                       ? StandardCharsets.UTF_8
+                                                       : StandardCharsets.ISO_8859_1 );
+
+            if ( ! name.endsWith( "/" ) )
+            {
+                final String key = normalize( name );
+
+                if ( key != null )
+                {
+                    index.put( key, new Entry( method, ( int ) localOffset, ( int ) compressedSize ) );
+                }
+            }
+
+            position += CEN_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return index;
+    }
+
+    private int findEndOfCentralDirectory( ByteBuffer zip ) throws IOException
+    {
+        final int last = zip.limit() - EOCD_SIZE;
+        // the comment is at most 64k
+        final int first = Math.max( 0, last - 0xFFFF );
+
+        for ( int position = last; position >= first; position-- )
+        {
+            if ( zip.getInt( position ) == EOCD_SIGNATURE )
+            {
+                return position;
+            }
+        }
+
+        throw new IOException( format( "Not a zip file: %s", path ) );
+    }
+
+    private class Entry
+    {
+        private final int method;
+        private final int localOffset;
+        private final int compressedSize;
+
+        Entry( int method, int localOffset, int compressedSize )
+        {
+            this.method = method;
+            this.localOffset = localOffset;
+            this.compressedSize = compressedSize;
+        }
+
+        ByteBuffer data( ByteBuffer zip ) throws IOException
+        {
+            if ( zip.getInt( localOffset ) != LOC_SIGNATURE )
+            {
+                throw new IOException( format( "Bad local header at [%s] in bundle: %s", localOffset, path ) );
+            }
+
+            final int start = localOffset
+                    + LOC_SIZE
+                    + ( zip.getShort( localOffset + 26 ) & 0xFFFF )
+                    + ( zip.getShort( localOffset + 28 ) & 0xFFFF );
+
+            // as Buffer, for Java 8
+            ( ( Buffer ) zip ).position( start );
+            ( ( Buffer ) zip ).limit( start + compressedSize );
+
+            return zip.slice();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream( ByteBuffer buffer )
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : - 1;
+        }
+
+        @Override
+        public int read( byte[] bytes, int offset, int length )
+        {
+            if ( length == 0 )
+            {
+                return 0;
+            }
+            if ( ! buffer.hasRemaining() )
+            {
+                return - 1;
+            }
+
+            final int read = Math.min( length, buffer.remaining() );
+
+            buffer.get( bytes, offset, read );
+
+            return read;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+
+    private class Handler extends URLStreamHandler
+    {
+        @Override
+        protected URLConnection openConnection( URL url )
+        {
+            return new URLConnection( url )
+            {
+                @Override
+                public void connect()
+                {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException
+                {
+                    return open( url.getFile() );
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.brentcroft.tools.el.source;
+
+import com.brentcroft.tools.el.cache.BoundedCache;
+import com.brentcroft.tools.el.cache.CacheStats;
+import lombok.Getter;
+
+import java.net.URL;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the resolutions of another source, for a time to live:
+ * both the locations found, and the uris not found,
+ * so that repeated lookups (e.g. of an include, on every parse) don't search again.
+ * <p>
+ * Within the time to live, a new template is not found (or a deleted one is still found)
+ * unless <code>invalidate()</code> is called.
+ * <p>
+ * At most <code>maxResolutions</code> are remembered (by default <code>DEFAULT_MAX_RESOLUTIONS</code>),
+ * evicting the least recently used, and an expired resolution is dropped when next looked up.
+ *
+ * @author ADobson
+ */
+public class CachingTemplateSource implements TemplateSource
+{
+    @Getter
+    private final TemplateSource source;
+
+    public static final long DEFAULT_MAX_RESOLUTIONS = 10_000;
+
+    @Getter
+    private final long ttlMillis;
+
+    // saturated: a very long time to live never expires
+    private final long ttlNanos;
+
+    private final BoundedCache< String, Resolution > resolutions;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder notFoundCount = new LongAdder();
+    private final LongAdder lookupNanos = new LongAdder();
+    private final LongAdder expiryCount = new LongAdder();
+
+    public CachingTemplateSource( TemplateSource source, long ttlMillis )
+    {
+        this( source, ttlMillis, DEFAULT_MAX_RESOLUTIONS );
+    }
+
+    public CachingTemplateSource( TemplateSource source, long ttlMillis, long maxResolutions )
+    {
+        this.source = source;
+        this.ttlMillis = ttlMillis;
+        this.ttlNanos = ttlMillis > Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : ttlMillis * 1_000_000;
+        this.resolutions = new BoundedCache< String, Resolution >().withMaxEntries( maxResolutions );
+    }
+
+    @Override
+    public URL find( String uri )
+    {
+        final long now = System.nanoTime();
+
+        final Resolution resolution = resolutions.getIfPresent( uri );
+
+        if ( resolution != null )
+        {
+            if ( now - resolution.resolved < ttlNanos )
+            {
+                hitCount.increment();
+
+                return resolution.url;
+            }
+
+            expiryCount.increment();
+            resolutions.remove( uri );
+        }
+
+        missCount.increment();
+
+        final URL url = source.find( uri );
+        final long found = System.nanoTime();
+
+        lookupNanos.add( found - now );
+
+        if ( url == null )
+        {
+            notFoundCount.increment();
+        }
+
+        resolutions.put( uri, new Resolution( url, found ) );
+
+        return url;
+    }
+
+    @Override
+    public void invalidate()
+    {
+        resolutions.clear();
+        source.invalidate();
+    }
+
+    /**
+     * @return the counters of the cache of resolutions (where a load failure is a uri not found, and an eviction includes an expiry)
+     */
+    public CacheStats getStats()
+    {
+        return new CacheStats(
+                hitCount.sum(),
+                missCount.sum(),
+                missCount.sum(),
+                notFoundCount.sum(),
+                lookupNanos.sum(),
+                expiryCount.sum() + resolutions.getStats().getEvictionCount(),
+                resolutions.size(),
+                0 );
+    }
+
+    public String toString()
+    {
+        return source + " (cached " + ttlMillis + "ms)";
+    }
+
+    private static class Resolution
+    {
+        private final URL url;
+        private final long resolved;
+
+        Resolution( URL url, long resolved )
+        {
+            this.url = url;
+            this.resolved = resolved;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.brentcroft.tools.el.source;
+
+import lombok.Getter;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Asks each of a list of sources in turn, returning the first location found.
+ *
+ * @author ADobson
+ */
+@Getter
+public class ChainedTemplateSource implements TemplateSource
+{
+    private final List< TemplateSource > sources;
+
+    public ChainedTemplateSource( List< TemplateSource > sources )
+    {
+        this.sources = Collections.unmodifiableList( new ArrayList<>( sources ) );
+    }
+
+    @Override
+    public URL find( String uri )
+    {
+        for ( TemplateSource source : sources )
+        {
+            final URL url = source.find( uri );
+
+            if ( url != null )
+            {
+                return url;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void invalidate()
+    {
+        sources.forEach( TemplateSource::invalidate );
+    }
+
+    public String toString()
+    {
+        return sources.toString();
+    }
+}
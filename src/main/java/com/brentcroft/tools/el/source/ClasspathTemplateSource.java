@@ -0,0 +1,41 @@
+package com.brentcroft.tools.el.source;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.net.URL;
+
+/**
+ * Finds templates as resources of a class loader.
+ * <p>
+ * Resource names are never absolute, so by default a uri with a leading slash is not found here
+ * (and so, in the default chain, is left to be found as an absolute file),
+ * unless the leading slash is to be stripped.
+ *
+ * @author ADobson
+ */
+@Getter
+@AllArgsConstructor
+public class ClasspathTemplateSource implements TemplateSource
+{
+    private final ClassLoader classLoader;
+
+    // take "/x" as the resource "x"
+    private final boolean stripLeadingSlash;
+
+    public ClasspathTemplateSource( ClassLoader classLoader )
+    {
+        this( classLoader, false );
+    }
+
+    @Override
+    public URL find( String uri )
+    {
+        return classLoader.getResource( stripLeadingSlash && uri.startsWith( "/" ) ? uri.substring( 1 ) : uri );
+    }
+
+    public String toString()
+    {
+        return "classpath:" + classLoader;
+    }
+}
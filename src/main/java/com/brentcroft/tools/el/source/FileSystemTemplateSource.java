@@ -0,0 +1,74 @@
+package com.brentcroft.tools.el.source;
+
+import lombok.Getter;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Finds templates that are existing files.
+ * <p>
+ * With a root directory, uris are paths relative to the root,
+ * and a uri that would resolve outside the root is not found.
+ * <p>
+ * Without a root, a uri is a path relative to the working directory,
+ * an absolute path, or a <code>file:</code> URL.
+ *
+ * @author ADobson
+ */
+@Getter
+public class FileSystemTemplateSource implements TemplateSource
+{
+    private final Path root;
+
+    public FileSystemTemplateSource()
+    {
+        this.root = null;
+    }
+
+    public FileSystemTemplateSource( Path root )
+    {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public URL find( String uri )
+    {
+        try
+        {
+            final Path path = path( uri );
+
+            return path != null && Files.isRegularFile( path )
+                   ? path.toUri().toURL()
+                   : null;
+        }
+        catch ( IllegalArgumentException | MalformedURLException e )
+        {
+            // including an InvalidPathException: not a file
+            return null;
+        }
+    }
+
+    private Path path( String uri )
+    {
+        if ( root == null )
+        {
+            return uri.startsWith( "file:" )
+                   ? Paths.get( URI.create( uri ) )
+                   : Paths.get( uri );
+        }
+
+        final Path path = root.resolve( uri.startsWith( "/" ) ? uri.substring( 1 ) : uri ).normalize();
+
+        return path.startsWith( root ) ? path : null;
+    }
+
+    public String toString()
+    {
+        return "files:" + ( root == null ? "." : root );
+    }
+}
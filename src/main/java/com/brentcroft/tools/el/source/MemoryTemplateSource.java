@@ -0,0 +1,103 @@
+package com.brentcroft.tools.el.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds templates held in memory, by uri.
+ * <p>
+ * Each template is found as a <code>memory:</code> URL, that reads the current text of the template,
+ * encoded with the charset of this source (UTF-8 by default: it should match the charset of the reader).
+ *
+ * @author ADobson
+ */
+public class MemoryTemplateSource implements TemplateSource
+{
+    public static final String PROTOCOL = "memory";
+
+    private final Map< String, byte[] > templates = new ConcurrentHashMap<>();
+    private final Charset charset;
+    private final URLStreamHandler handler = new Handler();
+
+    public MemoryTemplateSource()
+    {
+        this( StandardCharsets.UTF_8 );
+    }
+
+    public MemoryTemplateSource( Charset charset )
+    {
+        this.charset = charset;
+    }
+
+    public MemoryTemplateSource withTemplate( String uri, String text )
+    {
+        templates.put( uri, text.getBytes( charset ) );
+        return this;
+    }
+
+    public void remove( String uri )
+    {
+        templates.remove( uri );
+    }
+
+    @Override
+    public URL find( String uri )
+    {
+        if ( ! templates.containsKey( uri ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            return new URL( PROTOCOL, null, - 1, uri, handler );
+        }
+        catch ( MalformedURLException e )
+        {
+            return null;
+        }
+    }
+
+    public String toString()
+    {
+        return "memory:" + templates.keySet();
+    }
+
+    private class Handler extends URLStreamHandler
+    {
+        @Override
+        protected URLConnection openConnection( URL url )
+        {
+            return new URLConnection( url )
+            {
+                @Override
+                public void connect()
+                {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws FileNotFoundException
+                {
+                    final byte[] bytes = templates.get( url.getFile() );
+
+                    if ( bytes == null )
+                    {
+                        throw new FileNotFoundException( url.toString() );
+                    }
+
+                    return new ByteArrayInputStream( bytes );
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.brentcroft.tools.el.source;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/**
+ * Reads the text of templates, decoding with an explicit charset (UTF-8 by default),
+ * and hashing the undecoded bytes while reading.
+ * <p>
+ * A <code>file:</code> URL is read through a <code>FileChannel</code>:
+ * files larger than <code>mapThreshold</code> are memory-mapped, others read into one buffer.
+ * Any other URL (e.g. <code>jar:</code> or a classpath resource) is read as a stream,
+ * through one growing buffer.
+ * <p>
+ * The hash is a 64-bit hash of the bytes (not cryptographic),
+ * so that an unchanged source can be detected without re-parsing it.
+ *
+ * @author ADobson
+ */
+@Getter
+public class TemplateReader
+{
+    public static final TemplateReader DEFAULT = new TemplateReader( StandardCharsets.UTF_8 );
+
+    static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long PRIME = 0xFF51AFD7ED558CCDL;
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+
+    private final Charset charset;
+    private final long mapThreshold;
+
+    public TemplateReader( Charset charset )
+    {
+        this( charset, 256 * 1024 );
+    }
+
+    /**
+     * @param charset      the charset used to decode templates
+     * @param mapThreshold the size above which files are memory-mapped
+     */
+    public TemplateReader( Charset charset, long mapThreshold )
+    {
+        this.charset = Objects.requireNonNull( charset, "charset" );
+        this.mapThreshold = mapThreshold;
+    }
+
+    public TemplateReader withCharset( Charset charset )
+    {
+        return new TemplateReader( charset, mapThreshold );
+    }
+
+    /**
+     * Read, hash and decode the content of a URL.
+     *
+     * @param url the location of a template
+     * @return the text, hash and size of the template
+     * @throws UncheckedIOException if the URL cannot be read
+     */
+    public TemplateText read( URL url )
+    {
+        return read( url, true );
+    }
+
+    /**
+     * Read and hash, without decoding, the content of a URL.
+     *
+     * @param url the location of a template
+     * @return the hash and size of the template (and no text)
+     * @throws UncheckedIOException if the URL cannot be read
+     */
+    public TemplateText hash( URL url )
+    {
+        return read( url, false );
+    }
+
+    private TemplateText read( URL url, boolean decode )
+    {
+        try
+        {
+            final Path path = path( url );
+            final ByteBuffer bytes = path != null
+                                     ? bytes( path )
+                                     : bytes( url.openStream() );
+
+            return decode
+                   ? decode( bytes )
+                   : new TemplateText( null, hash( bytes.duplicate() ), bytes.remaining() );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( format( "Failed to read template: %s", url ), e );
+        }
+    }
+
+    /**
+     * Read, hash and decode the content of a file.
+     *
+     * @param path the file of a template
+     * @return the text, hash and size of the template
+     * @throws IOException if the file cannot be read
+     */
+    public TemplateText read( Path path ) throws IOException
+    {
+        return decode( bytes( path ) );
+    }
+
+    private ByteBuffer bytes( Path path ) throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) )
+        {
+            final long size = channel.size();
+
+            if ( size > mapThreshold )
+            {
+                return channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate( ( int ) size );
+
+            while ( buffer.hasRemaining() && channel.read( buffer ) >= 0 )
+            {
+                // fill
+            }
+
+            // as Buffer, for Java 8
+            ( ( Buffer ) buffer ).flip();
+
+            return buffer;
+        }
+    }
+
+    /**
+     * Read, hash and decode the content of a stream, and close it.
+     *
+     * @param stream the content of a template
+     * @return the text, hash and size of the template
+     * @throws IOException if the stream fails
+     */
+    public TemplateText read( InputStream stream ) throws IOException
+    {
+        return decode( bytes( stream ) );
+    }
+
+    private ByteBuffer bytes( InputStream stream ) throws IOException
+    {
+        try ( InputStream in = stream )
+        {
+            byte[] bytes = new byte[ STREAM_BUFFER_SIZE ];
+            int length = 0;
+            int read;
+
+            while ( ( read = in.read( bytes, length, bytes.length - length ) ) >= 0 )
+            {
+                length += read;
+
+                if ( length == bytes.length )
+                {
+                    bytes = Arrays.copyOf( bytes, length * 2 );
+                }
+            }
+
+            return ByteBuffer.wrap( bytes, 0, length );
+        }
+    }
+
+    /**
+     * Open a file, to be decoded incrementally.
+     *
+     * @param path the file of a template
+     * @return a stream of the text of the template
+     * @throws IOException if the file cannot be opened
+     */
+    public TemplateStream open( Path path ) throws IOException
+    {
+        final FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+
+        return new TemplateStream( channel, channel.size(), charset );
+    }
+
+    private TemplateText decode( ByteBuffer bytes )
+    {
+        final long size = bytes.remaining();
+        final long hash = hash( bytes.duplicate() );
+
+        return new TemplateText( charset.decode( bytes ).toString(), hash, size );
+    }
+
+    /**
+     * @param bytes some bytes (consumed)
+     * @return a 64-bit hash of the remaining bytes
+     */
+    static long hash( ByteBuffer bytes )
+    {
+        bytes.order( ByteOrder.LITTLE_ENDIAN );
+
+        long h = SEED ^ bytes.remaining();
+
+        while ( bytes.remaining() >= 8 )
+        {
+            h = mix( h ^ bytes.getLong() );
+        }
+
+        long tail = 0;
+
+        for ( int shift = 0; bytes.hasRemaining(); shift += 8 )
+        {
+            tail |= ( bytes.get() & 0xFFL ) << shift;
+        }
+
+        h = mix( h ^ tail );
+
+        return h ^ ( h >>> 33 );
+    }
+
+    static long mix( long h )
+    {
+        h *= PRIME;
+        return h ^ ( h >>> 29 );
+    }
+
+    /**
+     * @param url a URL
+     * @return the file of a <code>file:</code> URL, or null
+     */
+    public static Path path( URL url )
+    {
+        if ( ! "file".equalsIgnoreCase( url.getProtocol() ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            return Paths.get( url.toURI() );
+        }
+        catch ( URISyntaxException | RuntimeException e )
+        {
+            // e.g. a URL with unescaped characters: read it as a stream
+            return null;
+        }
+    }
+}
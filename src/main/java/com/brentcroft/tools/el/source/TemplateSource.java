@@ -0,0 +1,66 @@
+package com.brentcroft.tools.el.source;
+
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Finds the location of a template from its uri.
+ * <p>
+ * The template managers (and <code>c:include</code>) resolve every uri through one source
+ * (see <code>ELTemplateManager.withTemplateSource</code>), and read the template from the URL found.
+ * <p>
+ * Sources are combined with <code>chain( ... )</code>,
+ * and resolutions (including failures) are remembered for a while with <code>cached( ttlMillis )</code>.
+ *
+ * @author ADobson
+ * @see ClasspathTemplateSource
+ * @see FileSystemTemplateSource
+ * @see MemoryTemplateSource
+ */
+public interface TemplateSource
+{
+    /**
+     * @param uri the uri of a template
+     * @return the location of the template, or null if this source has no such template
+     */
+    URL find( String uri );
+
+    /**
+     * Forget any remembered resolutions.
+     */
+    default void invalidate()
+    {
+    }
+
+    /**
+     * @param ttlMillis how long to remember each resolution
+     * @return a source that remembers the resolutions (and failures) of this source
+     */
+    default CachingTemplateSource cached( long ttlMillis )
+    {
+        return new CachingTemplateSource( this, ttlMillis );
+    }
+
+    /**
+     * @param sources some sources
+     * @return a source that asks each source in turn
+     */
+    static TemplateSource chain( TemplateSource... sources )
+    {
+        return new ChainedTemplateSource( Arrays.asList( sources ) );
+    }
+
+    /**
+     * The legacy resolution: a resource of the class loader of the supplied class,
+     * otherwise a file (relative to the working directory, absolute, or a <code>file:</code> URL).
+     *
+     * @param clazz the class whose class-loader is searched first
+     * @return a new source
+     */
+    static TemplateSource defaults( Class< ? > clazz )
+    {
+        return chain(
+                new ClasspathTemplateSource( clazz.getClassLoader() ),
+                new FileSystemTemplateSource() );
+    }
+}
@@ -0,0 +1,124 @@
+package com.brentcroft.tools.el.source;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The text of a template, decoded incrementally (rather than read into one string),
+ * hashing the undecoded bytes as they are read (as <code>TemplateReader</code> does),
+ * so that the hash and size are available once the stream has been read to the end.
+ *
+ * @author ADobson
+ */
+public final class TemplateStream extends Reader
+{
+    private final ReadableByteChannel channel;
+    private final Reader reader;
+    private final long size;
+
+    private long hash;
+    private long read;
+
+    // the bytes of the next (incomplete) long
+    private long pending;
+    private int pendingBytes;
+
+    /**
+     * @param channel the bytes of the template (closed with this stream)
+     * @param size    the number of bytes in the channel (which is part of the hash)
+     * @param charset the charset used to decode the bytes
+     */
+    public TemplateStream( ReadableByteChannel channel, long size, Charset charset )
+    {
+        this.channel = channel;
+        this.size = size;
+        this.hash = TemplateReader.SEED ^ size;
+        this.reader = Channels.newReader(
+                new HashingChannel(),
+                charset
+                        .newDecoder()
+                        .onMalformedInput( CodingErrorAction.REPLACE )
+                        .onUnmappableCharacter( CodingErrorAction.REPLACE ),
+                - 1 );
+    }
+
+    @Override
+    public int read( char[] chars, int offset, int length ) throws IOException
+    {
+        return reader.read( chars, offset, length );
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+
+    /**
+     * @return the hash and size (but not the text) of the template
+     * @throws IllegalStateException if the stream has not been read to the end
+     */
+    public TemplateText getTemplateText()
+    {
+        if ( read != size )
+        {
+            throw new IllegalStateException( String.format( "Read %s of %s bytes", read, size ) );
+        }
+
+        final long h = TemplateReader.mix( hash ^ pending );
+
+        return new TemplateText( null, h ^ ( h >>> 33 ), size );
+    }
+
+    private void update( byte b )
+    {
+        // little-endian, as TemplateReader.hash
+        pending |= ( b & 0xFFL ) << ( pendingBytes * 8 );
+
+        if ( ++pendingBytes == 8 )
+        {
+            hash = TemplateReader.mix( hash ^ pending );
+            pending = 0;
+            pendingBytes = 0;
+        }
+    }
+
+    private class HashingChannel implements ReadableByteChannel
+    {
+        @Override
+        public int read( ByteBuffer buffer ) throws IOException
+        {
+            final int start = buffer.position();
+            final int count = channel.read( buffer );
+
+            for ( int i = 0; i < count; i++ )
+            {
+                update( buffer.get( start + i ) );
+            }
+
+            if ( count > 0 )
+            {
+                read += count;
+            }
+
+            return count;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.brentcroft.tools.el.source;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The text of a template, as read by a <code>TemplateReader</code>,
+ * with the hash and size of the bytes it was decoded from.
+ *
+ * @author ADobson
+ */
+@Getter
+@AllArgsConstructor
+public final class TemplateText
+{
+    // null if the template was streamed (see TemplateStream)
+    private final String text;
+
+    // of the undecoded bytes
+    private final long hash;
+    private final long size;
+
+    public String toString()
+    {
+        return String.format( "%016x:%s", hash, size );
+    }
+}
@@ -1,6 +1,8 @@
 package com.brentcroft.tools.jstl;
 
 import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.el.SimpleELContext;
+import com.brentcroft.tools.el.SimpleELContextFactory;
 import com.brentcroft.tools.jstl.tag.JstlElement;
 import lombok.Getter;
 import lombok.Setter;
@@ -46,7 +48,17 @@ public class JstlDocument
 
         setTemplateHandler( jstlTemplateManager.new JstlTemplateHandler( document.getDocumentURI(), null ) );
 
-        emitChildren( document.getChildNodes(), bindings );
+        final SimpleELContextFactory contextFactory = jstlTemplateManager.getELTemplateManager().getELContextFactory();
+        final SimpleELContext scope = contextFactory.openRenderScope( bindings );
+
+        try
+        {
+            emitChildren( document.getChildNodes(), bindings );
+        }
+        finally
+        {
+            contextFactory.closeRenderScope( scope );
+        }
     }
 
     public interface NodeListEmitter
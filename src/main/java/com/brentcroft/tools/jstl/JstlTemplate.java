@@ -2,6 +2,7 @@ package com.brentcroft.tools.jstl;
 
 import com.brentcroft.tools.jstl.tag.JstlElement;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -32,20 +33,19 @@ public class JstlTemplate implements Renderable
     /**
      * The key function of a template is to render itself (using a Map of
      * objects providing the EL namespace).
+     * <p>
+     * Each element renders directly into the same sink.
      *
      * @param rootObjects the objects in context during rendering
-     * @return String the rendered output as a String
+     * @param out         the sink receiving the rendered output
+     * @throws IOException if the sink fails
      */
-    public String render( Map< String, Object > rootObjects )
+    public void render( Map< String, Object > rootObjects, Appendable out ) throws IOException
     {
-        final StringBuilder out = new StringBuilder();
-
         for ( Renderable element : elements )
         {
-            out.append( element.render( rootObjects ) );
+            element.render( rootObjects, out );
         }
-
-        return out.toString();
     }
 
     public List< Renderable > getElements()
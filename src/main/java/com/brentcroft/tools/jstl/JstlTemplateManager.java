@@ -2,24 +2,49 @@ package com.brentcroft.tools.jstl;
 
 
 import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.TemplateLexer;
 import com.brentcroft.tools.el.TextExpander;
+import com.brentcroft.tools.el.cache.BoundedCache;
+import com.brentcroft.tools.el.cache.Cache;
+import com.brentcroft.tools.el.cache.ContentKey;
+import com.brentcroft.tools.el.metrics.TemplateMetrics;
+import com.brentcroft.tools.el.source.TemplateReader;
+import com.brentcroft.tools.el.source.TemplateSource;
+import com.brentcroft.tools.el.source.TemplateStream;
+import com.brentcroft.tools.el.source.TemplateText;
+import com.brentcroft.tools.jstl.compiler.CompiledTemplates;
+import com.brentcroft.tools.jstl.compiler.RuntimeCompilation;
+import com.brentcroft.tools.jstl.optimiser.TemplateOptimiser;
 import com.brentcroft.tools.jstl.tag.JstlElement;
 import com.brentcroft.tools.jstl.tag.TagHandler;
 import com.brentcroft.tools.jstl.tag.TagMessages;
+import jakarta.el.ExpressionFactory;
 import jakarta.el.ValueExpression;
 import lombok.extern.java.Log;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Stack;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static com.brentcroft.tools.el.ELTemplateManager.getLocalFileURL;
-import static com.brentcroft.tools.el.ELTemplateManager.readUrl;
 import static java.lang.String.format;
 import static java.util.Objects.nonNull;
 import static java.util.Optional.ofNullable;
@@ -66,10 +91,26 @@ public class JstlTemplateManager implements TextExpander
 
     public Pattern CDATA_SELECTOR_PATTERN = Pattern.compile( CDATA_REGEX );
 
+    // the patterns (and tag prefix) reproduced by the TemplateLexer: if any pattern is replaced, the patterns are used
+    private final List< Pattern > lexedPatterns = Arrays.asList(
+            TAG_SELECTOR_PATTERN,
+            ATTRIBUTE_SELECTOR_PATTERN,
+            COMMENT_SELECTOR_PATTERN,
+            CDATA_SELECTOR_PATTERN );
+
+    private final String lexedTagPrefix = TAG_PREFIX;
+
     private final ELTemplateManager elTemplateManager = new ELTemplateManager();
 
-    private final Map< String, JstlTemplate > templates = new HashMap<>();
-    private final Map< String, JstlElement > recursiveElements = new HashMap<>();
+    private Cache< String, JstlTemplate > templates = new BoundedCache<>();
+    private final Map< String, JstlElement > recursiveElements = new ConcurrentHashMap<>();
+    private Cache< ContentKey, JstlTemplate > parseCache = null;
+    private volatile TemplateReloader reloader = null;
+    private volatile TemplateSnapshot snapshot = null;
+    private volatile CompiledTemplates compiledTemplates = null;
+    private volatile RuntimeCompilation runtimeCompilation = null;
+    private long streamThreshold = - 1;
+    private TemplateOptimiser templateOptimiser = TemplateOptimiser.standard();
 
 
     public void dropTemplates()
@@ -78,6 +119,16 @@ public class JstlTemplateManager implements TextExpander
         templates.clear();
         elTemplateManager.dropTemplates();
 
+        if ( parseCache != null )
+        {
+            parseCache.clear();
+        }
+
+        if ( reloader != null )
+        {
+            reloader.clear();
+        }
+
         log.fine( () -> "dropped templates" );
     }
 
@@ -92,6 +143,424 @@ public class JstlTemplateManager implements TextExpander
         return elTemplateManager;
     }
 
+    /**
+     * Replace the cache of templates loaded from a uri
+     * (e.g. with a <code>BoundedCache</code> limited to a maximum number of templates).
+     * <p>
+     * Any templates already cached are discarded.
+     *
+     * @param templateCache the new template cache
+     * @return this
+     */
+    public JstlTemplateManager withTemplateCache( Cache< String, JstlTemplate > templateCache )
+    {
+        setTemplateCache( templateCache );
+        return this;
+    }
+
+    public void setTemplateCache( Cache< String, JstlTemplate > templateCache )
+    {
+        this.templates = Objects.requireNonNull( templateCache, "templateCache" );
+    }
+
+    public Cache< String, JstlTemplate > getTemplateCache()
+    {
+        return templates;
+    }
+
+    /**
+     * Switch on caching of the anonymous templates built by <code>expandText</code>,
+     * keyed by their text (and uri), and bounded by their approximate size in memory.
+     *
+     * @param maxBytes the approximate maximum memory used by cached templates
+     * @return this
+     * @see ContentKey
+     */
+    public JstlTemplateManager withParseCache( long maxBytes )
+    {
+        return withParseCache( ContentKey.newBoundedCache( maxBytes ) );
+    }
+
+    /**
+     * Set the cache of the anonymous templates built by <code>expandText</code>,
+     * or switch off caching (the default) by setting null.
+     *
+     * @param parseCache the new parse cache (or null)
+     * @return this
+     */
+    public JstlTemplateManager withParseCache( Cache< ContentKey, JstlTemplate > parseCache )
+    {
+        this.parseCache = parseCache;
+        return this;
+    }
+
+    public Cache< ContentKey, JstlTemplate > getParseCache()
+    {
+        return parseCache;
+    }
+
+    /**
+     * Switch on reloading of templates when their files change
+     * (only templates loaded after this call are tracked).
+     * <p>
+     * If <code>intervalMillis</code> is positive then files are checked in the background,
+     * otherwise only when <code>getReloader().checkNow()</code> is called.
+     *
+     * @param intervalMillis the maximum time between background checks
+     * @return this
+     * @see TemplateReloader
+     */
+    public JstlTemplateManager withHotReload( long intervalMillis )
+    {
+        if ( reloader != null )
+        {
+            reloader.close();
+        }
+
+        reloader = new TemplateReloader( this );
+
+        if ( intervalMillis > 0 )
+        {
+            reloader.start( intervalMillis );
+        }
+
+        return this;
+    }
+
+    public TemplateReloader getReloader()
+    {
+        return reloader;
+    }
+
+    /**
+     * Load the templates saved in a snapshot (see <code>saveSnapshot</code>), without lexing them,
+     * except for any whose source has changed, which are parsed as usual.
+     * <p>
+     * Templates loaded later are also loaded from the snapshot, if they are in it.
+     * A missing snapshot, or one saved with a different version or settings, is ignored.
+     *
+     * @param path a snapshot file, or a directory containing one
+     * @return this
+     * @see TemplateSnapshot
+     */
+    public JstlTemplateManager withSnapshot( Path path )
+    {
+        if ( ! isLexed() )
+        {
+            log.warning( () -> format( "Ignoring template snapshot (the patterns have been replaced): %s", path ) );
+            return this;
+        }
+
+        snapshot = TemplateSnapshot.open( path, lexedTagPrefix, stripComments, elTemplateManager.getTemplateReader() );
+
+        if ( snapshot != null )
+        {
+            for ( String uri : snapshot.getUris() )
+            {
+                try
+                {
+                    loadTemplate( uri, null );
+                }
+                catch ( RuntimeException e )
+                {
+                    log.warning( () -> format( "Failed to load template [%s]: %s", uri, e ) );
+                }
+            }
+
+            log.info( snapshot::toString );
+        }
+
+        return this;
+    }
+
+    public TemplateSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Load templates from the classes generated (ahead of time) by the <code>TemplateGenerator</code>,
+     * in preference to parsing them,
+     * except for any whose source has changed (since the classes were generated), which are parsed as usual.
+     * <p>
+     * The uris of the templates are as generated (i.e. relative to the generated root),
+     * so the template source should resolve them in the same way.
+     *
+     * @param index the generated index class (e.g. <code>TemplateIndex.class</code>)
+     * @return this
+     * @see com.brentcroft.tools.jstl.compiler.TemplateGenerator
+     */
+    public JstlTemplateManager withCompiledTemplates( Class< ? > index )
+    {
+        compiledTemplates = new CompiledTemplates( index );
+        return this;
+    }
+
+    public CompiledTemplates getCompiledTemplates()
+    {
+        return compiledTemplates;
+    }
+
+    /**
+     * Compile each template loaded (from a uri, or cached by the parse cache) after this call
+     * to a Java class at runtime, once it has been rendered more than <code>threshold</code> times:
+     * the class is generated (as by the <code>TemplateGenerator</code>) and compiled with the JDK's compiler
+     * on the common <code>ForkJoinPool</code>, and then replaces the interpreter for later renders.
+     * <p>
+     * A template that fails to compile carries on being interpreted.
+     *
+     * @param threshold the number of renders of a template before it is compiled
+     * @return this
+     * @see RuntimeCompilation
+     */
+    public JstlTemplateManager withRuntimeCompilation( int threshold )
+    {
+        return withRuntimeCompilation( threshold, ForkJoinPool.commonPool() );
+    }
+
+    public JstlTemplateManager withRuntimeCompilation( int threshold, Executor executor )
+    {
+        runtimeCompilation = new RuntimeCompilation( threshold, executor );
+        return this;
+    }
+
+    public RuntimeCompilation getRuntimeCompilation()
+    {
+        return runtimeCompilation;
+    }
+
+    JstlTemplate tiered( String uri, JstlTemplate template )
+    {
+        final RuntimeCompilation r = runtimeCompilation;
+
+        return r == null ? template : r.tiered( this, uri, template );
+    }
+
+    /**
+     * Save a snapshot of the templates currently cached, to be loaded (e.g. in a new JVM) by <code>withSnapshot</code>.
+     * <p>
+     * The snapshot replaces any existing file in one step, so it can be saved while other JVMs are loading it.
+     *
+     * @param path a snapshot file, or a directory to contain the file <code>templates.snapshot</code>
+     * @return the snapshot file
+     * @see TemplateSnapshot
+     */
+    public Path saveSnapshot( Path path )
+    {
+        if ( ! isLexed() )
+        {
+            throw new IllegalStateException( "Snapshots need the TemplateLexer (the patterns have been replaced)" );
+        }
+
+        final TemplateSnapshot.Writer writer = new TemplateSnapshot.Writer(
+                lexedTagPrefix,
+                stripComments,
+                elTemplateManager.getTemplateReader() );
+
+        for ( String uri : new TreeSet<>( templates.keys() ) )
+        {
+            try
+            {
+                final URL url = elTemplateManager.findTemplateUrl( uri );
+                final Path file = TemplateReader.path( url );
+
+                // before reading: if the file changes in between, it will be read (and found changed) when loaded
+                final long modified = file == null ? - 1 : Files.getLastModifiedTime( file ).toMillis();
+                final TemplateText text = elTemplateManager.getTemplateReader().read( url );
+
+                writer.add( uri, text, modified, () -> new TemplateLexer( lexedTagPrefix, stripComments, true ).lex( text.getText(), writer ) );
+            }
+            catch ( IOException | RuntimeException e )
+            {
+                log.warning( () -> format( "Not saving template [%s]: %s", uri, e ) );
+            }
+        }
+
+        try
+        {
+            return writer.write( path );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( format( "Failed to write template snapshot: %s", path ), e );
+        }
+    }
+
+    /**
+     * Compile the expressions of each tag, and of each block of text, of templates loaded after this call
+     * when the tag or text is first rendered, rather than when parsed:
+     * so that the branches never taken are never compiled.
+     * <p>
+     * If <code>releaseIntervalMillis</code> is positive then compiled expressions unused for an interval are released
+     * in the background,
+     * otherwise only when <code>getELTemplateManager().getLazyCompilation().releaseNow()</code> is called.
+     *
+     * @param releaseIntervalMillis the time between releases of unused compiled expressions
+     * @return this
+     * @see com.brentcroft.tools.el.LazyCompilation
+     */
+    public JstlTemplateManager withLazyCompilation( long releaseIntervalMillis )
+    {
+        elTemplateManager.withLazyCompilation( releaseIntervalMillis );
+        return this;
+    }
+
+    /**
+     * Replace the ExpressionFactory that compiles the expressions of templates built after this call.
+     *
+     * @param expressionFactory the new ExpressionFactory
+     * @return this
+     * @see ELTemplateManager#withExpressionFactory(ExpressionFactory)
+     */
+    public JstlTemplateManager withExpressionFactory( ExpressionFactory expressionFactory )
+    {
+        elTemplateManager.withExpressionFactory( expressionFactory );
+        return this;
+    }
+
+    /**
+     * Evaluate expressions that are pure property paths through precompiled accessors (on by default).
+     *
+     * @param propertyPaths true to evaluate property paths through precompiled accessors
+     * @return this
+     * @see ELTemplateManager#withPropertyPaths(boolean)
+     */
+    public JstlTemplateManager withPropertyPaths( boolean propertyPaths )
+    {
+        elTemplateManager.withPropertyPaths( propertyPaths );
+        return this;
+    }
+
+    /**
+     * Evaluate constant expressions once, when compiled (on by default).
+     *
+     * @param constantFolding true to evaluate constant expressions when compiled
+     * @return this
+     * @see ELTemplateManager#withConstantFolding(boolean)
+     */
+    public JstlTemplateManager withConstantFolding( boolean constantFolding )
+    {
+        elTemplateManager.withConstantFolding( constantFolding );
+        return this;
+    }
+
+    /**
+     * Optimise each template when it is built
+     * (by default, see <code>TemplateOptimiser.standard()</code>),
+     * or build templates exactly as parsed by setting null.
+     * <p>
+     * Templates already built are dropped.
+     *
+     * @param templateOptimiser the optimiser (or null)
+     * @return this
+     */
+    public JstlTemplateManager withTemplateOptimiser( TemplateOptimiser templateOptimiser )
+    {
+        this.templateOptimiser = templateOptimiser;
+
+        dropTemplates();
+
+        return this;
+    }
+
+    public TemplateOptimiser getTemplateOptimiser()
+    {
+        return templateOptimiser;
+    }
+
+    /**
+     * Record the renders and parses of templates, and evaluations of expressions,
+     * and the statistics of the template, parse and expression caches, in the supplied metrics,
+     * or stop recording by setting null.
+     *
+     * @param metrics the metrics (or null)
+     * @return this
+     * @see ELTemplateManager#withMetrics(TemplateMetrics)
+     */
+    public JstlTemplateManager withMetrics( TemplateMetrics metrics )
+    {
+        elTemplateManager.withMetrics( metrics );
+
+        if ( metrics != null )
+        {
+            metrics
+                    .withCache( "jstl.templates", () -> templates.getStats() )
+                    .withCache( "jstl.parse", () -> parseCache == null ? null : parseCache.getStats() );
+        }
+
+        return this;
+    }
+
+    public TemplateMetrics getMetrics()
+    {
+        return elTemplateManager.getMetrics();
+    }
+
+    /**
+     * Set the charset used to decode templates loaded from a uri (UTF-8 by default).
+     *
+     * @param charset the charset
+     * @return this
+     * @see ELTemplateManager#withCharset(Charset)
+     */
+    public JstlTemplateManager withCharset( Charset charset )
+    {
+        elTemplateManager.withCharset( charset );
+        return this;
+    }
+
+    /**
+     * Parse template files larger than the threshold incrementally (see <code>TemplateLexer</code>),
+     * rather than reading each into one string first,
+     * so that the memory used while parsing is bounded by the largest token rather than by the size of the file.
+     * <p>
+     * Templates in patterned mode (i.e. with replaced patterns) are never streamed.
+     *
+     * @param streamThreshold the size (in bytes) above which template files are streamed, or -1 for never
+     * @return this
+     */
+    public JstlTemplateManager withStreamThreshold( long streamThreshold )
+    {
+        this.streamThreshold = streamThreshold;
+        return this;
+    }
+
+    /**
+     * Set the source that finds templates (including included templates) from their uri.
+     *
+     * @param templateSource the source
+     * @return this
+     * @see ELTemplateManager#withTemplateSource(TemplateSource)
+     */
+    public JstlTemplateManager withTemplateSource( TemplateSource templateSource )
+    {
+        elTemplateManager.withTemplateSource( templateSource );
+        return this;
+    }
+
+    /**
+     * Mount a bundle (a zip or jar file of templates),
+     * in which templates and their includes are found first.
+     *
+     * @param bundle the zip file
+     * @return this
+     * @see ELTemplateManager#withBundle(Path)
+     */
+    public JstlTemplateManager withBundle( Path bundle )
+    {
+        elTemplateManager.withBundle( bundle );
+        return this;
+    }
+
+    private < T > T parse( String uri, Supplier< T > parser )
+    {
+        final TemplateMetrics metrics = elTemplateManager.getMetrics();
+
+        return metrics == null
+               ? parser.get()
+               : metrics.parse( uri, parser );
+    }
+
 
     /**
      * Expands the supplied <code>jstlText</code> so that all JSTL (and EL) tags
@@ -103,7 +572,21 @@ public class JstlTemplateManager implements TextExpander
      */
     public String expandText( String jstlText, Map< String, Object > rootObjects )
     {
-        return buildTemplate( jstlText ).render( rootObjects );
+        return elTemplateManager.render( null, findTextTemplate( jstlText, null ), rootObjects );
+    }
+
+    /**
+     * As <code>expandText( jstlText, rootObjects )</code> but rendering
+     * directly into the supplied sink (e.g. a Writer).
+     *
+     * @param jstlText    the jstlText to be expanded
+     * @param rootObjects a context map of root objects
+     * @param out         the sink receiving the expanded jstlText
+     * @throws IOException if the sink fails
+     */
+    public void expandText( String jstlText, Map< String, Object > rootObjects, Appendable out ) throws IOException
+    {
+        elTemplateManager.render( null, findTextTemplate( jstlText, null ), rootObjects, out );
     }
 
 
@@ -120,7 +603,40 @@ public class JstlTemplateManager implements TextExpander
      */
     public String expandText( String jstlText, String uri, Map< String, Object > rootObjects )
     {
-        return buildTemplate( jstlText, uri ).render( rootObjects );
+        return elTemplateManager.render( textUri( uri ), findTextTemplate( jstlText, uri ), rootObjects );
+    }
+
+    /**
+     * As <code>expandText( jstlText, uri, rootObjects )</code> but rendering
+     * directly into the supplied sink (e.g. a Writer).
+     *
+     * @param jstlText    the jstlText to be expanded
+     * @param uri         a uri against which any embedded paths are relativized
+     * @param rootObjects a context map of root objects
+     * @param out         the sink receiving the expanded jstlText
+     * @throws IOException if the sink fails
+     */
+    public void expandText( String jstlText, String uri, Map< String, Object > rootObjects, Appendable out ) throws IOException
+    {
+        elTemplateManager.render( textUri( uri ), findTextTemplate( jstlText, uri ), rootObjects, out );
+    }
+
+    // metrics of text expanded in the context of a uri are recorded against the uri
+    private String textUri( String uri )
+    {
+        return uri == null ? null : templateUri( uri );
+    }
+
+    private JstlTemplate findTextTemplate( String jstlText, String uri )
+    {
+        final Cache< ContentKey, JstlTemplate > cache = parseCache;
+
+        if ( cache == null )
+        {
+            return parse( textUri( uri ), () -> buildTemplate( jstlText, uri ) );
+        }
+
+        return cache.get( ContentKey.of( jstlText, uri ), key -> tiered( key.getContext(), parse( textUri( key.getContext() ), () -> buildTemplate( key.getText(), key.getContext() ) ) ) );
     }
 
     /**
@@ -165,47 +681,108 @@ public class JstlTemplateManager implements TextExpander
      * specified template <code>templateUri</code>
      */
     public String expandUri( final String uri, Map< String, Object > rootObjects )
+    {
+        return elTemplateManager.render( templateUri( uri ), findTemplate( uri ), rootObjects );
+    }
+
+    /**
+     * As <code>expandUri( uri, rootObjects )</code> but rendering directly
+     * into the supplied sink (e.g. a Writer).
+     *
+     * @param uri         identifies a template
+     * @param rootObjects a Map of root objects (to make accessible in EL expressions in
+     *                    the template)
+     * @param out         the sink receiving the rendering
+     * @throws IOException if the sink fails
+     */
+    public void expandUri( final String uri, Map< String, Object > rootObjects, Appendable out ) throws IOException
+    {
+        elTemplateManager.render( templateUri( uri ), findTemplate( uri ), rootObjects, out );
+    }
+
+    private String templateUri( final String uri )
     {
         // if no period then tack a default extension on the end
         final int lastIndexOfPeriod = uri.lastIndexOf( '.' );
-        final String newUri = ( lastIndexOfPeriod > - 1 ) ? uri : ( uri + DEFAULT_TEMPLATE_EXTENSION );
 
-        // find
-        if ( ! templates.containsKey( newUri ) )
-        {
-            loadTemplate( newUri, null );
-        }
+        return ( lastIndexOfPeriod > - 1 ) ? uri : ( uri + DEFAULT_TEMPLATE_EXTENSION );
+    }
 
-        // render
-        return templates.get( newUri ).render( rootObjects );
+    private JstlTemplate findTemplate( final String uri )
+    {
+        return loadTemplate( templateUri( uri ), null );
     }
 
     /**
-     * Only allow one thread to load a template at any one time.
+     * Return the cached template for the uri, otherwise load and cache the template.
      * <p>
-     * If the desired template has already been loaded then just return
-     * otherwise load and cache the template.
+     * Each template is loaded at most once:
+     * other threads wanting the same template wait for it,
+     * while different templates load in parallel.
      *
      * @param uri           the uri of the template to load
      * @param parentHandler a root handler for any new template
+     * @return the template
      */
-    public synchronized void loadTemplate( final String uri, final JstlTemplateHandler parentHandler )
+    public JstlTemplate loadTemplate( final String uri, final JstlTemplateHandler parentHandler )
     {
-        // find
-        if ( templates.containsKey( uri ) )
-        {
-            return;
-        }
-
-        // build and cache
-        templates.put( uri, new JstlTemplateBuilder().build( uri, parentHandler ) );
+        return templates.get( uri, u -> tiered( u, parse( u, () -> new JstlTemplateBuilder().build( u, parentHandler ) ) ) );
     }
 
     public JstlTemplate getTemplate( final String uri )
     {
-        loadTemplate( uri, null );
+        return loadTemplate( uri, null );
+    }
+
+    /**
+     * Load (parse, compile and cache) every file under the root directory that matches the glob,
+     * and every template they include, in parallel on the common <code>ForkJoinPool</code>.
+     * <p>
+     * Each template is cached under its path (i.e. <code>root</code> resolved with its relative path),
+     * so to be used by later renders it must be requested by the same uri.
+     *
+     * @param root a directory
+     * @param glob a glob pattern (e.g. <code>**.tpl</code>) matched against paths relative to the root
+     * @return the load time, or failure, of each template
+     */
+    public PreloadReport preload( Path root, String glob )
+    {
+        return preload( root, glob, ForkJoinPool.commonPool() );
+    }
+
+    public PreloadReport preload( Path root, String glob, Executor executor )
+    {
+        final PathMatcher matcher = root.getFileSystem().getPathMatcher( "glob:" + glob );
+
+        try ( Stream< Path > paths = Files.walk( root ) )
+        {
+            return preload(
+                    paths
+                            .filter( Files::isRegularFile )
+                            .filter( path -> matcher.matches( root.relativize( path ) ) )
+                            .map( Path::toString )
+                            .sorted()
+                            .collect( Collectors.toList() ),
+                    executor );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
 
-        return templates.get( uri );
+    /**
+     * Load (parse, compile and cache) the templates, and every template they include, in parallel:
+     * templates are loaded after the templates they include (see <code>TemplatePreloader</code>),
+     * and failures are reported rather than thrown.
+     *
+     * @param uris     the uris of some templates
+     * @param executor runs the loads
+     * @return the load time, or failure, of each template
+     */
+    public PreloadReport preload( Collection< String > uris, Executor executor )
+    {
+        return new TemplatePreloader( this ).preload( uris, executor );
     }
 
 
@@ -245,6 +822,50 @@ public class JstlTemplateManager implements TextExpander
         return handler.build();
     }
 
+    /**
+     * Builds an anonymous <code>JstlTemplate</code> from text read incrementally from the supplied reader
+     * (which is not closed), in the context of the supplied uri.
+     * <p>
+     * The template is not cached.
+     *
+     * @param reader the source of the text to be decomposed into a JstlTemplate
+     * @param uri    the (notional) location of the text
+     * @return the new JstlTemplate
+     */
+    public JstlTemplate buildTemplate( Reader reader, final String uri )
+    {
+        final JstlTemplateHandler handler = new JstlTemplateHandler( uri, null );
+
+        new JstlTemplateBuilder().parse( reader, handler );
+
+        return handler.build();
+    }
+
+    /**
+     * Builds an anonymous <code>JstlTemplate</code> from text decoded (with the charset of the template reader)
+     * incrementally from the supplied channel (which is not closed), in the context of the supplied uri.
+     * <p>
+     * The template is not cached.
+     *
+     * @param channel the source of the text to be decomposed into a JstlTemplate
+     * @param uri     the (notional) location of the text
+     * @return the new JstlTemplate
+     */
+    public JstlTemplate buildTemplate( ReadableByteChannel channel, final String uri )
+    {
+        return buildTemplate(
+                Channels.newReader(
+                        channel,
+                        elTemplateManager
+                                .getTemplateReader()
+                                .getCharset()
+                                .newDecoder()
+                                .onMalformedInput( CodingErrorAction.REPLACE )
+                                .onUnmappableCharacter( CodingErrorAction.REPLACE ),
+                        - 1 ),
+                uri );
+    }
+
 
     /**
      * Switch off/on the stripping of HTML style comments.
@@ -256,6 +877,12 @@ public class JstlTemplateManager implements TextExpander
     public void setStripComments( boolean stripComments )
     {
         this.stripComments = stripComments;
+
+        // cached templates were parsed with the previous setting
+        if ( parseCache != null )
+        {
+            parseCache.clear();
+        }
     }
 
 
@@ -303,6 +930,21 @@ public class JstlTemplateManager implements TextExpander
             stack.peek().addRenderable( elTemplateManager.buildTemplate( text ).withUri( uri ) );
         }
 
+        /**
+         * Add text that has already been built into an ELTemplate.
+         *
+         * @param elTemplate the text
+         */
+        public void text( ELTemplateManager.ELTemplate elTemplate )
+        {
+            if ( stack.peek() == null )
+            {
+                throw new RuntimeException( format( TagMessages.PARSER_ERROR_UNEXPECTED_TEXT, tagStack.peek() ) );
+            }
+
+            stack.peek().addRenderable( elTemplate.withUri( uri ) );
+        }
+
         public void open( String tag, Map< String, String > attributes )
         {
             JstlElement jstlElement = JstlTag
@@ -367,7 +1009,10 @@ public class JstlTemplateManager implements TextExpander
 
                 throw new RuntimeException( format( TagMessages.PARSER_ERROR_SEQUENCE_ERROR2, stackTag, peekStack, root ) );
             }
-            return root;
+
+            final TemplateOptimiser optimiser = templateOptimiser;
+
+            return optimiser == null ? root : optimiser.optimise( root );
         }
 
         public JstlTemplate peekStack()
@@ -399,6 +1044,13 @@ public class JstlTemplateManager implements TextExpander
 
         public void loadTemplate( final String uri )
         {
+            final TemplateReloader r = reloader;
+
+            if ( r != null && this.uri != null )
+            {
+                r.included( this.uri, uri );
+            }
+
             JstlTemplateManager.this.loadTemplate( uri, this );
         }
 
@@ -418,30 +1070,51 @@ public class JstlTemplateManager implements TextExpander
             return JstlTemplateManager.this.expandUri( uri, rootObjects );
         }
 
+        public void expandUri( final String uri, Map< String, Object > rootObjects, Appendable out ) throws IOException
+        {
+            JstlTemplateManager.this.expandUri( uri, rootObjects, out );
+        }
+
+        public URL findTemplateUrl( final String uri )
+        {
+            return elTemplateManager.findTemplateUrl( uri );
+        }
+
         public String relativizeUri( String relativeUri )
         {
-            if ( uri == null )
-            {
-                return relativeUri;
-            }
+            return relativize( uri, relativeUri );
+        }
+    }
 
-            boolean isfwdSlash = true;
 
-            int p = uri.lastIndexOf( '/' );
+    /**
+     * @param uri         the uri of a template (or null)
+     * @param relativeUri a uri relative to the template's location
+     * @return the relative uri resolved against the directory of the template
+     */
+    public static String relativize( String uri, String relativeUri )
+    {
+        if ( uri == null )
+        {
+            return relativeUri;
+        }
 
-            if ( p < 0 )
-            {
-                isfwdSlash = false;
-                p = uri.lastIndexOf( '\\' );
-            }
+        boolean isfwdSlash = true;
 
-            if ( p < 0 )
-            {
-                return relativeUri;
-            }
+        int p = uri.lastIndexOf( '/' );
 
-            return uri.substring( 0, p ) + ( isfwdSlash ? "/" : "\\" ) + relativeUri;
+        if ( p < 0 )
+        {
+            isfwdSlash = false;
+            p = uri.lastIndexOf( '\\' );
+        }
+
+        if ( p < 0 )
+        {
+            return relativeUri;
         }
+
+        return uri.substring( 0, p ) + ( isfwdSlash ? "/" : "\\" ) + relativeUri;
     }
 
 
@@ -457,6 +1130,14 @@ public class JstlTemplateManager implements TextExpander
         return new File( templateUri ).toURI().toURL();
     }
 
+    private boolean isLexed()
+    {
+        return lexedPatterns.get( 0 ) == TAG_SELECTOR_PATTERN
+                && lexedPatterns.get( 1 ) == ATTRIBUTE_SELECTOR_PATTERN
+                && lexedPatterns.get( 2 ) == COMMENT_SELECTOR_PATTERN
+                && lexedPatterns.get( 3 ) == CDATA_SELECTOR_PATTERN;
+    }
+
     /**
      * Builder implementation that parses text loaded from a uri.
      *
@@ -471,20 +1152,194 @@ public class JstlTemplateManager implements TextExpander
          */
         public JstlTemplate build( final String uri, final JstlTemplateHandler parentHandler )
         {
+            final CompiledTemplates c = compiledTemplates;
+            final JstlTemplate compiled = c == null ? null : c.load( JstlTemplateManager.this, uri );
+
+            if ( compiled != null )
+            {
+                return compiled;
+            }
+
+            final URL url = elTemplateManager.findTemplateUrl( uri );
+            final TemplateSnapshot s = snapshot;
+            final TemplateSnapshot.Entry entry = s == null || ! isLexed()
+                                                 ? null
+                                                 : s.find( uri, url, elTemplateManager.getTemplateReader() );
+
+            if ( entry != null )
+            {
+                return build( uri, url, parentHandler, handler -> replay( entry, handler ), entry::getTemplateText );
+            }
+
+            final Path path = streamed( url );
+
+            if ( path != null )
+            {
+                try ( TemplateStream stream = elTemplateManager.getTemplateReader().open( path ) )
+                {
+                    return build( uri, url, parentHandler, handler -> parse( stream, handler ), stream::getTemplateText );
+                }
+                catch ( IOException e )
+                {
+                    throw new UncheckedIOException( format( "Failed to read template: %s", url ), e );
+                }
+            }
+
+            final TemplateText text = elTemplateManager.getTemplateReader().read( url );
+
+            return build( uri, url, parentHandler, handler -> parse( text.getText(), handler ), () -> text );
+        }
+
+        private JstlTemplate build( String uri, URL url, JstlTemplateHandler parentHandler, JstlTemplateParser parser, Supplier< TemplateText > text )
+        {
+            final TemplateReloader r = reloader;
+
+            if ( r != null )
+            {
+                r.loading( uri );
+            }
+
             // TODO: capture location to support relative path calculation for include references
-            return new JstlTemplateHandler( uri, parentHandler )
-                    .load( handler -> parse( readUrl( getLocalFileURL( getClass(), uri ) ), handler ) )
+            final JstlTemplate template = new JstlTemplateHandler( uri, parentHandler )
+                    .load( parser )
                     .build();
+
+            if ( r != null )
+            {
+                r.loaded( uri, url, text.get() );
+            }
+
+            return template;
         }
 
+        /*
+         * The file of the url, if it is to be streamed.
+         */
+        private Path streamed( URL url )
+        {
+            final Path path = streamThreshold < 0 || ! isLexed() ? null : TemplateReader.path( url );
+
+            try
+            {
+                return path != null && Files.size( path ) > streamThreshold ? path : null;
+            }
+            catch ( IOException e )
+            {
+                // to be reported when read
+                return null;
+            }
+        }
 
-        private void parse( String text, TagHandler handler )
+        private void replay( TemplateSnapshot.Entry entry, JstlTemplateHandler handler )
+        {
+            final ELTemplateManager.ELTemplateAssembler assembler = elTemplateManager.newAssembler();
+
+            entry.replay( lexHandler( handler, assembler ) );
+
+            assembler.seal();
+        }
+
+        private void parse( Reader reader, JstlTemplateHandler handler )
+        {
+            if ( ! isLexed() )
+            {
+                parseWithPatterns( readFully( reader ), handler );
+                return;
+            }
+
+            final ELTemplateManager.ELTemplateAssembler assembler = elTemplateManager.newAssembler();
+
+            new TemplateLexer( lexedTagPrefix, stripComments, true ).lex( reader, lexHandler( handler, assembler ) );
+
+            assembler.seal();
+        }
+
+        private String readFully( Reader reader )
+        {
+            final StringBuilder text = new StringBuilder();
+            final char[] buffer = new char[ 8192 ];
+
+            try
+            {
+                for ( int read = reader.read( buffer ); read >= 0; read = reader.read( buffer ) )
+                {
+                    text.append( buffer, 0, read );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+
+            return text.toString();
+        }
+
+        private void parse( String text, JstlTemplateHandler handler )
         {
             if ( text == null )
             {
                 return;
             }
 
+            if ( ! isLexed() )
+            {
+                parseWithPatterns( text, handler );
+                return;
+            }
+
+            final ELTemplateManager.ELTemplateAssembler assembler = elTemplateManager.newAssembler();
+
+            new TemplateLexer( lexedTagPrefix, stripComments, true ).lex( text, lexHandler( handler, assembler ) );
+
+            assembler.seal();
+        }
+
+        private TemplateLexer.Handler lexHandler( JstlTemplateHandler handler, ELTemplateManager.ELTemplateAssembler assembler )
+        {
+            return new TemplateLexer.Handler()
+            {
+                @Override
+                public void literal( CharSequence text, int start, int end )
+                {
+                    assembler.literal( text, start, end );
+                }
+
+                @Override
+                public void expression( boolean deferred, CharSequence text, int start, int end )
+                {
+                    assembler.expression( deferred, text, start, end );
+                }
+
+                @Override
+                public void endText()
+                {
+                    handler.text( assembler.finish() );
+                }
+
+                @Override
+                public void openTag( String tag, Map< String, String > attributes, boolean empty )
+                {
+                    handler.open( tag, attributes );
+
+                    if ( empty )
+                    {
+                        handler.close( tag );
+                    }
+                }
+
+                @Override
+                public void closeTag( String tag )
+                {
+                    handler.close( tag );
+                }
+            };
+        }
+
+        /*
+         * The original parser, still used when any of the patterns has been replaced.
+         */
+        private void parseWithPatterns( String text, TagHandler handler )
+        {
             final Matcher matcher = TAG_SELECTOR_PATTERN.matcher( text );
 
             int lastPosition = 0;
@@ -0,0 +1,77 @@
+package com.brentcroft.tools.jstl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * The outcome of <code>JstlTemplateManager.preload</code>:
+ * the time taken to load (parse and compile) each template, or why it failed.
+ *
+ * @author ADobson
+ */
+@Getter
+public class PreloadReport
+{
+    private final List< Result > results;
+    private final int levels;
+    private final long elapsedMillis;
+
+    PreloadReport( List< Result > results, int levels, long elapsedMillis )
+    {
+        this.results = Collections.unmodifiableList( results );
+        this.levels = levels;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List< Result > getFailures()
+    {
+        return results
+                .stream()
+                .filter( Result::isFailed )
+                .collect( Collectors.toList() );
+    }
+
+    public String toString()
+    {
+        return format( "preloaded %s templates (%s failed) in %s levels, in %sms",
+                results.size(),
+                getFailures().size(),
+                levels,
+                elapsedMillis );
+    }
+
+    /**
+     * The load of one template.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Result
+    {
+        private final String uri;
+
+        // templates at level 0 include no others, and a template only includes templates at lower levels
+        // (apart from templates that include each other, which are loaded together)
+        private final int level;
+
+        private final long micros;
+        private final RuntimeException error;
+
+        public boolean isFailed()
+        {
+            return error != null;
+        }
+
+        public String toString()
+        {
+            return error == null
+                   ? format( "%s: %sµs", uri, micros )
+                   : format( "%s: failed: %s", uri, error.getMessage() );
+        }
+    }
+}
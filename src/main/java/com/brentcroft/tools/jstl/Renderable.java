@@ -1,8 +1,43 @@
 package com.brentcroft.tools.jstl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 
 public interface Renderable
 {
-    String render( Map< String, Object > rootObjects );
+    /**
+     * Render into a new String.
+     * <p>
+     * This is a thin wrapper around <code>render( rootObjects, out )</code>.
+     *
+     * @param rootObjects the objects in context during rendering
+     * @return the rendered output as a String
+     */
+    default String render( Map< String, Object > rootObjects )
+    {
+        final StringBuilder out = new StringBuilder();
+
+        try
+        {
+            render( rootObjects, out );
+        }
+        catch ( IOException e )
+        {
+            // a StringBuilder never throws
+            throw new UncheckedIOException( e );
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Render directly into the supplied sink (e.g. a Writer or a StringBuilder),
+     * so that output reaches the sink exactly once whatever the nesting depth.
+     *
+     * @param rootObjects the objects in context during rendering
+     * @param out         the sink receiving the rendered output
+     * @throws IOException if the sink fails
+     */
+    void render( Map< String, Object > rootObjects, Appendable out ) throws IOException;
 }
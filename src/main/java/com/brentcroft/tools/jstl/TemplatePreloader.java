@@ -0,0 +1,283 @@
+package com.brentcroft.tools.jstl;
+
+import lombok.extern.java.Log;
+
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * Loads a set of templates, and the templates they include, in parallel.
+ * <p>
+ * First the include graph is discovered, by scanning the text of each template for <code>c:include</code> tags
+ * (without parsing). Templates that include each other (e.g. with <code>recursive="true"</code>)
+ * are grouped, to be loaded together on one thread.
+ * Then each group is given a level: groups that include nothing are at level 0,
+ * and every other group is one level above the highest group it includes.
+ * The groups of each level are loaded in parallel, and each level only starts when the one below has finished,
+ * so that every include is already loaded when its includer is parsed.
+ *
+ * @author ADobson
+ */
+@Log
+class TemplatePreloader
+{
+    private final JstlTemplateManager manager;
+
+    // uri -> included uris
+    private final Map< String, Set< String > > graph = new LinkedHashMap<>();
+
+    // Tarjan's strongly connected components
+    private final Map< String, Integer > index = new HashMap<>();
+    private final Map< String, Integer > lowLink = new HashMap<>();
+    private final Deque< String > stack = new ArrayDeque<>();
+    private final Set< String > onStack = new HashSet<>();
+    private final List< List< String > > components = new ArrayList<>();
+
+    TemplatePreloader( JstlTemplateManager manager )
+    {
+        this.manager = manager;
+    }
+
+    PreloadReport preload( Collection< String > uris, Executor executor )
+    {
+        final long started = System.nanoTime();
+
+        discover( uris );
+
+        for ( String uri : graph.keySet() )
+        {
+            if ( ! index.containsKey( uri ) )
+            {
+                connect( uri );
+            }
+        }
+
+        final List< List< List< String > > > levels = levels();
+        final Queue< PreloadReport.Result > results = new ConcurrentLinkedQueue<>();
+
+        for ( int level = 0; level < levels.size(); level++ )
+        {
+            final int currentLevel = level;
+
+            CompletableFuture
+                    .allOf( levels
+                            .get( level )
+                            .stream()
+                            .map( component -> CompletableFuture.runAsync( () -> load( component, currentLevel, results ), executor ) )
+                            .toArray( CompletableFuture[]::new ) )
+                    .join();
+        }
+
+        final List< PreloadReport.Result > sorted = results
+                .stream()
+                .sorted( Comparator
+                        .comparingInt( PreloadReport.Result::getLevel )
+                        .thenComparing( PreloadReport.Result::getUri ) )
+                .collect( Collectors.toList() );
+
+        final PreloadReport report = new PreloadReport( sorted, levels.size(), ( System.nanoTime() - started ) / 1_000_000 );
+
+        log.info( report::toString );
+
+        return report;
+    }
+
+    private void load( List< String > component, int level, Queue< PreloadReport.Result > results )
+    {
+        for ( String uri : component )
+        {
+            final long started = System.nanoTime();
+
+            RuntimeException error = null;
+
+            try
+            {
+                manager.loadTemplate( uri, null );
+            }
+            catch ( RuntimeException e )
+            {
+                error = e;
+
+                log.warning( () -> format( "Failed to preload template [%s]: %s", uri, e ) );
+            }
+
+            results.add( new PreloadReport.Result( uri, level, ( System.nanoTime() - started ) / 1000, error ) );
+        }
+    }
+
+    private void discover( Collection< String > uris )
+    {
+        final Deque< String > pending = new ArrayDeque<>( uris );
+
+        while ( ! pending.isEmpty() )
+        {
+            final String uri = pending.remove();
+
+            if ( graph.containsKey( uri ) )
+            {
+                continue;
+            }
+
+            final Set< String > includes = new LinkedHashSet<>();
+
+            graph.put( uri, includes );
+
+            for ( String include : includes( uri ) )
+            {
+                // an include that can't be found is reported by its includer
+                if ( graph.containsKey( include ) || find( include ) != null )
+                {
+                    includes.add( include );
+                    pending.add( include );
+                }
+            }
+        }
+    }
+
+    private URL find( String uri )
+    {
+        return manager.getELTemplateManager().getTemplateSource().find( uri );
+    }
+
+    /**
+     * @param uri the uri of a template
+     * @return the uris of the templates it includes
+     */
+    private Set< String > includes( String uri )
+    {
+        final Set< String > includes = new LinkedHashSet<>();
+        final URL url = find( uri );
+
+        if ( url == null )
+        {
+            return includes;
+        }
+
+        final String text;
+
+        try
+        {
+            text = manager.getELTemplateManager().getTemplateReader().read( url ).getText();
+        }
+        catch ( RuntimeException e )
+        {
+            // reported when loaded
+            return includes;
+        }
+
+        final Matcher tags = manager.TAG_SELECTOR_PATTERN.matcher( text );
+
+        while ( tags.find() )
+        {
+            if ( ! "include".equals( tags.group( 2 ) ) || tags.group( 3 ) == null )
+            {
+                continue;
+            }
+
+            final Map< String, String > attributes = new HashMap<>();
+            final Matcher attribute = manager.ATTRIBUTE_SELECTOR_PATTERN.matcher( tags.group( 3 ) );
+
+            while ( attribute.find() )
+            {
+                attributes.put( attribute.group( 1 ), attribute.group( 3 ) != null ? attribute.group( 3 ) : attribute.group( 4 ) );
+            }
+
+            final String page = attributes.get( "page" );
+
+            if ( page != null && ! page.isEmpty() )
+            {
+                // as JstlTag.INCLUDE: relative by default
+                includes.add( Boolean.parseBoolean( attributes.getOrDefault( "relative", "true" ) )
+                              ? JstlTemplateManager.relativize( uri, page )
+                              : page );
+            }
+        }
+
+        return includes;
+    }
+
+    // components are completed after every component they include
+    private void connect( String uri )
+    {
+        index.put( uri, index.size() );
+        lowLink.put( uri, index.get( uri ) );
+        stack.push( uri );
+        onStack.add( uri );
+
+        for ( String include : graph.get( uri ) )
+        {
+            if ( ! index.containsKey( include ) )
+            {
+                connect( include );
+                lowLink.put( uri, Math.min( lowLink.get( uri ), lowLink.get( include ) ) );
+            }
+            else if ( onStack.contains( include ) )
+            {
+                lowLink.put( uri, Math.min( lowLink.get( uri ), index.get( include ) ) );
+            }
+        }
+
+        if ( lowLink.get( uri ).equals( index.get( uri ) ) )
+        {
+            final List< String > component = new ArrayList<>();
+
+            String member;
+
+            do
+            {
+                member = stack.pop();
+                onStack.remove( member );
+                component.add( member );
+            }
+            while ( ! member.equals( uri ) );
+
+            // load the first discovered first
+            Collections.reverse( component );
+
+            components.add( component );
+        }
+    }
+
+    private List< List< List< String > > > levels()
+    {
+        final Map< String, Integer > componentLevels = new HashMap<>();
+        final List< List< List< String > > > levels = new ArrayList<>();
+
+        for ( List< String > component : components )
+        {
+            int level = 0;
+
+            for ( String member : component )
+            {
+                for ( String include : graph.get( member ) )
+                {
+                    if ( ! component.contains( include ) )
+                    {
+                        level = Math.max( level, componentLevels.get( include ) + 1 );
+                    }
+                }
+            }
+
+            for ( String member : component )
+            {
+                componentLevels.put( member, level );
+            }
+
+            while ( levels.size() <= level )
+            {
+                levels.add( new ArrayList<>() );
+            }
+
+            levels.get( level ).add( component );
+        }
+
+        return levels;
+    }
+}
@@ -0,0 +1,392 @@
+package com.brentcroft.tools.jstl;
+
+import com.brentcroft.tools.el.cache.Cache;
+import com.brentcroft.tools.el.source.TemplateText;
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Reloads the templates of a <code>JstlTemplateManager</code> when their files change.
+ * <p>
+ * Each template loaded from a file (i.e. a <code>file:</code> URL)
+ * is tracked with its modification time, length and content hash.
+ * A check stats every tracked file, and re-reads only those whose time or length has changed;
+ * a template is only re-parsed when its content hash has changed,
+ * and is then swapped into the template cache in one step:
+ * renders already in progress finish with the previous version.
+ * <p>
+ * A <code>c:include</code> finds its template by uri each time it renders,
+ * so a template that includes a changed template needs no re-parse to use the new version.
+ * If a template's file is deleted then the template, and every template that includes it
+ * (directly or indirectly), is removed from the cache, to be reloaded (or fail) on next use.
+ * <p>
+ * If a changed template fails to parse then the previous version is kept (and a warning logged).
+ * <p>
+ * Checks run either on demand (<code>checkNow()</code>),
+ * or in the background after <code>start( intervalMillis )</code>,
+ * using a <code>WatchService</code> on the directories of the tracked files to react promptly,
+ * and polling at the interval anyway.
+ *
+ * @author ADobson
+ */
+@Log
+public class TemplateReloader implements AutoCloseable
+{
+    private final JstlTemplateManager jstlTemplateManager;
+
+    private final Map< String, Source > sources = new ConcurrentHashMap<>();
+    private final Map< String, Set< String > > includes = new ConcurrentHashMap<>();
+
+    private final Set< Path > watchedDirectories = ConcurrentHashMap.newKeySet();
+    private volatile WatchService watchService;
+    private volatile Thread thread;
+
+    TemplateReloader( JstlTemplateManager jstlTemplateManager )
+    {
+        this.jstlTemplateManager = jstlTemplateManager;
+    }
+
+    /**
+     * Check the tracked files in a background (daemon) thread.
+     *
+     * @param intervalMillis the maximum time between checks
+     * @return this
+     */
+    public synchronized TemplateReloader start( long intervalMillis )
+    {
+        if ( thread != null )
+        {
+            throw new IllegalStateException( "Already started" );
+        }
+
+        try
+        {
+            watchService = FileSystems.getDefault().newWatchService();
+
+            for ( Source source : sources.values() )
+            {
+                watch( source.path );
+            }
+        }
+        catch ( IOException e )
+        {
+            log.warning( () -> format( "No watch service, polling only: %s", e ) );
+        }
+
+        thread = new Thread( () -> run( intervalMillis ), "template-reloader" );
+        thread.setDaemon( true );
+        thread.start();
+
+        return this;
+    }
+
+    /**
+     * Stop any background thread.
+     */
+    public synchronized void close()
+    {
+        if ( thread != null )
+        {
+            thread.interrupt();
+            thread = null;
+        }
+
+        if ( watchService != null )
+        {
+            try
+            {
+                watchService.close();
+            }
+            catch ( IOException ignored )
+            {
+                // closing anyway
+            }
+            watchService = null;
+            watchedDirectories.clear();
+        }
+    }
+
+    /**
+     * Check every tracked file, reloading changed templates.
+     *
+     * @return the number of templates reloaded or removed
+     */
+    public int checkNow()
+    {
+        final Cache< String, JstlTemplate > templates = jstlTemplateManager.getTemplateCache();
+        final Set< String > cached = templates.keys();
+
+        int changes = 0;
+
+        for ( Source source : sources.values() )
+        {
+            if ( ! cached.contains( source.uri ) )
+            {
+                // dropped or evicted: tracked again if reloaded
+                sources.remove( source.uri, source );
+            }
+            else if ( ! Files.exists( source.path ) )
+            {
+                sources.remove( source.uri, source );
+
+                for ( String uri : getIncluders( source.uri, true ) )
+                {
+                    templates.remove( uri );
+                    changes++;
+                }
+
+                templates.remove( source.uri );
+                changes++;
+
+                log.info( () -> format( "Removed deleted template: %s", source.uri ) );
+            }
+            else if ( source.isModified() && reload( source, templates ) )
+            {
+                changes++;
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * @param uri        a template uri
+     * @param transitive if true, include the includers of the includers etc.
+     * @return the uris of the tracked templates that include the template
+     */
+    public Set< String > getIncluders( String uri, boolean transitive )
+    {
+        final Set< String > includers = new LinkedHashSet<>();
+        final Deque< String > pending = new ArrayDeque<>();
+
+        pending.add( uri );
+
+        while ( ! pending.isEmpty() )
+        {
+            final String target = pending.remove();
+
+            includes.forEach( ( includer, included ) -> {
+                if ( included.contains( target ) && ! includer.equals( uri ) && includers.add( includer ) && transitive )
+                {
+                    pending.add( includer );
+                }
+            } );
+        }
+
+        return includers;
+    }
+
+    /**
+     * Forget all tracked templates.
+     */
+    public void clear()
+    {
+        sources.clear();
+        includes.clear();
+    }
+
+
+    void loading( String uri )
+    {
+        includes.put( uri, ConcurrentHashMap.newKeySet() );
+    }
+
+    void loaded( String uri, URL url, TemplateText text )
+    {
+        if ( ! "file".equalsIgnoreCase( url.getProtocol() ) )
+        {
+            return;
+        }
+
+        try
+        {
+            final Source source = new Source( uri, Paths.get( url.toURI() ) );
+
+            source.update( text );
+
+            sources.put( uri, source );
+
+            watch( source.path );
+        }
+        catch ( URISyntaxException | RuntimeException e )
+        {
+            log.warning( () -> format( "Not tracking template [%s]: %s", uri, e ) );
+        }
+    }
+
+    void included( String includer, String uri )
+    {
+        includes.computeIfAbsent( includer, k -> ConcurrentHashMap.newKeySet() ).add( uri );
+    }
+
+
+    private boolean reload( Source source, Cache< String, JstlTemplate > templates )
+    {
+        final TemplateText text;
+
+        try
+        {
+            text = jstlTemplateManager
+                    .getELTemplateManager()
+                    .getTemplateReader()
+                    .read( source.path );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            log.warning( () -> format( "Failed to read template [%s]: %s", source.uri, e ) );
+            return false;
+        }
+
+        if ( text.getHash() == source.hash && text.getSize() == source.size )
+        {
+            // touched, but unchanged
+            source.updateAttributes();
+            return false;
+        }
+
+        final Set< String > previousIncludes = includes.get( source.uri );
+
+        try
+        {
+            loading( source.uri );
+
+            final JstlTemplate template = jstlTemplateManager.tiered( source.uri, jstlTemplateManager.buildTemplate( text.getText(), source.uri ) );
+
+            // atomic swap
+            templates.put( source.uri, template );
+
+            source.update( text );
+
+            log.info( () -> format( "Reloaded template: %s", source.uri ) );
+
+            return true;
+        }
+        catch ( RuntimeException e )
+        {
+            if ( previousIncludes != null )
+            {
+                includes.put( source.uri, previousIncludes );
+            }
+
+            log.warning( () -> format( "Failed to reload template [%s], keeping previous version: %s", source.uri, e ) );
+            return false;
+        }
+    }
+
+    private void watch( Path file )
+    {
+        final WatchService ws = watchService;
+        final Path directory = file.getParent();
+
+        if ( ws == null || directory == null || ! watchedDirectories.add( directory ) )
+        {
+            return;
+        }
+
+        try
+        {
+            directory.register( ws,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            log.warning( () -> format( "Failed to watch directory [%s]: %s", directory, e ) );
+        }
+    }
+
+    private void run( long intervalMillis )
+    {
+        while ( ! Thread.currentThread().isInterrupted() )
+        {
+            try
+            {
+                final WatchService ws = watchService;
+
+                if ( ws == null )
+                {
+                    Thread.sleep( intervalMillis );
+                }
+                else
+                {
+                    final WatchKey key = ws.poll( intervalMillis, TimeUnit.MILLISECONDS );
+
+                    if ( key != null )
+                    {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                }
+
+                checkNow();
+            }
+            catch ( InterruptedException | ClosedWatchServiceException e )
+            {
+                return;
+            }
+            catch ( RuntimeException e )
+            {
+                log.warning( () -> format( "Template reload check failed: %s", e ) );
+            }
+        }
+    }
+
+
+    static class Source
+    {
+        private final String uri;
+        private final Path path;
+
+        private volatile long lastModified;
+        private volatile long size;
+        private volatile long hash;
+
+        Source( String uri, Path path )
+        {
+            this.uri = uri;
+            this.path = path;
+        }
+
+        boolean isModified()
+        {
+            try
+            {
+                return Files.getLastModifiedTime( path ).toMillis() != lastModified
+                        || Files.size( path ) != size;
+            }
+            catch ( IOException e )
+            {
+                return false;
+            }
+        }
+
+        void update( TemplateText text )
+        {
+            hash = text.getHash();
+            updateAttributes();
+        }
+
+        void updateAttributes()
+        {
+            try
+            {
+                lastModified = Files.getLastModifiedTime( path ).toMillis();
+                size = Files.size( path );
+            }
+            catch ( IOException e )
+            {
+                lastModified = - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,573 @@
+package com.brentcroft.tools.jstl;
+
+import com.brentcroft.tools.el.ELTemplateException;
+import com.brentcroft.tools.el.TemplateLexer;
+import com.brentcroft.tools.el.source.TemplateReader;
+import com.brentcroft.tools.el.source.TemplateText;
+import lombok.extern.java.Log;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * A binary snapshot of parsed templates, so that a new JVM can load templates without lexing them
+ * (see <code>JstlTemplateManager.saveSnapshot</code> and <code>withSnapshot</code>).
+ * <p>
+ * Each template is saved as the events of lexing its text (literals, expressions, and opening and closing tags),
+ * with the hash, size and modification time of its source.
+ * A template is loaded by replaying its events into a new template handler:
+ * giving the same template as parsing its source,
+ * for as long as the source is unchanged, either by size and time (for files), or else by hash.
+ * Any template whose source has changed is parsed from its source as usual.
+ * <p>
+ * The file is memory-mapped, read-only, and only ever replaced (atomically, where supported),
+ * so any number of JVMs can share it.
+ * <p>
+ * The file has a version, and records the lexer settings (tag prefix and comment stripping)
+ * and charset it was saved with:
+ * if any differ from those of the loading manager then the snapshot is ignored.
+ * <p>
+ * Compiled expressions are not saved (they are compiled again, as the events are replayed,
+ * or when first used, with lazy compilation).
+ *
+ * @author ADobson
+ */
+@Log
+public class TemplateSnapshot
+{
+    public static final String DEFAULT_FILE_NAME = "templates.snapshot";
+
+    static final int MAGIC = 0x454C5053;
+    static final int VERSION = 1;
+
+    // events
+    private static final byte LITERAL = 1;
+    private static final byte EXPRESSION = 2;
+    private static final byte DEFERRED_EXPRESSION = 3;
+    private static final byte END_TEXT = 4;
+    private static final byte OPEN_TAG = 5;
+    private static final byte OPEN_EMPTY_TAG = 6;
+    private static final byte CLOSE_TAG = 7;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+
+    // string offsets, and strings as decoded
+    private final int[] stringOffsets;
+    private final String[] strings;
+
+    private final Map< String, Entry > entries = new LinkedHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    private TemplateSnapshot( Path file, ByteBuffer buffer, int stringCount )
+    {
+        this.file = file;
+        this.buffer = buffer;
+        this.stringOffsets = new int[ stringCount ];
+        this.strings = new String[ stringCount ];
+    }
+
+    /**
+     * @param path a snapshot file, or a directory containing the file <code>templates.snapshot</code>
+     * @return the snapshot file
+     */
+    public static Path file( Path path )
+    {
+        return Files.isDirectory( path ) ? path.resolve( DEFAULT_FILE_NAME ) : path;
+    }
+
+    /**
+     * Map a snapshot file.
+     *
+     * @param path          a snapshot file, or directory
+     * @param tagPrefix     the tag prefix of the loading manager
+     * @param stripComments if the loading manager strips comments
+     * @param reader        the template reader of the loading manager
+     * @return the snapshot, or null if there is no snapshot, or it was saved with a different version or settings
+     */
+    static TemplateSnapshot open( Path path, String tagPrefix, boolean stripComments, TemplateReader reader )
+    {
+        final Path file = file( path );
+
+        if ( ! Files.isRegularFile( file ) )
+        {
+            log.info( () -> format( "No template snapshot: %s", file ) );
+            return null;
+        }
+
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) )
+        {
+            final ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+
+            if ( buffer.getInt() != MAGIC || buffer.getInt() != VERSION )
+            {
+                log.warning( () -> format( "Ignoring template snapshot of another version: %s", file ) );
+                return null;
+            }
+
+            final String settings = settings( tagPrefix, stripComments, reader );
+            final String saved = inlineString( buffer );
+
+            if ( ! settings.equals( saved ) )
+            {
+                log.warning( () -> format( "Ignoring template snapshot saved with other settings [%s]: %s", saved, file ) );
+                return null;
+            }
+
+            final TemplateSnapshot snapshot = new TemplateSnapshot( file, buffer, buffer.getInt() );
+
+            for ( int i = 0; i < snapshot.stringOffsets.length; i++ )
+            {
+                snapshot.stringOffsets[ i ] = buffer.position();
+
+                skip( buffer, buffer.getInt() );
+            }
+
+            for ( int i = buffer.getInt(); i > 0; i-- )
+            {
+                final String uri = snapshot.string( buffer.getInt() );
+                final long hash = buffer.getLong();
+                final long size = buffer.getLong();
+                final long modified = buffer.getLong();
+                final int length = buffer.getInt();
+                final int start = buffer.position();
+
+                snapshot.entries.put( uri, snapshot.new Entry( uri, hash, size, modified, start, start + length ) );
+
+                skip( buffer, length );
+            }
+
+            log.info( () -> format( "Mapped template snapshot of %s templates: %s", snapshot.entries.size(), file ) );
+
+            return snapshot;
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            log.warning( () -> format( "Ignoring unreadable template snapshot [%s]: %s", file, e ) );
+            return null;
+        }
+    }
+
+    private static String settings( String tagPrefix, boolean stripComments, TemplateReader reader )
+    {
+        return format( "prefix=%s; stripComments=%s; charset=%s", tagPrefix, stripComments, reader.getCharset().name() );
+    }
+
+    private static void skip( ByteBuffer buffer, int length )
+    {
+        // as Buffer, for Java 8
+        ( ( Buffer ) buffer ).position( buffer.position() + length );
+    }
+
+    private static String inlineString( ByteBuffer buffer )
+    {
+        final byte[] bytes = new byte[ buffer.getInt() ];
+
+        buffer.get( bytes );
+
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private String string( int index )
+    {
+        final String decoded = strings[ index ];
+
+        if ( decoded != null )
+        {
+            return decoded;
+        }
+
+        final ByteBuffer b = buffer.duplicate();
+
+        ( ( Buffer ) b ).position( stringOffsets[ index ] );
+
+        // benign race: the same string
+        return strings[ index ] = inlineString( b );
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return the uris of the templates in the snapshot
+     */
+    public Set< String > getUris()
+    {
+        return Collections.unmodifiableSet( entries.keySet() );
+    }
+
+    /**
+     * @return the number of templates loaded from the snapshot
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of templates in the snapshot that were parsed from their source, because it has changed
+     */
+    public long getStale()
+    {
+        return stale.get();
+    }
+
+    /**
+     * @param uri    the uri of a template
+     * @param url    the location of its source
+     * @param reader reads (and hashes) the source if it may have changed
+     * @return the snapshot of the template, or null if none, or if its source has changed
+     */
+    Entry find( String uri, URL url, TemplateReader reader )
+    {
+        final Entry entry = entries.get( uri );
+
+        if ( entry == null )
+        {
+            return null;
+        }
+
+        final Path path = TemplateReader.path( url );
+
+        try
+        {
+            if ( path != null
+                    && Files.size( path ) == entry.size
+                    && Files.getLastModifiedTime( path ).toMillis() == entry.modified )
+            {
+                hits.incrementAndGet();
+                return entry;
+            }
+
+            final TemplateText text = reader.hash( url );
+
+            if ( text.getHash() == entry.hash && text.getSize() == entry.size )
+            {
+                hits.incrementAndGet();
+                return entry;
+            }
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            // to be reported when parsed
+        }
+
+        stale.incrementAndGet();
+
+        log.fine( () -> format( "Template snapshot is stale: %s", uri ) );
+
+        return null;
+    }
+
+    public String toString()
+    {
+        return format( "%s templates (%s loaded, %s stale): %s", entries.size(), hits, stale, file );
+    }
+
+
+    /**
+     * The events of lexing one template.
+     */
+    class Entry
+    {
+        private final String uri;
+        private final long hash;
+        private final long size;
+        private final long modified;
+        private final int start;
+        private final int end;
+
+        Entry( String uri, long hash, long size, long modified, int start, int end )
+        {
+            this.uri = uri;
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+            this.start = start;
+            this.end = end;
+        }
+
+        TemplateText getTemplateText()
+        {
+            return new TemplateText( null, hash, size );
+        }
+
+        /**
+         * Report the events of lexing the template.
+         *
+         * @param handler receives the events
+         */
+        void replay( TemplateLexer.Handler handler )
+        {
+            final ByteBuffer b = buffer.duplicate();
+
+            ( ( Buffer ) b ).position( start );
+
+            while ( b.position() < end )
+            {
+                final byte event = b.get();
+
+                switch ( event )
+                {
+                    case LITERAL:
+                    {
+                        final String text = string( b.getInt() );
+                        handler.literal( text, 0, text.length() );
+                        break;
+                    }
+
+                    case EXPRESSION:
+                    case DEFERRED_EXPRESSION:
+                    {
+                        final String text = string( b.getInt() );
+                        handler.expression( event == DEFERRED_EXPRESSION, text, 0, text.length() );
+                        break;
+                    }
+
+                    case END_TEXT:
+                        handler.endText();
+                        break;
+
+                    case OPEN_TAG:
+                    case OPEN_EMPTY_TAG:
+                    {
+                        final String tag = string( b.getInt() );
+                        final int count = b.getInt();
+
+                        Map< String, String > attributes = null;
+
+                        if ( count >= 0 )
+                        {
+                            attributes = new LinkedHashMap<>();
+
+                            for ( int i = 0; i < count; i++ )
+                            {
+                                attributes.put( string( b.getInt() ), string( b.getInt() ) );
+                            }
+                        }
+
+                        handler.openTag( tag, attributes, event == OPEN_EMPTY_TAG );
+                        break;
+                    }
+
+                    case CLOSE_TAG:
+                        handler.closeTag( string( b.getInt() ) );
+                        break;
+
+                    default:
+                        throw new ELTemplateException( format( "Corrupt template snapshot [%s] at %s: %s", file, b.position() - 1, uri ) );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Records the events of lexing templates, to be saved as a snapshot.
+     */
+    static class Writer implements TemplateLexer.Handler
+    {
+        private final String settings;
+
+        private final Map< String, Integer > stringIndexes = new HashMap<>();
+        private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        private final DataOutputStream stringData = new DataOutputStream( strings );
+
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private final DataOutputStream entryData = new DataOutputStream( entries );
+        private int entryCount = 0;
+
+        private final ByteArrayOutputStream events = new ByteArrayOutputStream();
+        private final DataOutputStream eventData = new DataOutputStream( events );
+
+        // adjacent literals are recorded as one
+        private final StringBuilder literal = new StringBuilder();
+
+        Writer( String tagPrefix, boolean stripComments, TemplateReader reader )
+        {
+            this.settings = settings( tagPrefix, stripComments, reader );
+        }
+
+        /**
+         * @param uri      the uri of the template
+         * @param text     the hash and size of its source
+         * @param modified the modification time of its source, or -1
+         * @param lexing   lexes the template to this writer
+         */
+        void add( String uri, TemplateText text, long modified, Runnable lexing )
+        {
+            events.reset();
+            literal.setLength( 0 );
+
+            lexing.run();
+
+            try
+            {
+                entryData.writeInt( string( uri ) );
+                entryData.writeLong( text.getHash() );
+                entryData.writeLong( text.getSize() );
+                entryData.writeLong( modified );
+                entryData.writeInt( events.size() );
+                events.writeTo( entryData );
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+
+            entryCount++;
+        }
+
+        @Override
+        public void literal( CharSequence text, int start, int end )
+        {
+            literal.append( text, start, end );
+        }
+
+        @Override
+        public void expression( boolean deferred, CharSequence text, int start, int end )
+        {
+            event( deferred ? DEFERRED_EXPRESSION : EXPRESSION, text.subSequence( start, end ).toString() );
+        }
+
+        @Override
+        public void endText()
+        {
+            event( END_TEXT, null );
+        }
+
+        @Override
+        public void openTag( String tag, Map< String, String > attributes, boolean empty )
+        {
+            event( empty ? OPEN_EMPTY_TAG : OPEN_TAG, tag );
+
+            try
+            {
+                eventData.writeInt( attributes == null ? - 1 : attributes.size() );
+
+                if ( attributes != null )
+                {
+                    for ( Map.Entry< String, String > attribute : attributes.entrySet() )
+                    {
+                        eventData.writeInt( string( attribute.getKey() ) );
+                        eventData.writeInt( string( attribute.getValue() ) );
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        @Override
+        public void closeTag( String tag )
+        {
+            event( CLOSE_TAG, tag );
+        }
+
+        private void event( byte event, String text )
+        {
+            try
+            {
+                if ( literal.length() > 0 )
+                {
+                    eventData.writeByte( LITERAL );
+                    eventData.writeInt( string( literal.toString() ) );
+                    literal.setLength( 0 );
+                }
+
+                eventData.writeByte( event );
+
+                if ( text != null )
+                {
+                    eventData.writeInt( string( text ) );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        private int string( String text )
+        {
+            return stringIndexes.computeIfAbsent( text, t -> {
+                try
+                {
+                    writeString( stringData, t );
+                }
+                catch ( IOException e )
+                {
+                    throw new UncheckedIOException( e );
+                }
+                return stringIndexes.size();
+            } );
+        }
+
+        private static void writeString( DataOutputStream out, String text ) throws IOException
+        {
+            final byte[] bytes = text.getBytes( StandardCharsets.UTF_8 );
+
+            out.writeInt( bytes.length );
+            out.write( bytes );
+        }
+
+        /**
+         * Write the snapshot to a temporary file, and then move it over any existing file.
+         *
+         * @param path a snapshot file, or directory
+         * @return the snapshot file
+         * @throws IOException if the file cannot be written
+         */
+        Path write( Path path ) throws IOException
+        {
+            final Path file = file( path ).toAbsolutePath();
+            final Path temp = Files.createTempFile( file.getParent(), file.getFileName().toString(), ".tmp" );
+
+            try
+            {
+                try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( temp ) ) ) )
+                {
+                    out.writeInt( MAGIC );
+                    out.writeInt( VERSION );
+                    writeString( out, settings );
+
+                    out.writeInt( stringIndexes.size() );
+                    strings.writeTo( out );
+
+                    out.writeInt( entryCount );
+                    entries.writeTo( out );
+                }
+
+                try
+                {
+                    Files.move( temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+                }
+                catch ( AtomicMoveNotSupportedException e )
+                {
+                    Files.move( temp, file, StandardCopyOption.REPLACE_EXISTING );
+                }
+            }
+            finally
+            {
+                Files.deleteIfExists( temp );
+            }
+
+            return file;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.brentcroft.tools.jstl.compiler;
+
+import com.brentcroft.tools.el.ELTemplateException;
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import com.brentcroft.tools.jstl.Renderable;
+import jakarta.el.ELContext;
+import jakarta.el.ValueExpression;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * The base class of the classes generated from templates by the <code>TemplateGenerator</code>.
+ * <p>
+ * A generated class renders its template with Java control flow:
+ * literal text is appended from constants,
+ * the tests and loops of <code>c:if</code>, <code>c:choose</code>, <code>c:forEach</code> and <code>c:while</code>
+ * are Java statements (with the same scopes as the tags),
+ * and only the expressions (compiled once, when the class is instantiated) and any other tags
+ * (rendered by fragments of the template, parsed once) are left to the interpreter.
+ *
+ * @author ADobson
+ * @see CompiledTemplates
+ */
+public abstract class CompiledTemplate implements Renderable
+{
+    protected final JstlTemplateManager jstl;
+    protected final ELTemplateManager el;
+
+    @Getter
+    private final String uri;
+
+    protected CompiledTemplate( JstlTemplateManager jstl, String uri )
+    {
+        this.jstl = jstl;
+        this.el = jstl.getELTemplateManager();
+        this.uri = uri;
+    }
+
+    protected ValueExpression expression( String source, Class< ? > type )
+    {
+        return el.getValueExpression( source, null, type );
+    }
+
+    /*
+     * A tag (e.g. c:include) rendered by the interpreter.
+     */
+    protected Renderable fragment( String source )
+    {
+        return jstl.buildTemplate( source, uri );
+    }
+
+    protected ELContext context( Map< String, Object > bindings )
+    {
+        return el.getELContext( bindings );
+    }
+
+    protected static void text( ValueExpression valueExpression, ELContext context, Appendable out ) throws IOException
+    {
+        final Object value;
+
+        try
+        {
+            value = valueExpression.getValue( context );
+        }
+        catch ( RuntimeException e )
+        {
+            throw new ELTemplateException( format( "Failed to evaluate EL Expression [%s]: %s", valueExpression, e.getMessage() ), e );
+        }
+
+        if ( value != null )
+        {
+            out.append( value.toString() );
+        }
+    }
+
+    protected static boolean test( ValueExpression valueExpression, ELContext context )
+    {
+        final Object value = valueExpression.getValue( context );
+
+        return value instanceof Boolean && ( Boolean ) value;
+    }
+
+    protected static Integer integer( ValueExpression valueExpression, ELContext context, String attribute )
+    {
+        final Object value = valueExpression.getValue( context );
+
+        if ( ! ( value instanceof Number ) )
+        {
+            throw new RuntimeException( "EL expression for \"" + attribute + "\" attribute does not resolve to an integer! " + value );
+        }
+
+        return ( ( Number ) value ).intValue();
+    }
+
+    // as c:forEach
+    protected static Object items( Object value )
+    {
+        return value instanceof Object[] ? Arrays.asList( ( Object[] ) value ) : value;
+    }
+
+    public String toString()
+    {
+        return format( "%s[%s]", getClass().getSimpleName(), uri );
+    }
+}
@@ -0,0 +1,135 @@
+package com.brentcroft.tools.jstl.compiler;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import lombok.extern.java.Log;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * The classes generated by the <code>TemplateGenerator</code>, by uri, as listed by a generated index class
+ * (see <code>JstlTemplateManager.withCompiledTemplates</code>).
+ * <p>
+ * A compiled template is only used while its source (if it can still be found) is unchanged:
+ * a changed template is parsed as usual.
+ *
+ * @author ADobson
+ */
+@Log
+public class CompiledTemplates
+{
+    /**
+     * The name of the static field of the index class that lists the generated classes.
+     */
+    public static final String TEMPLATES_FIELD = "TEMPLATES";
+
+    private final Map< String, Constructor< ? extends CompiledTemplate > > constructors = new HashMap<>();
+    private final Map< String, Long > hashes = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    /**
+     * @param index a generated index class
+     * @throws IllegalArgumentException if the class is not an index of compiled templates
+     */
+    public CompiledTemplates( Class< ? > index )
+    {
+        try
+        {
+            for ( Class< ? > c : ( Class< ? >[] ) index.getField( TEMPLATES_FIELD ).get( null ) )
+            {
+                final String uri = ( String ) c.getField( "URI" ).get( null );
+
+                constructors.put( uri, c
+                        .asSubclass( CompiledTemplate.class )
+                        .getConstructor( JstlTemplateManager.class ) );
+
+                hashes.put( uri, c.getField( "SOURCE_HASH" ).getLong( null ) );
+            }
+        }
+        catch ( ReflectiveOperationException | ClassCastException e )
+        {
+            throw new IllegalArgumentException( format( "Not an index of compiled templates: %s", index.getName() ), e );
+        }
+    }
+
+    public Set< String > getUris()
+    {
+        return Collections.unmodifiableSet( constructors.keySet() );
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getStale()
+    {
+        return stale.get();
+    }
+
+    /**
+     * @param jstl the manager loading the template
+     * @param uri  the uri of the template
+     * @return the compiled template (as the only element of a template),
+     * or null if there is none, or if its source has changed
+     */
+    public JstlTemplate load( JstlTemplateManager jstl, String uri )
+    {
+        final Constructor< ? extends CompiledTemplate > constructor = constructors.get( uri );
+
+        if ( constructor == null )
+        {
+            return null;
+        }
+
+        final ELTemplateManager el = jstl.getELTemplateManager();
+        final URL url = el.getTemplateSource().find( uri );
+
+        if ( url != null && el.getTemplateReader().hash( url ).getHash() != hashes.get( uri ) )
+        {
+            stale.incrementAndGet();
+
+            log.fine( () -> format( "compiled template is stale: %s", uri ) );
+
+            return null;
+        }
+
+        final JstlTemplate template = new JstlTemplate( null );
+
+        try
+        {
+            template.addRenderable( constructor.newInstance( jstl ) );
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw e.getCause() instanceof RuntimeException
+                  ? ( RuntimeException ) e.getCause()
+                  : new IllegalStateException( format( "Failed to instantiate compiled template: %s", uri ), e.getCause() );
+        }
+        catch ( ReflectiveOperationException e )
+        {
+            throw new IllegalStateException( format( "Failed to instantiate compiled template: %s", uri ), e );
+        }
+
+        hits.incrementAndGet();
+
+        return template;
+    }
+
+    public String toString()
+    {
+        return format( "compiled templates: %s, hits=%s, stale=%s", constructors.size(), hits, stale );
+    }
+}
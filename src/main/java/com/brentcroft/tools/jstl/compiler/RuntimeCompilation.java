@@ -0,0 +1,200 @@
+package com.brentcroft.tools.jstl.compiler;
+
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import com.brentcroft.tools.jstl.Renderable;
+import lombok.Getter;
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * A second tier for templates parsed at runtime (see <code>JstlTemplateManager.withRuntimeCompilation</code>):
+ * a template rendered more than <code>threshold</code> times is generated (as by the <code>TemplateGenerator</code>),
+ * compiled in memory (see <code>TemplateCompiler</code>) in the background,
+ * and then rendered by the compiled class rather than by the interpreter.
+ * <p>
+ * A template that fails to generate or compile (or when there is no compiler)
+ * carries on being rendered by the interpreter.
+ *
+ * @author ADobson
+ */
+@Log
+public class RuntimeCompilation
+{
+    /**
+     * The package of the compiled classes.
+     */
+    public static final String PACKAGE = "com.brentcroft.tools.jstl.compiler.runtime";
+
+    @Getter
+    private final int threshold;
+
+    private final Executor executor;
+
+    private final TemplateCompiler compiler = new TemplateCompiler();
+
+    private final AtomicLong compiled = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param threshold the number of renders of a template before it is compiled
+     * @param executor  runs the compilations
+     */
+    public RuntimeCompilation( int threshold, Executor executor )
+    {
+        this.threshold = threshold;
+        this.executor = executor;
+
+        if ( ! compiler.isAvailable() )
+        {
+            log.warning( "No Java compiler is available (running on a JRE?): templates will not be compiled" );
+        }
+    }
+
+    /**
+     * @return the number of templates compiled
+     */
+    public long getCompiled()
+    {
+        return compiled.get();
+    }
+
+    /**
+     * @return the number of templates that failed to compile (and are still interpreted)
+     */
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    /**
+     * @param jstl     the manager of the template
+     * @param uri      the uri of the template (or null)
+     * @param template the template, as parsed
+     * @return a template that renders the parsed template until it is compiled
+     * (or the same template if it is already compiled, or there is no compiler)
+     */
+    public JstlTemplate tiered( JstlTemplateManager jstl, String uri, JstlTemplate template )
+    {
+        if ( ! compiler.isAvailable()
+                || template.getElements().size() == 1 && template.getElements().get( 0 ) instanceof CompiledTemplate )
+        {
+            return template;
+        }
+
+        final JstlTemplate tiered = new JstlTemplate( null );
+
+        tiered.addRenderable( new Tiered( jstl, uri, template ) );
+
+        return tiered;
+    }
+
+    public String toString()
+    {
+        return format( "runtime compilation: threshold=%s, compiled=%s, failed=%s", threshold, compiled, failed );
+    }
+
+
+    /**
+     * Renders a parsed template, until it is replaced by its compiled class.
+     */
+    public final class Tiered implements Renderable
+    {
+        private final JstlTemplateManager jstl;
+        private final String uri;
+        private final JstlTemplate interpreted;
+
+        private final AtomicLong renders = new AtomicLong();
+        private volatile Renderable current;
+        private volatile boolean submitted = false;
+
+        private Tiered( JstlTemplateManager jstl, String uri, JstlTemplate interpreted )
+        {
+            this.jstl = jstl;
+            this.uri = uri;
+            this.interpreted = interpreted;
+            this.current = interpreted;
+        }
+
+        public void render( Map< String, Object > rootObjects, Appendable out ) throws IOException
+        {
+            final Renderable renderable = current;
+
+            // stop counting once submitted
+            if ( ! submitted && renders.incrementAndGet() > threshold )
+            {
+                submit();
+            }
+
+            renderable.render( rootObjects, out );
+        }
+
+        public boolean isCompiled()
+        {
+            return current != interpreted;
+        }
+
+        public JstlTemplate getInterpreted()
+        {
+            return interpreted;
+        }
+
+        private synchronized void submit()
+        {
+            if ( submitted )
+            {
+                return;
+            }
+
+            submitted = true;
+
+            try
+            {
+                executor.execute( this::compile );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                log.warning( () -> format( "Not compiling template [%s]: %s", uri, e ) );
+            }
+        }
+
+        private void compile()
+        {
+            final long started = System.nanoTime();
+
+            try
+            {
+                final String className = TemplateGenerator.className( uri );
+                final String source = new TemplateGenerator( jstl, PACKAGE ).generate( uri, interpreted, 0, className );
+
+                current = compiler
+                        .compile( PACKAGE + "." + className, source )
+                        .getConstructor( JstlTemplateManager.class )
+                        .newInstance( jstl );
+
+                compiled.incrementAndGet();
+
+                log.fine( () -> format( "compiled template [%s] in %sms", uri, ( System.nanoTime() - started ) / 1_000_000 ) );
+            }
+            catch ( RuntimeException | ReflectiveOperationException | LinkageError e )
+            {
+                failed.incrementAndGet();
+
+                log.warning( () -> format( "Failed to compile template [%s] (it is still interpreted): %s", uri, e ) );
+            }
+        }
+
+        public String toString()
+        {
+            return interpreted.toString();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.brentcroft.tools.jstl.compiler;
+
+import jakarta.el.ValueExpression;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * Compiles the source of a generated template class in memory, with the JDK's compiler (<code>javax.tools</code>),
+ * and loads it in its own class loader (so that it is unloaded when no longer used).
+ * <p>
+ * Only available when running on a JDK (rather than a JRE).
+ *
+ * @author ADobson
+ * @see RuntimeCompilation
+ */
+public class TemplateCompiler implements AutoCloseable
+{
+    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    private final List< String > options;
+
+    // not thread-safe: only used while synchronized
+    private StandardJavaFileManager standardFiles;
+
+    public TemplateCompiler()
+    {
+        options = Arrays.asList( "-classpath", classpath(), "-proc:none", "-nowarn" );
+    }
+
+    public boolean isAvailable()
+    {
+        return compiler != null;
+    }
+
+    /**
+     * @param className the (qualified) name of the class
+     * @param source    the source of the class
+     * @return the class, loaded in a new class loader
+     * @throws IllegalStateException if there is no compiler, or the source doesn't compile
+     */
+    public synchronized Class< ? extends CompiledTemplate > compile( String className, String source )
+    {
+        if ( compiler == null )
+        {
+            throw new IllegalStateException( "No Java compiler is available (running on a JRE?)" );
+        }
+
+        if ( standardFiles == null )
+        {
+            standardFiles = compiler.getStandardFileManager( null, null, StandardCharsets.UTF_8 );
+        }
+
+        final DiagnosticCollector< JavaFileObject > diagnostics = new DiagnosticCollector<>();
+        final Map< String, ByteArrayOutputStream > classes = new HashMap<>();
+
+        final JavaFileManager files = new ForwardingJavaFileManager< JavaFileManager >( standardFiles )
+        {
+            @Override
+            public JavaFileObject getJavaFileForOutput( Location location, String name, JavaFileObject.Kind kind, FileObject sibling )
+            {
+                return new SimpleJavaFileObject( URI.create( "memory:///" + name.replace( '.', '/' ) + kind.extension ), kind )
+                {
+                    @Override
+                    public OutputStream openOutputStream()
+                    {
+                        return classes.computeIfAbsent( name, n -> new ByteArrayOutputStream() );
+                    }
+                };
+            }
+        };
+
+        final JavaFileObject unit = new SimpleJavaFileObject(
+                URI.create( "memory:///" + className.replace( '.', '/' ) + JavaFileObject.Kind.SOURCE.extension ),
+                JavaFileObject.Kind.SOURCE )
+        {
+            @Override
+            public CharSequence getCharContent( boolean ignoreEncodingErrors )
+            {
+                return source;
+            }
+        };
+
+        final boolean compiled = compiler
+                .getTask( null, files, diagnostics, options, null, Collections.singletonList( unit ) )
+                .call();
+
+        if ( ! compiled )
+        {
+            throw new IllegalStateException( format( "Failed to compile %s: %s", className, diagnostics.getDiagnostics() ) );
+        }
+
+        final Map< String, byte[] > bytes = new HashMap<>();
+
+        classes.forEach( ( name, out ) -> bytes.put( name, out.toByteArray() ) );
+
+        try
+        {
+            return new Loader( bytes )
+                    .loadClass( className )
+                    .asSubclass( CompiledTemplate.class );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            throw new IllegalStateException( format( "Compiled class not found: %s", className ), e );
+        }
+    }
+
+    // the running class path, and the locations of the classes used by generated classes
+    private static String classpath()
+    {
+        final Set< String > entries = new LinkedHashSet<>();
+
+        for ( Class< ? > c : new Class< ? >[]{ CompiledTemplate.class, ValueExpression.class } )
+        {
+            final CodeSource codeSource = c.getProtectionDomain().getCodeSource();
+
+            if ( codeSource != null && codeSource.getLocation() != null )
+            {
+                try
+                {
+                    entries.add( new File( codeSource.getLocation().toURI() ).getPath() );
+                }
+                catch ( URISyntaxException | IllegalArgumentException ignored )
+                {
+                    // not a file
+                }
+            }
+        }
+
+        entries.addAll( Arrays.asList( System.getProperty( "java.class.path", "" ).split( File.pathSeparator ) ) );
+        entries.remove( "" );
+
+        return String.join( File.pathSeparator, entries );
+    }
+
+    /**
+     * Close the compiler's file manager (which is opened again if needed).
+     *
+     * @throws IOException if the file manager fails to close
+     */
+    public synchronized void close() throws IOException
+    {
+        if ( standardFiles != null )
+        {
+            standardFiles.close();
+            standardFiles = null;
+        }
+    }
+
+
+    private static final class Loader extends ClassLoader
+    {
+        private final Map< String, byte[] > classes;
+
+        Loader( Map< String, byte[] > classes )
+        {
+            super( CompiledTemplate.class.getClassLoader() );
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class< ? > findClass( String name ) throws ClassNotFoundException
+        {
+            final byte[] bytes = classes.get( name );
+
+            if ( bytes == null )
+            {
+                throw new ClassNotFoundException( name );
+            }
+
+            return defineClass( name, bytes, 0, bytes.length );
+        }
+    }
+}
@@ -0,0 +1,723 @@
+package com.brentcroft.tools.jstl.compiler;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.source.FileSystemTemplateSource;
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import com.brentcroft.tools.jstl.Renderable;
+import com.brentcroft.tools.jstl.tag.JstlChoose;
+import com.brentcroft.tools.jstl.tag.JstlElement;
+import com.brentcroft.tools.jstl.tag.JstlForEach;
+import com.brentcroft.tools.jstl.tag.JstlIf;
+import com.brentcroft.tools.jstl.tag.JstlOtherwise;
+import com.brentcroft.tools.jstl.tag.JstlWhen;
+import com.brentcroft.tools.jstl.tag.JstlWhile;
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+
+/**
+ * Generates (at build time) a Java class for each template under a root directory,
+ * and an index class listing them, to be compiled with the application
+ * and loaded by <code>JstlTemplateManager.withCompiledTemplates( TemplateIndex.class )</code>
+ * in preference to parsing the templates.
+ * <p>
+ * Each class (see <code>CompiledTemplate</code>) renders its template with Java control flow:
+ * literal text is appended from constants,
+ * <code>c:if</code>, <code>c:choose</code>, <code>c:forEach</code> and <code>c:while</code> become Java statements,
+ * and any other tag (e.g. <code>c:include</code> or <code>c:script</code>) is rendered by a fragment of the template.
+ * The bindings are untyped, so the expressions themselves are still compiled (once) by the expression factory.
+ * <p>
+ * A template is not generated (and so is parsed as usual) if it fails to load,
+ * or if it has a tag that can't be rendered by a fragment
+ * (i.e. whose text doesn't parse back to the same tag, e.g. a <code>c:catch</code> containing other tags).
+ * <p>
+ * For example, with the exec-maven-plugin, in the <code>generate-sources</code> phase:
+ * <pre>
+ * java -cp ... com.brentcroft.tools.jstl.compiler.TemplateGenerator \
+ *     src/main/resources/templates "**.tpl" target/generated-sources/templates com.example.templates
+ * </pre>
+ *
+ * @author ADobson
+ */
+@Log
+public class TemplateGenerator
+{
+    public static final String INDEX_CLASS_NAME = "TemplateIndex";
+
+    // chars per string constant (so that its UTF-8 encoding fits in the constant pool)
+    private static final int MAX_CONSTANT = 8192;
+
+    private final JstlTemplateManager jstl;
+    private final String packageName;
+
+    /**
+     * @param jstl        loads the templates (and so its settings, e.g. stripping comments, are those generated)
+     * @param packageName the package of the generated classes
+     */
+    public TemplateGenerator( JstlTemplateManager jstl, String packageName )
+    {
+        this.jstl = jstl;
+        this.packageName = packageName;
+    }
+
+    public static void main( String[] args ) throws IOException
+    {
+        if ( args.length != 4 )
+        {
+            System.err.println( "Usage: TemplateGenerator <template root> <glob> <output directory> <package>" );
+            System.exit( 1 );
+        }
+
+        final Path root = Paths.get( args[ 0 ] );
+
+        final Map< String, String > generated = new TemplateGenerator(
+                new JstlTemplateManager().withTemplateSource( new FileSystemTemplateSource( root ) ),
+                args[ 3 ] )
+                .generate( root, args[ 1 ], Paths.get( args[ 2 ] ) );
+
+        System.out.println( format( "Generated %s compiled templates in: %s", generated.size(), args[ 2 ] ) );
+    }
+
+    /**
+     * Generate a class for each file under the root directory that matches the glob
+     * (the uri of each template being its path relative to the root, separated by <code>/</code>),
+     * and the index class.
+     *
+     * @param root      a directory, from which the template source finds templates by their relative paths
+     * @param glob      a glob pattern (e.g. <code>**.tpl</code>) matched against paths relative to the root
+     * @param outputDir the root directory of the generated sources
+     * @return the name of the class generated for each uri
+     * @throws IOException if the output can't be written
+     */
+    public Map< String, String > generate( Path root, String glob, Path outputDir ) throws IOException
+    {
+        final PathMatcher matcher = root.getFileSystem().getPathMatcher( "glob:" + glob );
+
+        final List< String > uris;
+
+        try ( Stream< Path > paths = Files.walk( root ) )
+        {
+            uris = paths
+                    .filter( Files::isRegularFile )
+                    .map( root::relativize )
+                    .filter( matcher::matches )
+                    .map( path -> path.toString().replace( path.getFileSystem().getSeparator(), "/" ) )
+                    .sorted()
+                    .collect( Collectors.toList() );
+        }
+
+        final Path packageDir = outputDir.resolve( packageName.replace( '.', '/' ) );
+
+        Files.createDirectories( packageDir );
+
+        final Map< String, String > generated = new LinkedHashMap<>();
+        final Set< String > names = new HashSet<>();
+
+        for ( String uri : uris )
+        {
+            final String className = className( uri, names );
+            final String source;
+
+            try
+            {
+                source = generate( uri, className );
+            }
+            catch ( RuntimeException e )
+            {
+                log.warning( () -> format( "Not generating template [%s]: %s", uri, e ) );
+                continue;
+            }
+
+            write( packageDir.resolve( className + ".java" ), source );
+
+            generated.put( uri, packageName + "." + className );
+        }
+
+        write( packageDir.resolve( INDEX_CLASS_NAME + ".java" ), index( generated.values() ) );
+
+        log.info( () -> format( "generated %s of %s templates", generated.size(), uris.size() ) );
+
+        return generated;
+    }
+
+    private static void write( Path file, String source )
+    {
+        try
+        {
+            Files.write( file, source.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( format( "Failed to write: %s", file ), e );
+        }
+    }
+
+    /**
+     * @param uri       the uri of a template
+     * @param className the simple name of the class
+     * @return the source of the class
+     * @throws RuntimeException if the template can't be loaded, or generated
+     */
+    public String generate( String uri, String className )
+    {
+        final ELTemplateManager el = jstl.getELTemplateManager();
+        final long hash = el.getTemplateReader().hash( el.findTemplateUrl( uri ) ).getHash();
+
+        return generate( uri, jstl.loadTemplate( uri, null ), hash, className );
+    }
+
+    /**
+     * @param uri       the uri of the template (or null)
+     * @param template  the template, as parsed
+     * @param hash      the hash of the source of the template
+     * @param className the simple name of the class
+     * @return the source of the class
+     * @throws RuntimeException if the template can't be generated
+     */
+    public String generate( String uri, JstlTemplate template, long hash, String className )
+    {
+        return new ClassWriter( uri, className ).write( template, hash );
+    }
+
+    private String index( Iterable< String > classNames )
+    {
+        final Code code = new Code();
+
+        code.line( "package %s;", packageName );
+        code.line( "" );
+        code.line( "/**" );
+        code.line( " * The templates compiled by the TemplateGenerator (generated: do not edit)." );
+        code.line( " */" );
+        code.line( "public final class %s", INDEX_CLASS_NAME );
+        code.open();
+        code.line( "public static final Class< ? >[] %s = {", CompiledTemplates.TEMPLATES_FIELD );
+
+        for ( String className : classNames )
+        {
+            code.line( "        %s.class,", className );
+        }
+
+        code.line( "};" );
+        code.line( "" );
+        code.line( "private %s()", INDEX_CLASS_NAME );
+        code.open();
+        code.close();
+        code.close();
+
+        return code.toString();
+    }
+
+    private static String className( String uri, Set< String > names )
+    {
+        final String base = className( uri );
+
+        String name = base;
+
+        for ( int i = 2; ! names.add( name ); i++ )
+        {
+            name = base + "_" + i;
+        }
+
+        return name;
+    }
+
+    /**
+     * @param uri the uri of a template (or null)
+     * @return a simple class name derived from the uri
+     */
+    public static String className( String uri )
+    {
+        final StringBuilder b = new StringBuilder( "Template_" );
+
+        for ( char c : String.valueOf( uri ).toCharArray() )
+        {
+            b.append( Character.isJavaIdentifierPart( c ) && c < 128 ? c : '_' );
+        }
+
+        return b.toString();
+    }
+
+    static String quote( String text )
+    {
+        final StringBuilder b = new StringBuilder( "\"" );
+
+        for ( char c : text.toCharArray() )
+        {
+            switch ( c )
+            {
+                case '"':
+                    b.append( "\\\"" );
+                    break;
+                case '\\':
+                    b.append( "\\\\" );
+                    break;
+                case '\n':
+                    b.append( "\\n" );
+                    break;
+                case '\r':
+                    b.append( "\\r" );
+                    break;
+                case '\t':
+                    b.append( "\\t" );
+                    break;
+                default:
+                    if ( c < 0x20 || c > 0x7e )
+                    {
+                        b.append( format( "\\u%04x", ( int ) c ) );
+                    }
+                    else
+                    {
+                        b.append( c );
+                    }
+            }
+        }
+
+        return b.append( '"' ).toString();
+    }
+
+
+    /*
+     * The source of one generated class.
+     */
+    private final class ClassWriter
+    {
+        private final String uri;
+        private final String className;
+
+        private final Map< String, String > literals = new LinkedHashMap<>();
+        private final Map< String, String > expressions = new LinkedHashMap<>();
+        private final Map< String, String > fragments = new LinkedHashMap<>();
+
+        private final Code body = new Code();
+        private int scopes = 0;
+
+        ClassWriter( String uri, String className )
+        {
+            this.uri = uri;
+            this.className = className;
+        }
+
+        String write( JstlTemplate template, long hash )
+        {
+            body.indent = 2;
+
+            scope( template, "b0" );
+
+            final Code code = new Code();
+
+            code.line( "package %s;", packageName );
+            code.line( "" );
+            code.line( "import com.brentcroft.tools.el.MapBindings;" );
+            code.line( "import com.brentcroft.tools.jstl.JstlTemplateManager;" );
+            code.line( "import com.brentcroft.tools.jstl.Renderable;" );
+            code.line( "import com.brentcroft.tools.jstl.compiler.CompiledTemplate;" );
+            code.line( "import com.brentcroft.tools.jstl.tag.LoopTagStatus;" );
+            code.line( "import jakarta.el.ELContext;" );
+            code.line( "import jakarta.el.ValueExpression;" );
+            code.line( "" );
+            code.line( "import java.io.IOException;" );
+            code.line( "import java.util.Map;" );
+            code.line( "" );
+            code.line( "/**" );
+            code.line( " * Compiled from the template: %s (generated: do not edit)", String.valueOf( uri ).replace( "*/", "*&#47;" ) );
+            code.line( " */" );
+            code.line( "@SuppressWarnings( { \"unused\", \"unchecked\" } )" );
+            code.line( "public final class %s extends CompiledTemplate", className );
+            code.open();
+            code.line( "public static final String URI = %s;", uri == null ? "null" : quote( uri ) );
+            code.line( "public static final long SOURCE_HASH = 0x%016xL;", hash );
+            code.line( "" );
+
+            for ( Map.Entry< String, String > literal : literals.entrySet() )
+            {
+                code.line( "private static final String %s = %s;", literal.getValue(), quote( literal.getKey() ) );
+            }
+
+            code.line( "" );
+
+            for ( String expression : expressions.values() )
+            {
+                code.line( "private final ValueExpression %s;", expression );
+            }
+
+            for ( String fragment : fragments.values() )
+            {
+                code.line( "private final Renderable %s;", fragment );
+            }
+
+            code.line( "" );
+            code.line( "public %s( JstlTemplateManager jstl )", className );
+            code.open();
+            code.line( "super( jstl, URI );" );
+
+            for ( Map.Entry< String, String > expression : expressions.entrySet() )
+            {
+                // keyed by type and source
+                final int colon = expression.getKey().indexOf( ':' );
+
+                code.line( "%s = expression( %s, %s.class );",
+                        expression.getValue(),
+                        quote( expression.getKey().substring( colon + 1 ) ),
+                        expression.getKey().substring( 0, colon ) );
+            }
+
+            for ( Map.Entry< String, String > fragment : fragments.entrySet() )
+            {
+                code.line( "%s = fragment( %s );", fragment.getValue(), quote( fragment.getKey() ) );
+            }
+
+            code.close();
+            code.line( "" );
+            code.line( "public void render( Map< String, Object > b0, Appendable out ) throws IOException" );
+            code.open();
+            code.append( body );
+            code.close();
+            code.close();
+
+            return code.toString();
+        }
+
+        private String literal( String text )
+        {
+            return literals.computeIfAbsent( text, t -> "T" + literals.size() );
+        }
+
+        private String expression( String source, Class< ? > type )
+        {
+            return expressions.computeIfAbsent( type.getSimpleName() + ":" + source, s -> "e" + expressions.size() );
+        }
+
+        private String fragment( JstlElement element )
+        {
+            final String source = element.toText();
+
+            final JstlTemplate reparsed = jstl.buildTemplate( source, uri );
+
+            if ( reparsed.getElements().size() != 1 || ! reparsed.toString().equals( element.toString() ) )
+            {
+                throw new IllegalStateException( format( "Cannot render by a fragment: %s", source ) );
+            }
+
+            return fragments.computeIfAbsent( source, s -> "r" + fragments.size() );
+        }
+
+        private void append( String text )
+        {
+            for ( int start = 0; start < text.length(); )
+            {
+                int end = Math.min( text.length(), start + MAX_CONSTANT );
+
+                if ( end < text.length() && Character.isHighSurrogate( text.charAt( end - 1 ) ) )
+                {
+                    end--;
+                }
+
+                body.line( "out.append( %s );", literal( text.substring( start, end ) ) );
+
+                start = end;
+            }
+        }
+
+        /*
+         * Render the elements of a template, in the scope of some bindings.
+         */
+        private void scope( JstlTemplate template, String bindings )
+        {
+            final String context = "c" + bindings.substring( 1 );
+
+            if ( template.getElements().stream().anyMatch( this::usesContext ) )
+            {
+                body.line( "final ELContext %s = context( %s );", context, bindings );
+            }
+
+            elements( template, bindings, context );
+        }
+
+        private void elements( JstlTemplate template, String bindings, String context )
+        {
+            for ( Renderable element : template.getElements() )
+            {
+                element( element, bindings, context );
+            }
+        }
+
+        private boolean usesContext( Renderable element )
+        {
+            if ( element instanceof ELTemplateManager.ELTemplate )
+            {
+                final boolean[] uses = { false };
+
+                ( ( ELTemplateManager.ELTemplate ) element ).forEachElement( literal -> {
+                }, expression -> uses[ 0 ] = true );
+
+                return uses[ 0 ];
+            }
+
+            return ( element instanceof JstlIf
+                    || element instanceof JstlChoose
+                    || element instanceof JstlForEach
+                    || element instanceof JstlWhile )
+                    && ! ( ( JstlElement ) element ).isDeferred();
+        }
+
+        // a new scope (protecting the outer bindings), rendering a template
+        private void nested( JstlTemplate template, String outer )
+        {
+            final String bindings = "b" + ( ++ scopes );
+
+            body.line( "final Map< String, Object > %s = new MapBindings( %s );", bindings, outer );
+
+            scope( template, bindings );
+        }
+
+        private void element( Renderable element, String bindings, String context )
+        {
+            if ( element instanceof ELTemplateManager.ELTemplate )
+            {
+                ( ( ELTemplateManager.ELTemplate ) element ).forEachElement(
+                        this::append,
+                        expression -> body.line( "text( %s, %s, out );", expression( expression, Object.class ), context ) );
+            }
+            else if ( ! ( element instanceof JstlElement ) )
+            {
+                throw new IllegalStateException( format( "Unexpected element: %s", element.getClass().getName() ) );
+            }
+            else if ( ( ( JstlElement ) element ).isDeferred() )
+            {
+                append( ( ( JstlElement ) element ).toText() );
+            }
+            else if ( element instanceof JstlIf )
+            {
+                final JstlIf jstlIf = ( JstlIf ) element;
+
+                body.line( "if ( test( %s, %s ) )", expression( jstlIf.getTestEL(), Boolean.class ), context );
+                body.open();
+                nested( jstlIf.getInnerJstlTemplate(), bindings );
+                body.close();
+            }
+            else if ( element instanceof JstlChoose )
+            {
+                choose( ( JstlChoose ) element, bindings, context );
+            }
+            else if ( element instanceof JstlForEach )
+            {
+                forEach( ( JstlForEach ) element, bindings, context );
+            }
+            else if ( element instanceof JstlWhile )
+            {
+                whileLoop( ( JstlWhile ) element, bindings, context );
+            }
+            else
+            {
+                body.line( "%s.render( %s, out );", fragment( ( JstlElement ) element ), bindings );
+            }
+        }
+
+        private void choose( JstlChoose choose, String bindings, String context )
+        {
+            String keyword = "if";
+
+            for ( Renderable r : choose.getInnerJstlTemplate().getElements() )
+            {
+                final JstlElement branch = ( JstlElement ) r;
+
+                if ( branch instanceof JstlWhen )
+                {
+                    body.line( "%s ( test( %s, %s ) )", keyword, expression( ( ( JstlWhen ) branch ).getTestEL(), Boolean.class ), context );
+                    keyword = "else if";
+                }
+                else if ( branch instanceof JstlOtherwise && ! "if".equals( keyword ) )
+                {
+                    body.line( "else" );
+                }
+
+                body.open();
+
+                if ( branch.isDeferred() )
+                {
+                    append( branch.toText() );
+                }
+                else
+                {
+                    nested( branch.getInnerJstlTemplate(), bindings );
+                }
+
+                body.close();
+
+                if ( branch instanceof JstlOtherwise )
+                {
+                    return;
+                }
+            }
+        }
+
+        private String integer( String source, String attribute, String context )
+        {
+            return source == null
+                   ? "null"
+                   : format( "integer( %s, %s, %s )", expression( source, Object.class ), context, quote( attribute ) );
+        }
+
+        private void forEach( JstlForEach forEach, String bindings, String context )
+        {
+            final int loop = ++ scopes;
+            final String status = "s" + loop;
+            final String begin = "begin" + loop;
+            final String end = "end" + loop;
+            final String step = "step" + loop;
+            final String item = "item" + loop;
+            final String varStatus = forEach.getVarStatus() == null ? "null" : quote( forEach.getVarStatus() );
+
+            body.open();
+            body.line( "final Integer %s = %s;", begin, integer( forEach.getBeginEl(), "begin", context ) );
+            body.line( "final Integer %s = %s;", end, integer( forEach.getEndEl(), "end", context ) );
+            body.line( "final Integer %s = %s;", step, integer( forEach.getStepEl(), "step", context ) );
+            body.line( "final LoopTagStatus< Object > %s = new LoopTagStatus<>( %s, %s, %s );", status, begin, end, step );
+
+            if ( forEach.getItemsEL() == null )
+            {
+                // end is inclusive
+                body.line( "for ( %s.setIndex( %s ); %s == null || %s.getIndex() <= %s; %s.increment( %s ) )", status, begin, end, status, end, status, step );
+                body.open();
+
+                final String local = "b" + ( ++ scopes );
+
+                body.line( "final Map< String, Object > %s = new MapBindings( %s );", local, bindings );
+                body.line( "%s.put( %s, %s );", local, varStatus, status );
+                body.line( "%s.put( \"$index\", %s.getIndex() );", local, status );
+
+                scope( forEach.getInnerJstlTemplate(), local );
+
+                body.close();
+            }
+            else
+            {
+                final String value = "v" + loop;
+
+                body.line( "final Object %s = items( %s.getValue( %s ) );", value, expression( forEach.getItemsEL(), Object.class ), context );
+                body.line( "if ( %s instanceof Iterable< ? > )", value );
+                body.open();
+                body.line( "for ( Object %s : ( Iterable< ? > ) %s )", item, value );
+                body.open();
+                body.line( "if ( %s != null && %s.getIndex() < %s )", begin, status, begin );
+                body.open();
+                body.line( "%s.increment();", status );
+                body.line( "continue;" );
+                body.close();
+                body.line( "else if ( %s != null && %s.getIndex() > %s )", end, status, end );
+                body.open();
+                body.line( "break;" );
+                body.close();
+
+                final String local = "b" + ( ++ scopes );
+
+                body.line( "final Map< String, Object > %s = new MapBindings( %s );", local, bindings );
+                body.line( "%s.put( %s, %s );", local, forEach.getVar() == null ? "null" : quote( forEach.getVar() ), item );
+                body.line( "%s.put( %s, %s.withCurrent( %s ) );", local, varStatus, status, item );
+                body.line( "%s.put( \"$index\", %s.getIndex() );", local, status );
+                body.line( "%s.put( \"$items\", %s );", local, value );
+
+                scope( forEach.getInnerJstlTemplate(), local );
+
+                body.line( "%s.increment();", status );
+                body.close();
+                body.close();
+                body.line( "else" );
+                body.open();
+
+                // in the outer scope
+                elements( forEach.getInnerJstlTemplate(), bindings, context );
+
+                body.close();
+            }
+
+            body.close();
+        }
+
+        private void whileLoop( JstlWhile jstlWhile, String bindings, String context )
+        {
+            final int loop = ++ scopes;
+            final String status = "s" + loop;
+            final String test = expression( jstlWhile.getTestEL(), Object.class );
+
+            body.open();
+            body.line( "final LoopTagStatus< Object > %s = new LoopTagStatus<>( null, null, null );", status );
+            body.line( "while ( test( %s, %s ) )", test, context );
+            body.open();
+
+            final String local = "b" + ( ++ scopes );
+
+            body.line( "final Map< String, Object > %s = new MapBindings( %s );", local, bindings );
+            body.line( "%s.put( %s, %s );", local, jstlWhile.getVarStatus() == null ? "null" : quote( jstlWhile.getVarStatus() ), status );
+
+            scope( jstlWhile.getInnerJstlTemplate(), local );
+
+            body.line( "%s.increment();", status );
+            body.close();
+            body.close();
+        }
+    }
+
+
+    /*
+     * Lines of indented source.
+     */
+    private static final class Code
+    {
+        private final StringBuilder b = new StringBuilder();
+        private int indent = 0;
+
+        void line( String line, Object... args )
+        {
+            if ( ! line.isEmpty() )
+            {
+                for ( int i = 0; i < indent; i++ )
+                {
+                    b.append( "    " );
+                }
+
+                b.append( args.length == 0 ? line : format( line, args ) );
+            }
+
+            b.append( '\n' );
+        }
+
+        void open()
+        {
+            line( "{" );
+            indent++;
+        }
+
+        void close()
+        {
+            indent--;
+            line( "}" );
+        }
+
+        void append( Code code )
+        {
+            b.append( code.b );
+        }
+
+        public String toString()
+        {
+            return b.toString();
+        }
+    }
+}
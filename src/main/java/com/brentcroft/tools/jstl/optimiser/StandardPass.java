@@ -0,0 +1,147 @@
+package com.brentcroft.tools.jstl.optimiser;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.Renderable;
+import com.brentcroft.tools.jstl.tag.JstlChoose;
+import com.brentcroft.tools.jstl.tag.JstlComment;
+import com.brentcroft.tools.jstl.tag.JstlElement;
+import com.brentcroft.tools.jstl.tag.JstlLog;
+import com.brentcroft.tools.jstl.tag.JstlOtherwise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * The passes provided for a <code>TemplateOptimiser</code>.
+ * <p>
+ * No pass changes a deferred element (which renders its own text).
+ *
+ * @author ADobson
+ */
+public enum StandardPass implements TemplatePass
+{
+    /**
+     * Replace a nested <code>JstlTemplate</code> element by its elements.
+     */
+    FLATTEN_TEMPLATES
+            {
+                @Override
+                public void apply( JstlTemplate template )
+                {
+                    final List< Renderable > elements = template.getElements();
+
+                    for ( int i = 0; i < elements.size(); i++ )
+                    {
+                        if ( elements.get( i ) instanceof JstlTemplate )
+                        {
+                            final List< Renderable > nested = ( ( JstlTemplate ) elements.remove( i ) ).getElements();
+
+                            elements.addAll( i, nested );
+
+                            // the nested elements are revisited
+                            i--;
+                        }
+                    }
+                }
+            },
+
+    /**
+     * Replace a <code>c:choose</code> that has only a <code>c:otherwise</code> by the <code>c:otherwise</code>
+     * (which still protects the outer bindings), and remove a <code>c:choose</code> with no branches.
+     */
+    COLLAPSE_CHOOSE
+            {
+                @Override
+                public void apply( JstlTemplate template )
+                {
+                    for ( ListIterator< Renderable > i = template.getElements().listIterator(); i.hasNext(); )
+                    {
+                        final Renderable element = i.next();
+
+                        if ( ! ( element instanceof JstlChoose ) || ( ( JstlChoose ) element ).isDeferred() )
+                        {
+                            continue;
+                        }
+
+                        final List< Renderable > branches = ( ( JstlChoose ) element ).getInnerJstlTemplate().getElements();
+
+                        if ( branches.isEmpty() )
+                        {
+                            i.remove();
+                        }
+                        else if ( branches.size() == 1 && branches.get( 0 ) instanceof JstlOtherwise )
+                        {
+                            i.set( branches.get( 0 ) );
+                        }
+                    }
+                }
+            },
+
+    /**
+     * Remove a <code>c:log</code> whose level is not logged when the template is built
+     * (so enabling the level later has no effect on the template).
+     */
+    STRIP_DISABLED_LOGS
+            {
+                @Override
+                public void apply( JstlTemplate template )
+                {
+                    template.getElements().removeIf( element -> element instanceof JstlLog
+                            && ! ( ( JstlLog ) element ).isDeferred()
+                            && ! ( ( JstlLog ) element ).isEnabled() );
+                }
+            },
+
+    /**
+     * Remove a <code>c:comment</code>, and so its output.
+     * <p>
+     * Not a standard pass, since it changes what the template renders.
+     */
+    REMOVE_COMMENTS
+            {
+                @Override
+                public void apply( JstlTemplate template )
+                {
+                    template.getElements().removeIf( element -> element instanceof JstlComment
+                            && ! ( ( JstlElement ) element ).isDeferred() );
+                }
+            },
+
+    /**
+     * Concatenate each run of adjacent <code>ELTemplate</code> elements, where at most one has expressions
+     * (see <code>ELTemplateManager.coalesce</code>).
+     */
+    COALESCE_LITERALS
+            {
+                @Override
+                public void apply( JstlTemplate template )
+                {
+                    final List< Renderable > elements = template.getElements();
+                    final List< Renderable > coalesced = new ArrayList<>( elements.size() );
+                    final List< ELTemplateManager.ELTemplate > run = new ArrayList<>();
+
+                    for ( Renderable element : elements )
+                    {
+                        if ( element instanceof ELTemplateManager.ELTemplate )
+                        {
+                            run.add( ( ELTemplateManager.ELTemplate ) element );
+                            continue;
+                        }
+
+                        coalesced.addAll( ELTemplateManager.coalesce( run ) );
+                        coalesced.add( element );
+                        run.clear();
+                    }
+
+                    coalesced.addAll( ELTemplateManager.coalesce( run ) );
+
+                    if ( coalesced.size() < elements.size() )
+                    {
+                        elements.clear();
+                        elements.addAll( coalesced );
+                    }
+                }
+            }
+}
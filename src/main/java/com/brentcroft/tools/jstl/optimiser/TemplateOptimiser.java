@@ -0,0 +1,92 @@
+package com.brentcroft.tools.jstl.optimiser;
+
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.Renderable;
+import com.brentcroft.tools.jstl.tag.JstlElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rewrites a template, once it is built, into fewer (and larger) elements,
+ * by applying a pipeline of passes to each template in the tree, from the innermost out
+ * (so that, e.g., literals exposed by flattening a nested template are then coalesced).
+ * <p>
+ * The elements of a deferred element are never optimised, since it renders its own text.
+ * <p>
+ * The standard pipeline (see <code>standard()</code>) does not change what a template renders.
+ *
+ * @author ADobson
+ */
+public class TemplateOptimiser
+{
+    private final List< TemplatePass > passes = new ArrayList<>();
+
+    /**
+     * @return a new optimiser that flattens nested templates, collapses trivial <code>c:choose</code> elements,
+     * strips disabled <code>c:log</code> elements and then coalesces adjacent text
+     */
+    public static TemplateOptimiser standard()
+    {
+        return new TemplateOptimiser()
+                .withPasses(
+                        StandardPass.FLATTEN_TEMPLATES,
+                        StandardPass.COLLAPSE_CHOOSE,
+                        StandardPass.STRIP_DISABLED_LOGS,
+                        StandardPass.COALESCE_LITERALS );
+    }
+
+    /**
+     * Append passes to the pipeline.
+     *
+     * @param passes the passes to be applied (in turn) after the passes already in the pipeline
+     * @return this
+     */
+    public TemplateOptimiser withPasses( TemplatePass... passes )
+    {
+        this.passes.addAll( Arrays.asList( passes ) );
+        return this;
+    }
+
+    public List< TemplatePass > getPasses()
+    {
+        return Collections.unmodifiableList( passes );
+    }
+
+    /**
+     * Apply the passes to the supplied template (and to each template nested in it).
+     *
+     * @param template the template to be optimised (in place)
+     * @return the template
+     */
+    public JstlTemplate optimise( JstlTemplate template )
+    {
+        if ( passes.isEmpty() )
+        {
+            return template;
+        }
+
+        for ( Renderable element : template.getElements() )
+        {
+            if ( element instanceof JstlTemplate )
+            {
+                optimise( ( JstlTemplate ) element );
+            }
+            else if ( element instanceof JstlElement
+                    && ! ( ( JstlElement ) element ).isDeferred()
+                    && ( ( JstlElement ) element ).getInnerJstlTemplate() != null )
+            {
+                optimise( ( ( JstlElement ) element ).getInnerJstlTemplate() );
+            }
+        }
+
+        for ( TemplatePass pass : passes )
+        {
+            pass.apply( template );
+        }
+
+        return template;
+    }
+}
@@ -0,0 +1,18 @@
+package com.brentcroft.tools.jstl.optimiser;
+
+import com.brentcroft.tools.jstl.JstlTemplate;
+
+/**
+ * A rewrite of the elements of one <code>JstlTemplate</code>
+ * (e.g. see <code>StandardPass</code>), applied by a <code>TemplateOptimiser</code>
+ * after the templates nested in its elements have been optimised.
+ * <p>
+ * A pass must not change what the template renders, other than as documented by the pass.
+ *
+ * @author ADobson
+ */
+@FunctionalInterface
+public interface TemplatePass
+{
+    void apply( JstlTemplate template );
+}
@@ -8,6 +8,30 @@ public abstract class AbstractJstlElement implements JstlElement
 {
     protected final static MapBindings EMPTY_MAP = new MapBindings();
 
+    /**
+     * A sink that discards everything appended to it.
+     */
+    protected final static Appendable NULL_OUT = new Appendable()
+    {
+        @Override
+        public Appendable append( CharSequence csq )
+        {
+            return this;
+        }
+
+        @Override
+        public Appendable append( CharSequence csq, int start, int end )
+        {
+            return this;
+        }
+
+        @Override
+        public Appendable append( char c )
+        {
+            return this;
+        }
+    };
+
     protected JstlTemplate innerRenderable;
     protected boolean deferred = false;
 
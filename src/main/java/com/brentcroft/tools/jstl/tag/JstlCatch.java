@@ -8,6 +8,7 @@ import lombok.extern.java.Log;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
+import java.io.IOException;
 import java.util.Map;
 
 import static com.brentcroft.tools.jstl.JstlNamespace.prefix;
@@ -27,18 +28,24 @@ public class JstlCatch extends AbstractJstlElement
         innerRenderable = new JstlTemplate( this );
     }
 
-    public String render( Map< String, Object > bindings )
+    /**
+     * Output is buffered locally, since a caught exception must discard any
+     * partial rendering of the body.
+     */
+    public void render( Map< String, Object > bindings, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
+        final StringBuilder buffer = new StringBuilder();
+
         try
         {
             // protect external bindings from pollution in local scope
-            return innerRenderable.render( new MapBindings( bindings ) );
-
+            innerRenderable.render( new MapBindings( bindings ), buffer );
         }
         catch ( Throwable t )
         {
@@ -46,8 +53,10 @@ public class JstlCatch extends AbstractJstlElement
 
             log.fine( () -> "Caught exception and inserted as [" + exceptionName + "]: " + t );
 
-            return "";
+            return;
         }
+
+        out.append( buffer );
     }
 
     public String toText()
@@ -7,8 +7,10 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -59,15 +61,48 @@ public class JstlChoose extends AbstractJstlElement
             {
                 elements.removeAll( elementsToRemove );
             }
+
+            if ( ! isDeferred() )
+            {
+                dropDeadBranches( elements );
+            }
         }
     }
 
+    // a when with a constant test is either never taken, or always taken (so nothing after it is)
+    private static void dropDeadBranches( List< Renderable > elements )
+    {
+        boolean taken = false;
+
+        for ( Iterator< Renderable > i = elements.iterator(); i.hasNext(); )
+        {
+            final Renderable r = i.next();
 
-    public String render( Map< String, Object > rootObjects )
+            if ( taken )
+            {
+                i.remove();
+            }
+            else if ( r instanceof JstlWhen && ( ( JstlWhen ) r ).getConstant() != null )
+            {
+                if ( ( ( JstlWhen ) r ).getConstant() )
+                {
+                    taken = true;
+                }
+                else
+                {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+
+    public void render( Map< String, Object > rootObjects, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
         final List< Renderable > elements = innerRenderable.getElements();
@@ -78,16 +113,16 @@ public class JstlChoose extends AbstractJstlElement
             {
                 if ( r instanceof JstlWhen && ( ( JstlWhen ) r ).test( rootObjects ) )
                 {
-                    return r.render( rootObjects );
+                    r.render( rootObjects, out );
+                    return;
                 }
                 else if ( r instanceof JstlOtherwise )
                 {
-                    return r.render( rootObjects );
+                    r.render( rootObjects, out );
+                    return;
                 }
             }
         }
-
-        return "";
     }
 
     public String toText()
@@ -7,6 +7,7 @@ import com.brentcroft.tools.el.MapBindings;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
+import java.io.IOException;
 import java.util.Map;
 
 import static com.brentcroft.tools.jstl.JstlNamespace.prefix;
@@ -20,10 +21,12 @@ public class JstlComment extends AbstractJstlElement
         innerRenderable = new JstlTemplate( this );
     }
 
-    public String render( Map< String, Object > bindings )
+    public void render( Map< String, Object > bindings, Appendable out ) throws IOException
     {
+        out.append( "<!--" );
         // protect external bindings from pollution in local scope
-        return "<!--" + innerRenderable.render( new MapBindings( bindings ) ) + "-->";
+        innerRenderable.render( new MapBindings( bindings ), out );
+        out.append( "-->" );
     }
 
     public String toText()
@@ -1,6 +1,7 @@
 package com.brentcroft.tools.jstl.tag;
 
 import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.LazyCompilation;
 import com.brentcroft.tools.jstl.JstlDocument;
 import com.brentcroft.tools.jstl.JstlTemplate;
 import com.brentcroft.tools.el.MapBindings;
@@ -8,6 +9,8 @@ import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
 import jakarta.el.*;
+import lombok.Getter;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
 
@@ -17,27 +20,33 @@ public class JstlForEach extends AbstractJstlElement
 {
     public final static String TAG = "foreach";
 
+    @Getter
     protected String itemsEL;
 
-    protected ValueExpression itemsValueExpression;
+    protected LazyCompilation.Compiled< ValueExpression > itemsValueExpression;
 
-    protected ValueExpression beginValueExpression;
+    protected LazyCompilation.Compiled< ValueExpression > beginValueExpression;
 
-    protected ValueExpression endValueExpression;
+    protected LazyCompilation.Compiled< ValueExpression > endValueExpression;
 
-    protected ValueExpression stepValueExpression;
+    protected LazyCompilation.Compiled< ValueExpression > stepValueExpression;
 
     protected final ELTemplateManager elTemplateManager;
 
 
+    @Getter
     private final String var;
 
+    @Getter
     private final String varStatus;
 
+    @Getter
     private final String beginEl;
 
+    @Getter
     private final String endEl;
 
+    @Getter
     private final String stepEl;
 
     public JstlForEach( ELTemplateManager elTemplateManager, String itemsEL, String var, String varStatus, String beginEl, String endEl, String stepEl )
@@ -66,19 +75,19 @@ public class JstlForEach extends AbstractJstlElement
     {
         if ( itemsEL != null )
         {
-            itemsValueExpression = elTemplateManager.getValueExpression( itemsEL, EMPTY_MAP, Object.class );
+            itemsValueExpression = elTemplateManager.compiled( () -> elTemplateManager.getValueExpression( itemsEL, EMPTY_MAP, Object.class ) );
         }
         if ( beginEl != null )
         {
-            beginValueExpression = elTemplateManager.getValueExpression( beginEl, EMPTY_MAP, Object.class );
+            beginValueExpression = elTemplateManager.compiled( () -> elTemplateManager.getValueExpression( beginEl, EMPTY_MAP, Object.class ) );
         }
         if ( endEl != null )
         {
-            endValueExpression = elTemplateManager.getValueExpression( endEl, EMPTY_MAP, Object.class );
+            endValueExpression = elTemplateManager.compiled( () -> elTemplateManager.getValueExpression( endEl, EMPTY_MAP, Object.class ) );
         }
         if ( stepEl != null )
         {
-            stepValueExpression = elTemplateManager.getValueExpression( stepEl, EMPTY_MAP, Object.class );
+            stepValueExpression = elTemplateManager.compiled( () -> elTemplateManager.getValueExpression( stepEl, EMPTY_MAP, Object.class ) );
         }
     }
 
@@ -88,23 +97,21 @@ public class JstlForEach extends AbstractJstlElement
         compile();
     }
 
-    public String render( Map< String, Object > rootObjects )
+    public void render( Map< String, Object > rootObjects, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
-
-        final StringBuilder b = new StringBuilder();
-
         Integer begin = null;
         Integer end = null;
         Integer step = null;
 
         if ( beginValueExpression != null )
         {
-            Object value = beginValueExpression.getValue( elTemplateManager.getELContext( rootObjects ) );
+            Object value = beginValueExpression.get().getValue( elTemplateManager.getELContext( rootObjects ) );
 
             if ( ! ( value instanceof Number ) )
             {
@@ -116,7 +123,7 @@ public class JstlForEach extends AbstractJstlElement
 
         if ( endValueExpression != null )
         {
-            Object value = endValueExpression.getValue( elTemplateManager.getELContext( rootObjects ) );
+            Object value = endValueExpression.get().getValue( elTemplateManager.getELContext( rootObjects ) );
 
             if ( ! ( value instanceof Number ) )
             {
@@ -128,7 +135,7 @@ public class JstlForEach extends AbstractJstlElement
 
         if ( stepValueExpression != null )
         {
-            Object value = stepValueExpression.getValue( elTemplateManager.getELContext( rootObjects ) );
+            Object value = stepValueExpression.get().getValue( elTemplateManager.getELContext( rootObjects ) );
 
             if ( ! ( value instanceof Number ) )
             {
@@ -153,12 +160,12 @@ public class JstlForEach extends AbstractJstlElement
                 localObjects.put( varStatus, loopTagStatus );
                 localObjects.put( "$index", loopTagStatus.getIndex() );
 
-                b.append( innerRenderable.render( localObjects ) );
+                innerRenderable.render( localObjects, out );
             }
         }
         else
         {
-            Object value = itemsValueExpression.getValue( elTemplateManager.getELContext( rootObjects ) );
+            Object value = itemsValueExpression.get().getValue( elTemplateManager.getELContext( rootObjects ) );
 
             if ( value instanceof Object[] )
             {
@@ -191,18 +198,16 @@ public class JstlForEach extends AbstractJstlElement
                     localObjects.put( "$index", loopTagStatus.getIndex() );
                     localObjects.put( "$items", value );
 
-                    b.append( innerRenderable.render( localObjects ) );
+                    innerRenderable.render( localObjects, out );
 
                     loopTagStatus.increment();
                 }
             }
             else
             {
-                b.append( innerRenderable.render( rootObjects ) );
+                innerRenderable.render( rootObjects, out );
             }
         }
-
-        return b.toString();
     }
 
 
@@ -229,7 +234,7 @@ public class JstlForEach extends AbstractJstlElement
 
         if ( beginValueExpression != null )
         {
-            Object value = beginValueExpression.getValue( elTemplateManager.getELContext( bindings ) );
+            Object value = beginValueExpression.get().getValue( elTemplateManager.getELContext( bindings ) );
 
             if ( ! ( value instanceof Number ) )
             {
@@ -241,7 +246,7 @@ public class JstlForEach extends AbstractJstlElement
 
         if ( endValueExpression != null )
         {
-            Object value = endValueExpression.getValue( elTemplateManager.getELContext( bindings ) );
+            Object value = endValueExpression.get().getValue( elTemplateManager.getELContext( bindings ) );
 
             if ( ! ( value instanceof Number ) )
             {
@@ -253,7 +258,7 @@ public class JstlForEach extends AbstractJstlElement
 
         if ( stepValueExpression != null )
         {
-            Object value = stepValueExpression.getValue( elTemplateManager.getELContext( bindings ) );
+            Object value = stepValueExpression.get().getValue( elTemplateManager.getELContext( bindings ) );
 
             if ( ! ( value instanceof Number ) )
             {
@@ -284,7 +289,7 @@ public class JstlForEach extends AbstractJstlElement
         }
         else
         {
-            Object value = itemsValueExpression.getValue( elTemplateManager.getELContext( bindings ) );
+            Object value = itemsValueExpression.get().getValue( elTemplateManager.getELContext( bindings ) );
 
             if ( value instanceof Object[] )
             {
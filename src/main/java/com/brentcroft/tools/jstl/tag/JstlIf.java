@@ -1,6 +1,8 @@
 package com.brentcroft.tools.jstl.tag;
 
+import com.brentcroft.tools.el.ConstantValueExpression;
 import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.LazyCompilation;
 import com.brentcroft.tools.jstl.JstlDocument;
 import com.brentcroft.tools.jstl.JstlTemplate;
 import com.brentcroft.tools.el.MapBindings;
@@ -8,6 +10,8 @@ import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
 import jakarta.el.*;
+import lombok.Getter;
+import java.io.IOException;
 import java.util.Map;
 
 import static com.brentcroft.tools.jstl.JstlNamespace.prefix;
@@ -16,9 +20,14 @@ public class JstlIf extends AbstractJstlElement
 {
     private final static String TAG = "if";
 
+    @Getter
     private final String testEL;
 
-    private ValueExpression valueExpression;
+    private LazyCompilation.Compiled< ValueExpression > valueExpression;
+
+    // the value of a constant test (folded when normalized), otherwise null
+    @Getter
+    private Boolean constant;
 
     private final ELTemplateManager elTemplateManager;
 
@@ -34,32 +43,46 @@ public class JstlIf extends AbstractJstlElement
 
     private void compile()
     {
-        valueExpression = elTemplateManager.getValueExpression( testEL, EMPTY_MAP, Boolean.class );
+        valueExpression = elTemplateManager.compiled( () -> elTemplateManager.getValueExpression( testEL, EMPTY_MAP, Boolean.class ) );
     }
 
     @Override
     public void normalize()
     {
-        compile();
+        final ConstantValueExpression folded = isDeferred() ? null : elTemplateManager.fold( testEL, Boolean.class );
+
+        if ( folded == null )
+        {
+            compile();
+            return;
+        }
+
+        constant = Boolean.TRUE.equals( folded.getValue() );
+        valueExpression = LazyCompilation.Compiled.of( folded );
+
+        if ( ! constant )
+        {
+            // a dead branch
+            innerRenderable.getElements().clear();
+        }
     }
 
-    public String render( Map< String, Object > bindings )
+    public void render( Map< String, Object > bindings, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
-        final Object value = valueExpression.getValue( elTemplateManager.getELContext( bindings ) );
+        final Object value = constant != null
+                             ? constant
+                             : valueExpression.get().getValue( elTemplateManager.getELContext( bindings ) );
 
         if ( value instanceof Boolean && ( ( Boolean ) value ) )
         {
             // protect external bindings from pollution in local scope
-            return innerRenderable.render( new MapBindings( bindings ) );
-        }
-        else
-        {
-            return "";
+            innerRenderable.render( new MapBindings( bindings ), out );
         }
     }
 
@@ -72,7 +95,7 @@ public class JstlIf extends AbstractJstlElement
     public void emitNodeEvents( Element element, Map< String, Object > bindings, JstlDocument.NodeListEmitter emitter ) throws SAXException
     {
         // global scope
-        final Object value = valueExpression.getValue( elTemplateManager.getELContext( bindings ) );
+        final Object value = valueExpression.get().getValue( elTemplateManager.getELContext( bindings ) );
 
         if ( value instanceof Boolean && ( ( Boolean ) value ) )
         {
@@ -13,10 +13,11 @@ import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
-import static com.brentcroft.tools.el.ELTemplateManager.getLocalFileURL;
 import static com.brentcroft.tools.jstl.JstlNamespace.prefix;
 import static java.lang.String.format;
 import static java.util.Objects.isNull;
@@ -87,11 +88,12 @@ public class JstlInclude extends AbstractJstlElement
         }
     }
 
-    public String render( Map< String, Object > bindings )
+    public void render( Map< String, Object > bindings, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
         MapBindings localBindings = new MapBindings( bindings );
@@ -99,10 +101,10 @@ public class JstlInclude extends AbstractJstlElement
         if (nonNull(innerRenderable))
         {
             // no output - params applied
-            innerRenderable.render(localBindings);
+            innerRenderable.render( localBindings, NULL_OUT );
         }
 
-        return jstlTemplateHandler.expandUri( actualUri, localBindings );
+        jstlTemplateHandler.expandUri( actualUri, localBindings, out );
     }
 
     public String toText()
@@ -124,11 +126,12 @@ public class JstlInclude extends AbstractJstlElement
 
         if ( isNull( includes ) )
         {
-            try
+            // the XML parser decodes the bytes (as the document declares)
+            try ( InputStream stream = jstlTemplateHandler.findTemplateUrl( actualUri ).openStream() )
             {
                 includes = DFB
                         .newDocumentBuilder()
-                        .parse( new InputSource( getLocalFileURL( JstlInclude.class, actualUri ).openStream() ) )
+                        .parse( new InputSource( new BufferedInputStream( stream ) ) )
                         .getChildNodes();
 
                 element.setUserData( key, includes, null );
@@ -8,6 +8,7 @@ import com.brentcroft.tools.el.MapBindings;
 import lombok.extern.java.Log;
 import org.w3c.dom.Element;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -32,16 +33,24 @@ public class JstlLog extends AbstractJstlElement
     }
 
 
-    public String render( Map< String, Object > bindings )
+    /**
+     * @return true if the level of this element is currently logged
+     */
+    public boolean isEnabled()
+    {
+        return log.isLoggable( level );
+    }
+
+
+    public void render( Map< String, Object > bindings, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
         log.log( level, () -> innerRenderable.render( new MapBindings( bindings ) ) );
-
-        return "";
     }
 
     public String toText()
@@ -6,6 +6,7 @@ import com.brentcroft.tools.el.MapBindings;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
+import java.io.IOException;
 import java.util.Map;
 
 import static com.brentcroft.tools.jstl.JstlNamespace.prefix;
@@ -19,14 +20,15 @@ public class JstlOtherwise extends AbstractJstlElement
         innerRenderable = new JstlTemplate( this );
     }
 
-    public String render( Map< String, Object > bindings )
+    public void render( Map< String, Object > bindings, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
         // protect external bindings from pollution in local scope
-        return innerRenderable.render( new MapBindings( bindings ) );
+        innerRenderable.render( new MapBindings( bindings ), out );
     }
 
     public String toText()
@@ -1,16 +1,17 @@
 package com.brentcroft.tools.jstl.tag;
 
 import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.LazyCompilation;
 import com.brentcroft.tools.jstl.JstlDocument;
 import com.brentcroft.tools.jstl.JstlTemplate;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
 import jakarta.el.*;
+import java.io.IOException;
 import java.util.Map;
 
 import static com.brentcroft.tools.jstl.JstlNamespace.prefix;
-import static java.util.Optional.ofNullable;
 
 public class JstlParam extends AbstractJstlElement
 {
@@ -19,7 +20,7 @@ public class JstlParam extends AbstractJstlElement
     private final String name;
     private final String valueEL;
 
-    private ValueExpression valueExpression;
+    private LazyCompilation.Compiled< ValueExpression > valueExpression;
 
     private final ELTemplateManager elTemplateManager;
 
@@ -36,7 +37,7 @@ public class JstlParam extends AbstractJstlElement
 
     private void compile()
     {
-        valueExpression = elTemplateManager.getValueExpression( valueEL, EMPTY_MAP, Object.class );
+        valueExpression = elTemplateManager.compiled( () -> elTemplateManager.getValueExpression( valueEL, EMPTY_MAP, Object.class ) );
     }
 
     @Override
@@ -45,18 +46,22 @@ public class JstlParam extends AbstractJstlElement
         compile();
     }
 
-    public String render( Map< String, Object > bindings )
+    public void render( Map< String, Object > bindings, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
-        final Object value = valueExpression.getValue( elTemplateManager.getELContext( bindings ) );
+        final Object value = valueExpression.get().getValue( elTemplateManager.getELContext( bindings ) );
 
         bindings.put(name, value);
 
-        return ofNullable(value).map(Object::toString).orElse("");
+        if ( value != null )
+        {
+            out.append( value.toString() );
+        }
     }
 
     public String toText()
@@ -67,7 +72,7 @@ public class JstlParam extends AbstractJstlElement
     @Override
     public void emitNodeEvents( Element element, Map< String, Object > bindings, JstlDocument.NodeListEmitter emitter ) throws SAXException
     {
-        final Object value = valueExpression.getValue( elTemplateManager.getELContext( bindings ) );
+        final Object value = valueExpression.get().getValue( elTemplateManager.getELContext( bindings ) );
 
         bindings.put(name, value);
     }
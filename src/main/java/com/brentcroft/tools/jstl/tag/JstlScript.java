@@ -3,6 +3,7 @@ package com.brentcroft.tools.jstl.tag;
 
 import com.brentcroft.tools.el.ELTemplateManager;
 import com.brentcroft.tools.el.Evaluator;
+import com.brentcroft.tools.el.LazyCompilation;
 import com.brentcroft.tools.jstl.JstlDocument;
 import com.brentcroft.tools.jstl.JstlTemplate;
 import com.brentcroft.tools.jstl.JstlTemplateManager;
@@ -10,6 +11,7 @@ import jakarta.el.ValueExpression;
 import lombok.extern.java.Log;
 import org.w3c.dom.Element;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -23,7 +25,7 @@ public class JstlScript extends AbstractJstlElement
     private final static String TAG = "script";
     private final ELTemplateManager elTemplateManager;
     private final boolean renderOutput;
-    private ValueExpression script;
+    private LazyCompilation.Compiled< ValueExpression > script;
 
     public JstlScript( JstlTemplateManager.JstlTemplateHandler templateHandler, boolean renderOutput )
     {
@@ -32,35 +34,39 @@ public class JstlScript extends AbstractJstlElement
         innerRenderable = new JstlTemplate( this );
     }
 
-    private void compile()
+    private ValueExpression compile()
     {
         final String source = Evaluator
                 .stepsStream( innerRenderable.render( EMPTY_MAP ) )
                 .collect( Collectors.joining(";\n"));
 
-        script = elTemplateManager
+        return elTemplateManager
                 .getValueExpression( "${" + source + "}", EMPTY_MAP, Object.class );
     }
 
     @Override
     public void normalize()
     {
-        compile();
+        script = elTemplateManager.compiled( this::compile );
     }
 
 
-    public String render( final Map< String, Object > bindings )
+    public void render( final Map< String, Object > bindings, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
         if ( script == null )
         {
-            return "";
+            return;
+        }
+        Object result = script.get().getValue( elTemplateManager.getELContext( bindings ) );
+        if ( renderOutput && result != null )
+        {
+            out.append( result.toString() );
         }
-        Object result = script.getValue( elTemplateManager.getELContext( bindings ) );
-        return ( renderOutput && result != null ) ? result.toString() : "";
     }
 
     public String toText()
@@ -77,17 +83,19 @@ public class JstlScript extends AbstractJstlElement
     {
         String key = "COMPILED_SCRIPT";
 
-        script = ( ValueExpression ) element.getUserData( key );
+        ValueExpression compiled = ( ValueExpression ) element.getUserData( key );
 
-        if ( isNull( script ) )
+        if ( isNull( compiled ) )
         {
             innerRenderable.addRenderable( elTemplateManager.buildTemplate( element.getTextContent() ) );
 
-            compile();
+            compiled = compile();
 
-            element.setUserData( key, script, null );
+            element.setUserData( key, compiled, null );
         }
 
+        script = LazyCompilation.Compiled.of( compiled );
+
         render( bindings );
     }
 }
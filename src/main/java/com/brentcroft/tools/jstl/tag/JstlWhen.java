@@ -1,7 +1,9 @@
 package com.brentcroft.tools.jstl.tag;
 
 
+import com.brentcroft.tools.el.ConstantValueExpression;
 import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.LazyCompilation;
 import com.brentcroft.tools.jstl.JstlDocument;
 import com.brentcroft.tools.jstl.JstlTemplate;
 import com.brentcroft.tools.el.MapBindings;
@@ -9,6 +11,8 @@ import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
 import jakarta.el.*;
+import lombok.Getter;
+import java.io.IOException;
 import java.util.Map;
 
 import static com.brentcroft.tools.jstl.JstlNamespace.prefix;
@@ -18,9 +22,14 @@ public class JstlWhen extends AbstractJstlElement
 {
     public final static String TAG = "when";
 
+    @Getter
     protected String testEL;
 
-    protected ValueExpression valueExpression;
+    protected LazyCompilation.Compiled< ValueExpression > valueExpression;
+
+    // the value of a constant test (folded when normalized), otherwise null
+    @Getter
+    protected Boolean constant;
 
     private final ELTemplateManager elTemplateManager;
 
@@ -37,33 +46,54 @@ public class JstlWhen extends AbstractJstlElement
 
     private void compile()
     {
-        valueExpression = elTemplateManager.getValueExpression( testEL, EMPTY_MAP, Boolean.class );
+        valueExpression = elTemplateManager.compiled( () -> elTemplateManager.getValueExpression( testEL, EMPTY_MAP, Boolean.class ) );
     }
 
     @Override
     public void normalize()
     {
-        compile();
+        final ConstantValueExpression folded = isDeferred() ? null : elTemplateManager.fold( testEL, Boolean.class );
+
+        if ( folded == null )
+        {
+            compile();
+            return;
+        }
+
+        constant = Boolean.TRUE.equals( folded.getValue() );
+        valueExpression = LazyCompilation.Compiled.of( folded );
+
+        if ( ! constant )
+        {
+            // a dead branch (that the choose drops)
+            innerRenderable.getElements().clear();
+        }
     }
 
 
     public boolean test( Map< ?, ? > rootObjects )
     {
-        final Object value = valueExpression.getValue( elTemplateManager.getELContext( rootObjects ) );
+        if ( constant != null )
+        {
+            return constant;
+        }
+
+        final Object value = valueExpression.get().getValue( elTemplateManager.getELContext( rootObjects ) );
 
         return ( value instanceof Boolean ) && ( Boolean ) value;
     }
 
 
-    public String render( Map< String, Object > bindings )
+    public void render( Map< String, Object > bindings, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
         // protect external bindings from pollution in local scope
-        return innerRenderable.render( new MapBindings( bindings ) );
+        innerRenderable.render( new MapBindings( bindings ), out );
     }
 
     public String toText()
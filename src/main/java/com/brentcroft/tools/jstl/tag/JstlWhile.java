@@ -1,6 +1,7 @@
 package com.brentcroft.tools.jstl.tag;
 
 import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.LazyCompilation;
 import com.brentcroft.tools.jstl.JstlDocument;
 import com.brentcroft.tools.jstl.JstlTemplate;
 import com.brentcroft.tools.el.MapBindings;
@@ -8,6 +9,8 @@ import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
 import jakarta.el.*;
+import lombok.Getter;
+import java.io.IOException;
 import java.util.Map;
 
 import static com.brentcroft.tools.jstl.JstlNamespace.prefix;
@@ -16,12 +19,14 @@ public class JstlWhile extends AbstractJstlElement
 {
     private final static String TAG = "while";
 
+    @Getter
     private final String testEL;
 
-    private ValueExpression valueExpression;
+    private LazyCompilation.Compiled< ValueExpression > valueExpression;
 
     private final ELTemplateManager elTemplateManager;
 
+    @Getter
     private final String varStatus;
 
 
@@ -38,7 +43,7 @@ public class JstlWhile extends AbstractJstlElement
 
     private void compile()
     {
-        valueExpression = elTemplateManager.getValueExpression( testEL, EMPTY_MAP, Object.class );
+        valueExpression = elTemplateManager.compiled( () -> elTemplateManager.getValueExpression( testEL, EMPTY_MAP, Object.class ) );
     }
 
     @Override
@@ -47,18 +52,17 @@ public class JstlWhile extends AbstractJstlElement
         compile();
     }
 
-    public String render( Map< String, Object > rootObjects )
+    public void render( Map< String, Object > rootObjects, Appendable out ) throws IOException
     {
         if ( isDeferred() )
         {
-            return toText();
+            out.append( toText() );
+            return;
         }
 
         final LoopTagStatus< Object > loopTagStatus = new LoopTagStatus<>( null, null, null );
 
-        Object value = valueExpression.getValue( elTemplateManager.getELContext( rootObjects ) );
-
-        final StringBuilder b = new StringBuilder();
+        Object value = valueExpression.get().getValue( elTemplateManager.getELContext( rootObjects ) );
 
         while ( value instanceof Boolean && ( ( Boolean ) value ) )
         {
@@ -70,15 +74,13 @@ public class JstlWhile extends AbstractJstlElement
             localObjects.put( varStatus, loopTagStatus );
 
 
-            b.append( innerRenderable.render( localObjects ) );
+            innerRenderable.render( localObjects, out );
 
             loopTagStatus.increment();
 
             // but always test in outer scope
-            value = valueExpression.getValue( elTemplateManager.getELContext( rootObjects ) );
+            value = valueExpression.get().getValue( elTemplateManager.getELContext( rootObjects ) );
         }
-
-        return b.toString();
     }
 
     public String toText()
@@ -97,7 +99,7 @@ public class JstlWhile extends AbstractJstlElement
         localObjects.put( varStatus, loopTagStatus );
 
         // in global scope
-        Object value = valueExpression.getValue( elTemplateManager.getELContext( localObjects ) );
+        Object value = valueExpression.get().getValue( elTemplateManager.getELContext( localObjects ) );
 
         while ( value instanceof Boolean && ( ( Boolean ) value ) )
         {
@@ -105,7 +107,7 @@ public class JstlWhile extends AbstractJstlElement
 
             loopTagStatus.increment();
 
-            value = valueExpression.getValue( elTemplateManager.getELContext( localObjects ) );
+            value = valueExpression.get().getValue( elTemplateManager.getELContext( localObjects ) );
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package com.brentcroft.tools.el;
+
+import com.brentcroft.tools.el.closure.ClosureExpressionFactory;
+import com.brentcroft.tools.el.source.MemoryTemplateSource;
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import com.brentcroft.tools.jstl.tag.JstlChoose;
+import com.brentcroft.tools.jstl.tag.JstlIf;
+import com.brentcroft.tools.jstl.tag.JstlWhen;
+import jakarta.el.ELException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConstantFoldingTest
+{
+    private final ELTemplateManager el = new ELTemplateManager();
+
+    @Test
+    public void foldsConstantExpressions()
+    {
+        assertEquals( new ConstantValueExpression( "${1024 * 4}", Object.class, 4096L ), el.compile( "1024 * 4" ) );
+        assertEquals( new ConstantValueExpression( "${'a' += 'b'}", Object.class, "ab" ), el.compile( "'a' += 'b'" ) );
+        assertEquals( new ConstantValueExpression( "${-1 < 2 ? 'x' : 'y'}", Object.class, "x" ), el.compile( "-1 < 2 ? 'x' : 'y'" ) );
+        assertEquals( 3, el.getValueExpression( "${ 1 + 2 }", null, Integer.class ).getValue( el.getELContext( new MapBindings() ) ) );
+        assertEquals( 4096L, ( ( ConstantValueExpression ) el.compile( "1024 * 4" ) ).getValue() );
+
+        for ( String expression : new String[]{ "x + 1", "Integer.valueOf( 1 )", "[1, 2]", "Integer.MAX_VALUE", "Integer.nope", "7 % 0" } )
+        {
+            assertFalse( expression, el.compile( expression ) instanceof ConstantValueExpression );
+        }
+
+        assertFalse( new ELTemplateManager().withConstantFolding( false ).compile( "1 + 2" ) instanceof ConstantValueExpression );
+    }
+
+    @Test
+    public void bindingsHideImportedClasses()
+    {
+        final MapBindings bindings = new MapBindings().withEntry( "Math", new MapBindings().withEntry( "PI", "pie" ) );
+
+        for ( ELTemplateManager manager : new ELTemplateManager[]{
+                el,
+                new ELTemplateManager().withExpressionFactory( new ClosureExpressionFactory() ) } )
+        {
+            assertEquals( "pie", manager.expandText( "${ Math.PI }", bindings ) );
+            assertEquals( "pie", manager.eval( "Math.PI", bindings ) );
+            assertEquals( "pie!", manager.eval( "Math.PI += '!'", bindings ) );
+            assertEquals( Math.PI, manager.eval( "Math.PI", new MapBindings() ) );
+        }
+
+        assertEquals( "pie", new JstlTemplateManager().expandText( "<c:if test=\"${ Math.PI == 'pie' }\">pie</c:if>", bindings ) );
+    }
+
+    @Test
+    public void foldsStaticConstants()
+    {
+        final StaticConstantExpression maxValue = ( StaticConstantExpression ) el.compile( "Integer.MAX_VALUE" );
+        final MapBindings bindings = new MapBindings().withEntry( "x", 1 );
+
+        assertEquals( Integer.MAX_VALUE, maxValue.getValue() );
+        assertEquals( Integer.MAX_VALUE, maxValue.getValue( el.getELContext( bindings ) ) );
+        assertEquals( Math.PI, el.getValueExpression( "${ Math.PI }", null, Double.class ).getValue( el.getELContext( bindings ) ) );
+        assertEquals( "32", el.getValueExpression( "${ Integer.SIZE }", null, String.class ).getValue( el.getELContext( bindings ) ) );
+
+        for ( String expression : new String[]{ "Integer.valueOf", "Integer.nope", "Math.PI.x", "x.MAX_VALUE", "Thread.currentThread" } )
+        {
+            assertFalse( expression, el.compile( expression ) instanceof StaticConstantExpression );
+        }
+
+        assertFalse( new ELTemplateManager().withConstantFolding( false ).compile( "Integer.MAX_VALUE" ) instanceof StaticConstantExpression );
+
+        // bound names are resolved, not folded
+        assertEquals( "max", maxValue.getValue( el.getELContext( new MapBindings().withEntry( "Integer", new MapBindings().withEntry( "MAX_VALUE", "max" ) ) ) ) );
+        assertEquals( "max", el.eval( "( Integer -> Integer.MAX_VALUE )( { 'MAX_VALUE': 'max' } )", bindings ) );
+
+        // never merged into template text
+        assertEquals( 3, el.buildTemplate( "a ${ Integer.MAX_VALUE } b" ).size() );
+        assertNull( el.fold( "${ Integer.MAX_VALUE }", Object.class ) );
+    }
+
+    @Test
+    public void lazyCompilationDefersFolding()
+    {
+        final ELTemplateManager lazy = new ELTemplateManager().withLazyCompilation( 0 );
+
+        assertNull( lazy.fold( "${ 1 + 1 }", Object.class ) );
+        assertEquals( 3, lazy.buildTemplate( "a ${ 1 + 1 } b" ).size() );
+        assertEquals( "a 2 b", lazy.expandText( "a ${ 1 + 1 } b", new MapBindings() ) );
+        assertTrue( lazy.compile( "1 + 1" ) instanceof ConstantValueExpression );
+    }
+
+    @Test
+    public void failuresAreLeftToEvaluation()
+    {
+        try
+        {
+            el.eval( "7 % 0", new MapBindings() );
+            fail( "Expected an exception" );
+        }
+        catch ( ELException e )
+        {
+            assertTrue( e.getCause() instanceof ArithmeticException );
+        }
+    }
+
+    @Test
+    public void foldsConstantSubexpressionsOfClosures()
+    {
+        final ELTemplateManager closures = new ELTemplateManager().withExpressionFactory( new ClosureExpressionFactory() );
+
+        assertEquals( 8192L, closures.eval( "x * ( 1024 * 4 )", new MapBindings().withEntry( "x", 2 ) ) );
+        assertEquals( "a-2147483647", closures.eval( "x += '-' += Integer.MAX_VALUE", new MapBindings().withEntry( "x", "a" ) ) );
+    }
+
+    @Test
+    public void mergesConstantsIntoLiteralText()
+    {
+        final String text = "a ${ 1 + 1 } b ${ x } c ${ 'd' } ${ null }e";
+        final MapBindings bindings = new MapBindings().withEntry( "x", "X" );
+
+        final ELTemplateManager.ELTemplate folded = el.buildTemplate( text );
+        final ELTemplateManager.ELTemplate unfolded = new ELTemplateManager().withConstantFolding( false ).buildTemplate( text );
+
+        assertEquals( 3, folded.size() );
+        assertEquals( 9, unfolded.size() );
+        assertEquals( "a 2 b X c d e", folded.render( bindings ) );
+        assertEquals( unfolded.render( bindings ), folded.render( bindings ) );
+    }
+
+    @Test
+    public void dropsDeadBranches()
+    {
+        final JstlTemplateManager jstl = new JstlTemplateManager()
+                .withTemplateSource( new MemoryTemplateSource()
+                        .withTemplate( "if.tpl", "<c:if test=\"${ 1 > 2 }\">never</c:if><c:if test=\"${ 2 > 1 }\">always</c:if>" )
+                        .withTemplate( "choose.tpl", "<c:choose>" +
+                                "<c:when test=\"${ false }\">a</c:when>" +
+                                "<c:when test=\"${ x }\">b</c:when>" +
+                                "<c:when test=\"${ 'true' }\">c</c:when>" +
+                                "<c:when test=\"${ x }\">d</c:when>" +
+                                "<c:otherwise>e</c:otherwise>" +
+                                "</c:choose>" ) );
+
+        final JstlTemplate ifs = jstl.getTemplate( "if.tpl" );
+
+        assertEquals( Boolean.FALSE, ( ( JstlIf ) ifs.getElements().get( 0 ) ).getConstant() );
+        assertTrue( ( ( JstlIf ) ifs.getElements().get( 0 ) ).getInnerJstlTemplate().getElements().isEmpty() );
+        assertEquals( Boolean.TRUE, ( ( JstlIf ) ifs.getElements().get( 1 ) ).getConstant() );
+        assertEquals( "always", ifs.render( new MapBindings() ) );
+
+        final JstlTemplate choose = jstl.getTemplate( "choose.tpl" );
+        final JstlChoose jstlChoose = ( JstlChoose ) choose.getElements().get( 0 );
+
+        assertEquals( 2, jstlChoose.getInnerJstlTemplate().getElements().size() );
+        assertEquals( "${ x }", ( ( JstlWhen ) jstlChoose.getInnerJstlTemplate().getElements().get( 0 ) ).getTestEL() );
+        assertEquals( "b", choose.render( new MapBindings().withEntry( "x", true ) ) );
+        assertEquals( "c", choose.render( new MapBindings().withEntry( "x", false ) ) );
+    }
+}
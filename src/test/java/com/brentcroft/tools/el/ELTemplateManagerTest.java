@@ -1,5 +1,8 @@
 package com.brentcroft.tools.el;
 
+import com.brentcroft.tools.el.resolver.BaseELResolver;
+import com.brentcroft.tools.el.resolver.SimpleELResolver;
+import jakarta.el.ELContext;
 import jakarta.el.ELException;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,6 +16,10 @@ import java.util.GregorianCalendar;
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 
@@ -34,6 +41,114 @@ public class ELTemplateManagerTest
         assertEquals( "blue-grey", el.expandText( "blue-grey", null ) );
     }
 
+    @Test
+    public void test_compactTemplates()
+    {
+        final ELTemplateManager manager = new ELTemplateManager();
+        final String text = "<td>${ a }</td><td>${ b }</td><td>#{ c }</td>";
+
+        final ELTemplateManager.ELTemplate first = manager.buildTemplate( text );
+        final ELTemplateManager.ELTemplate second = manager.buildTemplate( text );
+
+        // the deferred expression is a literal
+        assertEquals( 6, first.size() );
+        assertEquals( "<td>${a}</td><td>${b}</td><td>${c}</td>", first.toString() );
+        assertEquals(
+                "<td>1</td><td>2</td><td>${c}</td>",
+                first.render( new MapBindings().withEntry( "a", 1 ).withEntry( "b", 2 ) ) );
+
+        // the same literal text is held once
+        assertEquals( first.toString(), second.toString() );
+        assertEquals( 1, manager.getLiteralPool().getHits() );
+    }
+
+    @Test
+    public void test_parseCache()
+    {
+        final ELTemplateManager cached = new ELTemplateManager()
+                .withParseCache( 1024 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( "x=" + i, cached.expandText( "x=${ x }", new MapBindings().withEntry( "x", i ) ) );
+            assertEquals( "y=" + i % 10, cached.expandText( "y=${ " + ( i % 10 ) + " }", null ) );
+        }
+
+        // a cache held by approximate size in memory
+        assertTrue( cached.getParseCache().getStats().getWeight() <= 1024 );
+        assertTrue( cached.getParseCache().getStats().getHitCount() >= 99 );
+    }
+
+    @Test
+    public void test_renderScope()
+    {
+        final SimpleELContextFactory factory = el.getELContextFactory();
+        final SimpleELContext scope = factory.openRenderScope( new MapBindings().withEntry( "x", 1 ) );
+
+        try
+        {
+            // nested renders leave the scope in place
+            assertNull( factory.openRenderScope( new MapBindings() ) );
+
+            final ELContext frame = el.getELContext( new MapBindings().withEntry( "x", 2 ) );
+
+            // a frame only differs by its root objects
+            assertNotSame( scope, frame );
+            assertSame( scope.getELResolver(), frame.getELResolver() );
+            assertSame( scope.getFunctionMapper(), frame.getFunctionMapper() );
+            assertSame( frame, frame.getContext( SimpleELContext.class ) );
+
+            assertEquals( "x=3", el.expandText( "x=${ x }", new MapBindings().withEntry( "x", 3 ) ) );
+        }
+        finally
+        {
+            factory.closeRenderScope( scope );
+        }
+
+        // contexts outside a render still share the resolver
+        assertSame( factory.getResolver(), el.getELContext( new MapBindings() ).getELResolver() );
+    }
+
+    @Test
+    public void test_resolverDispatch()
+    {
+        final MapBindings bindings = new MapBindings()
+                .withEntry( "text", "abc" )
+                .withEntry( "items", asList( "x", "y" ) )
+                .withEntry( "map", new MapBindings()
+                        .withEntry( "$$twice", "n * 2" )
+                        .withEntry( "size", 7 ) );
+
+        // each base class is dispatched to the resolvers that can handle it
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertEquals( "ABC", el.eval( "text.toUpperCase()", bindings ) );
+            assertEquals( "y", el.eval( "items[1]", bindings ) );
+            assertEquals( 2L, el.eval( "items.stream().count()", bindings ) );
+            assertEquals( 7, el.eval( "map.size", bindings ) );
+            assertEquals( 6L, el.eval( "map.twice( { 'n': 3 } )", bindings ) );
+        }
+
+        // a resolver added without applicability is always asked
+        ( ( SimpleELResolver ) el.getELContextFactory().getResolver() )
+                .add( new BaseELResolver()
+                {
+                    @Override
+                    public Object getValue( ELContext context, Object base, Object property )
+                    {
+                        if ( base == null && "answer".equals( property ) )
+                        {
+                            context.setPropertyResolved( null, property );
+                            return 42;
+                        }
+                        return null;
+                    }
+                } );
+
+        assertEquals( 42, el.eval( "answer", bindings ) );
+        assertEquals( "ABC", el.eval( "text.toUpperCase()", bindings ) );
+    }
+
     @Test
     public void test_BasicEL02()
     {
@@ -0,0 +1,158 @@
+package com.brentcroft.tools.el;
+
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class LazyCompilationTest
+{
+    private static final String CHOOSE = "<c:choose>" +
+            "<c:when test=\"${ x == 1 }\">one ${ a }</c:when>" +
+            "<c:when test=\"${ x == 2 }\">two ${ b }</c:when>" +
+            "<c:otherwise>${ c }</c:otherwise>" +
+            "</c:choose>";
+
+    private final JstlTemplateManager jstl = new JstlTemplateManager().withLazyCompilation( 0 );
+
+    private MapBindings bindings( int x )
+    {
+        return new MapBindings()
+                .withEntry( "x", x )
+                .withEntry( "a", "A" )
+                .withEntry( "b", "B" )
+                .withEntry( "c", "C" );
+    }
+
+    private LazyCompilation lazy()
+    {
+        return jstl.getELTemplateManager().getLazyCompilation();
+    }
+
+    @Test
+    public void compilesOnlyTheBranchesRendered()
+    {
+        final JstlTemplate template = jstl.buildTemplate( CHOOSE, null );
+
+        // two tests and three blocks of text
+        assertEquals( 5, lazy().size() );
+        assertEquals( 0, lazy().getCompiledCount() );
+
+        assertEquals( "one A", template.render( bindings( 1 ) ) );
+
+        // the first test, and its text
+        assertEquals( 2, lazy().getCompiledCount() );
+
+        assertEquals( "C", template.render( bindings( 3 ) ) );
+
+        // not the text of the second test
+        assertEquals( 4, lazy().getCompiledCount() );
+    }
+
+    @Test
+    public void rendersAsWhenCompiledEagerly()
+    {
+        final JstlTemplateManager eager = new JstlTemplateManager();
+
+        final String text = CHOOSE +
+                "<c:forEach items=\"${ [ 1, 2, 3 ] }\" var=\"i\">[${ i * x }]</c:forEach>" +
+                "<c:forEach begin=\"${ 1 }\" end=\"${ x }\" varStatus=\"s\">${ s.index }</c:forEach>" +
+                "<c:if test=\"${ x > 1 }\" deferred=\"true\">${ y }</c:if>" +
+                "<c:script render=\"true\">x + 1</c:script> #{ w }";
+
+        for ( int x = 0; x < 4; x++ )
+        {
+            assertEquals(
+                    eager.expandText( text, bindings( x ) ),
+                    jstl.expandText( text, bindings( x ) ) );
+        }
+    }
+
+    @Test
+    public void reportsSyntaxErrorsWhenFirstRendered()
+    {
+        final String text = "<c:if test=\"${ x == 2 }\">${ ( }</c:if>";
+
+        try
+        {
+            new JstlTemplateManager().buildTemplate( text, null );
+            fail( "expected a syntax error" );
+        }
+        catch ( RuntimeException ignored )
+        {
+            // when compiled eagerly
+        }
+
+        final JstlTemplate template = jstl.buildTemplate( text, null );
+
+        assertEquals( "", template.render( bindings( 1 ) ) );
+
+        try
+        {
+            template.render( bindings( 2 ) );
+            fail( "expected a syntax error" );
+        }
+        catch ( RuntimeException ignored )
+        {
+            // when first rendered
+        }
+    }
+
+    @Test
+    public void releasesUnusedBranches()
+    {
+        final JstlTemplate template = jstl.buildTemplate( CHOOSE, null );
+
+        assertEquals( "one A", template.render( bindings( 1 ) ) );
+        assertEquals( 2, lazy().getCompiledCount() );
+
+        // used since the last release
+        assertEquals( 0, lazy().releaseNow() );
+        assertEquals( 2, lazy().getCompiledCount() );
+
+        assertEquals( 2, lazy().releaseNow() );
+        assertEquals( 0, lazy().getCompiledCount() );
+
+        // compiled again when used again
+        assertEquals( "two B", template.render( bindings( 2 ) ) );
+        assertEquals( 3, lazy().getCompiledCount() );
+    }
+
+    @Test
+    public void compilesOnceWhenRenderedConcurrently() throws Exception
+    {
+        final JstlTemplate template = jstl.buildTemplate( CHOOSE, null );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+
+        try
+        {
+            final List< Future< String > > renders = new ArrayList<>();
+
+            for ( int i = 0; i < 200; i++ )
+            {
+                final int x = 1 + i % 3;
+
+                renders.add( executor.submit( () -> template.render( bindings( x ) ) ) );
+            }
+
+            for ( int i = 0; i < renders.size(); i++ )
+            {
+                assertEquals( new String[]{ "one A", "two B", "C" }[ i % 3 ], renders.get( i ).get() );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals( 5, lazy().getCompiledCount() );
+    }
+}
@@ -0,0 +1,179 @@
+package com.brentcroft.tools.el;
+
+import com.brentcroft.tools.el.resolver.SimpleELResolver;
+import jakarta.el.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PropertyPathExpressionTest
+{
+    private final ELTemplateManager reference = new ELTemplateManager().withPropertyPaths( false );
+    private final ELTemplateManager paths = new ELTemplateManager();
+
+    public static class Customer
+    {
+        public String getName()
+        {
+            return "Fred";
+        }
+
+        public Map< String, Object > getAddress()
+        {
+            return Collections.singletonMap( "town", "Leeds" );
+        }
+    }
+
+    private final MapBindings bindings = bindings();
+
+    private static MapBindings bindings()
+    {
+        final Map< Object, Object > order = new HashMap<>();
+
+        order.put( "customer", new Customer() );
+        order.put( "lines", Arrays.asList( "a", "b" ) );
+        order.put( "codes", new int[]{ 7, 8 } );
+        order.put( "empty", null );
+        order.put( 2L, "two" );
+
+        return new MapBindings( new MapBindings().withEntry( "delegated", "yes" ) )
+                .withEntry( "order", order )
+                .withEntry( "list", Arrays.asList( order, null ) );
+    }
+
+    private Object outcome( ELTemplateManager el, String expression, Class< ? > type, List< String > events )
+    {
+        final ELContext context = el.getELContext( bindings );
+
+        context.addEvaluationListener( new EvaluationListener()
+        {
+            @Override
+            public void beforeEvaluation( ELContext context, String expression )
+            {
+                events.add( "before:" + expression );
+            }
+
+            @Override
+            public void afterEvaluation( ELContext context, String expression )
+            {
+                events.add( "after:" + expression );
+            }
+
+            @Override
+            public void propertyResolved( ELContext context, Object base, Object property )
+            {
+                events.add( "resolved:" + property );
+            }
+        } );
+
+        try
+        {
+            final Object value = el.getValueExpression( "${" + expression + "}", null, type ).getValue( context );
+
+            return value == null ? null : value.getClass().getSimpleName() + ":" + value;
+        }
+        catch ( RuntimeException e )
+        {
+            return e.getClass();
+        }
+    }
+
+    private void assertSame( Class< ? > type, String... expressions )
+    {
+        for ( String expression : expressions )
+        {
+            final List< String > expected = new ArrayList<>();
+            final List< String > actual = new ArrayList<>();
+
+            assertEquals( expression, outcome( reference, expression, type, expected ), outcome( paths, expression, type, actual ) );
+            assertEquals( expression, expected, actual );
+        }
+    }
+
+    // a static constant (e.g. Math.PI) is still a property path when its class name is bound
+    private static ValueExpression general( ValueExpression expression )
+    {
+        return expression instanceof StaticConstantExpression
+               ? ( ( StaticConstantExpression ) expression ).getExpression()
+               : expression;
+    }
+
+    @Test
+    public void recognisesPropertyPaths()
+    {
+        for ( String path : new String[]{ "order", "order.customer.name", "order['lines'][1]", "list[0].codes[1]", "Math.PI" } )
+        {
+            assertTrue( path, general( paths.compile( path ) ) instanceof PropertyPathExpression );
+            assertFalse( path, general( reference.compile( path ) ) instanceof PropertyPathExpression );
+        }
+
+        for ( String other : new String[]{ "order.size()", "list[i]", "list[-1]", "order.x + 1", "$local.x", "order.$static", "'a'", "order ? 1 : 2" } )
+        {
+            assertFalse( other, paths.compile( other ) instanceof PropertyPathExpression );
+        }
+    }
+
+    @Test
+    public void valuesAsReference()
+    {
+        assertSame(
+                Object.class,
+                "order", "order.customer", "order.customer.name", "order.customer.address.town", "order.customer.nope",
+                "order['lines'][1]", "order.lines[2]", "order.lines[-0]", "order.lines['1']", "order.codes[1]", "order.codes[5]",
+                "order.empty", "order.empty.x", "order[2]", "order.missing", "order.size", "list[0].customer.name", "list[1].x",
+                "delegated", "nope", "nope.x", "Math.PI", "Integer.MAX_VALUE", "Math.nope" );
+
+        assertSame( Boolean.class, "order.empty", "order.customer.name", "delegated" );
+        assertSame( Integer.class, "order.codes[0]", "order.lines[0]" );
+    }
+
+    @Test
+    public void scopesAsReference()
+    {
+        final SimpleELContextFactory factory = paths.getELContextFactory();
+        final Stack< MapBindings > stack = factory.getScopeStack().get();
+
+        factory.getStaticModel().put( "constant", "static" );
+        factory.getStaticModel().put( "order", "hidden" );
+        stack.push( new MapBindings().withEntry( "scoped", "outer" ).withEntry( "shadowed", "outer" ) );
+        stack.push( new MapBindings( new MapBindings().withEntry( "inherited", "delegate" ) ).withEntry( "shadowed", "inner" ) );
+
+        try
+        {
+            assertSame( Object.class, "scoped", "shadowed", "inherited", "constant", "order.lines[0]", "$functionName" );
+        }
+        finally
+        {
+            stack.pop();
+            stack.pop();
+            factory.getStaticModel().remove( "constant" );
+            factory.getStaticModel().remove( "order" );
+        }
+    }
+
+    @Test
+    public void extendedResolverUsesTheGeneralExpression()
+    {
+        final ELTemplateManager el = new ELTemplateManager();
+        final ValueExpression path = el.compile( "order.customer" );
+
+        ( ( SimpleELResolver ) el.getELContextFactory().getResolver() ).add( new BeanNameELResolver( new BeanNameResolver()
+        {
+            @Override
+            public boolean isNameResolved( String beanName )
+            {
+                return "order".equals( beanName );
+            }
+
+            @Override
+            public Object getBean( String beanName )
+            {
+                return Collections.singletonMap( "customer", "resolved" );
+            }
+        } ) );
+
+        assertEquals( "resolved", path.getValue( el.getELContext( new MapBindings() ) ) );
+    }
+}
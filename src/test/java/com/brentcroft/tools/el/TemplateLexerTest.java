@@ -0,0 +1,291 @@
+package com.brentcroft.tools.el;
+
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class TemplateLexerTest
+{
+    private final TemplateLexer lexer = new TemplateLexer( "c:", true, true );
+
+    private static class Recorder implements TemplateLexer.Handler
+    {
+        private final StringBuilder tokens = new StringBuilder();
+        private boolean literal = false;
+
+        // adjacent literals are merged
+        @Override
+        public void literal( CharSequence text, int start, int end )
+        {
+            if ( literal )
+            {
+                tokens.setLength( tokens.length() - 1 );
+            }
+            else
+            {
+                tokens.append( "L(" );
+            }
+
+            tokens.append( text, start, end ).append( ")" );
+
+            literal = true;
+        }
+
+        @Override
+        public void expression( boolean deferred, CharSequence text, int start, int end )
+        {
+            literal = false;
+            tokens.append( deferred ? "D(" : "E(" ).append( text, start, end ).append( ")" );
+        }
+
+        @Override
+        public void endText()
+        {
+            literal = false;
+            tokens.append( "|" );
+        }
+
+        @Override
+        public void openTag( String tag, Map< String, String > attributes, boolean empty )
+        {
+            literal = false;
+            tokens
+                    .append( "<" )
+                    .append( tag )
+                    .append( attributes == null ? "" : new TreeMap<>( attributes ).toString() )
+                    .append( empty ? "/>" : ">" );
+        }
+
+        @Override
+        public void closeTag( String tag )
+        {
+            literal = false;
+            tokens.append( "</" ).append( tag ).append( ">" );
+        }
+    }
+
+    private String lex( TemplateLexer lexer, String text )
+    {
+        final Recorder recorder = new Recorder();
+
+        lexer.lex( text, recorder );
+
+        return recorder.tokens.toString();
+    }
+
+    @Test
+    public void lexesExpressions()
+    {
+        assertEquals( "L(a )E( b )L( c)|", lex( TemplateLexer.EL, "a ${ b } c" ) );
+        assertEquals( "D(x)|", lex( TemplateLexer.EL, "#{x}" ) );
+        assertEquals( "L($$ a$)|", lex( TemplateLexer.EL, "$$ a$" ) );
+        assertEquals( "L(a${ b)|", lex( TemplateLexer.EL, "a${ b" ) );
+        assertEquals( "E('}')|", lex( TemplateLexer.EL, "${'\\}'}" ) );
+        assertEquals( "|", lex( TemplateLexer.EL, "" ) );
+    }
+
+    @Test( expected = ELTemplateException.class )
+    public void rejectsEmptyExpressions()
+    {
+        lex( TemplateLexer.EL, "a ${ } b" );
+    }
+
+    @Test
+    public void lexesTags()
+    {
+        assertEquals(
+                "<if{test=${ x }}>L(a)|</if><out{value=v}/>",
+                lex( lexer, "<c:if test=\"${ x }\">a</c:if><c:out value='v' />" ) );
+
+        // keyed by the name after any colon
+        assertEquals( "<set{var=a}/>", lex( lexer, "<c:set ns:var=\"a\"/>" ) );
+
+        // not a tag
+        assertEquals( "L(<c:foreach test>)|", lex( lexer, "<c:foreach test>" ) );
+
+        // as the regex backtracks into the name
+        assertEquals( "<i{f=x}>", lex( lexer, "<c:if=\"x\">" ) );
+    }
+
+    @Test
+    public void stripsCommentsAndUnwrapsCData()
+    {
+        assertEquals( "L(a b)|", lex( lexer, "a<!-- ${ x } --> b" ) );
+        assertEquals( "L(a <!-- b)|", lex( lexer, "a <!-- b" ) );
+        assertEquals( "L(<)E(x)L(>)|", lex( lexer, "<![CDATA[<${x}>]]>" ) );
+        assertEquals( "L(<![CDATA[ a)|", lex( lexer, "<![CDATA[ a" ) );
+
+        // tags take precedence
+        assertEquals( "L(<!-- )|</if>L( -->)|", lex( lexer, "<!-- </c:if> -->" ) );
+
+        // an expression interrupted by a comment
+        assertEquals( "E(ab)|", lex( lexer, "${a<!-- -->b}" ) );
+    }
+
+    /*
+     * The lexer replaces the tag, attribute, comment and CDATA regular expressions:
+     * it should give the same templates.
+     */
+    @Test
+    public void matchesRegexParser()
+    {
+        final String[] fragments = {
+                "a", " ", "$", "#", "{", "}", "\\", "${x}", "#{ y }", "<", ">", "/", "\"", "'", "=",
+                "<c:", "</c:if>", "<c:if test=\"${ true }\">", "<c:out value='${x}'/>", "if", "c:", ":",
+                "<!--", "-->", "<![CDATA[", "]]>", "\n"
+        };
+
+        final Random random = new Random( 42 );
+
+        final MapBindings bindings = new MapBindings()
+                .withEntry( "x", "X" )
+                .withEntry( "y", "Y" );
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            final StringBuilder text = new StringBuilder();
+
+            for ( int length = random.nextInt( 12 ); length > 0; length-- )
+            {
+                text.append( fragments[ random.nextInt( fragments.length ) ] );
+            }
+
+            assertEquals( text.toString(),
+                    expand( new JstlTemplateManager(), text.toString(), bindings ),
+                    expand( regexManager(), text.toString(), bindings ) );
+        }
+    }
+
+    @Test
+    public void lexesFromReaderAsFromText()
+    {
+        final String[] fragments = {
+                "a", "$", "{", "}", "\\", "${x}", "<", ">", "\"", "=", "<c:if test=\"${ true }\">", "</c:if>",
+                "<c:out value='${x}'/>", "<c:if test=\"", "<!--", "-->", "<![CDATA[", "]]>", "${ x", "abcdefghijklmnopqrstuvwxyz"
+        };
+
+        final Random random = new Random( 7 );
+
+        for ( int i = 0; i < 500; i++ )
+        {
+            final StringBuilder text = new StringBuilder();
+
+            // some long enough to move the window
+            for ( int length = random.nextInt( i % 10 == 0 ? 10000 : 20 ); length > 0; length-- )
+            {
+                text.append( fragments[ random.nextInt( fragments.length ) ] );
+            }
+
+            assertEquals( text.toString(), lexOrFail( text.toString(), null ), lexOrFail( text.toString(), random ) );
+        }
+    }
+
+    private String lexOrFail( String text, Random chunks )
+    {
+        final Recorder recorder = new Recorder();
+
+        try
+        {
+            if ( chunks == null )
+            {
+                lexer.lex( text, recorder );
+            }
+            else
+            {
+                lexer.lex( new ChunkedReader( text, chunks ), recorder );
+            }
+        }
+        catch ( ELTemplateException e )
+        {
+            return "failed";
+        }
+
+        return recorder.tokens.toString();
+    }
+
+    // returns a few characters at a time
+    private static class ChunkedReader extends Reader
+    {
+        private final StringReader reader;
+        private final Random random;
+
+        ChunkedReader( String text, Random random )
+        {
+            this.reader = new StringReader( text );
+            this.random = random;
+        }
+
+        @Override
+        public int read( char[] chars, int offset, int length ) throws IOException
+        {
+            return reader.read( chars, offset, Math.min( length, 1 + random.nextInt( 100 ) ) );
+        }
+
+        @Override
+        public void close()
+        {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void streamsLargeTemplates()
+    {
+        final StringBuilder text = new StringBuilder( "<table>\n" );
+
+        for ( int i = 0; i < 20000; i++ )
+        {
+            text.append( "<tr><td>" ).append( i ).append( "</td><c:if test=\"${ i == " ).append( i ).append( " }\"><td>${ i }</td></c:if></tr>\n" );
+        }
+
+        text.append( "</table>" );
+
+        final JstlTemplateManager jstl = new JstlTemplateManager();
+        final MapBindings bindings = new MapBindings().withEntry( "i", 19999 );
+
+        assertEquals(
+                jstl.buildTemplate( text.toString(), null ).render( bindings ),
+                jstl.buildTemplate( new ChunkedReader( text.toString(), new Random( 1 ) ), null ).render( bindings ) );
+    }
+
+    private JstlTemplateManager regexManager()
+    {
+        final JstlTemplateManager manager = new JstlTemplateManager();
+
+        manager.TAG_SELECTOR_PATTERN = Pattern.compile( manager.TAG_REGEX );
+
+        return manager;
+    }
+
+    private String expand( JstlTemplateManager manager, String text, MapBindings bindings )
+    {
+        try
+        {
+            return manager.expandText( text, bindings );
+        }
+        catch ( RuntimeException e )
+        {
+            return "failed: " + e.getClass().getSimpleName();
+        }
+    }
+
+    @Test
+    public void regexParserIsUsedWhenPatternsReplaced()
+    {
+        final JstlTemplateManager manager = regexManager();
+
+        manager.COMMENT_SELECTOR_PATTERN = Pattern.compile( "(?s)<!--(?!keep).*?-->" );
+
+        assertEquals( "a<!--keep-->", manager.expandText( "a<!--keep--><!-- drop -->", new MapBindings() ) );
+    }
+}
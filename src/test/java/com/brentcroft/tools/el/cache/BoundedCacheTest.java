@@ -0,0 +1,286 @@
+package com.brentcroft.tools.el.cache;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+public class BoundedCacheTest
+{
+    @Test
+    public void loadsEachKeyOnce() throws Exception
+    {
+        final BoundedCache< String, String > cache = new BoundedCache<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch( 1 );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+
+        try
+        {
+            final List< Future< String > > results = new ArrayList<>();
+
+            for ( int i = 0; i < 32; i++ )
+            {
+                results.add( executor.submit( () -> {
+                    start.await();
+                    return cache.get( "green", key -> {
+                        loads.incrementAndGet();
+                        sleep( 50 );
+                        return key.toUpperCase();
+                    } );
+                } ) );
+            }
+
+            start.countDown();
+
+            for ( Future< String > result : results )
+            {
+                assertEquals( "GREEN", result.get( 10, TimeUnit.SECONDS ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertEquals( 1, loads.get() );
+        assertEquals( 1, cache.getStats().getMissCount() );
+        assertEquals( 31, cache.getStats().getHitCount() );
+        assertEquals( 1, cache.getStats().getLoadCount() );
+    }
+
+    @Test
+    public void reentrantLoadDoesNotDeadlock()
+    {
+        final BoundedCache< Integer, Integer > cache = new BoundedCache<>();
+
+        // a load that requests its own key
+        final Integer value = cache.get( 1, key -> {
+            final Integer inner = cache.get( key, k -> 41 );
+            return inner + 1;
+        } );
+
+        assertEquals( Integer.valueOf( 42 ), value );
+        assertEquals( Integer.valueOf( 42 ), cache.getIfPresent( 1 ) );
+    }
+
+    @Test
+    public void failedLoadIsNotCached()
+    {
+        final BoundedCache< String, String > cache = new BoundedCache<>();
+
+        try
+        {
+            cache.get( "red", key -> {
+                throw new IllegalStateException( "no red" );
+            } );
+            fail( "expected an exception" );
+        }
+        catch ( IllegalStateException e )
+        {
+            assertEquals( "no red", e.getMessage() );
+        }
+
+        assertEquals( 0, cache.size() );
+        assertEquals( 1, cache.getStats().getLoadFailureCount() );
+        assertEquals( "RED", cache.get( "red", String::toUpperCase ) );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed()
+    {
+        final BoundedCache< String, String > cache = new BoundedCache< String, String >()
+                .withMaxEntries( 2 )
+                .withEvictionPolicy( EvictionPolicy.LRU );
+
+        cache.get( "a", String::toUpperCase );
+        cache.get( "b", String::toUpperCase );
+        cache.get( "a", String::toUpperCase );
+        cache.get( "c", String::toUpperCase );
+
+        assertEquals( 2, cache.size() );
+        assertNotNull( cache.getIfPresent( "a" ) );
+        assertNull( cache.getIfPresent( "b" ) );
+        assertNotNull( cache.getIfPresent( "c" ) );
+        assertEquals( 1, cache.getStats().getEvictionCount() );
+    }
+
+    @Test
+    public void evictsLeastFrequentlyUsed()
+    {
+        final BoundedCache< String, String > cache = new BoundedCache< String, String >()
+                .withMaxEntries( 2 )
+                .withEvictionPolicy( EvictionPolicy.LFU );
+
+        cache.get( "a", String::toUpperCase );
+        cache.get( "a", String::toUpperCase );
+        cache.get( "a", String::toUpperCase );
+        cache.get( "b", String::toUpperCase );
+        cache.get( "b", String::toUpperCase );
+        cache.get( "a", String::toUpperCase );
+        cache.get( "c", String::toUpperCase );
+
+        assertNotNull( cache.getIfPresent( "a" ) );
+        assertNull( cache.getIfPresent( "b" ) );
+        assertNotNull( cache.getIfPresent( "c" ) );
+    }
+
+    @Test( timeout = 10_000 )
+    public void evictsInConstantTime()
+    {
+        for ( EvictionPolicy policy : EvictionPolicy.values() )
+        {
+            final BoundedCache< Integer, Integer > cache = new BoundedCache< Integer, Integer >()
+                    .withMaxEntries( 10_000 )
+                    .withEvictionPolicy( policy );
+
+            // a hot key, used throughout
+            for ( int i = 0; i < 200_000; i++ )
+            {
+                cache.get( i, key -> key );
+                cache.get( - 1, key -> key );
+            }
+
+            assertEquals( policy.name(), 10_000, cache.size() );
+            assertEquals( policy.name(), 190_001, cache.getStats().getEvictionCount() );
+            assertNotNull( policy.name(), cache.getIfPresent( - 1 ) );
+            assertNotNull( policy.name(), cache.getIfPresent( 199_999 ) );
+        }
+    }
+
+    @Test
+    public void evictsByWeight()
+    {
+        final BoundedCache< String, String > cache = new BoundedCache< String, String >()
+                .withMaxWeight( 10, String::length );
+
+        cache.put( "a", "aaaa" );
+        cache.put( "b", "bbbb" );
+        cache.put( "c", "cccc" );
+
+        assertEquals( 2, cache.size() );
+        assertEquals( 8, cache.getStats().getWeight() );
+        assertNull( cache.getIfPresent( "a" ) );
+
+        cache.clear();
+
+        assertEquals( 0, cache.getStats().getWeight() );
+    }
+
+    @Test
+    public void removeDuringLoadKeepsWeight() throws Exception
+    {
+        final BoundedCache< Integer, String > cache = new BoundedCache< Integer, String >()
+                .withMaxWeight( 1_000_000, String::length );
+
+        // removed by its own loader
+        assertEquals( "aa", cache.get( 0, key -> {
+            cache.remove( key );
+            return "aa";
+        } ) );
+        assertEquals( 0, cache.size() );
+        assertEquals( 0, cache.getStats().getWeight() );
+
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+        try
+        {
+            final List< Future< ? > > results = new ArrayList<>();
+
+            for ( int t = 0; t < 4; t++ )
+            {
+                final int seed = t;
+
+                results.add( executor.submit( () -> {
+                    start.await();
+
+                    for ( int i = 0; i < 50_000; i++ )
+                    {
+                        final int key = ( i * 7 + seed ) % 8;
+
+                        if ( i % 3 == seed % 3 )
+                        {
+                            cache.remove( key );
+                        }
+                        else if ( i % 1000 == 0 )
+                        {
+                            cache.clear();
+                        }
+                        else
+                        {
+                            cache.get( key, k -> "aa" );
+                        }
+                    }
+                    return null;
+                } ) );
+            }
+
+            start.countDown();
+
+            for ( Future< ? > result : results )
+            {
+                result.get( 30, TimeUnit.SECONDS );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertEquals( 2L * cache.size(), cache.getStats().getWeight() );
+
+        cache.clear();
+
+        assertEquals( 0, cache.getStats().getWeight() );
+    }
+
+    @Test
+    public void managerUsesTemplateCache()
+    {
+        final BoundedCache< String, JstlTemplate > cache = new BoundedCache< String, JstlTemplate >()
+                .withMaxEntries( 1 );
+
+        final JstlTemplateManager jstl = new JstlTemplateManager()
+                .withTemplateCache( cache );
+
+        final String uri = "src/test/resources/templates/jstl/test-include.txt";
+
+        final MapBindings bindings = new MapBindings().withEntry( "fred", "bloggs" );
+
+        final String expected = jstl.expandUri( uri, bindings );
+
+        assertEquals( expected, jstl.expandUri( uri, bindings ) );
+        assertTrue( cache.getStats().getHitCount() > 0 );
+        assertEquals( 1, cache.size() );
+
+        jstl.dropTemplates();
+
+        assertEquals( 0, cache.size() );
+    }
+
+    private static void sleep( long millis )
+    {
+        try
+        {
+            Thread.sleep( millis );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.brentcroft.tools.el.cache;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.MapBindings;
+import jakarta.el.ValueExpression;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+public class ExpressionCacheTest
+{
+    @Test
+    public void normalisesWhitespaceOutsideQuotes()
+    {
+        assertEquals( "${a+b}", ExpressionCache.normalise( "${ a   +\n b }" ) );
+        assertEquals( "${a- -b}", ExpressionCache.normalise( "${ a - -b }" ) );
+        assertEquals( "${a>=b}", ExpressionCache.normalise( "${a >= b}" ) );
+        assertEquals( "${f(a,b)}", ExpressionCache.normalise( "${ f( a , b ) }" ) );
+        assertEquals( "${a ne b}", ExpressionCache.normalise( "${a  ne  b}" ) );
+        assertEquals( "${'a  b'+=\" c  \"}", ExpressionCache.normalise( "${ 'a  b'  +=  \" c  \" }" ) );
+        assertEquals( "${x.y['a  b']}", ExpressionCache.normalise( "${ x.y[ 'a  b' ] }" ) );
+        assertEquals( "${{'a':1}}", ExpressionCache.normalise( "${ { 'a':1 } }" ) );
+
+        // literal text outside expressions is unchanged
+        assertEquals( "  a  ${b}  \\${ c }", ExpressionCache.normalise( "  a  ${ b }  \\${ c }" ) );
+    }
+
+    @Test
+    public void sharesCompiledExpressions()
+    {
+        final ELTemplateManager el = new ELTemplateManager();
+
+        final ValueExpression a = el.compile( "x + 1" );
+        final ValueExpression b = el.compile( "  x   +  1 " );
+        final ValueExpression c = el.getValueExpression( "${x + 1}", null, Object.class );
+        final ValueExpression d = el.getValueExpression( "${x + 1}", null, Boolean.class );
+
+        assertSame( a, b );
+        assertSame( a, c );
+        assertNotSame( a, d );
+
+        assertEquals( 2L, el.eval( "x+1", new MapBindings().withEntry( "x", 1 ) ) );
+
+        final CacheStats stats = el.getExpressionCache().getStats();
+
+        assertEquals( 2, stats.getSize() );
+        assertEquals( 2, stats.getMissCount() );
+        assertEquals( 3, stats.getHitCount() );
+        assertEquals( 0.6, el.getExpressionCache().getHitRatio(), 0.001 );
+    }
+
+    @Test
+    public void boundsCompiledExpressions()
+    {
+        final ELTemplateManager el = new ELTemplateManager()
+                .withExpressionCache( new ExpressionCache( new BoundedCache< String, ValueExpression >().withMaxEntries( 10 ) ) );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( ( long ) i, el.eval( "x + " + i, new MapBindings().withEntry( "x", 0 ) ) );
+        }
+
+        assertEquals( 10, el.getExpressionCache().size() );
+        assertEquals( 90, el.getExpressionCache().getStats().getEvictionCount() );
+    }
+
+    @Test
+    public void evaluatesConcurrently() throws Exception
+    {
+        final ELTemplateManager el = new ELTemplateManager();
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+
+        try
+        {
+            final Future< ? >[] results = new Future[ 8 ];
+
+            for ( int t = 0; t < results.length; t++ )
+            {
+                results[ t ] = executor.submit( () -> {
+                    for ( int i = 0; i < 500; i++ )
+                    {
+                        assertEquals( ( long ) ( i % 50 ) + 1, el.eval( "x + " + ( i % 50 ), new MapBindings().withEntry( "x", 1 ) ) );
+                    }
+                } );
+            }
+
+            for ( Future< ? > result : results )
+            {
+                result.get( 30, TimeUnit.SECONDS );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertEquals( 50, el.getExpressionCache().getStats().getMissCount() );
+    }
+}
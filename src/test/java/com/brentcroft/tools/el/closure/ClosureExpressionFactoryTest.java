@@ -0,0 +1,136 @@
+package com.brentcroft.tools.el.closure;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.MapBindings;
+import jakarta.el.ELException;
+import jakarta.el.ValueExpression;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ClosureExpressionFactoryTest
+{
+    private final ELTemplateManager reference = new ELTemplateManager();
+    private final ELTemplateManager closures = new ELTemplateManager().withExpressionFactory( new ClosureExpressionFactory() );
+
+    private static MapBindings bindings()
+    {
+        final Map< String, Object > map = new HashMap<>();
+
+        map.put( "k", 1 );
+        map.put( "name", "value" );
+
+        return new MapBindings()
+                .withEntry( "i", 3 )
+                .withEntry( "l", 4L )
+                .withEntry( "d", 2.5 )
+                .withEntry( "s", "12" )
+                .withEntry( "f", "1.5" )
+                .withEntry( "t", true )
+                .withEntry( "n", null )
+                .withEntry( "map", map )
+                .withEntry( "list", Arrays.asList( 1, 2, 3 ) )
+                .withEntry( "array", new String[]{ "a", "b" } );
+    }
+
+    private static Object outcome( ELTemplateManager el, String expression )
+    {
+        try
+        {
+            final Object value = el.eval( expression, bindings() );
+
+            return value == null ? null : value.getClass().getSimpleName() + ":" + value;
+        }
+        catch ( RuntimeException e )
+        {
+            return e.getClass();
+        }
+    }
+
+    private void assertSame( String... expressions )
+    {
+        for ( String expression : expressions )
+        {
+            assertEquals( expression, outcome( reference, expression ), outcome( closures, expression ) );
+        }
+    }
+
+    @Test
+    public void operatorsAsReference()
+    {
+        assertSame(
+                "1 + 2", "i + l", "i + d", "d * 2", "s + 1", "f + 1", "n + n", "'3' * '4'", "i - d", "l * l",
+                "7 / 2", "i div 0", "7 % 3", "d mod 2", "7 % 0", "1.5e3", ".5", "1.", "-i", "-d", "-s", "-f", "-n",
+                "i == 3", "i eq l", "s == 12", "d != 2.5", "i < l", "d gt i", "i <= 3", "n <= n", "n < 1", "'a' lt 'b'",
+                "t and i > 2", "t && n", "false or 'true'", "not t", "!n", "empty n", "empty ''", "empty list", "empty array",
+                "t ? 'yes' : 'no'", "n ? 1 : d", "'a' += i += n", "'x\\'y\\\\z'", "\"q\\\"\"", "1 lt 'a'", "i instanceof x" );
+    }
+
+    @Test
+    public void valuesAsReference()
+    {
+        assertSame(
+                "map.k", "map['name']", "map.k.z", "map.missing", "n.x", "n.x()", "list[1]", "list['2']", "list[9]", "array[1]",
+                "name", "nope", "name.length()", "'abc'.substring(1)", "'a'.nope()",
+                "[1, 'b', n]", "{1, 2, 2}", "{'a': 1, 'b': i}.b", "[i, l].stream().map(x -> x * 2).toList()",
+                "Math.PI", "Integer.valueOf('4')", "Integer('5')", "SomeClassWithStaticMembers.ELSE",
+                "c:replaceAll('abc', 'b', 'x')", "c:nope(1)", "c:raise('boom')",
+                "(x -> x + 1)(2)", "(x -> y -> x + y)(1)(2)", "(() -> i)()", "fn = (a, b) -> a * b; fn(3, 4)",
+                "map.q = 3; map.q", "map.k = map.k + 1", "x = 1; y = x + 1; [x, y]", "3 = 4", "(x -> x = 2)(1)" );
+    }
+
+    @Test
+    public void stepsAsReference()
+    {
+        for ( ELTemplateManager el : new ELTemplateManager[]{ reference, closures } )
+        {
+            final MapBindings bindings = new MapBindings()
+                    .withEntry( "counter", 0 )
+                    .withEntry( "$$count", "$self.whileDo( () -> counter < 10, () -> ( $self.counter = counter + 1 ), 20 ); counter" )
+                    .withEntry( "$$check", "$self.ifThenElse( () -> counter == 10, () -> c:return('ten'), () -> c:return('other') )" )
+                    .withEntry( "$$fails", "$self.tryExcept( () -> c:raise( 'Hello' ), (e) -> ( $self.message = e.message ) ); message" );
+
+            assertEquals( 10L, el.eval( "bindings.count()", new MapBindings().withEntry( "bindings", bindings ) ) );
+            assertEquals( "ten", el.eval( "bindings.check()", new MapBindings().withEntry( "bindings", bindings ) ) );
+            assertEquals( "Hello", el.eval( "bindings.fails()", new MapBindings().withEntry( "bindings", bindings ) ) );
+        }
+    }
+
+    @Test
+    public void compilesValueExpressions()
+    {
+        final ClosureExpressionFactory factory = new ClosureExpressionFactory();
+        final MapBindings bindings = bindings();
+
+        final ValueExpression literal = factory.createValueExpression( closures.getELContext( bindings ), "a \\${b}", Object.class );
+        final ValueExpression composite = factory.createValueExpression( closures.getELContext( bindings ), "[${ i }-${ n }]", String.class );
+        final ValueExpression number = factory.createValueExpression( closures.getELContext( bindings ), "${ s }", Integer.class );
+        final ValueExpression property = factory.createValueExpression( closures.getELContext( bindings ), "${ map.k }", Object.class );
+
+        assertTrue( literal.isLiteralText() );
+        assertEquals( "a ${b}", literal.getValue( closures.getELContext( bindings ) ) );
+        assertEquals( "[3-]", composite.getValue( closures.getELContext( bindings ) ) );
+        assertEquals( 12, number.getValue( closures.getELContext( bindings ) ) );
+
+        assertFalse( property.isReadOnly( closures.getELContext( bindings ) ) );
+        property.setValue( closures.getELContext( bindings ), 7 );
+        assertEquals( 7, property.getValue( closures.getELContext( bindings ) ) );
+
+        for ( String invalid : new String[]{ "${ 1 + }", "${ 'a\\n' }", "${ a b }", "${ {1, 'a': 2} }", "${ x", "${ and }" } )
+        {
+            try
+            {
+                factory.createValueExpression( closures.getELContext( bindings ), invalid, Object.class );
+                fail( "Expected a parse error: " + invalid );
+            }
+            catch ( ELException e )
+            {
+                assertTrue( e.getMessage(), e.getMessage().startsWith( "Error Parsing: " + invalid ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.brentcroft.tools.el.metrics;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+
+public class TemplateMetricsTest
+{
+    private static final String URI = "src/test/resources/templates/jstl/test-include.txt";
+
+    @Test
+    public void recordsRendersAndParses()
+    {
+        final TemplateMetrics metrics = new TemplateMetrics();
+        final JstlTemplateManager jstl = new JstlTemplateManager().withMetrics( metrics );
+
+        final String rendered = jstl.expandUri( URI, new MapBindings().withEntry( "fred", "x" ) );
+        jstl.expandUri( URI, new MapBindings().withEntry( "fred", "y" ) );
+
+        final TemplateStats stats = metrics.getTemplate( URI );
+
+        assertNotNull( stats );
+        assertEquals( 2, stats.getRenderCount() );
+        assertEquals( 0, stats.getFailureCount() );
+        assertEquals( 2L * rendered.length(), stats.getOutputChars() );
+        assertEquals( 1, stats.getParseCount() );
+        assertTrue( stats.getLatencyMaxMicros() >= stats.getLatencyP50Micros() );
+
+        assertEquals( 1, metrics.getCaches().get( "jstl.templates" ).getHitCount() );
+    }
+
+    @Test
+    public void recordsTextAgainstItsUri() throws Exception
+    {
+        final TemplateMetrics metrics = new TemplateMetrics();
+        final JstlTemplateManager jstl = new JstlTemplateManager().withMetrics( metrics );
+
+        jstl.expandText( "${ a }", "pages/a", new MapBindings().withEntry( "a", 1 ) );
+        jstl.expandText( "${ a }", "pages/a.txt", new MapBindings().withEntry( "a", 2 ), new StringBuilder() );
+
+        assertEquals( 1, metrics.getTemplate( "pages/a.tpl" ).getRenderCount() );
+        assertEquals( 1, metrics.getTemplate( "pages/a.tpl" ).getParseCount() );
+        assertEquals( 1, metrics.getTemplate( "pages/a.txt" ).getRenderCount() );
+        assertNull( metrics.getTemplate( null ) );
+    }
+
+    @Test
+    public void recordsFailures()
+    {
+        final TemplateMetrics metrics = new TemplateMetrics();
+        final JstlTemplateManager jstl = new JstlTemplateManager().withMetrics( metrics );
+
+        try
+        {
+            jstl.expandText( "${ 1 / notThere.property }", new MapBindings() );
+            fail( "expected an exception" );
+        }
+        catch ( RuntimeException ignored )
+        {
+            // expected
+        }
+
+        final TemplateStats stats = metrics.getTemplate( null );
+
+        assertEquals( 1, stats.getRenderCount() );
+        assertEquals( 1, stats.getFailureCount() );
+    }
+
+    @Test
+    public void recordsExpressions()
+    {
+        final TemplateMetrics metrics = new TemplateMetrics();
+        final JstlTemplateManager jstl = new JstlTemplateManager().withMetrics( metrics );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertEquals( "3", jstl.expandText( "<c:if test='${ a > 1 }'>${a}</c:if>", new MapBindings().withEntry( "a", 3 ) ) );
+        }
+
+        assertEquals( 3, metrics.getExpression( "${ a > 1 }" ).getEvaluationCount() );
+        assertEquals( 3, metrics.getExpression( "${a}" ).getEvaluationCount() );
+    }
+
+    @Test
+    public void recordsNothingWhenDisabled()
+    {
+        final TemplateMetrics metrics = new TemplateMetrics().withEnabled( false );
+        final JstlTemplateManager jstl = new JstlTemplateManager().withMetrics( metrics );
+
+        assertEquals( "2", jstl.expandText( "${ 1 + 1 }", new MapBindings() ) );
+
+        assertTrue( metrics.getTemplates().isEmpty() );
+        assertTrue( metrics.getExpressions().isEmpty() );
+    }
+
+    @Test
+    public void exposesMXBean() throws Exception
+    {
+        final TemplateMetrics metrics = new TemplateMetrics().register( "test" );
+
+        try
+        {
+            new JstlTemplateManager()
+                    .withMetrics( metrics )
+                    .expandText( "${ 1 + 1 }", new MapBindings() );
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = metrics.getObjectName();
+
+            assertTrue( server.isRegistered( name ) );
+            assertEquals( true, server.getAttribute( name, "Enabled" ) );
+
+            final CompositeData[] templates = ( CompositeData[] ) server.getAttribute( name, "Templates" );
+
+            assertEquals( 1, templates.length );
+            assertEquals( TemplateMetrics.ANONYMOUS, templates[ 0 ].get( "uri" ) );
+            assertEquals( 1L, templates[ 0 ].get( "renderCount" ) );
+
+            server.invoke( name, "reset", null, null );
+
+            assertTrue( metrics.getTemplates().isEmpty() );
+        }
+        finally
+        {
+            metrics.unregister();
+        }
+
+        assertNull( metrics.getObjectName() );
+    }
+}
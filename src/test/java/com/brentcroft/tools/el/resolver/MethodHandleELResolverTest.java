@@ -0,0 +1,156 @@
+package com.brentcroft.tools.el.resolver;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.el.SimpleELContextFactory;
+import jakarta.el.ELClass;
+import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class MethodHandleELResolverTest
+{
+    private final ELTemplateManager el = new ELTemplateManager();
+    private final MethodHandleELResolver resolver = new MethodHandleELResolver();
+
+    private ELContext context;
+
+    @Before
+    public void setUp()
+    {
+        SimpleELContextFactory.clean();
+        context = el.getELContext( new MapBindings() );
+    }
+
+    public static class Person
+    {
+        public static final String SPECIES = "human";
+        public static String nickname = "none";
+
+        public String getName()
+        {
+            return "Alfredo";
+        }
+
+        public boolean isActive()
+        {
+            return true;
+        }
+
+        public String greet( String greeting, int times )
+        {
+            StringBuilder b = new StringBuilder();
+            for ( int i = 0; i < times; i++ )
+            {
+                b.append( greeting );
+            }
+            return b.append( " " ).append( getName() ).toString();
+        }
+
+        public String pad( int n )
+        {
+            return "int";
+        }
+
+        public String pad( String s )
+        {
+            return "string";
+        }
+
+        public void fail()
+        {
+            throw new IllegalStateException( "failed" );
+        }
+    }
+
+    @Test
+    public void readsProperties()
+    {
+        assertEquals( "Alfredo", resolver.getValue( context, new Person(), "name" ) );
+        assertTrue( context.isPropertyResolved() );
+
+        assertEquals( true, resolver.getValue( context, new Person(), "active" ) );
+        assertTrue( context.isPropertyResolved() );
+    }
+
+    @Test
+    public void leavesUnknownPropertiesUnresolved()
+    {
+        context.setPropertyResolved( false );
+
+        assertNull( resolver.getValue( context, new Person(), "surname" ) );
+        assertFalse( context.isPropertyResolved() );
+    }
+
+    @Test
+    public void invokesThroughPublicInterface()
+    {
+        // a lambda's class is not public
+        final Supplier< String > supplier = () -> "green";
+
+        assertEquals( "green", resolver.invoke( context, supplier, "get", null, new Object[ 0 ] ) );
+        assertTrue( context.isPropertyResolved() );
+    }
+
+    @Test
+    public void invokesMethods()
+    {
+        assertEquals( "hihi Alfredo", resolver.invoke( context, new Person(), "greet", null, new Object[]{ "hi", 2 } ) );
+        assertTrue( context.isPropertyResolved() );
+    }
+
+    @Test
+    public void leavesCoercionAndOverloadsToBeanResolver()
+    {
+        context.setPropertyResolved( false );
+
+        // needs coercion from Long
+        assertNull( resolver.invoke( context, new Person(), "greet", null, new Object[]{ "hi", 2L } ) );
+        assertFalse( context.isPropertyResolved() );
+
+        // overloaded
+        assertNull( resolver.invoke( context, new Person(), "pad", null, new Object[]{ 1 } ) );
+        assertFalse( context.isPropertyResolved() );
+
+        // the whole chain still gets there
+        final MapBindings bindings = new MapBindings().withEntry( "p", new Person() );
+
+        assertEquals( "hihi Alfredo", el.eval( "p.greet( 'hi', 2 )", bindings ) );
+        assertEquals( "string", el.eval( "p.pad( 'x' )", bindings ) );
+    }
+
+    @Test
+    public void wrapsExceptions()
+    {
+        try
+        {
+            resolver.invoke( context, new Person(), "fail", null, null );
+            fail( "Expected ELException" );
+        }
+        catch ( ELException e )
+        {
+            assertTrue( e.getCause() instanceof IllegalStateException );
+        }
+    }
+
+    @Test
+    public void cachesFinalStaticFields()
+    {
+        final FinalStaticFieldELResolver statics = new FinalStaticFieldELResolver();
+        final ELClass personClass = new ELClass( Person.class );
+
+        assertEquals( "human", statics.getValue( context, personClass, "SPECIES" ) );
+        assertEquals( "human", statics.getValue( context, personClass, "SPECIES" ) );
+
+        // not final: read every time
+        assertEquals( "none", statics.getValue( context, personClass, "nickname" ) );
+        Person.nickname = "Fred";
+        assertEquals( "Fred", statics.getValue( context, personClass, "nickname" ) );
+        Person.nickname = "none";
+    }
+}
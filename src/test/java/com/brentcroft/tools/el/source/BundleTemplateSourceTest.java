@@ -0,0 +1,108 @@
+package com.brentcroft.tools.el.source;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+
+public class BundleTemplateSourceTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File bundle( String... namesAndTexts ) throws IOException
+    {
+        final File file = folder.newFile( "bundle.jar" );
+
+        try ( ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( file ) ) )
+        {
+            zip.setComment( "templates" );
+
+            for ( int i = 0; i < namesAndTexts.length; i += 2 )
+            {
+                final byte[] bytes = namesAndTexts[ i + 1 ].getBytes( StandardCharsets.UTF_8 );
+                final ZipEntry entry = new ZipEntry( namesAndTexts[ i ] );
+
+                // alternate stored and deflated entries
+                if ( i % 4 == 0 )
+                {
+                    final CRC32 crc = new CRC32();
+                    crc.update( bytes );
+
+                    entry.setMethod( ZipEntry.STORED );
+                    entry.setSize( bytes.length );
+                    entry.setCrc( crc.getValue() );
+                }
+
+                zip.putNextEntry( entry );
+                zip.write( bytes );
+                zip.closeEntry();
+            }
+        }
+
+        return file;
+    }
+
+    @Test
+    public void indexesAndReadsEntries() throws Exception
+    {
+        final StringBuilder large = new StringBuilder();
+
+        for ( int i = 0; i < 10_000; i++ )
+        {
+            large.append( "line " ).append( i ).append( " ☃\n" );
+        }
+
+        final BundleTemplateSource source = new BundleTemplateSource( bundle(
+                "a.tpl", "stored",
+                "pages/b.tpl", "deflated",
+                "pages/large.tpl", large.toString() ).toPath() );
+
+        assertEquals( new HashSet<>( Arrays.asList( "a.tpl", "pages/b.tpl", "pages/large.tpl" ) ), source.getUris() );
+
+        assertEquals( "stored", TemplateReader.DEFAULT.read( source.find( "a.tpl" ) ).getText() );
+        assertEquals( "deflated", TemplateReader.DEFAULT.read( source.find( "/pages/./b.tpl" ) ).getText() );
+        assertEquals( large.toString(), TemplateReader.DEFAULT.read( source.find( "pages/large.tpl" ) ).getText() );
+
+        assertEquals( "stored", TemplateReader.DEFAULT.read( source.find( "pages/../a.tpl" ) ).getText() );
+        assertNull( source.find( "../a.tpl" ) );
+        assertNull( source.find( "pages" ) );
+        assertNull( source.find( "missing.tpl" ) );
+    }
+
+    @Test
+    public void includesResolveInsideTheBundle() throws Exception
+    {
+        final File bundle = bundle(
+                "pages/home.tpl", "[<c:include page=\"part.tpl\" relative=\"true\"/>|<c:include page=\"../common/footer.tpl\" relative=\"true\"/>]",
+                "pages/part.tpl", "hello ${ name }",
+                "common/footer.tpl", "footer" );
+
+        final JstlTemplateManager jstl = new JstlTemplateManager().withBundle( bundle.toPath() );
+
+        assertEquals( "[hello fred|footer]", jstl.expandUri( "pages/home.tpl", new MapBindings().withEntry( "name", "fred" ) ) );
+
+        // still finds templates outside the bundle
+        assertTrue( jstl.expandUri( "src/test/resources/templates/jstl/test-include.txt", new MapBindings().withEntry( "fred", 1 ) ).contains( "hello" ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void rejectsFilesThatAreNotZips() throws Exception
+    {
+        new BundleTemplateSource( folder.newFile( "empty.jar" ).toPath() );
+    }
+}
@@ -0,0 +1,121 @@
+package com.brentcroft.tools.el.source;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+
+public class TemplateReaderTest
+{
+    private static final String TEXT = "café ${ x } ☃\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsFilesStreamsAndMappedFilesAlike() throws Exception
+    {
+        final File file = folder.newFile( "t.txt" );
+        Files.write( file.toPath(), TEXT.getBytes( StandardCharsets.UTF_8 ) );
+
+        final TemplateText buffered = TemplateReader.DEFAULT.read( file.toURI().toURL() );
+        final TemplateText mapped = new TemplateReader( StandardCharsets.UTF_8, 0 ).read( file.toPath() );
+        final TemplateText streamed = TemplateReader.DEFAULT.read( new ByteArrayInputStream( TEXT.getBytes( StandardCharsets.UTF_8 ) ) );
+
+        for ( TemplateText text : new TemplateText[]{ buffered, mapped, streamed } )
+        {
+            assertEquals( TEXT, text.getText() );
+            assertEquals( buffered.getHash(), text.getHash() );
+            assertEquals( TEXT.getBytes( StandardCharsets.UTF_8 ).length, text.getSize() );
+        }
+    }
+
+    @Test
+    public void templateStreamHashesAsRead() throws Exception
+    {
+        final StringBuilder b = new StringBuilder();
+
+        for ( int i = 0; i < 3000; i++ )
+        {
+            b.append( i ).append( TEXT );
+        }
+
+        final File file = folder.newFile( "s.tpl" );
+        Files.write( file.toPath(), b.toString().getBytes( StandardCharsets.UTF_8 ) );
+
+        final TemplateText read = TemplateReader.DEFAULT.read( file.toPath() );
+
+        try ( TemplateStream stream = TemplateReader.DEFAULT.open( file.toPath() ) )
+        {
+            final StringBuilder streamed = new StringBuilder();
+            final char[] buffer = new char[ 1000 ];
+
+            for ( int n = stream.read( buffer ); n >= 0; n = stream.read( buffer ) )
+            {
+                streamed.append( buffer, 0, n );
+            }
+
+            assertEquals( read.getText(), streamed.toString() );
+            assertEquals( read.getHash(), stream.getTemplateText().getHash() );
+            assertEquals( read.getSize(), stream.getTemplateText().getSize() );
+        }
+
+        final JstlTemplateManager jstl = new JstlTemplateManager().withStreamThreshold( 0 );
+
+        assertEquals( b.toString().replace( "${ x }", "X" ), jstl.expandUri( file.getPath(), new MapBindings().withEntry( "x", "X" ) ) );
+    }
+
+    @Test
+    public void readsLargeStreams() throws Exception
+    {
+        final StringBuilder b = new StringBuilder();
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            b.append( i ).append( TEXT );
+        }
+
+        final String expected = b.toString();
+
+        assertEquals( expected, TemplateReader.DEFAULT.read( new ByteArrayInputStream( expected.getBytes( StandardCharsets.UTF_8 ) ) ).getText() );
+    }
+
+    @Test
+    public void decodesWithCharset() throws Exception
+    {
+        final File file = folder.newFile( "latin.txt" );
+        Files.write( file.toPath(), TEXT.replace( "☃", "" ).getBytes( StandardCharsets.ISO_8859_1 ) );
+
+        assertEquals(
+                TEXT.replace( "☃", "" ),
+                TemplateReader.DEFAULT.withCharset( StandardCharsets.ISO_8859_1 ).read( file.toURI().toURL() ).getText() );
+
+        final String rendered = new JstlTemplateManager()
+                .withCharset( StandardCharsets.ISO_8859_1 )
+                .expandUri( file.getPath(), new MapBindings().withEntry( "x", 1 ) );
+
+        assertEquals( "café 1 \n", rendered );
+    }
+
+    @Test
+    public void hashDistinguishesContent() throws Exception
+    {
+        final TemplateReader reader = TemplateReader.DEFAULT;
+
+        final long a = reader.read( new ByteArrayInputStream( "abcdefghi".getBytes( StandardCharsets.UTF_8 ) ) ).getHash();
+        final long b = reader.read( new ByteArrayInputStream( "abcdefghj".getBytes( StandardCharsets.UTF_8 ) ) ).getHash();
+        final long c = reader.read( new ByteArrayInputStream( "abcdefghi\0".getBytes( StandardCharsets.UTF_8 ) ) ).getHash();
+
+        assertNotEquals( a, b );
+        assertNotEquals( a, c );
+    }
+}
@@ -0,0 +1,162 @@
+package com.brentcroft.tools.el.source;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+public class TemplateSourceTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void memorySourceServesTemplatesAndIncludes()
+    {
+        final MemoryTemplateSource memory = new MemoryTemplateSource()
+                .withTemplate( "page.tpl", "[<c:include page=\"part.tpl\"/>]" )
+                .withTemplate( "part.tpl", "hello ${ name }" );
+
+        final JstlTemplateManager jstl = new JstlTemplateManager().withTemplateSource( memory );
+
+        assertEquals( "[hello fred]", jstl.expandUri( "page", new MapBindings().withEntry( "name", "fred" ) ) );
+    }
+
+    @Test
+    public void fileSystemSourceIsConfinedToRoot() throws Exception
+    {
+        final File root = folder.newFolder( "root" );
+        final File inside = new File( root, "a/b.tpl" );
+        final File outside = folder.newFile( "outside.tpl" );
+
+        assertTrue( inside.getParentFile().mkdirs() );
+        Files.write( inside.toPath(), "b".getBytes( StandardCharsets.UTF_8 ) );
+
+        final FileSystemTemplateSource source = new FileSystemTemplateSource( root.toPath() );
+
+        assertEquals( inside.toURI().toURL(), source.find( "a/b.tpl" ) );
+        assertEquals( inside.toURI().toURL(), source.find( "/a/b.tpl" ) );
+        assertNull( source.find( "a/missing.tpl" ) );
+        assertNull( source.find( "a" ) );
+        assertNull( source.find( "../" + outside.getName() ) );
+
+        assertNotNull( new FileSystemTemplateSource().find( outside.getPath() ) );
+        assertNotNull( new FileSystemTemplateSource().find( outside.toURI().toString() ) );
+    }
+
+    @Test
+    public void chainReturnsFirstFound()
+    {
+        final MemoryTemplateSource first = new MemoryTemplateSource().withTemplate( "a", "1" );
+        final MemoryTemplateSource second = new MemoryTemplateSource().withTemplate( "a", "2" ).withTemplate( "b", "2" );
+
+        final TemplateSource chain = TemplateSource.chain( first, second );
+
+        assertEquals( "1", TemplateReader.DEFAULT.read( chain.find( "a" ) ).getText() );
+        assertEquals( "2", TemplateReader.DEFAULT.read( chain.find( "b" ) ).getText() );
+        assertNull( chain.find( "c" ) );
+
+        // the classpath, then files
+        assertNotNull( TemplateSource.defaults( getClass() ).find( "templates/jstl/test-include.txt" ) );
+        assertNotNull( TemplateSource.defaults( getClass() ).find( "src/test/resources/templates/jstl/test-include.txt" ) );
+    }
+
+    @Test
+    public void classpathKeepsAbsoluteUris() throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final File file = folder.newFile( "absolute.tpl" );
+
+        assertNull( new ClasspathTemplateSource( classLoader ).find( "/templates/jstl/test-include.txt" ) );
+        assertNotNull( new ClasspathTemplateSource( classLoader, true ).find( "/templates/jstl/test-include.txt" ) );
+
+        // an absolute file, not a resource with the same (relative) name
+        assertEquals( file.toURI().toURL(), TemplateSource.defaults( getClass() ).find( file.getAbsolutePath() ) );
+    }
+
+    @Test
+    public void cachesHitsAndMisses() throws Exception
+    {
+        final AtomicInteger lookups = new AtomicInteger();
+        final MemoryTemplateSource memory = new MemoryTemplateSource().withTemplate( "a", "1" );
+
+        final CachingTemplateSource source = ( ( TemplateSource ) uri -> {
+            lookups.incrementAndGet();
+            return memory.find( uri );
+        } ).cached( 60_000 );
+
+        final URL a = source.find( "a" );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertEquals( a, source.find( "a" ) );
+            assertNull( source.find( "missing" ) );
+        }
+
+        assertEquals( 2, lookups.get() );
+        assertEquals( 9, source.getStats().getHitCount() );
+        assertEquals( 1, source.getStats().getLoadFailureCount() );
+
+        // a new template is not found until the cache is invalidated
+        memory.withTemplate( "missing", "now" );
+
+        assertNull( source.find( "missing" ) );
+
+        source.invalidate();
+
+        assertNotNull( source.find( "missing" ) );
+        assertEquals( 3, lookups.get() );
+    }
+
+    @Test
+    public void cacheIsBounded()
+    {
+        final AtomicInteger lookups = new AtomicInteger();
+
+        final CachingTemplateSource source = new CachingTemplateSource( uri -> {
+            lookups.incrementAndGet();
+            return null;
+        }, Long.MAX_VALUE, 10 );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertNull( source.find( "generated/" + i ) );
+        }
+
+        assertTrue( source.getStats().getSize() <= 10 );
+        assertEquals( 990, source.getStats().getEvictionCount() );
+
+        // never expires
+        assertNull( source.find( "generated/999" ) );
+        assertEquals( 1000, lookups.get() );
+    }
+
+    @Test
+    public void cacheExpires() throws Exception
+    {
+        final AtomicInteger lookups = new AtomicInteger();
+
+        final CachingTemplateSource source = ( ( TemplateSource ) uri -> {
+            lookups.incrementAndGet();
+            return null;
+        } ).cached( 1 );
+
+        assertNull( source.find( "a" ) );
+
+        Thread.sleep( 5 );
+
+        assertNull( source.find( "a" ) );
+        assertEquals( 2, lookups.get() );
+        assertEquals( 1, source.getStats().getEvictionCount() );
+    }
+}
@@ -5,6 +5,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
 import static org.junit.Assert.assertEquals;
 
 public class JstlTemplateManagerTest
@@ -52,6 +55,56 @@ public class JstlTemplateManagerTest
         }
     }
 
+    @Test
+    public void test_expandToWriter() throws IOException
+    {
+        final String[] samples = {
+                "red <c:if test='${ fred == 1 }'>green</c:if> blue",
+                "<c:foreach items='${ days }' var='day'><c:choose><c:when test='${ day == 1 }'>one</c:when><c:otherwise>${ day }</c:otherwise></c:choose>,</c:foreach>",
+                "before<c:catch var='e'>lost ${ 1 / bob.x }</c:catch>after",
+                "<c:include page='src/test/resources/templates/jstl/test-include.txt'/>",
+        };
+
+        for ( String sample : samples )
+        {
+            final MapBindings bindings = new MapBindings()
+                    .withEntry( "fred", 1 )
+                    .withEntry( "days", new Integer[]{ 1, 2, 3 } );
+
+            final StringWriter writer = new StringWriter();
+
+            jstl.expandText( sample, bindings, writer );
+
+            assertEquals( jstl.expandText( sample, bindings ), writer.toString() );
+        }
+    }
+
+    @Test
+    public void test_parseCache()
+    {
+        final JstlTemplateManager cached = new JstlTemplateManager()
+                .withParseCache( 1024 * 1024 );
+
+        final String sample = "red <c:if test='${ fred == 1 }'>green ${ fred }</c:if> blue";
+
+        for ( int fred = 0; fred < 3; fred++ )
+        {
+            final MapBindings bindings = new MapBindings().withEntry( "fred", fred );
+
+            assertEquals( jstl.expandText( sample, bindings ), cached.expandText( sample, bindings ) );
+        }
+
+        // the same text in the context of a uri is a different template
+        cached.expandText( sample, "src/test/resources/templates/jstl/test-include.txt", new MapBindings().withEntry( "fred", 1 ) );
+
+        assertEquals( 2, cached.getParseCache().size() );
+        assertEquals( 2, cached.getParseCache().getStats().getHitCount() );
+
+        cached.dropTemplates();
+
+        assertEquals( 0, cached.getParseCache().size() );
+    }
+
     @Test
     public void readme_test()
     {
@@ -0,0 +1,120 @@
+package com.brentcroft.tools.jstl;
+
+import com.brentcroft.tools.el.MapBindings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TemplatePreloaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final JstlTemplateManager jstl = new JstlTemplateManager();
+
+    private File write( String name, String text ) throws IOException
+    {
+        final File file = new File( folder.getRoot(), name );
+
+        file.getParentFile().mkdirs();
+
+        Files.write( file.toPath(), text.getBytes( StandardCharsets.UTF_8 ) );
+
+        return file;
+    }
+
+    @Test
+    public void loadsIncludedTemplatesFirst() throws Exception
+    {
+        final File leaf = write( "pages/leaf.tpl", "leaf" );
+        final File mid = write( "pages/mid.tpl", "(<c:include page='leaf.tpl'/>)" );
+        final File top = write( "pages/top.tpl", "[<c:include page='mid.tpl'/>|<c:include page='leaf.tpl'/>]" );
+        write( "shared/footer.txt", "footer" );
+        final File page = write( "pages/footed.tpl", "<c:include page='../shared/footer.txt'/>" );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+        final PreloadReport report;
+
+        try
+        {
+            report = jstl.preload( folder.getRoot().toPath(), "pages/*.tpl", executor );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        final Map< String, PreloadReport.Result > results = report
+                .getResults()
+                .stream()
+                .collect( Collectors.toMap( PreloadReport.Result::getUri, Function.identity() ) );
+
+        // the include outside the glob is loaded too
+        assertEquals( 5, results.size() );
+        assertTrue( report.getFailures().isEmpty() );
+        assertEquals( 3, report.getLevels() );
+
+        assertEquals( 0, results.get( leaf.getPath() ).getLevel() );
+        assertEquals( 1, results.get( mid.getPath() ).getLevel() );
+        assertEquals( 2, results.get( top.getPath() ).getLevel() );
+        assertEquals( 1, results.get( page.getPath() ).getLevel() );
+        assertTrue( results.containsKey( folder.getRoot().getPath() + "/pages/../shared/footer.txt" ) );
+
+        // no more parsing
+        final long misses = jstl.getTemplateCache().getStats().getMissCount();
+
+        assertEquals( "[(leaf)|leaf]", jstl.expandUri( top.getPath(), new MapBindings() ) );
+        assertEquals( misses, jstl.getTemplateCache().getStats().getMissCount() );
+    }
+
+    @Test
+    public void loadsMutualIncludesTogether() throws Exception
+    {
+        final File a = write( "a.tpl", "<c:if test='${ n > 0 }'>a<c:include page='b.tpl' recursive='true'/></c:if>" );
+        final File b = write( "b.tpl", "<c:if test='${ n > 0 }'>b<c:include page='a.tpl' recursive='true'/></c:if>" );
+
+        final PreloadReport report = jstl.preload( folder.getRoot().toPath(), "*.tpl" );
+
+        assertTrue( report.getFailures().toString(), report.getFailures().isEmpty() );
+        assertEquals( 1, report.getLevels() );
+        assertEquals( 2, report.getResults().size() );
+
+        assertNotNull( jstl.getTemplateCache().getIfPresent( a.getPath() ) );
+        assertNotNull( jstl.getTemplateCache().getIfPresent( b.getPath() ) );
+    }
+
+    @Test
+    public void reportsFailures() throws Exception
+    {
+        final File good = write( "good.tpl", "good" );
+        final File bad = write( "bad.tpl", "<c:if test='${ true }'>unclosed" );
+        final File missing = write( "missing.tpl", "<c:include page='nowhere.tpl'/>" );
+
+        final PreloadReport report = jstl.preload( folder.getRoot().toPath(), "*.tpl" );
+
+        assertEquals( 3, report.getResults().size() );
+        assertEquals( 2, report.getFailures().size() );
+
+        final Map< String, PreloadReport.Result > results = report
+                .getResults()
+                .stream()
+                .collect( Collectors.toMap( PreloadReport.Result::getUri, Function.identity() ) );
+
+        assertFalse( results.get( good.getPath() ).isFailed() );
+        assertTrue( results.get( bad.getPath() ).isFailed() );
+        assertTrue( results.get( missing.getPath() ).getError().getMessage().contains( "nowhere.tpl" ) );
+    }
+}
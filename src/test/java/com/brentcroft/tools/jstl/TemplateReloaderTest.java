@@ -0,0 +1,144 @@
+package com.brentcroft.tools.jstl;
+
+import com.brentcroft.tools.el.MapBindings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TemplateReloaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final JstlTemplateManager jstl = new JstlTemplateManager();
+
+    private File parent;
+    private File child;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        parent = folder.newFile( "parent.tpl" );
+        child = folder.newFile( "child.tpl" );
+
+        write( parent, "[<c:include page='child.tpl'/>]" );
+        write( child, "green" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        if ( jstl.getReloader() != null )
+        {
+            jstl.getReloader().close();
+        }
+    }
+
+    @Test
+    public void reloadsOnlyChangedTemplate() throws IOException
+    {
+        jstl.withHotReload( 0 );
+
+        assertEquals( "[green]", render() );
+
+        final JstlTemplate parentTemplate = jstl.getTemplateCache().getIfPresent( parent.getPath() );
+
+        assertEquals( Collections.singleton( parent.getPath() ), jstl.getReloader().getIncluders( child.getPath(), true ) );
+
+        write( child, "blue" );
+
+        assertEquals( 1, jstl.getReloader().checkNow() );
+        assertEquals( "[blue]", render() );
+
+        // the including template was not re-parsed
+        assertSame( parentTemplate, jstl.getTemplateCache().getIfPresent( parent.getPath() ) );
+    }
+
+    @Test
+    public void ignoresUnchangedContent() throws IOException
+    {
+        jstl.withHotReload( 0 );
+
+        assertEquals( "[green]", render() );
+
+        final JstlTemplate childTemplate = jstl.getTemplateCache().getIfPresent( child.getPath() );
+
+        // touched but not changed
+        write( child, "green" );
+
+        assertEquals( 0, jstl.getReloader().checkNow() );
+        assertSame( childTemplate, jstl.getTemplateCache().getIfPresent( child.getPath() ) );
+    }
+
+    @Test
+    public void keepsPreviousVersionOnFailure() throws IOException
+    {
+        jstl.withHotReload( 0 );
+
+        assertEquals( "[green]", render() );
+
+        write( child, "<c:if test='${ true }'>unclosed" );
+
+        assertEquals( 0, jstl.getReloader().checkNow() );
+        assertEquals( "[green]", render() );
+    }
+
+    @Test
+    public void removesDeletedTemplateAndIncluders()
+    {
+        jstl.withHotReload( 0 );
+
+        assertEquals( "[green]", render() );
+
+        assertTrue( child.delete() );
+
+        assertEquals( 2, jstl.getReloader().checkNow() );
+        assertNull( jstl.getTemplateCache().getIfPresent( child.getPath() ) );
+        assertNull( jstl.getTemplateCache().getIfPresent( parent.getPath() ) );
+    }
+
+    @Test
+    public void reloadsInBackground() throws Exception
+    {
+        jstl.withHotReload( 50 );
+
+        assertEquals( "[green]", render() );
+
+        write( child, "red" );
+
+        final long deadline = System.currentTimeMillis() + 10_000;
+
+        while ( ! "[red]".equals( render() ) && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 20 );
+        }
+
+        assertEquals( "[red]", render() );
+    }
+
+    private String render()
+    {
+        return jstl.expandUri( parent.getPath(), new MapBindings() );
+    }
+
+    private static void write( File file, String text ) throws IOException
+    {
+        final long previous = file.lastModified();
+
+        Files.write( file.toPath(), text.getBytes( StandardCharsets.UTF_8 ) );
+
+        // ensure a visible change of modification time
+        Files.setLastModifiedTime( file.toPath(), FileTime.fromMillis( Math.max( previous, System.currentTimeMillis() ) + 2000 ) );
+    }
+}
@@ -0,0 +1,127 @@
+package com.brentcroft.tools.jstl;
+
+import com.brentcroft.tools.el.MapBindings;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TemplateSnapshotTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File parent;
+    private File child;
+    private Path snapshots;
+
+    private final MapBindings bindings = new MapBindings()
+            .withEntry( "x", 3 )
+            .withEntry( "items", Arrays.asList( 1, 2 ) );
+
+    @Before
+    public void setUp() throws IOException
+    {
+        parent = folder.newFile( "parent.tpl" );
+        child = folder.newFile( "child.tpl" );
+        snapshots = folder.newFolder( "snapshots" ).toPath();
+
+        write( parent, "<h1>${ x }</h1><!-- a comment -->\n" +
+                "<c:forEach items=\"${ items }\" var=\"i\"><c:if test=\"${ i > 1 }\">[${ i * x }]</c:if></c:forEach>\n" +
+                "<![CDATA[<b>${ x }</b>]]> #{ later }\n" +
+                "<c:include page='child.tpl'/>" );
+
+        write( child, "<c:choose><c:when test='${ x == 3 }'>three</c:when><c:otherwise>other</c:otherwise></c:choose>" );
+    }
+
+    private void write( File file, String text ) throws IOException
+    {
+        Files.write( file.toPath(), text.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    private Path save()
+    {
+        final JstlTemplateManager jstl = new JstlTemplateManager();
+
+        jstl.loadTemplate( parent.getPath(), null );
+
+        return jstl.saveSnapshot( snapshots );
+    }
+
+    private String render( JstlTemplateManager jstl )
+    {
+        return jstl.getTemplate( parent.getPath() ).render( bindings );
+    }
+
+    @Test
+    public void loadsTemplatesAsParsed()
+    {
+        final Path file = save();
+
+        assertEquals( snapshots.resolve( TemplateSnapshot.DEFAULT_FILE_NAME ).toAbsolutePath(), file );
+
+        final JstlTemplateManager jstl = new JstlTemplateManager().withSnapshot( snapshots );
+
+        assertEquals( 2, jstl.getSnapshot().getUris().size() );
+        assertEquals( 2, jstl.getSnapshot().getHits() );
+        assertEquals( 0, jstl.getSnapshot().getStale() );
+        assertEquals( 2, jstl.getTemplateCache().size() );
+
+        assertEquals( render( new JstlTemplateManager() ), render( jstl ) );
+        assertTrue( render( jstl ).contains( "[6]" ) );
+        assertTrue( render( jstl ).endsWith( "three" ) );
+    }
+
+    @Test
+    public void parsesChangedTemplates() throws IOException
+    {
+        save();
+
+        write( child, "changed" );
+
+        final JstlTemplateManager jstl = new JstlTemplateManager().withSnapshot( snapshots.resolve( TemplateSnapshot.DEFAULT_FILE_NAME ) );
+
+        assertEquals( 1, jstl.getSnapshot().getHits() );
+        assertEquals( 1, jstl.getSnapshot().getStale() );
+
+        assertTrue( render( jstl ).endsWith( "changed" ) );
+    }
+
+    @Test
+    public void hashesTouchedTemplates() throws IOException
+    {
+        save();
+
+        Files.setLastModifiedTime( child.toPath(), FileTime.fromMillis( child.lastModified() + 60_000 ) );
+
+        final JstlTemplateManager jstl = new JstlTemplateManager().withSnapshot( snapshots );
+
+        // the same content
+        assertEquals( 2, jstl.getSnapshot().getHits() );
+    }
+
+    @Test
+    public void ignoresSnapshotsOfOtherSettings() throws IOException
+    {
+        save();
+
+        assertNull( new JstlTemplateManager().withStripComments( false ).withSnapshot( snapshots ).getSnapshot() );
+
+        write( snapshots.resolve( TemplateSnapshot.DEFAULT_FILE_NAME ).toFile(), "not a snapshot" );
+
+        assertNull( new JstlTemplateManager().withSnapshot( snapshots ).getSnapshot() );
+
+        // nor a missing snapshot
+        assertNull( new JstlTemplateManager().withSnapshot( folder.getRoot().toPath().resolve( "missing" ) ).getSnapshot() );
+    }
+}
@@ -0,0 +1,98 @@
+package com.brentcroft.tools.jstl.compiler;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.el.source.MemoryTemplateSource;
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RuntimeCompilationTest
+{
+    private final MemoryTemplateSource source = new MemoryTemplateSource()
+            .withTemplate( "page.tpl", "<ul><c:forEach items=\"${ items }\" var=\"i\"><li>${ i * x }</li></c:forEach></ul>" +
+                    "<c:choose><c:when test=\"${ x > 2 }\">big</c:when><c:otherwise>small</c:otherwise></c:choose>" +
+                    "<c:include page=\"footer.tpl\"/>" )
+            .withTemplate( "footer.tpl", "<p>${ x }</p>" )
+            .withTemplate( "nested.tpl", "<c:catch><c:if test=\"${ x > 0 }\">${ x }</c:if></c:catch>" );
+
+    // compiled synchronously: on the render that passes the threshold
+    private final JstlTemplateManager jstl = new JstlTemplateManager()
+            .withTemplateSource( source )
+            .withRuntimeCompilation( 2, Runnable::run );
+
+    private MapBindings bindings( int x )
+    {
+        final List< Integer > items = new ArrayList<>();
+
+        for ( int i = 0; i < x; i++ )
+        {
+            items.add( i );
+        }
+
+        return new MapBindings()
+                .withEntry( "x", x )
+                .withEntry( "items", items );
+    }
+
+    private RuntimeCompilation.Tiered tiered( String uri )
+    {
+        final JstlTemplate template = jstl.getTemplate( uri );
+
+        assertEquals( 1, template.getElements().size() );
+
+        return ( RuntimeCompilation.Tiered ) template.getElements().get( 0 );
+    }
+
+    @Test
+    public void compilesAfterTheThreshold()
+    {
+        final JstlTemplateManager parsed = new JstlTemplateManager().withTemplateSource( source );
+
+        for ( int x = 0; x < 5; x++ )
+        {
+            // compiled on the third render
+            assertEquals( x > 2, tiered( "page.tpl" ).isCompiled() );
+
+            assertEquals(
+                    parsed.getTemplate( "page.tpl" ).render( bindings( x ) ),
+                    jstl.getTemplate( "page.tpl" ).render( bindings( x ) ) );
+        }
+
+        assertTrue( tiered( "page.tpl" ).isCompiled() );
+        assertTrue( tiered( "footer.tpl" ).isCompiled() );
+        assertEquals( 2, jstl.getRuntimeCompilation().getCompiled() );
+        assertEquals( "<ul><li>0</li><li>3</li><li>6</li></ul>big<p>3</p>", jstl.getTemplate( "page.tpl" ).render( bindings( 3 ) ) );
+    }
+
+    @Test
+    public void interpretsTemplatesThatFailToCompile()
+    {
+        for ( int x = 0; x < 5; x++ )
+        {
+            assertEquals( x > 0 ? String.valueOf( x ) : "", jstl.getTemplate( "nested.tpl" ).render( bindings( x ) ) );
+        }
+
+        assertFalse( tiered( "nested.tpl" ).isCompiled() );
+        assertEquals( 1, jstl.getRuntimeCompilation().getFailed() );
+    }
+
+    @Test
+    public void compilesCachedTextTemplates()
+    {
+        jstl.withParseCache( 1024 * 1024 );
+
+        final String text = "<c:if test=\"${ x > 1 }\">${ x }</c:if>";
+
+        for ( int x = 0; x < 5; x++ )
+        {
+            assertEquals( x > 1 ? String.valueOf( x ) : "", jstl.expandText( text, bindings( x ) ) );
+        }
+
+        assertEquals( 1, jstl.getRuntimeCompilation().getCompiled() );
+    }
+}
@@ -0,0 +1,176 @@
+package com.brentcroft.tools.jstl.compiler;
+
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.el.source.FileSystemTemplateSource;
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TemplateGeneratorTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+    private Path sources;
+    private Path classes;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        root = folder.newFolder( "templates" ).toPath();
+        sources = folder.newFolder( "sources" ).toPath();
+        classes = folder.newFolder( "classes" ).toPath();
+
+        write( "page.tpl", "<h1 class=\"title\">${ title }</h1>\n\tété \\ \"quoted\"\n" +
+                "<c:if test=\"${ x > 1 }\"><b>${ x }</b></c:if>\n" +
+                "<c:choose>" +
+                "<c:when test=\"${ x == 1 }\">one</c:when>" +
+                "<c:when test=\"${ x == 2 }\">two</c:when>" +
+                "<c:otherwise>many: ${ x }</c:otherwise>" +
+                "</c:choose>\n" +
+                "<c:forEach items=\"${ rows }\" var=\"row\" varStatus=\"s\" begin=\"1\">" +
+                "[${ s.index }:${ row }<c:forEach items=\"${ rows }\" var=\"cell\"><c:if test=\"${ cell != row }\">${ cell }</c:if></c:forEach>]" +
+                "</c:forEach>\n" +
+                "<c:forEach begin=\"${ 1 }\" end=\"${ x }\" varStatus=\"n\">(${ n.index })</c:forEach>\n" +
+                "<c:forEach items=\"${ scalar }\">once</c:forEach>\n" +
+                "<c:while test=\"${ counter.incrementAndGet() <= x }\" varStatus=\"w\">{${ w.index }}</c:while>\n" +
+                "<c:if test=\"${ x > 1 }\" deferred=\"true\">${ later }</c:if>\n" +
+                "<c:include page=\"parts/footer.tpl\"/>" );
+
+        write( "parts/footer.tpl", "<footer>${ title } ${ x }</footer>" );
+    }
+
+    private void write( String uri, String text ) throws IOException
+    {
+        final Path file = root.resolve( uri );
+
+        Files.createDirectories( file.getParent() );
+        Files.write( file, text.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    private JstlTemplateManager manager()
+    {
+        return new JstlTemplateManager().withTemplateSource( new FileSystemTemplateSource( root ) );
+    }
+
+    private MapBindings bindings( int x )
+    {
+        return new MapBindings()
+                .withEntry( "title", "Hello & <welcome>" )
+                .withEntry( "x", x )
+                .withEntry( "scalar", 7 )
+                .withEntry( "rows", new String[]{ "a", "b", "c" } )
+                .withEntry( "counter", new AtomicInteger() );
+    }
+
+    private Class< ? > generateAndCompile() throws Exception
+    {
+        final Map< String, String > generated = new TemplateGenerator( manager(), "test.templates" )
+                .generate( root, "**.tpl", sources );
+
+        assertEquals( Arrays.asList( "page.tpl", "parts/footer.tpl" ), new ArrayList<>( generated.keySet() ) );
+
+        final List< String > options = new ArrayList<>( Arrays.asList(
+                "-d", classes.toString(),
+                "-classpath", System.getProperty( "java.class.path" ) ) );
+
+        try ( Stream< Path > paths = Files.walk( sources ) )
+        {
+            options.addAll( paths
+                    .filter( path -> path.toString().endsWith( ".java" ) )
+                    .map( Path::toString )
+                    .collect( Collectors.toList() ) );
+        }
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+        assertNotNull( "needs a JDK", compiler );
+        assertEquals( 0, compiler.run( null, null, null, options.toArray( new String[ 0 ] ) ) );
+
+        final ClassLoader loader = new URLClassLoader( new URL[]{ classes.toUri().toURL() }, getClass().getClassLoader() );
+
+        return loader.loadClass( "test.templates." + TemplateGenerator.INDEX_CLASS_NAME );
+    }
+
+    private static boolean isCompiled( JstlTemplate template )
+    {
+        return template.getElements().size() == 1 && template.getElements().get( 0 ) instanceof CompiledTemplate;
+    }
+
+    @Test
+    public void rendersAsParsed() throws Exception
+    {
+        final JstlTemplateManager compiled = manager().withCompiledTemplates( generateAndCompile() );
+        final JstlTemplateManager parsed = manager();
+
+        for ( int x = 0; x < 4; x++ )
+        {
+            assertEquals(
+                    parsed.getTemplate( "page.tpl" ).render( bindings( x ) ),
+                    compiled.getTemplate( "page.tpl" ).render( bindings( x ) ) );
+        }
+
+        final String text = compiled.getTemplate( "page.tpl" ).render( bindings( 2 ) );
+
+        assertTrue( text.contains( "[1:abc][2:bac][3:cab]" ) );
+        assertTrue( text.contains( "(1)(2)" ) );
+        assertTrue( text.contains( "{0}{1}" ) );
+        assertTrue( text.contains( "<c:if test=\"${ x > 1 }\">${later}</c:if>" ) );
+        assertTrue( text.endsWith( "<footer>Hello & <welcome> 2</footer>" ) );
+
+        assertTrue( isCompiled( compiled.getTemplate( "page.tpl" ) ) );
+        assertTrue( isCompiled( compiled.getTemplate( "parts/footer.tpl" ) ) );
+        assertEquals( 2, compiled.getCompiledTemplates().getHits() );
+    }
+
+    @Test
+    public void parsesChangedTemplates() throws Exception
+    {
+        final Class< ? > index = generateAndCompile();
+
+        write( "parts/footer.tpl", "<footer>changed</footer>" );
+
+        final JstlTemplateManager jstl = manager().withCompiledTemplates( index );
+
+        assertTrue( jstl.getTemplate( "page.tpl" ).render( bindings( 1 ) ).endsWith( "<footer>changed</footer>" ) );
+
+        assertTrue( isCompiled( jstl.getTemplate( "page.tpl" ) ) );
+        assertFalse( isCompiled( jstl.getTemplate( "parts/footer.tpl" ) ) );
+        assertEquals( 1, jstl.getCompiledTemplates().getStale() );
+    }
+
+    @Test
+    public void skipsTemplatesThatCannotBeGenerated() throws Exception
+    {
+        write( "nested.tpl", "<c:catch><c:if test=\"${ true }\">yes</c:if></c:catch>" );
+
+        final Map< String, String > generated = new TemplateGenerator( manager(), "test.templates" )
+                .generate( root, "*.tpl", sources );
+
+        assertEquals( Arrays.asList( "page.tpl" ), new ArrayList<>( generated.keySet() ) );
+        assertTrue( new File( sources.toFile(), "test/templates/TemplateIndex.java" ).exists() );
+    }
+}
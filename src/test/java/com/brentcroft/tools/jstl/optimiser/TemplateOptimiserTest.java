@@ -0,0 +1,189 @@
+package com.brentcroft.tools.jstl.optimiser;
+
+import com.brentcroft.tools.el.ELTemplateManager;
+import com.brentcroft.tools.el.MapBindings;
+import com.brentcroft.tools.jstl.JstlTemplate;
+import com.brentcroft.tools.jstl.JstlTemplateManager;
+import com.brentcroft.tools.jstl.Renderable;
+import com.brentcroft.tools.jstl.tag.JstlChoose;
+import com.brentcroft.tools.jstl.tag.JstlIf;
+import com.brentcroft.tools.jstl.tag.JstlLog;
+import com.brentcroft.tools.jstl.tag.JstlOtherwise;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class TemplateOptimiserTest
+{
+    // builds templates exactly as parsed
+    private final JstlTemplateManager raw = new JstlTemplateManager().withTemplateOptimiser( null );
+    private final JstlTemplateManager optimised = new JstlTemplateManager();
+
+    private final MapBindings bindings = new MapBindings()
+            .withEntry( "x", "X" )
+            .withEntry( "y", "Y" )
+            .withEntry( "t", true );
+
+    private JstlTemplate apply( TemplatePass pass, String jstlText )
+    {
+        final JstlTemplate template = raw.buildTemplate( jstlText );
+
+        new TemplateOptimiser().withPasses( pass ).optimise( template );
+
+        return template;
+    }
+
+    @Test
+    public void flattensNestedTemplates()
+    {
+        final JstlTemplate outer = new JstlTemplate( null );
+        final JstlTemplate nested = raw.buildTemplate( "a<c:if test=\"${ t }\">${ x }</c:if>b" );
+
+        outer.addRenderable( raw.getELTemplateManager().buildTemplate( "[" ) );
+        outer.addRenderable( nested );
+        outer.addRenderable( raw.getELTemplateManager().buildTemplate( "]" ) );
+
+        final String expected = outer.render( bindings );
+
+        StandardPass.FLATTEN_TEMPLATES.apply( outer );
+
+        assertEquals( 5, outer.getElements().size() );
+        assertTrue( outer.getElements().get( 2 ) instanceof JstlIf );
+        assertEquals( expected, outer.render( bindings ) );
+    }
+
+    @Test
+    public void coalescesLiterals()
+    {
+        final ELTemplateManager el = raw.getELTemplateManager();
+        final JstlTemplate template = new JstlTemplate( null );
+
+        template.addRenderable( el.buildTemplate( "a ${x} b" ) );
+        template.addRenderable( el.buildTemplate( " c " ) );
+        template.addRenderable( el.buildTemplate( "${y}" ) );
+        template.addRenderable( el.buildTemplate( "d" ) );
+        template.addRenderable( el.buildTemplate( "e" ) );
+
+        StandardPass.COALESCE_LITERALS.apply( template );
+
+        final List< Renderable > elements = template.getElements();
+
+        assertEquals( 2, elements.size() );
+        assertEquals( 3, ( ( ELTemplateManager.ELTemplate ) elements.get( 0 ) ).size() );
+        assertEquals( 2, ( ( ELTemplateManager.ELTemplate ) elements.get( 1 ) ).size() );
+        assertEquals( "a ${x} b c ${y}de", template.toString() );
+        assertEquals( "a X b c Yde", template.render( bindings ) );
+
+        // both have expressions, or from another manager
+        assertNull( el.buildTemplate( "${ x }" ).concat( el.buildTemplate( "${y}" ) ) );
+        assertNull( el.buildTemplate( "a" ).concat( new ELTemplateManager().buildTemplate( "b" ) ) );
+
+        // from one parse: the literals keep their offsets into its text (so are not merged, as "z" lies between them)
+        final JstlTemplate parsed = apply( StandardPass.STRIP_DISABLED_LOGS, "a<c:log level=\"finest\">z</c:log>b${x}" );
+
+        StandardPass.COALESCE_LITERALS.apply( parsed );
+
+        assertEquals( 1, parsed.getElements().size() );
+        assertEquals( 3, ( ( ELTemplateManager.ELTemplate ) parsed.getElements().get( 0 ) ).size() );
+        assertEquals( "abX", parsed.render( bindings ) );
+    }
+
+    @Test( timeout = 10_000 )
+    public void coalescesLongRunsInOnePass()
+    {
+        final ELTemplateManager el = raw.getELTemplateManager();
+        final JstlTemplate template = new JstlTemplate( null );
+        final int count = 100_000;
+
+        for ( int i = 0; i < count; i++ )
+        {
+            template.addRenderable( el.buildTemplate( i == count / 2 ? "${x}" : "ab" ) );
+        }
+
+        StandardPass.COALESCE_LITERALS.apply( template );
+
+        assertEquals( 1, template.getElements().size() );
+        assertEquals( 3, ( ( ELTemplateManager.ELTemplate ) template.getElements().get( 0 ) ).size() );
+        assertEquals( 2 * count - 1, template.render( bindings ).length() );
+    }
+
+    @Test
+    public void removesComments()
+    {
+        final JstlTemplate template = apply( StandardPass.REMOVE_COMMENTS, "blue<c:comment>green</c:comment>red" );
+
+        assertEquals( 2, template.getElements().size() );
+        assertEquals( "bluered", template.render( bindings ) );
+
+        // only when asked
+        assertEquals( "blue<!--green-->red", optimised.expandText( "blue<c:comment>green</c:comment>red", bindings ) );
+    }
+
+    @Test
+    public void stripsDisabledLogs()
+    {
+        final Logger logger = Logger.getLogger( JstlLog.class.getName() );
+        final Level level = logger.getLevel();
+
+        logger.setLevel( Level.INFO );
+
+        try
+        {
+            final JstlTemplate template = apply(
+                    StandardPass.STRIP_DISABLED_LOGS,
+                    "a<c:log level=\"fine\">fine</c:log>b<c:log level=\"warning\">warning</c:log>c<c:log level=\"fine\" deferred=\"true\">deferred</c:log>" );
+
+            assertEquals( 5, template.getElements().size() );
+            assertTrue( ( ( JstlLog ) template.getElements().get( 2 ) ).isEnabled() );
+            assertTrue( ( ( JstlLog ) template.getElements().get( 4 ) ).isDeferred() );
+        }
+        finally
+        {
+            logger.setLevel( level );
+        }
+    }
+
+    @Test
+    public void collapsesChoose()
+    {
+        final JstlTemplate template = apply(
+                StandardPass.COLLAPSE_CHOOSE,
+                "<c:choose><c:otherwise>${ x }</c:otherwise></c:choose>" +
+                        "<c:choose><c:when test=\"${ t }\">${ y }</c:when><c:otherwise>z</c:otherwise></c:choose>" +
+                        "<c:choose deferred=\"true\"><c:otherwise>${x}</c:otherwise></c:choose>" +
+                        "<c:choose></c:choose>" );
+
+        final List< Renderable > elements = template.getElements();
+
+        assertEquals( 3, elements.size() );
+        assertTrue( elements.get( 0 ) instanceof JstlOtherwise );
+        assertTrue( elements.get( 1 ) instanceof JstlChoose );
+        assertTrue( elements.get( 2 ) instanceof JstlChoose );
+        assertEquals( "XY<c:choose><c:otherwise>${x}</c:otherwise>\n</c:choose>", template.render( bindings ) );
+    }
+
+    @Test
+    public void standardPipelineRendersAsParsed()
+    {
+        final String[] samples = {
+                "a<c:if test=\"${ t }\">b<c:comment>${ x }</c:comment>c</c:if>d<c:log level=\"finest\">z</c:log>e",
+                "<c:choose><c:otherwise>e${ x }</c:otherwise></c:choose>f<c:choose><c:when test=\"${ t }\">g</c:when></c:choose>",
+                "<c:forEach items=\"${ [1, 2] }\" var=\"i\">${ i }<c:log level=\"finest\">${ i }</c:log>;</c:forEach>",
+                "<c:if test=\"${ t }\" deferred=\"true\">a<c:log level=\"finest\">b</c:log>c</c:if>",
+        };
+
+        for ( String sample : samples )
+        {
+            assertEquals( sample, raw.expandText( sample, bindings ), optimised.expandText( sample, bindings ) );
+        }
+
+        final String text = "a<c:if test=\"${ t }\">b</c:if>c<c:log level=\"finest\">z</c:log>d<c:choose><c:otherwise>e${ x }</c:otherwise></c:choose>f";
+
+        assertEquals( 7, raw.buildTemplate( text ).getElements().size() );
+        assertEquals( 5, optimised.buildTemplate( text ).getElements().size() );
+    }
+}